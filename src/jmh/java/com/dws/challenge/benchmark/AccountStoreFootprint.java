@@ -0,0 +1,109 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.repository.AccountsRepository;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.SplittableRandom;
+
+/**
+ * Memory and lookup throughput of the account stores at a size JMH would take too long to set up per fork.
+ * For every store in turn, creates {@code footprint.accounts} accounts, reports the heap and direct memory
+ * they retain after a full collection, then times single-threaded lookups of random accounts by id and, for
+ * the interned store, by handle.
+ * <p>
+ * System properties: {@code footprint.accounts} (default 10000000), {@code footprint.lookups} (10000000) and
+ * {@code footprint.stores} (heap,offheap,interned). Run with a heap large enough for the largest store, e.g.
+ * {@code -Xmx4g}.
+ */
+public final class AccountStoreFootprint {
+
+    private static final int ACCOUNTS = Integer.getInteger("footprint.accounts", 10_000_000);
+    private static final int LOOKUPS = Integer.getInteger("footprint.lookups", 10_000_000);
+    private static final String[] STORES = System.getProperty("footprint.stores", "heap,offheap,interned").split(",");
+
+    private static final int LOOKUP_BATCH = 1 << 20;
+
+    private static long sink;
+
+    private AccountStoreFootprint() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.printf("accounts=%d, lookups=%d%n", ACCOUNTS, LOOKUPS);
+        System.out.printf("%-9s %10s %12s %12s %9s %16s %20s%n",
+                "store", "load s", "heap MB", "direct MB", "B/account", "by id ns/op", "by handle ns/op");
+        for (String store : STORES) {
+            run(store);
+        }
+    }
+
+    private static void run(String store) throws InterruptedException {
+        long heapBefore = usedHeap();
+        long directBefore = usedDirect();
+        long start = System.nanoTime();
+        AccountsRepository repository = BenchmarkBank.newRepository(store, ACCOUNTS);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            repository.createAccount(Account.ofMinorUnits(BenchmarkBank.accountId(i), 100));
+        }
+        double loadSeconds = (System.nanoTime() - start) / 1e9;
+        long heap = usedHeap() - heapBefore;
+        long direct = usedDirect() - directBefore;
+
+        SplittableRandom random = new SplittableRandom(17);
+        String[] accountIds = new String[LOOKUP_BATCH];
+        int[] handles = new int[LOOKUP_BATCH];
+        for (int i = 0; i < LOOKUP_BATCH; i++) {
+            accountIds[i] = BenchmarkBank.accountId(random.nextInt(ACCOUNTS));
+            handles[i] = repository.getHandle(accountIds[i]);
+        }
+        double byId = timeLookups(repository, accountIds, null);
+        double byHandle = handles[0] == AccountsRepository.NO_HANDLE ? Double.NaN : timeLookups(repository, null, handles);
+
+        System.out.printf("%-9s %10.1f %12.0f %12.0f %9.0f %16.1f %20s%n", store, loadSeconds, heap / 1e6,
+                direct / 1e6, (double) (heap + direct) / ACCOUNTS, byId,
+                Double.isNaN(byHandle) ? "-" : String.format("%.1f", byHandle));
+    }
+
+    /**
+     * Times {@link #LOOKUPS} lookups after as many to warm up, by id unless {@code handles} is given.
+     *
+     * @return nanoseconds per lookup
+     */
+    private static double timeLookups(AccountsRepository repository, String[] accountIds, int[] handles) {
+        sink += lookups(repository, accountIds, handles);
+        long start = System.nanoTime();
+        sink += lookups(repository, accountIds, handles);
+        return (double) (System.nanoTime() - start) / LOOKUPS;
+    }
+
+    private static long lookups(AccountsRepository repository, String[] accountIds, int[] handles) {
+        long checksum = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            Account account = handles == null
+                    ? repository.getAccount(accountIds[i & (LOOKUP_BATCH - 1)])
+                    : repository.getAccount(handles[i & (LOOKUP_BATCH - 1)]);
+            checksum += account.getBalanceMinorUnits();
+        }
+        return checksum;
+    }
+
+    /**
+     * Also gives the cleaner time to free the direct buffers of the previous store.
+     */
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long usedDirect() {
+        return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> "direct".equals(pool.getName()))
+                .mapToLong(BufferPoolMXBean::getMemoryUsed)
+                .sum();
+    }
+}
@@ -0,0 +1,144 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.domain.Account;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code AccountsRepository.getAccount}, by id and by handle, and {@code createAccount} for every account store.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountsRepositoryBenchmark {
+
+    private static final int LOOKUPS_PER_THREAD = 1 << 16;
+    private static final int CREATES_PER_ITERATION = 200_000;
+
+    @State(Scope.Benchmark)
+    public static class PopulatedStore {
+
+        @Param({"10000", "1000000"})
+        public int accounts;
+
+        @Param({"UNIFORM", "ZIPFIAN"})
+        public TrafficPattern pattern;
+
+        @Param({"heap", "offheap", "interned"})
+        public String store;
+
+        BenchmarkBank bank;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            bank = new BenchmarkBank(store, accounts);
+            bank.createAccounts(accounts);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            bank.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Lookups {
+
+        String[] accountIds;
+        int[] handles;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp(PopulatedStore store, ThreadParams threadParams) {
+            int[] indexes = store.pattern.accounts(store.accounts, LOOKUPS_PER_THREAD, threadParams.getThreadIndex());
+            accountIds = new String[LOOKUPS_PER_THREAD];
+            handles = new int[LOOKUPS_PER_THREAD];
+            for (int i = 0; i < LOOKUPS_PER_THREAD; i++) {
+                accountIds[i] = BenchmarkBank.accountId(indexes[i]);
+                handles[i] = store.bank.repository.getHandle(accountIds[i]);
+            }
+        }
+    }
+
+    /**
+     * Every thread creates {@link #CREATES_PER_ITERATION} accounts per iteration into a store emptied before it.
+     */
+    @State(Scope.Benchmark)
+    public static class EmptyStore {
+
+        @Param({"heap", "offheap", "interned"})
+        public String store;
+
+        BenchmarkBank bank;
+
+        @Setup(Level.Trial)
+        public void setUp(BenchmarkParams benchmarkParams) {
+            bank = new BenchmarkBank(store, (long) benchmarkParams.getThreads() * CREATES_PER_ITERATION);
+        }
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            bank.repository.clearAccounts();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            bank.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class NewAccounts {
+
+        Account[] accounts;
+        int next;
+
+        @Setup(Level.Iteration)
+        public void setUp(ThreadParams threadParams) {
+            accounts = new Account[CREATES_PER_ITERATION];
+            for (int i = 0; i < CREATES_PER_ITERATION; i++) {
+                accounts[i] = Account.ofMinorUnits("T" + threadParams.getThreadIndex() + "-" + i, 100);
+            }
+            next = 0;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    public Account getAccount(PopulatedStore store, Lookups lookups) {
+        return store.bank.repository.getAccount(lookups.accountIds[lookups.next++ & (LOOKUPS_PER_THREAD - 1)]);
+    }
+
+    /**
+     * Lookups by handle resolved up front; only the interned store hands out handles, the others answer null.
+     */
+    @Benchmark
+    @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+    public Account getAccountByHandle(PopulatedStore store, Lookups lookups) {
+        return store.bank.repository.getAccount(lookups.handles[lookups.next++ & (LOOKUPS_PER_THREAD - 1)]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 3, batchSize = CREATES_PER_ITERATION)
+    @Measurement(iterations = 5, batchSize = CREATES_PER_ITERATION)
+    public void createAccount(EmptyStore store, NewAccounts newAccounts) {
+        store.bank.repository.createAccount(newAccounts.accounts[newAccounts.next++]);
+    }
+}
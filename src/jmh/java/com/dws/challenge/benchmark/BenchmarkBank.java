@@ -0,0 +1,103 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.cluster.SingleNodeSharding;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.journal.DurabilityMode;
+import com.dws.challenge.journal.TransferJournal;
+import com.dws.challenge.ledger.AccountLedger;
+import com.dws.challenge.metrics.TransferMetrics;
+import com.dws.challenge.repository.AccountIdDictionary;
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.repository.AccountsRepositoryInterned;
+import com.dws.challenge.repository.AccountsRepositoryOffHeap;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.BalanceVersions;
+import com.dws.challenge.service.HotAccounts;
+import com.dws.challenge.service.IdempotencyCache;
+import com.dws.challenge.service.LockingTransferEngine;
+import com.dws.challenge.service.NotificationDispatcher;
+import com.dws.challenge.service.NotificationDispatcher.OverflowPolicy;
+import com.dws.challenge.service.PartitionedTransferEngine;
+import com.dws.challenge.service.StripedLocks;
+import com.dws.challenge.service.TransferEngine;
+import com.dws.challenge.service.TransferService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The service graph wired by hand, without a Spring context: either transfer engine, journal off, metrics
+ * recorded into a simple registry and a dispatcher that drops notifications instead of throttling the
+ * benchmark threads. Hot accounts are only split when a benchmark asks {@link #hotAccounts} to.
+ */
+final class BenchmarkBank {
+
+    /**
+     * Large enough that no benchmark run drains an account, even a hot one.
+     */
+    static final long INITIAL_BALANCE_MINOR_UNITS = 1_000_000_000_000L;
+
+    final AccountsRepository repository;
+    final AccountsService accountsService;
+    final TransferService transferService;
+    final NotificationDispatcher notificationDispatcher;
+    final TransferEngine transferEngine;
+    final HotAccounts hotAccounts;
+
+    BenchmarkBank(String store, long capacity) {
+        this(store, capacity, "locking");
+    }
+
+    BenchmarkBank(String store, long capacity, String engine) {
+        this.repository = newRepository(store, capacity);
+        StripedLocks accountLocks = new StripedLocks(0);
+        BalanceVersions balanceVersions = new BalanceVersions(0);
+        TransferJournal transferJournal = new TransferJournal(repository, DurabilityMode.OFF, "build/jmh-journal", 2, 1 << 26);
+        this.accountsService = new AccountsService(repository, accountLocks, balanceVersions, transferJournal);
+        TransferMetrics metrics = new TransferMetrics(new SimpleMeterRegistry());
+        AccountLedger accountLedger = new AccountLedger(true, "", 0);
+        this.hotAccounts = new HotAccounts(repository, balanceVersions, metrics, "", 0, false, 1000, 1, 0);
+        this.notificationDispatcher = new NotificationDispatcher((account, description) -> { }, metrics, 65_536, 1, 256,
+                OverflowPolicy.DROP, false);
+        if ("partitioned".equals(engine)) {
+            PartitionedTransferEngine partitionedEngine = new PartitionedTransferEngine(balanceVersions, transferJournal, metrics,
+                    accountLedger, 0, 1 << 16);
+            partitionedEngine.start();
+            this.transferEngine = partitionedEngine;
+        } else {
+            this.transferEngine = new LockingTransferEngine(accountLocks, balanceVersions, transferJournal, metrics,
+                    accountLedger, 1024, false);
+        }
+        this.transferService = new TransferService(accountsService, notificationDispatcher, accountLocks, balanceVersions,
+                transferJournal, metrics, transferEngine, new IdempotencyCache(metrics, 1 << 20, 3600), accountLedger,
+                new SingleNodeSharding(), false);
+        notificationDispatcher.start();
+    }
+
+    /**
+     * @param store {@code heap}, {@code offheap} or {@code interned}, as for {@code accounts.store}
+     */
+    static AccountsRepository newRepository(String store, long capacity) {
+        return switch (store) {
+            case "offheap" -> new AccountsRepositoryOffHeap(capacity);
+            case "interned" -> new AccountsRepositoryInterned(new AccountIdDictionary());
+            default -> new AccountsRepositoryInMemory();
+        };
+    }
+
+    static String accountId(int index) {
+        return "Id-" + index;
+    }
+
+    void createAccounts(int count) {
+        for (int i = 0; i < count; i++) {
+            repository.createAccount(Account.ofMinorUnits(accountId(i), INITIAL_BALANCE_MINOR_UNITS));
+        }
+    }
+
+    void close() throws InterruptedException {
+        if (transferEngine instanceof PartitionedTransferEngine partitionedEngine) {
+            partitionedEngine.stop();
+        }
+        notificationDispatcher.stop();
+    }
+}
@@ -0,0 +1,51 @@
+package com.dws.challenge.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the benchmarks once per thread count, doubling from 1 up to the number of available cores (which is
+ * always included), with the GC profiler attached so that every result also reports the allocation rate.
+ * <p>
+ * Usage: {@code BenchmarkSweep [include regex] [results directory]}; one JSON result file is written per
+ * thread count.
+ */
+public final class BenchmarkSweep {
+
+    private BenchmarkSweep() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "com\\.dws\\.challenge\\.benchmark\\..*";
+        File resultsDirectory = new File(args.length > 1 ? args[1] : "build/results/jmh");
+        resultsDirectory.mkdirs();
+
+        for (int threads : threadCounts(Runtime.getRuntime().availableProcessors())) {
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(new File(resultsDirectory, "sweep-" + threads + "-threads.json").getPath())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+
+    static List<Integer> threadCounts(int cores) {
+        List<Integer> threadCounts = new ArrayList<>();
+        for (int threads = 1; threads < cores; threads *= 2) {
+            threadCounts.add(threads);
+        }
+        threadCounts.add(cores);
+        return threadCounts;
+    }
+}
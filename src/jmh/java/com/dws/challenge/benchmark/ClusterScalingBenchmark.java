@@ -0,0 +1,213 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.cluster.ClusterNode;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.TransferRequest;
+import com.dws.challenge.journal.DurabilityMode;
+import com.dws.challenge.journal.TransferJournal;
+import com.dws.challenge.ledger.AccountLedger;
+import com.dws.challenge.metrics.TransferMetrics;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.BalanceVersions;
+import com.dws.challenge.service.IdempotencyCache;
+import com.dws.challenge.service.LockingTransferEngine;
+import com.dws.challenge.service.NotificationDispatcher;
+import com.dws.challenge.service.NotificationDispatcher.OverflowPolicy;
+import com.dws.challenge.service.StripedLocks;
+import com.dws.challenge.service.TransferService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfer throughput of a cluster of 1, 2, 4 or 8 nodes running in this JVM and talking over localhost, with
+ * each benchmark thread sending its transfers to one node (threads are spread over the nodes round robin).
+ * {@code LOCAL} traffic only moves money between accounts of the receiving node, the best case for sharding;
+ * {@code UNIFORM} traffic picks both accounts at random, so {@code (n-1)/n} of the transfers are cross-shard
+ * and pay for the two-phase protocol.
+ * <p>
+ * All nodes share this machine's cores, so the numbers show the cost of the protocol and whether shards
+ * contend with each other, not the throughput of nodes on machines of their own.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClusterScalingBenchmark {
+
+    private static final int ACCOUNTS_PER_NODE = 10_000;
+    private static final int REQUESTS_PER_THREAD = 1 << 14;
+    private static final int PIPELINE_DEPTH = 64;
+
+    public enum Traffic {
+        LOCAL,
+        UNIFORM
+    }
+
+    @Param({"1", "2", "4", "8"})
+    public int nodes;
+
+    @Param({"LOCAL", "UNIFORM"})
+    public Traffic traffic;
+
+    final List<Node> cluster = new ArrayList<>();
+
+    /**
+     * The account ids owned by each node.
+     */
+    final List<List<String>> accountIds = new ArrayList<>();
+
+    /**
+     * One node wired by hand, as in {@link BenchmarkBank}.
+     */
+    static final class Node {
+
+        final AccountsService accountsService;
+        final NotificationDispatcher notificationDispatcher;
+        final ClusterNode clusterNode;
+        final TransferService transferService;
+
+        Node(String nodeId, String nodeList) throws IOException {
+            AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+            StripedLocks accountLocks = new StripedLocks(0);
+            BalanceVersions balanceVersions = new BalanceVersions(0);
+            TransferJournal transferJournal = new TransferJournal(repository, DurabilityMode.OFF, "build/jmh-journal",
+                    2, 1 << 26);
+            this.accountsService = new AccountsService(repository, accountLocks, balanceVersions, transferJournal);
+            TransferMetrics metrics = new TransferMetrics(new SimpleMeterRegistry());
+            AccountLedger accountLedger = new AccountLedger(false, "", 0);
+            this.notificationDispatcher = new NotificationDispatcher((account, description) -> { }, metrics, 65_536, 1,
+                    256, OverflowPolicy.DROP, false);
+            this.clusterNode = new ClusterNode(accountsService, accountLocks, balanceVersions, accountLedger,
+                    transferJournal, nodeId, nodeList, 128, 10_000, 30_000, 600_000);
+            clusterNode.start();
+            this.transferService = new TransferService(accountsService, notificationDispatcher, accountLocks,
+                    balanceVersions, transferJournal, metrics,
+                    new LockingTransferEngine(accountLocks, balanceVersions, transferJournal, metrics, accountLedger, 1024, false),
+                    new IdempotencyCache(metrics, 16, 60), accountLedger, clusterNode, false);
+            notificationDispatcher.start();
+        }
+
+        void close() throws IOException, InterruptedException {
+            clusterNode.stop();
+            notificationDispatcher.stop();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                entries.add("node-" + i + "=localhost:" + socket.getLocalPort());
+            }
+        }
+        String nodeList = String.join(",", entries);
+        for (int i = 0; i < nodes; i++) {
+            cluster.add(new Node("node-" + i, nodeList));
+            accountIds.add(new ArrayList<>(ACCOUNTS_PER_NODE));
+        }
+
+        // Every node owns about the same share of the ids; each gets ACCOUNTS_PER_NODE accounts
+        ClusterNode ring = cluster.get(0).clusterNode;
+        for (int i = 0, full = 0; full < nodes; i++) {
+            String accountId = BenchmarkBank.accountId(i);
+            int owner = Integer.parseInt(ring.ownerOf(accountId).substring("node-".length()));
+            List<String> owned = accountIds.get(owner);
+            if (owned.size() < ACCOUNTS_PER_NODE) {
+                cluster.get(owner).accountsService.createAccount(
+                        Account.ofMinorUnits(accountId, BenchmarkBank.INITIAL_BALANCE_MINOR_UNITS));
+                owned.add(accountId);
+                if (owned.size() == ACCOUNTS_PER_NODE) {
+                    full++;
+                }
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        for (Node node : cluster) {
+            node.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Requests {
+
+        TransferService entryNode;
+        TransferRequest[] requests;
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[PIPELINE_DEPTH];
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp(ClusterScalingBenchmark benchmark, ThreadParams threadParams) {
+            int node = threadParams.getThreadIndex() % benchmark.nodes;
+            entryNode = benchmark.cluster.get(node).transferService;
+            SplittableRandom random = new SplittableRandom(31L * threadParams.getThreadIndex() + 17);
+            BigDecimal amount = new BigDecimal("0.01");
+            requests = new TransferRequest[REQUESTS_PER_THREAD];
+            for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                String from = pick(benchmark, node, random);
+                String to;
+                do {
+                    to = pick(benchmark, node, random);
+                } while (to.equals(from));
+                requests[i] = new TransferRequest(from, to, amount);
+            }
+        }
+
+        private static String pick(ClusterScalingBenchmark benchmark, int node, SplittableRandom random) {
+            int owner = benchmark.traffic == Traffic.LOCAL ? node : random.nextInt(benchmark.nodes);
+            return benchmark.accountIds.get(owner).get(random.nextInt(ACCOUNTS_PER_NODE));
+        }
+
+        TransferRequest next() {
+            return requests[next++ & (REQUESTS_PER_THREAD - 1)];
+        }
+    }
+
+    @Benchmark
+    public void transferMoney(Requests requests) {
+        requests.entryNode.transferMoney(requests.next());
+    }
+
+    /**
+     * Keeps {@link #PIPELINE_DEPTH} transfers in flight per thread, so cross-shard transfers overlap their
+     * round trips instead of waiting for them one at a time.
+     */
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public void transferMoneyPipelined(Requests requests) {
+        CompletableFuture<?>[] futures = requests.futures;
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            futures[i] = requests.entryNode.transferMoneyAsync(requests.next());
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+}
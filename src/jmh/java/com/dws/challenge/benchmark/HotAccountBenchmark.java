@@ -0,0 +1,91 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.dto.TransferRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every transfer credits the same settlement account, from sources spread over all the others, with the
+ * settlement account's balance split or not (see {@code HotAccounts}). Run with several thread counts (see
+ * {@link BenchmarkSweep}): split, credit throughput should keep growing with the threads.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HotAccountBenchmark {
+
+    private static final int ACCOUNTS = 10_000;
+    private static final int REQUESTS_PER_THREAD = 1 << 16;
+    private static final String SETTLEMENT_ACCOUNT_ID = BenchmarkBank.accountId(0);
+
+    @Param({"false", "true"})
+    public boolean split;
+
+    @Param({"heap", "interned"})
+    public String store;
+
+    @Param({"locking", "partitioned"})
+    public String engine;
+
+    BenchmarkBank bank;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bank = new BenchmarkBank(store, ACCOUNTS, engine);
+        bank.createAccounts(ACCOUNTS);
+        if (split) {
+            bank.hotAccounts.split(SETTLEMENT_ACCOUNT_ID);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        bank.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Requests {
+
+        TransferRequest[] requests;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams threadParams) {
+            SplittableRandom random = new SplittableRandom(31L * threadParams.getThreadIndex() + 17);
+            BigDecimal amount = new BigDecimal("0.01");
+            requests = new TransferRequest[REQUESTS_PER_THREAD];
+            for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                String from = BenchmarkBank.accountId(1 + random.nextInt(ACCOUNTS - 1));
+                requests[i] = new TransferRequest(from, SETTLEMENT_ACCOUNT_ID, amount);
+            }
+        }
+
+        TransferRequest next() {
+            return requests[next++ & (REQUESTS_PER_THREAD - 1)];
+        }
+    }
+
+    @Benchmark
+    public void transferToSettlementAccount(Requests requests) {
+        bank.transferService.transferMoney(requests.next());
+    }
+}
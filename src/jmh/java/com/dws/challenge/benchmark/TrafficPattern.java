@@ -0,0 +1,82 @@
+package com.dws.challenge.benchmark;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * How benchmark transfers pick their source and destination accounts.
+ */
+public enum TrafficPattern {
+
+    /**
+     * Every account is equally likely on both sides.
+     */
+    UNIFORM,
+
+    /**
+     * Both sides follow a Zipf distribution (exponent 1): a handful of hot accounts take part in most transfers.
+     */
+    ZIPFIAN,
+
+    /**
+     * Each thread walks the ring A&rarr;B&rarr;C&rarr;...&rarr;A from its own starting point.
+     */
+    RING;
+
+    private static final double ZIPF_EXPONENT = 1.0;
+
+    /**
+     * Picks {@code count} account indexes, precomputed so that the benchmark loop only reads an array.
+     */
+    public int[] accounts(int accountCount, int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] indexes = new int[count];
+        switch (this) {
+            case UNIFORM -> {
+                for (int i = 0; i < count; i++) {
+                    indexes[i] = random.nextInt(accountCount);
+                }
+            }
+            case ZIPFIAN -> {
+                double[] cumulative = zipfCumulative(accountCount);
+                for (int i = 0; i < count; i++) {
+                    int index = Arrays.binarySearch(cumulative, random.nextDouble());
+                    indexes[i] = Math.min(index < 0 ? -index - 1 : index, accountCount - 1);
+                }
+            }
+            case RING -> {
+                int start = random.nextInt(accountCount);
+                for (int i = 0; i < count; i++) {
+                    indexes[i] = (start + i) % accountCount;
+                }
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Pairs each source account with a different destination account. A ring transfer goes to the next account.
+     */
+    public int[] counterparts(int[] sources, int accountCount, long seed) {
+        int[] destinations = this == RING ? new int[sources.length] : accounts(accountCount, sources.length, seed);
+        for (int i = 0; i < sources.length; i++) {
+            if (this == RING || destinations[i] == sources[i]) {
+                destinations[i] = (sources[i] + 1) % accountCount;
+            }
+        }
+        return destinations;
+    }
+
+    private static double[] zipfCumulative(int accountCount) {
+        double[] cumulative = new double[accountCount];
+        double sum = 0;
+        for (int i = 0; i < accountCount; i++) {
+            sum += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < accountCount; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+}
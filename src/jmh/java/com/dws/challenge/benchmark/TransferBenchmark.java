@@ -0,0 +1,110 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.dto.TransferRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency distribution of {@code TransferService.transferMoney} under the three
+ * {@link TrafficPattern}s, with either transfer engine. Run with several thread counts (see
+ * {@link BenchmarkSweep}) to see how contention on the locks and balances scales.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransferBenchmark {
+
+    private static final int REQUESTS_PER_THREAD = 1 << 16;
+    private static final int PIPELINE_DEPTH = 64;
+
+    @Param({"10000", "1000000"})
+    public int accounts;
+
+    @Param({"UNIFORM", "ZIPFIAN", "RING"})
+    public TrafficPattern pattern;
+
+    @Param({"heap", "offheap", "interned"})
+    public String store;
+
+    @Param({"locking", "partitioned"})
+    public String engine;
+
+    BenchmarkBank bank;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bank = new BenchmarkBank(store, accounts, engine);
+        bank.createAccounts(accounts);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        bank.close();
+    }
+
+    /**
+     * Requests are built up front so that the measured loop only pays for the transfer itself.
+     */
+    @State(Scope.Thread)
+    public static class Requests {
+
+        TransferRequest[] requests;
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[PIPELINE_DEPTH];
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp(TransferBenchmark benchmark, ThreadParams threadParams) {
+            long seed = 31L * threadParams.getThreadIndex() + 17;
+            int[] from = benchmark.pattern.accounts(benchmark.accounts, REQUESTS_PER_THREAD, seed);
+            int[] to = benchmark.pattern.counterparts(from, benchmark.accounts, seed + 1);
+            BigDecimal amount = new BigDecimal("0.01");
+            requests = new TransferRequest[REQUESTS_PER_THREAD];
+            for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                requests[i] = new TransferRequest(BenchmarkBank.accountId(from[i]), BenchmarkBank.accountId(to[i]), amount);
+            }
+        }
+
+        TransferRequest next() {
+            return requests[next++ & (REQUESTS_PER_THREAD - 1)];
+        }
+    }
+
+    @Benchmark
+    public void transferMoney(Requests requests) {
+        bank.transferService.transferMoney(requests.next());
+    }
+
+    /**
+     * Keeps {@link #PIPELINE_DEPTH} transfers in flight per thread, the way an asynchronous caller would use
+     * {@code transferMoneyAsync}; this is where the partitioned engine is not bound by hand-off latency.
+     */
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public void transferMoneyPipelined(Requests requests) {
+        CompletableFuture<?>[] futures = requests.futures;
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            futures[i] = bank.transferService.transferMoneyAsync(requests.next());
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+}
@@ -0,0 +1,199 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.ChallengeApplication;
+import com.dws.challenge.service.NotificationService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load comparison of the platform-thread and virtual-thread configurations of the servlet stack and of the
+ * reactive stack ({@code spring.main.web-application-type=reactive}, see
+ * {@link com.dws.challenge.web.ReactiveAccountsController}). Starts the application three times in this JVM and
+ * drives each with the same number of concurrent HTTP clients posting transfers. Both runs use the group-commit journal, whose durability wait
+ * blocks every request, and a notification service that blocks for a fixed time per call, with the dispatcher
+ * overflow policy set to {@code BLOCK} so that slow notifications push back on the request threads.
+ * <p>
+ * System properties: {@code load.clients} (default 1000), {@code load.seconds} (20), {@code load.accounts}
+ * (1000) and {@code load.notification-latency-ms} (20).
+ */
+public final class VirtualThreadLoadComparison {
+
+    private static final int CLIENTS = Integer.getInteger("load.clients", 1000);
+    private static final int SECONDS = Integer.getInteger("load.seconds", 20);
+    private static final int ACCOUNTS = Integer.getInteger("load.accounts", 1000);
+    private static final long NOTIFICATION_LATENCY_MILLIS = Long.getLong("load.notification-latency-ms", 20);
+
+    private VirtualThreadLoadComparison() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Result platform = run(false, false);
+        Result virtual = run(true, false);
+        Result reactive = run(false, true);
+
+        System.out.printf("%nclients=%d, accounts=%d, duration=%ds, notification latency=%dms%n",
+                CLIENTS, ACCOUNTS, SECONDS, NOTIFICATION_LATENCY_MILLIS);
+        System.out.printf("%-9s %12s %8s %10s %10s %10s %16s%n",
+                "stack", "transfers/s", "errors", "p50 ms", "p99 ms", "p99.9 ms", "notify mean ms");
+        platform.print("platform");
+        virtual.print("virtual");
+        reactive.print("reactive");
+    }
+
+    private static Result run(boolean virtualThreads, boolean reactive) throws Exception {
+        Path journalDirectory = Files.createTempDirectory("load-journal");
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(ChallengeApplication.class,
+                SlowNotifications.class)
+                .properties(
+                        "server.port=0",
+                        "spring.threads.virtual.enabled=" + virtualThreads,
+                        "spring.main.web-application-type=" + (reactive ? "reactive" : "servlet"),
+                        "journal.mode=GROUP",
+                        "journal.directory=" + journalDirectory,
+                        "notifications.dispatcher.overflow-policy=BLOCK",
+                        "logging.level.com.dws.challenge=WARN")
+                .run();
+        try {
+            String baseUri = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/v1/accounts";
+            HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+            for (int i = 0; i < ACCOUNTS; i++) {
+                post(client, baseUri, "{\"accountId\":\"Id-" + i + "\",\"balance\":1000000000}");
+            }
+
+            Result result = drive(client, baseUri + "/transfer");
+            Timer notificationLatency = context.getBean(MeterRegistry.class).get("notification.latency").timer();
+            result.notificationMeanMillis = notificationLatency.mean(TimeUnit.MILLISECONDS);
+            return result;
+        } finally {
+            context.close();
+        }
+    }
+
+    private static Result drive(HttpClient client, String transferUri) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SECONDS);
+        long[][] latencies = new long[CLIENTS][];
+        int[] counts = new int[CLIENTS];
+        AtomicLong errors = new AtomicLong();
+
+        Thread[] threads = new Thread[CLIENTS];
+        for (int c = 0; c < CLIENTS; c++) {
+            int clientIndex = c;
+            threads[c] = Thread.ofVirtual().start(() -> {
+                SplittableRandom random = new SplittableRandom(clientIndex);
+                long[] samples = new long[1024];
+                int count = 0;
+                while (System.nanoTime() < deadline) {
+                    int from = random.nextInt(ACCOUNTS);
+                    int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                    long start = System.nanoTime();
+                    try {
+                        int status = post(client, transferUri,
+                                "{\"accountFromId\":\"Id-" + from + "\",\"accountToId\":\"Id-" + to + "\",\"amount\":0.01}");
+                        if (status != 200) {
+                            errors.incrementAndGet();
+                            continue;
+                        }
+                    } catch (IOException e) {
+                        errors.incrementAndGet();
+                        continue;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                    if (count == samples.length) {
+                        samples = Arrays.copyOf(samples, count * 2);
+                    }
+                    samples[count++] = System.nanoTime() - start;
+                }
+                latencies[clientIndex] = samples;
+                counts[clientIndex] = count;
+            });
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        long[] all = new long[total];
+        int position = 0;
+        for (int c = 0; c < CLIENTS; c++) {
+            System.arraycopy(latencies[c], 0, all, position, counts[c]);
+            position += counts[c];
+        }
+        Arrays.sort(all);
+        return new Result(total / (double) SECONDS, errors.get(), all);
+    }
+
+    private static int post(HttpClient client, String uri, String json) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(uri))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    /**
+     * Replaces the logging notification service with one that blocks like a remote call would.
+     */
+    static class SlowNotifications {
+
+        @Bean
+        @Primary
+        NotificationService slowNotificationService() {
+            return (account, transferDescription) -> {
+                try {
+                    Thread.sleep(NOTIFICATION_LATENCY_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            };
+        }
+    }
+
+    private static final class Result {
+
+        final double throughput;
+        final long errors;
+        final long[] sortedLatencies;
+        double notificationMeanMillis;
+
+        Result(double throughput, long errors, long[] sortedLatencies) {
+            this.throughput = throughput;
+            this.errors = errors;
+            this.sortedLatencies = sortedLatencies;
+        }
+
+        double percentileMillis(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return Double.NaN;
+            }
+            int index = (int) Math.min(sortedLatencies.length - 1, Math.ceil(percentile * sortedLatencies.length) - 1);
+            return sortedLatencies[Math.max(index, 0)] / 1e6;
+        }
+
+        void print(String label) {
+            System.out.printf("%-9s %12.0f %8d %10.2f %10.2f %10.2f %16.2f%n", label, throughput, errors,
+                    percentileMillis(0.5), percentileMillis(0.99), percentileMillis(0.999), notificationMeanMillis);
+        }
+    }
+}
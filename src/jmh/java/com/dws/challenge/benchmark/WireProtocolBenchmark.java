@@ -0,0 +1,158 @@
+package com.dws.challenge.benchmark;
+
+import com.dws.challenge.ChallengeApplication;
+import com.dws.challenge.wire.WireClient;
+import com.dws.challenge.wire.WireProtocol;
+import com.dws.challenge.wire.WireServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A transfer through {@code POST /v1/accounts/transfer} against the same transfer through the binary protocol
+ * of {@link WireServer}, over loopback to one application started in this JVM. The binary protocol is measured
+ * one request at a time, like the HTTP endpoint, and with {@link #PIPELINE_DEPTH} requests in flight per
+ * connection. Admission control is off so that it does not turn the measured transfers away.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WireProtocolBenchmark {
+
+    private static final int ACCOUNTS = 10_000;
+    private static final int REQUESTS_PER_THREAD = 1 << 16;
+    private static final int PIPELINE_DEPTH = 64;
+
+    ConfigurableApplicationContext context;
+    String transferUri;
+    InetSocketAddress wireAddress;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        context = new SpringApplicationBuilder(ChallengeApplication.class)
+                .properties(
+                        "server.port=0",
+                        "wire.enabled=true",
+                        "wire.port=0",
+                        "transfer.admission.enabled=false",
+                        "ledger.enabled=false",
+                        "logging.level.com.dws.challenge=WARN")
+                .run();
+        String baseUri = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/v1/accounts";
+        transferUri = baseUri + "/transfer";
+        wireAddress = new InetSocketAddress("localhost", context.getBean(WireServer.class).getPort());
+        HttpClient client = HttpClient.newHttpClient();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUri))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(
+                            "{\"accountId\":\"" + BenchmarkBank.accountId(i) + "\",\"balance\":1000000000}"))
+                    .build();
+            client.send(request, HttpResponse.BodyHandlers.discarding());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * One HTTP client and one binary protocol connection per thread, and requests built up front.
+     */
+    @State(Scope.Thread)
+    public static class Client {
+
+        HttpClient http;
+        WireClient wire;
+        String[] from;
+        String[] to;
+        HttpRequest[] httpRequests;
+        int next;
+        long requestId;
+
+        @Setup(Level.Trial)
+        public void setUp(WireProtocolBenchmark benchmark, ThreadParams threadParams) throws IOException {
+            SplittableRandom random = new SplittableRandom(31L * threadParams.getThreadIndex() + 17);
+            from = new String[REQUESTS_PER_THREAD];
+            to = new String[REQUESTS_PER_THREAD];
+            httpRequests = new HttpRequest[REQUESTS_PER_THREAD];
+            for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                int source = random.nextInt(ACCOUNTS);
+                from[i] = BenchmarkBank.accountId(source);
+                to[i] = BenchmarkBank.accountId((source + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS);
+                httpRequests[i] = HttpRequest.newBuilder(URI.create(benchmark.transferUri))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(
+                                "{\"accountFromId\":\"" + from[i] + "\",\"accountToId\":\"" + to[i] + "\",\"amount\":0.01}"))
+                        .build();
+            }
+            http = HttpClient.newHttpClient();
+            wire = new WireClient(benchmark.wireAddress);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            wire.close();
+        }
+
+        int next() {
+            return next++ & (REQUESTS_PER_THREAD - 1);
+        }
+    }
+
+    @Benchmark
+    public int json(Client client) throws IOException, InterruptedException {
+        return client.http.send(client.httpRequests[client.next()], HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    @Benchmark
+    public byte wire(Client client) throws IOException {
+        int i = client.next();
+        client.wire.transfer(client.requestId++, client.from[i], client.to[i], 1);
+        client.wire.flush();
+        return client.wire.receive().status();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public int wirePipelined(Client client) throws IOException {
+        for (int j = 0; j < PIPELINE_DEPTH; j++) {
+            int i = client.next();
+            client.wire.transfer(client.requestId++, client.from[i], client.to[i], 1);
+        }
+        client.wire.flush();
+        int failed = 0;
+        for (int j = 0; j < PIPELINE_DEPTH; j++) {
+            if (client.wire.receive().status() != WireProtocol.OK) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+}
@@ -0,0 +1,42 @@
+package com.dws.challenge.cluster;
+
+import com.dws.challenge.domain.Account;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Tells which node owns an account and reaches accounts owned by other nodes. Without clustering every
+ * account is local ({@link SingleNodeSharding}); with {@code cluster.enabled=true} accounts are spread over
+ * the nodes by consistent hashing ({@link ClusterNode}).
+ */
+public interface AccountSharding {
+
+    boolean isLocal(String accountId);
+
+    /**
+     * @return the id of the node owning the account
+     */
+    String ownerOf(String accountId);
+
+    /**
+     * Reads an account owned by another node.
+     *
+     * @return a copy of the account, or {@code null} if the owner has no such account
+     */
+    Account getAccount(String accountId);
+
+    /**
+     * Creates an account on the node owning it.
+     *
+     * @throws com.dws.challenge.exception.DuplicateAccountIdException if the owner already has the id
+     */
+    void createAccount(Account account);
+
+    /**
+     * Moves money between two accounts of which at least one is owned by another node.
+     *
+     * @return a future completed once the transfer is committed, or completed exceptionally with the
+     * exception a local transfer would throw, or a {@link com.dws.challenge.exception.NodeUnavailableException}
+     */
+    CompletableFuture<Void> transfer(String fromAccountId, String toAccountId, long amountMinorUnits);
+}
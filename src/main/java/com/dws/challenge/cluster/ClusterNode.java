@@ -0,0 +1,381 @@
+package com.dws.challenge.cluster;
+
+import com.dws.challenge.cluster.ClusterProtocol.Payload;
+import com.dws.challenge.cluster.ClusterProtocol.Response;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.AccountNotFoundException;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.exception.InvalidTransferException;
+import com.dws.challenge.exception.NodeUnavailableException;
+import com.dws.challenge.journal.TransferJournal;
+import com.dws.challenge.ledger.AccountLedger;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.BalanceVersions;
+import com.dws.challenge.service.StripedLocks;
+import com.dws.challenge.service.TransferService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One node of a cluster sharing the accounts by consistent hashing over a static list of nodes
+ * ({@code cluster.nodes=node-0=host:port,node-1=host:port,...}). Every node knows the list, so every node
+ * computes the same owner for an account; there is no coordination service.
+ * <p>
+ * A transfer between accounts of different nodes is coordinated by the node that received it, in two phases:
+ * <ol>
+ *     <li>the source account's node reserves the amount (debits it, keeping the reservation);</li>
+ *     <li>the destination account's node credits it, at most once;</li>
+ * </ol>
+ * after which the reservation is committed, or aborted (refunded) if the credit was refused. If the credit
+ * call fails without an answer, the coordinator <em>fences</em> the credit to learn its outcome for good.
+ * A reservation that is neither committed nor aborted by its deadline, because a node or the coordinator
+ * failed on the way, is recovered by its own node the same way, so every transfer ends up applied on both
+ * sides or on neither.
+ */
+@Component
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+@Slf4j
+public class ClusterNode implements AccountSharding {
+
+    private static final long RECOVERY_INTERVAL_MILLIS = 500;
+
+    private final String nodeId;
+    private final Map<String, InetSocketAddress> nodes;
+    private final HashRing ring;
+    private final ShardParticipant participant;
+    private final Map<String, RpcClient> clients = new LinkedHashMap<>();
+    private final long rpcTimeoutMillis;
+    private final long reservationTimeoutMillis;
+
+    private final String transactionIdPrefix;
+    private final AtomicLong transactionIds = new AtomicLong();
+    private final Set<String> recovering = ConcurrentHashMap.newKeySet();
+    private final Executor executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private RpcServer server;
+    private ScheduledExecutorService recovery;
+
+    /**
+     * @param nodes                    {@code id=host:port} of every node of the cluster, this one included
+     * @param reservationTimeoutMillis how long a cross-shard transfer may take before it is recovered
+     * @param outcomeRetentionMillis   how long after its deadline a node remembers whether it applied a credit;
+     *                                 must exceed the longest time a node may be unreachable
+     */
+    @Autowired
+    public ClusterNode(AccountsService accountsService, StripedLocks accountLocks, BalanceVersions balanceVersions,
+                       AccountLedger accountLedger, TransferJournal transferJournal,
+                       @Value("${cluster.node-id}") String nodeId,
+                       @Value("${cluster.nodes}") String nodes,
+                       @Value("${cluster.virtual-nodes:128}") int virtualNodes,
+                       @Value("${cluster.rpc-timeout-ms:2000}") long rpcTimeoutMillis,
+                       @Value("${cluster.reservation-timeout-ms:10000}") long reservationTimeoutMillis,
+                       @Value("${cluster.outcome-retention-ms:600000}") long outcomeRetentionMillis) {
+        if (transferJournal.isEnabled()) {
+            throw new IllegalStateException("The journal does not record cross-shard transfers; "
+                    + "set journal.mode=OFF to run clustered");
+        }
+        this.nodeId = nodeId;
+        this.nodes = parseNodes(nodes);
+        if (!this.nodes.containsKey(nodeId)) {
+            throw new IllegalStateException("Node " + nodeId + " is not listed in cluster.nodes");
+        }
+        this.ring = new HashRing(this.nodes.keySet(), virtualNodes);
+        this.participant = new ShardParticipant(accountsService, accountLocks, balanceVersions, accountLedger,
+                outcomeRetentionMillis);
+        this.rpcTimeoutMillis = rpcTimeoutMillis;
+        this.reservationTimeoutMillis = reservationTimeoutMillis;
+        this.transactionIdPrefix = nodeId + ":" + System.currentTimeMillis() + ":";
+        this.nodes.forEach((id, address) -> {
+            if (!id.equals(nodeId)) {
+                clients.put(id, new RpcClient(address, rpcTimeoutMillis));
+            }
+        });
+    }
+
+    /**
+     * Starts serving the other nodes and recovering expired reservations.
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        InetSocketAddress address = nodes.get(nodeId);
+        server = new RpcServer(new InetSocketAddress(address.getPort()), participant::handle);
+        server.start();
+        recovery = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-recovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        recovery.scheduleWithFixedDelay(this::recoverQuietly, RECOVERY_INTERVAL_MILLIS, RECOVERY_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+        log.info("Cluster node {} serving on port {}, {} nodes in the cluster", nodeId, server.getPort(), nodes.size());
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (recovery != null) {
+            recovery.shutdownNow();
+        }
+        clients.values().forEach(RpcClient::close);
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return the number of cross-shard transfers this node has reserved and not yet committed or aborted
+     */
+    public int getPendingReservations() {
+        return participant.reservationCount();
+    }
+
+    @Override
+    public boolean isLocal(String accountId) {
+        return ownerOf(accountId).equals(nodeId);
+    }
+
+    @Override
+    public String ownerOf(String accountId) {
+        return ring.ownerOf(accountId);
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+        Response response = await(call(ownerOf(accountId), ClusterProtocol.GET_ACCOUNT, out -> out.writeUTF(accountId)),
+                accountId);
+        if (response.status() == ClusterProtocol.NOT_FOUND) {
+            return null;
+        }
+        return Account.ofMinorUnits(accountId, readLong(response));
+    }
+
+    @Override
+    public void createAccount(Account account) {
+        String accountId = account.getAccountId();
+        long balance = account.getBalanceMinorUnits();
+        Response response = await(call(ownerOf(accountId), ClusterProtocol.CREATE_ACCOUNT, out -> {
+            out.writeUTF(accountId);
+            out.writeLong(balance);
+        }), accountId);
+        if (response.status() == ClusterProtocol.DUPLICATE) {
+            throw new DuplicateAccountIdException("Account id " + accountId + " already exists!");
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> transfer(String fromAccountId, String toAccountId, long amountMinorUnits) {
+        String transactionId = transactionIdPrefix + transactionIds.incrementAndGet();
+        long deadlineMillis = System.currentTimeMillis() + reservationTimeoutMillis;
+        String source = ownerOf(fromAccountId);
+        String destination = ownerOf(toAccountId);
+        Payload leg = out -> {
+            out.writeUTF(transactionId);
+            out.writeUTF(fromAccountId);
+            out.writeUTF(toAccountId);
+            out.writeLong(amountMinorUnits);
+            out.writeLong(deadlineMillis);
+        };
+
+        return call(source, ClusterProtocol.RESERVE, leg).handleAsync((response, failure) -> {
+            if (failure != null) {
+                // The reservation may still arrive; then it expires and is refunded by recovery
+                abort(source, transactionId);
+                throw new NodeUnavailableException("Node " + source + " did not reserve transfer " + transactionId
+                        + ", it was not applied");
+            }
+            switch (response.status()) {
+                case ClusterProtocol.OK -> {
+                    return call(destination, ClusterProtocol.CREDIT, leg).handleAsync((credited, creditFailure) ->
+                            credited(transactionId, source, destination, toAccountId, deadlineMillis, credited),
+                            executor).thenCompose(outcome -> outcome);
+                }
+                case ClusterProtocol.NOT_FOUND -> throw AccountNotFoundException.forAccount(fromAccountId);
+                case ClusterProtocol.INSUFFICIENT_FUNDS ->
+                        throw TransferService.insufficientFunds(fromAccountId, readLong(response), amountMinorUnits);
+                case ClusterProtocol.REFUSED ->
+                        throw new NodeUnavailableException("Transfer " + transactionId + " timed out, it was not applied");
+                default -> throw new IllegalStateException("Unexpected reservation status " + response.status());
+            }
+        }, executor).thenCompose(outcome -> outcome);
+    }
+
+    /**
+     * Finishes a reserved transfer according to the answer to the credit, {@code null} if there was none.
+     */
+    private CompletableFuture<Void> credited(String transactionId, String source, String destination,
+                                             String toAccountId, long deadlineMillis, Response credited) {
+        byte status = credited == null ? ClusterProtocol.ERROR : credited.status();
+        switch (status) {
+            case ClusterProtocol.OK -> {
+                commit(source, transactionId);
+                return CompletableFuture.completedFuture(null);
+            }
+            case ClusterProtocol.NOT_FOUND -> {
+                abort(source, transactionId);
+                throw AccountNotFoundException.forAccount(toAccountId);
+            }
+            case ClusterProtocol.OVERFLOW -> {
+                abort(source, transactionId);
+                throw new InvalidTransferException(TransferService.balanceOverflow(toAccountId));
+            }
+            case ClusterProtocol.REFUSED -> {
+                abort(source, transactionId);
+                throw new NodeUnavailableException("Transfer " + transactionId + " timed out, it was not applied");
+            }
+            default -> {
+                return fence(destination, transactionId, deadlineMillis).handle((applied, failure) -> {
+                    if (failure != null) {
+                        throw new NodeUnavailableException("Node " + destination + " did not answer, the outcome of "
+                                + "transfer " + transactionId + " will be resolved by recovery");
+                    }
+                    if (applied) {
+                        commit(source, transactionId);
+                        return null;
+                    }
+                    abort(source, transactionId);
+                    throw new NodeUnavailableException("Node " + destination + " did not credit transfer "
+                            + transactionId + ", it was not applied");
+                });
+            }
+        }
+    }
+
+    /**
+     * @return a future completed with whether the credit of the transaction was applied
+     */
+    private CompletableFuture<Boolean> fence(String destination, String transactionId, long deadlineMillis) {
+        return call(destination, ClusterProtocol.FENCE, out -> {
+            out.writeUTF(transactionId);
+            out.writeLong(deadlineMillis);
+        }).thenApply(response -> response.status() == ClusterProtocol.APPLIED);
+    }
+
+    /**
+     * Commits or aborts without waiting: if the message is lost, the reservation expires and is recovered.
+     */
+    private void commit(String source, String transactionId) {
+        call(source, ClusterProtocol.COMMIT, out -> out.writeUTF(transactionId));
+    }
+
+    private void abort(String source, String transactionId) {
+        call(source, ClusterProtocol.ABORT, out -> out.writeUTF(transactionId));
+    }
+
+    private void recoverQuietly() {
+        try {
+            participant.expire(System.currentTimeMillis(), this::recover);
+        } catch (RuntimeException e) {
+            log.error("Failed to recover expired reservations", e);
+        }
+    }
+
+    /**
+     * Settles a reservation whose transaction is past its deadline by fencing its credit. If the destination
+     * node cannot be reached, the next recovery pass tries again.
+     */
+    private void recover(String transactionId, String toAccountId, long deadlineMillis) {
+        if (!recovering.add(transactionId)) {
+            return;
+        }
+        fence(ownerOf(toAccountId), transactionId, deadlineMillis).whenComplete((applied, failure) -> {
+            recovering.remove(transactionId);
+            if (failure != null) {
+                log.debug("Could not recover transfer {} yet", transactionId, failure);
+            } else if (applied) {
+                log.info("Recovered transfer {}: committed", transactionId);
+                participant.commit(transactionId);
+            } else {
+                log.info("Recovered transfer {}: aborted", transactionId);
+                participant.abort(transactionId);
+            }
+        });
+    }
+
+    /**
+     * Sends a request to a node, this one included. Requests a node failed to carry out complete exceptionally.
+     */
+    private CompletableFuture<Response> call(String node, byte operation, Payload payload) {
+        CompletableFuture<Response> response;
+        if (node.equals(nodeId)) {
+            try {
+                byte[] request = ClusterProtocol.encode(payload);
+                response = CompletableFuture.completedFuture(
+                        participant.handle(operation, new DataInputStream(new ByteArrayInputStream(request))));
+            } catch (IOException | RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        } else {
+            response = clients.get(node).call(operation, payload);
+        }
+        return response.thenApply(result -> {
+            if (result.status() == ClusterProtocol.ERROR) {
+                throw new IllegalStateException("Node " + node + " failed: " + readUtf(result));
+            }
+            return result;
+        });
+    }
+
+    private Response await(CompletableFuture<Response> response, String accountId) {
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            throw new NodeUnavailableException("Node " + ownerOf(accountId) + " owning account " + accountId
+                    + " did not answer");
+        }
+    }
+
+    private static long readLong(Response response) {
+        try {
+            return response.input().readLong();
+        } catch (IOException e) {
+            throw new IllegalStateException("Malformed response", e);
+        }
+    }
+
+    private static String readUtf(Response response) {
+        try {
+            return response.input().readUTF();
+        } catch (IOException e) {
+            return "(no message)";
+        }
+    }
+
+    private static Map<String, InetSocketAddress> parseNodes(String nodes) {
+        Map<String, InetSocketAddress> parsed = new LinkedHashMap<>();
+        for (String node : nodes.split(",")) {
+            String entry = node.trim();
+            int equals = entry.indexOf('=');
+            int colon = entry.lastIndexOf(':');
+            if (equals < 1 || colon < equals + 2) {
+                throw new IllegalArgumentException("Expected id=host:port in cluster.nodes, got '" + entry + "'");
+            }
+            parsed.put(entry.substring(0, equals), new InetSocketAddress(entry.substring(equals + 1, colon),
+                    Integer.parseInt(entry.substring(colon + 1))));
+        }
+        return parsed;
+    }
+}
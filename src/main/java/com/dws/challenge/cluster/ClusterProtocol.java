@@ -0,0 +1,89 @@
+package com.dws.challenge.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Operations and status codes of the node-to-node RPC. Every frame starts with its length:
+ * <pre>
+ * request:  int length | long call id | byte operation | payload
+ * response: int length | long call id | byte status    | payload
+ * </pre>
+ * Payloads are written with {@link DataOutput}: strings as {@code writeUTF}, amounts and times as longs.
+ */
+final class ClusterProtocol {
+
+    /** accountId &rarr; OK + balance, or NOT_FOUND. */
+    static final byte GET_ACCOUNT = 1;
+    /** accountId, balance &rarr; OK or DUPLICATE. */
+    static final byte CREATE_ACCOUNT = 2;
+    /** txId, fromAccountId, toAccountId, amount, deadline &rarr; OK, NOT_FOUND or INSUFFICIENT_FUNDS + balance. */
+    static final byte RESERVE = 3;
+    /** txId, fromAccountId, toAccountId, amount, deadline &rarr; OK, NOT_FOUND, OVERFLOW or REFUSED. */
+    static final byte CREDIT = 4;
+    /** txId &rarr; OK. */
+    static final byte COMMIT = 5;
+    /** txId &rarr; OK. */
+    static final byte ABORT = 6;
+    /** txId, deadline &rarr; APPLIED or FENCED. */
+    static final byte FENCE = 7;
+
+    static final byte OK = 0;
+    static final byte NOT_FOUND = 1;
+    static final byte DUPLICATE = 2;
+    static final byte INSUFFICIENT_FUNDS = 3;
+    static final byte OVERFLOW = 4;
+    /**
+     * The credit was fenced off or arrived after the transfer's deadline, or the reservation arrived after the
+     * transfer's deadline or was aborted; it will never be applied.
+     */
+    static final byte REFUSED = 5;
+    /** Answer to FENCE: the credit was applied. */
+    static final byte APPLIED = 6;
+    /** Answer to FENCE: the credit was not applied and never will be. */
+    static final byte FENCED = 7;
+    /** message */
+    static final byte ERROR = 8;
+
+    /**
+     * Writes a payload to a {@link DataOutput}.
+     */
+    @FunctionalInterface
+    interface Payload {
+
+        void writeTo(DataOutput out) throws IOException;
+    }
+
+    record Response(byte status, byte[] body) {
+
+        static Response of(byte status) {
+            return new Response(status, new byte[0]);
+        }
+
+        static Response of(byte status, Payload payload) {
+            return new Response(status, encode(payload));
+        }
+
+        DataInputStream input() {
+            return new DataInputStream(new ByteArrayInputStream(body));
+        }
+    }
+
+    private ClusterProtocol() {
+    }
+
+    static byte[] encode(Payload payload) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            payload.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
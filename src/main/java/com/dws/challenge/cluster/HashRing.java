@@ -0,0 +1,71 @@
+package com.dws.challenge.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Consistent hash ring: every node is placed at {@code virtualNodes} points of a 64-bit ring, and a key
+ * belongs to the node at the first point at or after the key's hash. Adding or removing a node only moves
+ * the keys between its points and their predecessors, about {@code 1/n} of all keys.
+ * <p>
+ * Hashes only depend on the bytes of node ids and keys, so every node computes the same owners.
+ */
+final class HashRing {
+
+    private final long[] points;
+    private final String[] owners;
+
+    HashRing(Collection<String> nodeIds, int virtualNodes) {
+        if (nodeIds.isEmpty() || virtualNodes < 1) {
+            throw new IllegalArgumentException("A hash ring needs at least one node and one virtual node per node");
+        }
+        int count = nodeIds.size() * virtualNodes;
+        long[] hashes = new long[count];
+        String[] nodes = new String[count];
+        Integer[] order = new Integer[count];
+        int i = 0;
+        for (String nodeId : nodeIds) {
+            for (int v = 0; v < virtualNodes; v++) {
+                hashes[i] = hash(nodeId + "#" + v);
+                nodes[i] = nodeId;
+                order[i] = i;
+                i++;
+            }
+        }
+        Arrays.sort(order, (a, b) -> hashes[a] != hashes[b]
+                ? Long.compare(hashes[a], hashes[b]) : nodes[a].compareTo(nodes[b]));
+
+        this.points = new long[count];
+        this.owners = new String[count];
+        for (i = 0; i < count; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = nodes[order[i]];
+        }
+    }
+
+    String ownerOf(String key) {
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 bytes, finished with the MurmurHash3 mixer to spread similar keys.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
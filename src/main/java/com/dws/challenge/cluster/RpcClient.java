@@ -0,0 +1,154 @@
+package com.dws.challenge.cluster;
+
+import com.dws.challenge.cluster.ClusterProtocol.Payload;
+import com.dws.challenge.cluster.ClusterProtocol.Response;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One multiplexed connection to another node. Calls from any number of threads are written to the same
+ * socket and answered out of order; a virtual thread reads the responses and completes the matching
+ * futures. The connection is opened on first use and again on the first call after it failed.
+ * <p>
+ * A call that fails or times out has an unknown outcome: the request may have been carried out.
+ */
+@Slf4j
+final class RpcClient implements Closeable {
+
+    private final InetSocketAddress address;
+    private final long timeoutMillis;
+    private final AtomicLong callIds = new AtomicLong();
+    private final Map<Long, CompletableFuture<Response>> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // Guarded by writeLock
+    private Socket socket;
+    private DataOutputStream out;
+    private boolean closed;
+
+    RpcClient(InetSocketAddress address, long timeoutMillis) {
+        this.address = address;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    CompletableFuture<Response> call(byte operation, Payload payload) {
+        byte[] body = ClusterProtocol.encode(payload);
+        long callId = callIds.incrementAndGet();
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        pending.put(callId, future);
+        future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((response, failure) -> pending.remove(callId));
+
+        writeLock.lock();
+        try {
+            DataOutputStream output = connect();
+            output.writeInt(RpcServer.HEADER_BYTES + body.length);
+            output.writeLong(callId);
+            output.writeByte(operation);
+            output.write(body);
+            output.flush();
+        } catch (IOException e) {
+            disconnect(socket, e);
+        } finally {
+            writeLock.unlock();
+        }
+        return future;
+    }
+
+    @Override
+    public void close() {
+        writeLock.lock();
+        try {
+            closed = true;
+            disconnect(socket, new IOException("Client closed"));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private DataOutputStream connect() throws IOException {
+        if (closed) {
+            throw new IOException("Client closed");
+        }
+        if (socket == null) {
+            Socket connection = new Socket();
+            try {
+                connection.connect(address, (int) timeoutMillis);
+                connection.setTcpNoDelay(true);
+            } catch (IOException e) {
+                connection.close();
+                throw e;
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            socket = connection;
+            out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+            Thread.ofVirtual().name("cluster-rpc-client").start(() -> readResponses(connection, in));
+        }
+        return out;
+    }
+
+    private void readResponses(Socket connection, DataInputStream in) {
+        try {
+            while (true) {
+                int length = in.readInt();
+                if (length < RpcServer.HEADER_BYTES || length > RpcServer.MAX_FRAME_BYTES) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                long callId = in.readLong();
+                byte status = in.readByte();
+                byte[] body = new byte[length - RpcServer.HEADER_BYTES];
+                in.readFully(body);
+                CompletableFuture<Response> future = pending.remove(callId);
+                if (future != null) {
+                    future.complete(new Response(status, body));
+                }
+            }
+        } catch (IOException e) {
+            writeLock.lock();
+            try {
+                disconnect(connection, e);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Closes the connection and fails every pending call, unless a newer connection has replaced it.
+     * {@code null} stands for a connection that could not be opened. Called with the write lock held.
+     */
+    private void disconnect(Socket connection, IOException cause) {
+        if (connection != socket) {
+            return;
+        }
+        if (connection != null) {
+            log.debug("Connection to {} lost", address, cause);
+            socket = null;
+            out = null;
+            try {
+                connection.close();
+            } catch (IOException ignored) {
+                // Already broken
+            }
+        }
+        for (Long callId : pending.keySet()) {
+            CompletableFuture<Response> future = pending.remove(callId);
+            if (future != null) {
+                future.completeExceptionally(cause);
+            }
+        }
+    }
+}
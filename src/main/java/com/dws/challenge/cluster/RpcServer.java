@@ -0,0 +1,142 @@
+package com.dws.challenge.cluster;
+
+import com.dws.challenge.cluster.ClusterProtocol.Response;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Accepts RPC connections from the other nodes. Each connection is read by its own virtual thread and every
+ * request is handled on a virtual thread of its own, so one slow request does not hold up the requests
+ * pipelined behind it; responses go back in completion order, matched to requests by call id.
+ */
+@Slf4j
+final class RpcServer implements Closeable {
+
+    static final int MAX_FRAME_BYTES = 1 << 20;
+
+    /**
+     * Size of the call id and the operation or status byte that follow the frame length.
+     */
+    static final int HEADER_BYTES = Long.BYTES + 1;
+
+    @FunctionalInterface
+    interface Handler {
+
+        Response handle(byte operation, DataInputStream request) throws IOException;
+    }
+
+    private final ServerSocket serverSocket;
+    private final Handler handler;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor();
+    private final Thread acceptor;
+
+    RpcServer(InetSocketAddress address, Handler handler) throws IOException {
+        this.serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address);
+        this.handler = handler;
+        this.acceptor = new Thread(this::accept, "cluster-rpc-accept");
+        acceptor.setDaemon(true);
+    }
+
+    void start() {
+        acceptor.start();
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket connection : connections) {
+            connection.close();
+        }
+        requests.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket connection = serverSocket.accept();
+                connection.setTcpNoDelay(true);
+                connections.add(connection);
+                Thread.ofVirtual().name("cluster-rpc-connection").start(() -> serve(connection));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    log.warn("Failed to accept a cluster connection", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket connection) {
+        try (connection) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+            while (true) {
+                int length = in.readInt();
+                if (length < HEADER_BYTES || length > MAX_FRAME_BYTES) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                long callId = in.readLong();
+                byte operation = in.readByte();
+                byte[] payload = new byte[length - HEADER_BYTES];
+                in.readFully(payload);
+                requests.execute(() -> respond(connection, out, callId, operation, payload));
+            }
+        } catch (EOFException e) {
+            log.debug("Cluster connection from {} closed", connection.getRemoteSocketAddress());
+        } catch (IOException e) {
+            if (!serverSocket.isClosed()) {
+                log.warn("Cluster connection from {} failed", connection.getRemoteSocketAddress(), e);
+            }
+        } finally {
+            connections.remove(connection);
+        }
+    }
+
+    private void respond(Socket connection, DataOutputStream out, long callId, byte operation, byte[] payload) {
+        Response response;
+        try {
+            response = handler.handle(operation, new DataInputStream(new ByteArrayInputStream(payload)));
+        } catch (IOException | RuntimeException e) {
+            log.error("Cluster request {} failed", operation, e);
+            String message = String.valueOf(e.getMessage());
+            response = Response.of(ClusterProtocol.ERROR, output -> output.writeUTF(message));
+        }
+        try {
+            synchronized (out) {
+                out.writeInt(HEADER_BYTES + response.body().length);
+                out.writeLong(callId);
+                out.writeByte(response.status());
+                out.write(response.body());
+                out.flush();
+            }
+        } catch (IOException e) {
+            log.debug("Failed to answer cluster request {}", callId, e);
+            try {
+                connection.close();
+            } catch (IOException ignored) {
+                // The reading thread sees the connection closed
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.dws.challenge.cluster;
+
+import com.dws.challenge.cluster.ClusterProtocol.Response;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.ledger.AccountLedger;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.BalanceVersions;
+import com.dws.challenge.service.StripedLocks;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This node's side of cross-shard transfers, applied to the accounts it owns.
+ * <p>
+ * The source shard <em>reserves</em> the amount: it debits the source account and keeps the reservation
+ * until it is committed (the money is gone for good) or aborted (refunded). The destination shard
+ * <em>credits</em> the amount at most once per transaction and remembers whether it did. That record is the
+ * transaction's outcome: a credit can be <em>fenced</em> off, after which it is refused, so asking the
+ * destination to fence a transaction always yields a final answer, applied or not, that both the coordinator
+ * and the recovery of a forgotten reservation act on. Credits arriving after the transaction's deadline are
+ * refused as well, which is what allows the records to be dropped some time after it.
+ * <p>
+ * Every operation is idempotent, so a coordinator may repeat any of them. A committed or aborted transaction
+ * leaves a settlement record, kept as long as the credit records, so that a repeated or late reservation is
+ * answered from it instead of debiting the account again; reservations arriving after the transaction's
+ * deadline, when that record may be gone, are refused.
+ */
+@Slf4j
+final class ShardParticipant {
+
+    interface ExpiredReservation {
+
+        void recover(String transactionId, String toAccountId, long deadlineMillis);
+    }
+
+    private record Reservation(Account account, String toAccountId, long amount, long deadlineMillis) {
+    }
+
+    private record Credit(boolean applied, long expiresAtMillis) {
+    }
+
+    private record Settlement(boolean committed, long expiresAtMillis) {
+    }
+
+    private final AccountsService accountsService;
+    private final StripedLocks accountLocks;
+    private final BalanceVersions balanceVersions;
+    private final AccountLedger accountLedger;
+    private final long retentionMillis;
+
+    private final Map<String, Reservation> reservations = new ConcurrentHashMap<>();
+    private final Map<String, Credit> credits = new ConcurrentHashMap<>();
+    private final Map<String, Settlement> settlements = new ConcurrentHashMap<>();
+
+    /**
+     * @param retentionMillis how long after its deadline a credit's outcome, and a reservation's settlement,
+     *                        is kept
+     */
+    ShardParticipant(AccountsService accountsService, StripedLocks accountLocks, BalanceVersions balanceVersions,
+                     AccountLedger accountLedger, long retentionMillis) {
+        this.accountsService = accountsService;
+        this.accountLocks = accountLocks;
+        this.balanceVersions = balanceVersions;
+        this.accountLedger = accountLedger;
+        this.retentionMillis = retentionMillis;
+    }
+
+    Response handle(byte operation, DataInputStream in) throws IOException {
+        return switch (operation) {
+            case ClusterProtocol.GET_ACCOUNT -> getAccount(in.readUTF());
+            case ClusterProtocol.CREATE_ACCOUNT -> createAccount(in.readUTF(), in.readLong());
+            case ClusterProtocol.RESERVE -> reserve(in.readUTF(), in.readUTF(), in.readUTF(), in.readLong(), in.readLong());
+            case ClusterProtocol.CREDIT -> credit(in.readUTF(), in.readUTF(), in.readUTF(), in.readLong(), in.readLong());
+            case ClusterProtocol.COMMIT -> commit(in.readUTF());
+            case ClusterProtocol.ABORT -> abort(in.readUTF());
+            case ClusterProtocol.FENCE -> fence(in.readUTF(), in.readLong());
+            default -> throw new IOException("Unknown operation " + operation);
+        };
+    }
+
+    int reservationCount() {
+        return reservations.size();
+    }
+
+    /**
+     * Hands the reservations whose transaction is past its deadline to {@code recovery}, and forgets the
+     * credit outcomes and settlements past their retention.
+     */
+    void expire(long nowMillis, ExpiredReservation recovery) {
+        reservations.forEach((transactionId, reservation) -> {
+            if (reservation.deadlineMillis() < nowMillis) {
+                recovery.recover(transactionId, reservation.toAccountId(), reservation.deadlineMillis());
+            }
+        });
+        credits.values().removeIf(credit -> credit.expiresAtMillis() < nowMillis);
+        settlements.values().removeIf(settlement -> settlement.expiresAtMillis() < nowMillis);
+    }
+
+    private Response getAccount(String accountId) {
+        Account account = accountsService.getAccount(accountId);
+        if (account == null) {
+            return Response.of(ClusterProtocol.NOT_FOUND);
+        }
+        long balance = account.getBalanceMinorUnits();
+        return Response.of(ClusterProtocol.OK, out -> out.writeLong(balance));
+    }
+
+    private Response createAccount(String accountId, long balance) {
+        try {
+            accountsService.createAccount(Account.ofMinorUnits(accountId, balance));
+            return Response.of(ClusterProtocol.OK);
+        } catch (DuplicateAccountIdException e) {
+            return Response.of(ClusterProtocol.DUPLICATE);
+        }
+    }
+
+    Response reserve(String transactionId, String fromAccountId, String toAccountId, long amount, long deadlineMillis) {
+        Account account = accountsService.getAccount(fromAccountId);
+        if (account == null) {
+            return Response.of(ClusterProtocol.NOT_FOUND);
+        }
+        long[] shortBalance = {-1};
+        byte[] settled = {-1};
+        reservations.computeIfAbsent(transactionId, id -> {
+            // Checked under the map's lock for the id: a commit or abort records its settlement before it
+            // removes the reservation, so either it is seen here or it finds the reservation made here
+            Settlement settlement = settlements.get(id);
+            if (settlement != null) {
+                settled[0] = settlement.committed() ? ClusterProtocol.OK : ClusterProtocol.REFUSED;
+                return null;
+            }
+            if (System.currentTimeMillis() > deadlineMillis) {
+                settled[0] = ClusterProtocol.REFUSED;
+                return null;
+            }
+            // Debits are serialized per account under its lock stripe, as for local transfers
+            int stripe = accountLocks.stripeOf(fromAccountId);
+            int versionStripe = balanceVersions.stripeOf(fromAccountId);
+            accountLocks.lock(stripe);
+            balanceVersions.beginWrite(versionStripe, versionStripe);
+            try {
+                if (!account.tryDebit(amount)) {
+                    shortBalance[0] = account.getBalanceMinorUnits();
+                    return null;
+                }
+                return new Reservation(account, toAccountId, amount, deadlineMillis);
+            } finally {
+                balanceVersions.endWrite(versionStripe, versionStripe);
+                accountLocks.unlock(stripe);
+            }
+        });
+        if (settled[0] >= 0) {
+            return Response.of(settled[0]);
+        }
+        if (shortBalance[0] >= 0) {
+            return Response.of(ClusterProtocol.INSUFFICIENT_FUNDS, out -> out.writeLong(shortBalance[0]));
+        }
+        return Response.of(ClusterProtocol.OK);
+    }
+
+    Response credit(String transactionId, String fromAccountId, String toAccountId, long amount, long deadlineMillis) {
+        byte[] status = new byte[1];
+        boolean[] appliedNow = new boolean[1];
+        credits.compute(transactionId, (id, credit) -> {
+            if (credit != null) {
+                status[0] = credit.applied() ? ClusterProtocol.OK : ClusterProtocol.REFUSED;
+                return credit;
+            }
+            Credit refused = new Credit(false, deadlineMillis + retentionMillis);
+            if (System.currentTimeMillis() > deadlineMillis) {
+                status[0] = ClusterProtocol.REFUSED;
+                return refused;
+            }
+            Account account = accountsService.getAccount(toAccountId);
+            if (account == null) {
+                status[0] = ClusterProtocol.NOT_FOUND;
+                return refused;
+            }
+            int versionStripe = balanceVersions.stripeOf(toAccountId);
+            balanceVersions.beginWrite(versionStripe, versionStripe);
+            try {
+                account.credit(amount);
+            } catch (ArithmeticException e) {
+                status[0] = ClusterProtocol.OVERFLOW;
+                return refused;
+            } finally {
+                balanceVersions.endWrite(versionStripe, versionStripe);
+            }
+            status[0] = ClusterProtocol.OK;
+            appliedNow[0] = true;
+            return new Credit(true, deadlineMillis + retentionMillis);
+        });
+        if (appliedNow[0]) {
+            accountLedger.recordEntry(toAccountId, fromAccountId, amount);
+        }
+        return Response.of(status[0]);
+    }
+
+    Response commit(String transactionId) {
+        settle(transactionId, true);
+        Reservation reservation = reservations.remove(transactionId);
+        if (reservation != null) {
+            accountLedger.recordEntry(reservation.account().getAccountId(), reservation.toAccountId(), -reservation.amount());
+        }
+        return Response.of(ClusterProtocol.OK);
+    }
+
+    Response abort(String transactionId) {
+        settle(transactionId, false);
+        Reservation reservation = reservations.remove(transactionId);
+        if (reservation != null) {
+            String accountId = reservation.account().getAccountId();
+            int versionStripe = balanceVersions.stripeOf(accountId);
+            balanceVersions.beginWrite(versionStripe, versionStripe);
+            try {
+                reservation.account().credit(reservation.amount());
+            } finally {
+                balanceVersions.endWrite(versionStripe, versionStripe);
+            }
+            log.debug("Refunded {} to account {} for transaction {}", reservation.amount(), accountId, transactionId);
+        }
+        return Response.of(ClusterProtocol.OK);
+    }
+
+    /**
+     * Records the outcome of a transaction before its reservation is removed. The deadline is not known here,
+     * so the retention counts from now; it outlasts the deadline as long as it exceeds the reservation timeout.
+     */
+    private void settle(String transactionId, boolean committed) {
+        settlements.putIfAbsent(transactionId, new Settlement(committed, System.currentTimeMillis() + retentionMillis));
+    }
+
+    Response fence(String transactionId, long deadlineMillis) {
+        Credit credit = credits.computeIfAbsent(transactionId, id -> new Credit(false, deadlineMillis + retentionMillis));
+        return Response.of(credit.applied() ? ClusterProtocol.APPLIED : ClusterProtocol.FENCED);
+    }
+}
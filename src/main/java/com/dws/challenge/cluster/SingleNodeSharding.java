@@ -0,0 +1,42 @@
+package com.dws.challenge.cluster;
+
+import com.dws.challenge.domain.Account;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The default: this node owns every account.
+ */
+@Component
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "false", matchIfMissing = true)
+public class SingleNodeSharding implements AccountSharding {
+
+    private static final String NODE_ID = "local";
+
+    @Override
+    public boolean isLocal(String accountId) {
+        return true;
+    }
+
+    @Override
+    public String ownerOf(String accountId) {
+        return NODE_ID;
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+        throw new IllegalStateException("Account " + accountId + " is local");
+    }
+
+    @Override
+    public void createAccount(Account account) {
+        throw new IllegalStateException("Account " + account.getAccountId() + " is local");
+    }
+
+    @Override
+    public CompletableFuture<Void> transfer(String fromAccountId, String toAccountId, long amountMinorUnits) {
+        throw new IllegalStateException("Both accounts are local");
+    }
+}
@@ -1,9 +1,19 @@
 package com.dws.challenge.config;
 
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.repository.SnapshottingAccountsRepository;
+import com.dws.challenge.service.BalanceVersions;
 import com.dws.challenge.service.EmailNotificationService;
 import com.dws.challenge.service.NotificationService;
+import com.dws.challenge.service.StripedLocks;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.nio.file.Path;
 
 @Configuration
 public class ApplicationConfig {
@@ -12,4 +22,27 @@ public class ApplicationConfig {
     public NotificationService notificationService() {
         return new EmailNotificationService();
     }
+
+    @Bean
+    public StripedLocks accountLocks(@Value("${transfer.lock-stripes:0}") int stripes) {
+        return new StripedLocks(stripes);
+    }
+
+    @Bean
+    public BalanceVersions balanceVersions(@Value("${transfer.version-stripes:0}") int stripes) {
+        return new BalanceVersions(stripes);
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "snapshot.enabled", havingValue = "true")
+    public SnapshottingAccountsRepository snapshottingAccountsRepository(
+            @Qualifier("accountStore") AccountsRepository accountStore,
+            @Value("${snapshot.directory:data/snapshots}") String snapshotDirectory,
+            @Value("${journal.directory:data/journal}") String journalDirectory,
+            @Value("${snapshot.interval-seconds:300}") long intervalSeconds,
+            @Value("${snapshot.restore-threads:0}") int restoreThreads) {
+        return new SnapshottingAccountsRepository(accountStore, Path.of(snapshotDirectory),
+                Path.of(journalDirectory), intervalSeconds, restoreThreads);
+    }
 }
\ No newline at end of file
@@ -1,34 +1,255 @@
 package com.dws.challenge.domain;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.math.BigDecimal;
-import lombok.Data;
+import lombok.Getter;
 
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 
-@Data
+/**
+ * An account whose balance is kept as a {@code long} number of minor units (see {@link Money}).
+ * Debits and credits are compare-and-set loops on that field, so they never allocate and never
+ * observe a torn or stale balance; {@link BigDecimal} only appears at the JSON boundary.
+ * <p>
+ * Repositories that keep balances elsewhere hand out subclasses overriding the four minor unit
+ * operations ({@link #getBalanceMinorUnits()}, {@link #setBalanceMinorUnits(long)}, {@link #tryDebit(long)}
+ * and {@link #credit(long)}); everything else is expressed in terms of them. Such subclasses also
+ * override {@link #splitBalance(int)} to refuse splitting.
+ * <p>
+ * An account that receives a credit from most transfers can have its balance split: credits made
+ * through {@link #credit(long, int)} then go to one of several sub-balances instead of all
+ * compare-and-setting the one field. Reads add the sub-balances to the main balance, and a debit that
+ * the main balance alone does not cover first folds them into it. Everything outside the account still
+ * sees one balance.
+ */
+@JsonPropertyOrder({"accountId", "balance"})
 public class Account {
 
+  /**
+   * Marks an account deserialized without a balance, so that bean validation can reject it.
+   */
+  private static final long NO_BALANCE = Long.MIN_VALUE;
+
+  private static final VarHandle BALANCE;
+  private static final VarHandle SUB_BALANCES;
+
+  static {
+    try {
+      BALANCE = MethodHandles.lookup().findVarHandle(Account.class, "balanceMinorUnits", long.class);
+      SUB_BALANCES = MethodHandles.lookup().findVarHandle(Account.class, "subBalances", SubBalances.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  @Getter
   @NotNull
   @NotEmpty
   private final String accountId;
 
-  @NotNull
-  @Min(value = 0, message = "Initial balance must be positive.")
-  private BigDecimal balance;
+  private volatile long balanceMinorUnits;
+
+  /**
+   * Null unless the balance is split.
+   */
+  private volatile SubBalances subBalances;
 
   public Account(String accountId) {
     this.accountId = accountId;
-    this.balance = BigDecimal.ZERO;
+    this.balanceMinorUnits = 0;
   }
 
   @JsonCreator
   public Account(@JsonProperty("accountId") String accountId,
                  @JsonProperty("balance") BigDecimal balance) {
     this.accountId = accountId;
-    this.balance = balance;
+    this.balanceMinorUnits = balance == null ? NO_BALANCE : toMinorUnits(balance);
+  }
+
+  public static Account ofMinorUnits(String accountId, long balanceMinorUnits) {
+    Account account = new Account(accountId);
+    account.balanceMinorUnits = balanceMinorUnits;
+    return account;
+  }
+
+  @NotNull
+  @Min(value = 0, message = "Initial balance must be positive.")
+  public BigDecimal getBalance() {
+    long minorUnits = getBalanceMinorUnits();
+    return minorUnits == NO_BALANCE ? null : Money.toBigDecimal(minorUnits);
+  }
+
+  public void setBalance(BigDecimal balance) {
+    setBalanceMinorUnits(toMinorUnits(balance));
+  }
+
+  /**
+   * The balance, including the sub-balances of a split account. Each of those is read atomically, but a
+   * credit landing while they are added up may or may not be counted; reads that must agree with other
+   * balances go through the balance versions of the service layer.
+   */
+  @JsonIgnore
+  public long getBalanceMinorUnits() {
+    SubBalances sub = subBalances;
+    if (sub == null) {
+      return balanceMinorUnits;
+    }
+    while (true) {
+      long version = sub.beginRead();
+      long balance = balanceMinorUnits + sub.sum();
+      if (sub.unchangedSince(version)) {
+        return balance;
+      }
+    }
+  }
+
+  @JsonIgnore
+  public void setBalanceMinorUnits(long balanceMinorUnits) {
+    SubBalances sub = subBalances;
+    if (sub == null) {
+      this.balanceMinorUnits = balanceMinorUnits;
+      return;
+    }
+    long version = sub.beginDrain();
+    sub.drain();
+    this.balanceMinorUnits = balanceMinorUnits;
+    sub.endDrain(version, balanceMinorUnits);
+  }
+
+  /**
+   * Atomically withdraws {@code amount} minor units if the balance covers it. On a split account whose
+   * main balance alone falls short, the sub-balances are folded into the main balance first.
+   *
+   * @return false, leaving the balance untouched, if the balance is lower than {@code amount}
+   */
+  public boolean tryDebit(long amount) {
+    if (tryDebitMain(amount)) {
+      return true;
+    }
+    SubBalances sub = subBalances;
+    if (sub == null) {
+      return false;
+    }
+    fold(sub);
+    return tryDebitMain(amount);
+  }
+
+  private boolean tryDebitMain(long amount) {
+    long current;
+    do {
+      current = balanceMinorUnits;
+      if (current < amount) {
+        return false;
+      }
+    } while (!BALANCE.compareAndSet(this, current, current - amount));
+    return true;
+  }
+
+  /**
+   * Atomically deposits {@code amount} minor units.
+   *
+   * @throws ArithmeticException, leaving the balance untouched, if the balance would overflow
+   */
+  public void credit(long amount) {
+    long current;
+    long next;
+    do {
+      current = balanceMinorUnits;
+      next = Math.addExact(current, amount);
+    } while (!BALANCE.compareAndSet(this, current, next));
+    SubBalances sub = subBalances;
+    if (sub != null) {
+      sub.lowerLimit(next);
+    }
+  }
+
+  /**
+   * Deposits {@code amount} minor units into the given sub-balance, as picked by {@link #pickSubBalance()},
+   * or into the main balance when {@code subBalance} is negative.
+   *
+   * @throws ArithmeticException, leaving the balance untouched, if the balance would overflow
+   */
+  public void credit(long amount, int subBalance) {
+    SubBalances sub = subBalances;
+    if (subBalance < 0 || sub == null) {
+      credit(amount);
+    } else {
+      sub.credit(subBalance, amount);
+    }
+  }
+
+  /**
+   * @return the sub-balance for credits made by the calling thread, or -1 if the balance is not split
+   */
+  public int pickSubBalance() {
+    SubBalances sub = subBalances;
+    return sub == null ? -1 : sub.cellOfCurrentThread();
+  }
+
+  /**
+   * Splits the balance into {@code count} sub-balances, rounded up to a power of two, for the credits made
+   * through {@link #credit(long, int)}. Has no effect on an account split already.
+   *
+   * @return false if this account keeps its balance where it cannot be split
+   */
+  public boolean splitBalance(int count) {
+    int size = Integer.highestOneBit(Math.max(count, 1));
+    SubBalances sub = new SubBalances(size < count ? size << 1 : size, balanceMinorUnits);
+    SUB_BALANCES.compareAndSet(this, null, sub);
+    return true;
+  }
+
+  /**
+   * @return the number of sub-balances, 0 if the balance is not split
+   */
+  @JsonIgnore
+  public int getSubBalanceCount() {
+    SubBalances sub = subBalances;
+    return sub == null ? 0 : sub.count();
+  }
+
+  /**
+   * Moves the money of the sub-balances to the main balance. If the sum would overflow, which the sub-balance
+   * limits make rare but credits to the main balance can still cause, the money stays in the sub-balances.
+   */
+  private void fold(SubBalances sub) {
+    long version = sub.beginDrain();
+    try {
+      long drained = sub.drain();
+      long balance;
+      long folded;
+      do {
+        balance = balanceMinorUnits;
+        try {
+          folded = Math.addExact(balance, drained);
+        } catch (ArithmeticException e) {
+          sub.restore(drained);
+          return;
+        }
+      } while (!BALANCE.compareAndSet(this, balance, folded));
+    } finally {
+      sub.endDrain(version, balanceMinorUnits);
+    }
+  }
+
+  private static long toMinorUnits(BigDecimal balance) {
+    try {
+      return Money.toMinorUnits(balance);
+    } catch (ArithmeticException e) {
+      throw new IllegalArgumentException(
+              "Balance must have at most " + Money.SCALE + " decimal places and fit in the supported range", e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "Account(accountId=" + accountId + ", balance=" + getBalance() + ")";
   }
 }
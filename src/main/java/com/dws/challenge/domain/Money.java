@@ -0,0 +1,84 @@
+package com.dws.challenge.domain;
+
+import java.math.BigDecimal;
+
+/**
+ * Conversions between {@link BigDecimal} amounts, as they appear in the JSON API, and the scaled
+ * {@code long} minor units used for balances and transfer amounts everywhere else.
+ */
+public final class Money {
+
+  /**
+   * Number of decimal places kept for balances and amounts.
+   */
+  public static final int SCALE = 2;
+
+  /**
+   * Longest output of {@link #format(long, char[])}: sign, 17 whole digits, point and two decimals.
+   */
+  public static final int MAX_FORMATTED_LENGTH = 21;
+
+  private static final long UNITS_PER_TENTH = 10;
+  private static final long UNITS_PER_WHOLE = 100;
+
+  private Money() {
+  }
+
+  /**
+   * Converts an amount to minor units.
+   *
+   * @throws ArithmeticException if the amount has more than {@link #SCALE} decimal places or does not fit in a long
+   */
+  public static long toMinorUnits(BigDecimal amount) {
+    return amount.movePointRight(SCALE).longValueExact();
+  }
+
+  /**
+   * Converts minor units back to an amount without trailing zeros in the fraction, so whole amounts
+   * come out as integers ({@code 800}) and others keep only the decimals they need ({@code 123.4}).
+   */
+  public static BigDecimal toBigDecimal(long minorUnits) {
+    if (minorUnits % UNITS_PER_WHOLE == 0) {
+      return BigDecimal.valueOf(minorUnits / UNITS_PER_WHOLE);
+    }
+    if (minorUnits % UNITS_PER_TENTH == 0) {
+      return BigDecimal.valueOf(minorUnits / UNITS_PER_TENTH, 1);
+    }
+    return BigDecimal.valueOf(minorUnits, SCALE);
+  }
+
+  /**
+   * Writes minor units to {@code buffer} as {@link #toBigDecimal(long)} would print them, without
+   * allocating.
+   *
+   * @param buffer at least {@link #MAX_FORMATTED_LENGTH} characters
+   * @return the number of characters written
+   */
+  public static int format(long minorUnits, char[] buffer) {
+    int position = 0;
+    if (minorUnits < 0) {
+      buffer[position++] = '-';
+    }
+    long whole = Math.abs(minorUnits / UNITS_PER_WHOLE);
+    int fraction = (int) Math.abs(minorUnits % UNITS_PER_WHOLE);
+
+    int digits = 1;
+    for (long rest = whole; rest >= 10; rest /= 10) {
+      digits++;
+    }
+    for (int i = position + digits - 1; i >= position; i--) {
+      buffer[i] = (char) ('0' + whole % 10);
+      whole /= 10;
+    }
+    position += digits;
+
+    if (fraction != 0) {
+      buffer[position++] = '.';
+      buffer[position++] = (char) ('0' + fraction / UNITS_PER_TENTH);
+      if (fraction % UNITS_PER_TENTH != 0) {
+        buffer[position++] = (char) ('0' + fraction % UNITS_PER_TENTH);
+      }
+    }
+    return position;
+  }
+}
@@ -0,0 +1,144 @@
+package com.dws.challenge.domain;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Credits of a split account (see {@link Account#splitBalance(int)}), spread over cells on separate cache
+ * lines so that concurrent credits of one account do not all compare-and-set the same word. The money in
+ * the cells belongs to the account's balance; {@link #drain()} hands it over to the main balance.
+ * <p>
+ * Draining is versioned like a seqlock, odd while a drain is under way, so that a reader adding up the
+ * main balance and the cells never sees the drained money in both places or in neither.
+ */
+final class SubBalances {
+
+  /**
+   * Distance between the words of neighbouring cells, so that they sit on different cache lines.
+   */
+  private static final int STRIDE = 8;
+
+  private final AtomicLongArray cells;
+  private final int mask;
+  private final AtomicLong drains = new AtomicLong();
+
+  /**
+   * Largest amount one cell may hold: each cell gets half its share of the headroom the main balance had
+   * at the last drain, lowered by {@link #lowerLimit(long)} as the main balance is credited. That stops new
+   * credits to the cells once the main balance has used up the headroom, but not money already in the cells
+   * from adding up past it, which is why a fold checks the sum and {@link #restore(long)}s what did not fit.
+   */
+  private volatile long cellLimit;
+
+  /**
+   * @param count a power of two
+   */
+  SubBalances(int count, long mainBalance) {
+    this.cells = new AtomicLongArray(count * STRIDE);
+    this.mask = count - 1;
+    this.cellLimit = limitFor(mainBalance);
+  }
+
+  int count() {
+    return mask + 1;
+  }
+
+  /**
+   * @return the cell of the calling thread, the same on every call from it
+   */
+  int cellOfCurrentThread() {
+    long id = Thread.currentThread().threadId();
+    return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+  }
+
+  /**
+   * @throws ArithmeticException, leaving the cell untouched, if the cell would exceed its limit
+   */
+  void credit(int cell, long amount) {
+    int index = (cell & mask) * STRIDE;
+    long limit = cellLimit;
+    long current;
+    do {
+      current = cells.get(index);
+      if (amount > limit - current) {
+        throw new ArithmeticException("long overflow");
+      }
+    } while (!cells.compareAndSet(index, current, current + amount));
+  }
+
+  /**
+   * @return the version to pass to {@link #unchangedSince(long)}, once no drain is under way
+   */
+  long beginRead() {
+    long version;
+    while (((version = drains.get()) & 1) != 0) {
+      Thread.onSpinWait();
+    }
+    return version;
+  }
+
+  boolean unchangedSince(long version) {
+    return drains.get() == version;
+  }
+
+  long sum() {
+    long sum = 0;
+    for (int i = 0; i <= mask; i++) {
+      sum += cells.get(i * STRIDE);
+    }
+    return sum;
+  }
+
+  /**
+   * Starts a drain, waiting for one under way on another thread to finish.
+   */
+  long beginDrain() {
+    while (true) {
+      long version = drains.get();
+      if ((version & 1) == 0 && drains.compareAndSet(version, version + 1)) {
+        return version + 1;
+      }
+      Thread.onSpinWait();
+    }
+  }
+
+  /**
+   * Empties the cells. Credits racing with the drain land either in the drained amount or in the emptied cell.
+   *
+   * @return the amount taken out of the cells
+   */
+  long drain() {
+    long drained = 0;
+    for (int i = 0; i <= mask; i++) {
+      drained += cells.getAndSet(i * STRIDE, 0);
+    }
+    return drained;
+  }
+
+  /**
+   * Puts back an amount taken out by {@link #drain()} that the main balance could not take. Called before
+   * {@link #endDrain(long, long)}, so readers never see it missing.
+   */
+  void restore(long amount) {
+    cells.getAndAdd(0, amount);
+  }
+
+  /**
+   * Lowers the cell limit, if need be, to the headroom left by a credit to the main balance.
+   */
+  void lowerLimit(long mainBalance) {
+    long limit = limitFor(mainBalance);
+    if (limit < cellLimit) {
+      cellLimit = limit;
+    }
+  }
+
+  void endDrain(long version, long mainBalance) {
+    cellLimit = limitFor(mainBalance);
+    drains.set(version + 1);
+  }
+
+  private long limitFor(long mainBalance) {
+    return Math.max(0, Long.MAX_VALUE - Math.max(mainBalance, 0)) / (2L * count());
+  }
+}
@@ -0,0 +1,37 @@
+package com.dws.challenge.dto;
+
+import com.dws.challenge.repository.AccountsRepository;
+
+/**
+ * Balances of several accounts as of one instant, held as parallel arrays rather than one object per
+ * account. Entry {@code i} is the {@code i}-th requested id.
+ */
+public class BalanceSnapshot {
+
+    private final String[] accountIds;
+    private final long[] balancesMinorUnits;
+
+    public BalanceSnapshot(String[] accountIds, long[] balancesMinorUnits) {
+        this.accountIds = accountIds;
+        this.balancesMinorUnits = balancesMinorUnits;
+    }
+
+    public int size() {
+        return accountIds.length;
+    }
+
+    public String getAccountId(int index) {
+        return accountIds[index];
+    }
+
+    /**
+     * @return false if no account with the id existed at the time of the snapshot
+     */
+    public boolean exists(int index) {
+        return balancesMinorUnits[index] != AccountsRepository.NO_ACCOUNT;
+    }
+
+    public long getBalanceMinorUnits(int index) {
+        return balancesMinorUnits[index];
+    }
+}
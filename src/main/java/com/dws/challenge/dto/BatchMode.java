@@ -0,0 +1,14 @@
+package com.dws.challenge.dto;
+
+public enum BatchMode {
+
+    /**
+     * Either every leg of the batch is applied or none of them is.
+     */
+    ALL_OR_NOTHING,
+
+    /**
+     * Every leg that can be applied is applied; failing legs are reported individually.
+     */
+    BEST_EFFORT
+}
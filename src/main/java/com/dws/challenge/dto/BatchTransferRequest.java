@@ -0,0 +1,32 @@
+package com.dws.challenge.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import java.util.List;
+
+@Data
+public class BatchTransferRequest {
+
+    public static final int MAX_TRANSFERS = 10_000;
+
+    @NotNull
+    @NotEmpty
+    @Size(max = MAX_TRANSFERS, message = "A batch may contain at most " + MAX_TRANSFERS + " transfers.")
+    @JsonProperty("transfers")
+    private List<@Valid TransferRequest> transfers;
+
+    @JsonProperty("mode")
+    private BatchMode mode = BatchMode.ALL_OR_NOTHING;
+
+    public BatchTransferRequest() {}
+
+    public BatchTransferRequest(List<TransferRequest> transfers, BatchMode mode) {
+        this.transfers = transfers;
+        this.mode = mode;
+    }
+}
@@ -0,0 +1,33 @@
+package com.dws.challenge.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchTransferResponse {
+
+    @JsonProperty("mode")
+    private final BatchMode mode;
+
+    @JsonProperty("completed")
+    private final int completed;
+
+    @JsonProperty("failed")
+    private final int failed;
+
+    @JsonProperty("results")
+    private final List<TransferResult> results;
+
+    public BatchTransferResponse(BatchMode mode, List<TransferResult> results) {
+        this.mode = mode;
+        this.results = results;
+        this.completed = (int) results.stream()
+                .filter(result -> result.getStatus() == TransferResult.Status.COMPLETED)
+                .count();
+        this.failed = (int) results.stream()
+                .filter(result -> result.getStatus() == TransferResult.Status.FAILED)
+                .count();
+    }
+}
@@ -0,0 +1,55 @@
+package com.dws.challenge.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Data
+public class ScheduledTransferRequest {
+
+    @NotNull
+    @NotEmpty
+    @JsonProperty("accountFromId")
+    private String accountFromId;
+
+    @NotNull
+    @NotEmpty
+    @JsonProperty("accountToId")
+    private String accountToId;
+
+    @NotNull
+    @DecimalMin(value = "0.01", message = "Transfer amount must be positive.")
+    @JsonProperty("amount")
+    private BigDecimal amount;
+
+    /**
+     * When the transfer runs first; an instant in the past runs it right away.
+     */
+    @NotNull
+    @JsonProperty("runAt")
+    private Instant runAt;
+
+    /**
+     * Optional: repeats the transfer every so many seconds after {@code runAt}.
+     */
+    @Min(value = 1, message = "Interval must be at least one second.")
+    @JsonProperty("intervalSeconds")
+    private Long intervalSeconds;
+
+    public ScheduledTransferRequest() {}
+
+    public ScheduledTransferRequest(String accountFromId, String accountToId, BigDecimal amount, Instant runAt,
+                                    Long intervalSeconds) {
+        this.accountFromId = accountFromId;
+        this.accountToId = accountToId;
+        this.amount = amount;
+        this.runAt = runAt;
+        this.intervalSeconds = intervalSeconds;
+    }
+}
@@ -0,0 +1,51 @@
+package com.dws.challenge.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ScheduledTransferResponse {
+
+    @JsonProperty("id")
+    private final long id;
+
+    @JsonProperty("accountFromId")
+    private final String accountFromId;
+
+    @JsonProperty("accountToId")
+    private final String accountToId;
+
+    @JsonProperty("amount")
+    private final BigDecimal amount;
+
+    /**
+     * When the transfer runs next; in the past while it waits its turn to run.
+     */
+    @JsonProperty("nextRunAt")
+    private final Instant nextRunAt;
+
+    @JsonProperty("intervalSeconds")
+    private final Long intervalSeconds;
+
+    /**
+     * Why the last run failed, if it did.
+     */
+    @JsonProperty("lastFailure")
+    private final String lastFailure;
+
+    public ScheduledTransferResponse(long id, String accountFromId, String accountToId, BigDecimal amount,
+                                     Instant nextRunAt, Long intervalSeconds, String lastFailure) {
+        this.id = id;
+        this.accountFromId = accountFromId;
+        this.accountToId = accountToId;
+        this.amount = amount;
+        this.nextRunAt = nextRunAt;
+        this.intervalSeconds = intervalSeconds;
+        this.lastFailure = lastFailure;
+    }
+}
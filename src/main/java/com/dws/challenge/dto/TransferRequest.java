@@ -6,6 +6,7 @@ import lombok.Data;
 import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 import java.math.BigDecimal;
 
 @Data
@@ -26,6 +27,13 @@ public class TransferRequest {
     @JsonProperty("amount")
     private BigDecimal amount;
 
+    /**
+     * Optional client-chosen key: requests carrying the same key are executed once.
+     */
+    @Size(max = 128)
+    @JsonProperty("idempotencyKey")
+    private String idempotencyKey;
+
     public TransferRequest() {}
 
     public TransferRequest(String accountFromId, String accountToId, BigDecimal amount) {
@@ -33,4 +41,9 @@ public class TransferRequest {
         this.accountToId = accountToId;
         this.amount = amount;
     }
+
+    public TransferRequest(String accountFromId, String accountToId, BigDecimal amount, String idempotencyKey) {
+        this(accountFromId, accountToId, amount);
+        this.idempotencyKey = idempotencyKey;
+    }
 }
\ No newline at end of file
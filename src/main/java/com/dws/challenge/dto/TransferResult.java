@@ -0,0 +1,43 @@
+package com.dws.challenge.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TransferResult {
+
+    public enum Status {
+        COMPLETED,
+        FAILED,
+        NOT_APPLIED
+    }
+
+    @JsonProperty("index")
+    private final int index;
+
+    @JsonProperty("status")
+    private final Status status;
+
+    @JsonProperty("message")
+    private final String message;
+
+    public TransferResult(int index, Status status, String message) {
+        this.index = index;
+        this.status = status;
+        this.message = message;
+    }
+
+    public static TransferResult completed(int index) {
+        return new TransferResult(index, Status.COMPLETED, null);
+    }
+
+    public static TransferResult failed(int index, String message) {
+        return new TransferResult(index, Status.FAILED, message);
+    }
+
+    public static TransferResult notApplied(int index) {
+        return new TransferResult(index, Status.NOT_APPLIED, null);
+    }
+}
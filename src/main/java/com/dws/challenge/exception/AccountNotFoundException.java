@@ -1,7 +1,31 @@
 package com.dws.challenge.exception;
 
+/**
+ * Thrown without a stack trace: it reports a bad request, not a fault, and is thrown often enough under
+ * load for filling in the stack to show up in profiles.
+ */
 public class AccountNotFoundException extends RuntimeException {
+
+    private final String accountId;
+
     public AccountNotFoundException(String message) {
-        super(message);
+        this(message, null);
+    }
+
+    private AccountNotFoundException(String message, String accountId) {
+        super(message, null, false, false);
+        this.accountId = accountId;
+    }
+
+    /**
+     * @return an exception whose message names the account, built only if it is asked for
+     */
+    public static AccountNotFoundException forAccount(String accountId) {
+        return new AccountNotFoundException(null, accountId);
+    }
+
+    @Override
+    public String getMessage() {
+        return accountId == null ? super.getMessage() : "Account not found: " + accountId;
     }
-}
\ No newline at end of file
+}
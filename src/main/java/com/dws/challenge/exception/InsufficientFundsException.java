@@ -1,7 +1,37 @@
 package com.dws.challenge.exception;
 
+import com.dws.challenge.domain.Money;
+
+/**
+ * Thrown without a stack trace, like {@link AccountNotFoundException}. The message is built from the
+ * amounts only if it is asked for.
+ */
 public class InsufficientFundsException extends RuntimeException {
+
+    private final String accountId;
+    private final long availableMinorUnits;
+    private final long requiredMinorUnits;
+
     public InsufficientFundsException(String message) {
-        super(message);
+        super(message, null, false, false);
+        this.accountId = null;
+        this.availableMinorUnits = 0;
+        this.requiredMinorUnits = 0;
+    }
+
+    public InsufficientFundsException(String accountId, long availableMinorUnits, long requiredMinorUnits) {
+        super(null, null, false, false);
+        this.accountId = accountId;
+        this.availableMinorUnits = availableMinorUnits;
+        this.requiredMinorUnits = requiredMinorUnits;
+    }
+
+    @Override
+    public String getMessage() {
+        if (accountId == null) {
+            return super.getMessage();
+        }
+        return "Insufficient funds in account " + accountId + ". Available: " + Money.toBigDecimal(availableMinorUnits)
+                + ", Required: " + Money.toBigDecimal(requiredMinorUnits);
     }
-}
\ No newline at end of file
+}
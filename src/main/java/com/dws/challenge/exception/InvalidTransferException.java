@@ -1,7 +1,10 @@
 package com.dws.challenge.exception;
 
+/**
+ * Thrown without a stack trace, like {@link AccountNotFoundException}.
+ */
 public class InvalidTransferException extends RuntimeException {
     public InvalidTransferException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
-}
\ No newline at end of file
+}
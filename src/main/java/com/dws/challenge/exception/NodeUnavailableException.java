@@ -0,0 +1,11 @@
+package com.dws.challenge.exception;
+
+/**
+ * A node of the cluster did not answer in time, so the request could not be carried out, or, for a transfer
+ * whose outcome is stated in the message, not yet.
+ */
+public class NodeUnavailableException extends RuntimeException {
+    public NodeUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.dws.challenge.exception;
+
+/**
+ * An account creation or transfer was applied, but the journal failed before making it durable, so it
+ * may or may not survive a restart. Retrying it would apply it a second time.
+ */
+public class NotDurableException extends RuntimeException {
+    public NotDurableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,23 @@
+package com.dws.challenge.exception;
+
+/**
+ * A transfer was turned away by admission control instead of waiting for its turn: its source account sent
+ * more than its rate allows, or too many transfers were already in flight. Thrown without a stack trace, like
+ * {@link InsufficientFundsException}, as it is thrown in bulk exactly when the service is busiest.
+ */
+public class TooManyRequestsException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public TooManyRequestsException(String message, long retryAfterSeconds) {
+        super(message, null, false, false);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return when the client may try again, for the {@code Retry-After} header
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
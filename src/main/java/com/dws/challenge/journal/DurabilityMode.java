@@ -0,0 +1,27 @@
+package com.dws.challenge.journal;
+
+public enum DurabilityMode {
+
+    /**
+     * Nothing is journaled; balances are lost on restart.
+     */
+    OFF,
+
+    /**
+     * Every record is written by the thread that appends it and fsynced before the operation returns, by
+     * that thread or by a concurrent one whose fsync covers it.
+     */
+    SYNC,
+
+    /**
+     * Records are fsynced together by a background flusher at most every group commit interval;
+     * operations return once the fsync covering their record has completed.
+     */
+    GROUP,
+
+    /**
+     * Records are fsynced by the background flusher, but operations do not wait for it. A crash can
+     * lose the operations of the last group commit interval.
+     */
+    ASYNC
+}
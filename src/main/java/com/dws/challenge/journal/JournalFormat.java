@@ -0,0 +1,167 @@
+package com.dws.challenge.journal;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * On-disk layout of the journal. A journal is a directory of numbered segment files, each a sequence of
+ * records framed as {@code [int bodyLength][int crc32c(body)][body]}. The body starts with a type byte:
+ * <ul>
+ *     <li>{@code ACCOUNT_CREATED: [string accountId][long balance]}</li>
+ *     <li>{@code TRANSFER: [string from][string to][long amount]}</li>
+ *     <li>{@code TRANSFER_BATCH: [int count] count * ([string from][string to][long amount])}</li>
+ * </ul>
+ * Strings are {@code [int length][UTF-8 bytes]} and amounts are minor units. A record that is cut short
+ * or fails its checksum marks the end of the segment: it is the tail of a write interrupted by a crash.
+ */
+@Slf4j
+public final class JournalFormat {
+
+    static final byte ACCOUNT_CREATED = 1;
+    static final byte TRANSFER = 2;
+    static final byte TRANSFER_BATCH = 3;
+
+    static final int FRAME_HEADER_BYTES = 2 * Integer.BYTES;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("journal-(\\d{16})\\.log");
+
+    private JournalFormat() {
+    }
+
+    public static Path segmentPath(Path directory, long segment) {
+        return directory.resolve(String.format("journal-%016d.log", segment));
+    }
+
+    /**
+     * @return the numbers of the segments in the directory, in ascending order
+     */
+    public static List<Long> listSegments(Path directory) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    segments.add(Long.parseLong(matcher.group(1)));
+                }
+            });
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    static int stringBytes(byte[] utf8) {
+        return Integer.BYTES + utf8.length;
+    }
+
+    static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static void putString(ByteBuffer buffer, byte[] utf8) {
+        buffer.putInt(utf8.length);
+        buffer.put(utf8);
+    }
+
+    static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * Wraps an encoded body into a complete frame.
+     */
+    static ByteBuffer frame(ByteBuffer body) {
+        body.flip();
+        CRC32C crc = new CRC32C();
+        crc.update(body.duplicate());
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_BYTES + body.remaining());
+        frame.putInt(body.remaining());
+        frame.putInt((int) crc.getValue());
+        frame.put(body);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Feeds every intact record of a segment to the visitor.
+     *
+     * @return the number of records read
+     */
+    public static long readSegment(Path segment, JournalVisitor visitor) throws IOException {
+        ByteBuffer contents;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            contents = ByteBuffer.allocate((int) channel.size());
+            while (contents.hasRemaining() && channel.read(contents) >= 0) {
+                // keep reading until the whole segment is in memory
+            }
+            contents.flip();
+        }
+
+        return readRecords(contents, visitor, segment);
+    }
+
+    /**
+     * Feeds every intact record of a buffer of framed records to the visitor, up to the first record that
+     * is cut short or fails its checksum.
+     *
+     * @param source what the records were read from, for the log
+     * @return the number of records read
+     */
+    public static long readRecords(ByteBuffer contents, JournalVisitor visitor, Object source) {
+        long records = 0;
+        CRC32C crc = new CRC32C();
+        while (contents.remaining() >= FRAME_HEADER_BYTES) {
+            int start = contents.position();
+            int length = contents.getInt();
+            int checksum = contents.getInt();
+            if (length <= 0 || length > contents.remaining()) {
+                log.warn("Truncated journal record at offset {} of {}, ignoring the rest", start, source);
+                break;
+            }
+            ByteBuffer body = contents.slice(contents.position(), length);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                log.warn("Corrupt journal record at offset {} of {}, ignoring the rest", start, source);
+                break;
+            }
+            contents.position(contents.position() + length);
+            readBody(body, visitor);
+            records++;
+        }
+        return records;
+    }
+
+    private static void readBody(ByteBuffer body, JournalVisitor visitor) {
+        byte type = body.get();
+        switch (type) {
+            case ACCOUNT_CREATED -> visitor.accountCreated(getString(body), body.getLong());
+            case TRANSFER -> visitor.transfer(getString(body), getString(body), body.getLong());
+            case TRANSFER_BATCH -> {
+                int count = body.getInt();
+                for (int i = 0; i < count; i++) {
+                    visitor.transfer(getString(body), getString(body), body.getLong());
+                }
+            }
+            default -> throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+}
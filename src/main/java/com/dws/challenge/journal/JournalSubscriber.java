@@ -0,0 +1,25 @@
+package com.dws.challenge.journal;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives every append to the {@link TransferJournal} as it happens, for instance to replicate it. Appends
+ * are handed over whether or not the journal itself is written to disk.
+ */
+public interface JournalSubscriber {
+
+    /**
+     * Called for every append, in sequence order, with the journal's append lock held: must copy what it
+     * keeps and must not block.
+     *
+     * @param records  one or more framed records (see {@link JournalFormat})
+     * @param sequence the sequence number of the append
+     */
+    void appended(ByteBuffer records, long sequence);
+
+    /**
+     * Blocks until the append with the given sequence number is as safe as the subscriber promises.
+     * Called by {@link TransferJournal#awaitDurable(long)}.
+     */
+    void awaitAcknowledged(long sequence);
+}
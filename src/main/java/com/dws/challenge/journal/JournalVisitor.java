@@ -0,0 +1,11 @@
+package com.dws.challenge.journal;
+
+/**
+ * Receives the records of a journal segment in the order they were appended.
+ */
+public interface JournalVisitor {
+
+    void accountCreated(String accountId, long balanceMinorUnits);
+
+    void transfer(String fromAccountId, String toAccountId, long amountMinorUnits);
+}
@@ -0,0 +1,581 @@
+package com.dws.challenge.journal;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.NotDurableException;
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.repository.SnapshottingAccountsRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only write-ahead journal of account creations and committed transfers, replayed on startup to
+ * rebuild the accounts repository. See {@link JournalFormat} for the file layout and
+ * {@link DurabilityMode} for the latency/durability trade-offs.
+ * <p>
+ * Appending and waiting for durability are separate steps: callers append while they still hold the
+ * account locks that order their operation against dependent ones, and wait for the fsync only after
+ * releasing them. Appending never waits for the disk. In {@link DurabilityMode#SYNC} mode appenders write
+ * their record to the segment and {@link #awaitDurable(long)} forces it, one force covering every record
+ * written before it. In {@link DurabilityMode#GROUP} and {@link DurabilityMode#ASYNC} modes appenders only
+ * copy their record into an in-memory buffer; a single flusher thread writes and fsyncs the buffer, so
+ * one fsync covers every record appended since the previous one. When the buffer is full, records are
+ * set aside for the flusher rather than wait; callers wait for room with {@link #awaitAppendRoom()} before
+ * taking their locks.
+ * <p>
+ * A {@link JournalSubscriber} receives every append as well, even with the journal itself off, and
+ * {@link #awaitDurable(long)} then also waits for the subscriber to acknowledge it.
+ * <p>
+ * Once a write or fsync fails the journal takes no more appends: the segment may end in a torn or lost
+ * record, and records written after it would not be replayed consistently. Operations already applied
+ * and waiting for durability then get a {@link NotDurableException} instead of a plain failure.
+ */
+@Component
+@Slf4j
+public class TransferJournal {
+
+    private static final int BUFFER_CAPACITY = 8 * 1024 * 1024;
+
+    private final DurabilityMode mode;
+    private final Path directory;
+    private final long groupCommitIntervalNanos;
+    private final long segmentSizeBytes;
+    private final AccountsRepository accountsRepository;
+
+    // Guards the append buffer, the records set aside while it is full and, in SYNC mode, the file channel
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final Condition bufferSwapped = appendLock.newCondition();
+    private ByteBuffer appendBuffer;
+    private ByteBuffer writeBuffer;
+    private List<ByteBuffer> setAside = new ArrayList<>();
+    private volatile boolean bufferFull;
+    private long appendedSequence;
+
+    // In SYNC mode also held while forcing, so that one force serves every caller waiting behind it
+    private final ReentrantLock durableLock = new ReentrantLock();
+    private final Condition durableAdvanced = durableLock.newCondition();
+    private volatile long durableSequence;
+    private volatile IOException failure;
+
+    private FileChannel channel;
+    private long segment;
+    private Thread flusher;
+    private volatile boolean running;
+    private volatile JournalSubscriber subscriber;
+
+    @Autowired
+    public TransferJournal(AccountsRepository accountsRepository,
+                           @Value("${journal.mode:OFF}") DurabilityMode mode,
+                           @Value("${journal.directory:data/journal}") String directory,
+                           @Value("${journal.group-commit-interval-ms:2}") long groupCommitIntervalMillis,
+                           @Value("${journal.segment-size-bytes:67108864}") long segmentSizeBytes) {
+        this.accountsRepository = accountsRepository;
+        this.mode = mode;
+        this.directory = Path.of(directory);
+        this.groupCommitIntervalNanos = TimeUnit.MILLISECONDS.toNanos(groupCommitIntervalMillis);
+        this.segmentSizeBytes = segmentSizeBytes;
+    }
+
+    public boolean isEnabled() {
+        return mode != DurabilityMode.OFF;
+    }
+
+    public DurabilityMode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return whether appends are recorded at all, on disk or by a subscriber. Callers that only take locks
+     * to order their records can skip them when this is false.
+     */
+    public boolean isRecording() {
+        return isEnabled() || subscriber != null;
+    }
+
+    /**
+     * Hands every later append to the subscriber. Appends made before are not replayed to it.
+     */
+    public void subscribe(JournalSubscriber subscriber) {
+        appendLock.lock();
+        try {
+            if (this.subscriber != null) {
+                throw new IllegalStateException("The journal already has a subscriber");
+            }
+            this.subscriber = subscriber;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * @return the sequence number of the latest append
+     */
+    public long getAppendedSequence() {
+        appendLock.lock();
+        try {
+            return appendedSequence;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Replays the existing segments into the repository and opens a fresh segment for appending.
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        Files.createDirectories(directory);
+
+        // Segments already folded into the restored snapshot are skipped
+        long snapshotSegment = accountsRepository instanceof SnapshottingAccountsRepository snapshotting
+                ? snapshotting.getSnapshotSegment() : 0;
+        List<Long> segments = JournalFormat.listSegments(directory).stream()
+                .filter(number -> number > snapshotSegment)
+                .toList();
+        replay(segments);
+
+        segment = (segments.isEmpty() ? snapshotSegment : segments.get(segments.size() - 1)) + 1;
+        channel = openSegment(segment);
+        appendBuffer = ByteBuffer.allocateDirect(BUFFER_CAPACITY);
+        writeBuffer = ByteBuffer.allocateDirect(BUFFER_CAPACITY);
+
+        if (mode != DurabilityMode.SYNC) {
+            running = true;
+            flusher = new Thread(this::flushLoop, "journal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+        log.info("Journal opened in {} mode at {}, appending to segment {}", mode, directory, segment);
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        if (!isEnabled() || channel == null) {
+            return;
+        }
+        if (flusher != null) {
+            running = false;
+            LockSupport.unpark(flusher);
+            flusher.join();
+        }
+        if (failure == null) {
+            channel.force(true);
+        }
+        channel.close();
+    }
+
+    /**
+     * Folds the segments into final balances and applies them to the repository, creating the accounts
+     * the segments create and updating the ones restored from a snapshot. Transfers only carry balance
+     * deltas, so the result does not depend on the order of records of concurrent operations.
+     */
+    private void replay(List<Long> segments) throws IOException {
+        Map<String, long[]> balances = new LinkedHashMap<>();
+        long records = 0;
+        for (long number : segments) {
+            records += JournalFormat.readSegment(JournalFormat.segmentPath(directory, number), new JournalVisitor() {
+                @Override
+                public void accountCreated(String accountId, long balanceMinorUnits) {
+                    balances.put(accountId, new long[]{balanceMinorUnits});
+                }
+
+                @Override
+                public void transfer(String fromAccountId, String toAccountId, long amountMinorUnits) {
+                    balanceOf(fromAccountId)[0] -= amountMinorUnits;
+                    balanceOf(toAccountId)[0] += amountMinorUnits;
+                }
+
+                private long[] balanceOf(String accountId) {
+                    long[] balance = balances.get(accountId);
+                    if (balance == null) {
+                        Account restored = accountsRepository.getAccount(accountId);
+                        if (restored == null) {
+                            throw new IllegalStateException("Journal transfer references unknown account " + accountId);
+                        }
+                        balance = new long[]{restored.getBalanceMinorUnits()};
+                        balances.put(accountId, balance);
+                    }
+                    return balance;
+                }
+            });
+        }
+
+        balances.forEach((accountId, balance) -> {
+            Account restored = accountsRepository.getAccount(accountId);
+            if (restored != null) {
+                restored.setBalanceMinorUnits(balance[0]);
+            } else {
+                accountsRepository.createAccount(Account.ofMinorUnits(accountId, balance[0]));
+            }
+        });
+        log.info("Replayed {} journal records from {} segments touching {} accounts", records, segments.size(), balances.size());
+    }
+
+    /**
+     * Appends an account creation. Must be called before the account becomes visible to transfers.
+     *
+     * @return the sequence number to pass to {@link #awaitDurable(long)}
+     */
+    public long appendAccountCreated(String accountId, long balanceMinorUnits) {
+        if (!isRecording()) {
+            return 0;
+        }
+        byte[] id = JournalFormat.utf8(accountId);
+        ByteBuffer body = ByteBuffer.allocate(1 + JournalFormat.stringBytes(id) + Long.BYTES);
+        body.put(JournalFormat.ACCOUNT_CREATED);
+        JournalFormat.putString(body, id);
+        body.putLong(balanceMinorUnits);
+        return append(JournalFormat.frame(body));
+    }
+
+    /**
+     * Appends several account creations with a single append. Each is an ordinary account creation record.
+     *
+     * @return the sequence number to pass to {@link #awaitDurable(long)}
+     */
+    public long appendAccountsCreated(List<Account> accounts) {
+        if (!isRecording() || accounts.isEmpty()) {
+            return 0;
+        }
+        ByteBuffer[] frames = new ByteBuffer[accounts.size()];
+        int size = 0;
+        for (int i = 0; i < frames.length; i++) {
+            Account account = accounts.get(i);
+            byte[] id = JournalFormat.utf8(account.getAccountId());
+            ByteBuffer body = ByteBuffer.allocate(1 + JournalFormat.stringBytes(id) + Long.BYTES);
+            body.put(JournalFormat.ACCOUNT_CREATED);
+            JournalFormat.putString(body, id);
+            body.putLong(account.getBalanceMinorUnits());
+            frames[i] = JournalFormat.frame(body);
+            size += frames[i].remaining();
+        }
+        ByteBuffer records = ByteBuffer.allocate(size);
+        for (ByteBuffer frame : frames) {
+            records.put(frame);
+        }
+        return append(records.flip());
+    }
+
+    /**
+     * Appends a transfer. Must be called after the debit and before the credit is applied, so that a
+     * transfer spending the credited money is always appended after this one.
+     *
+     * @return the sequence number to pass to {@link #awaitDurable(long)}
+     */
+    public long appendTransfer(String fromAccountId, String toAccountId, long amountMinorUnits) {
+        if (!isRecording()) {
+            return 0;
+        }
+        byte[] from = JournalFormat.utf8(fromAccountId);
+        byte[] to = JournalFormat.utf8(toAccountId);
+        ByteBuffer body = ByteBuffer.allocate(
+                1 + JournalFormat.stringBytes(from) + JournalFormat.stringBytes(to) + Long.BYTES);
+        body.put(JournalFormat.TRANSFER);
+        JournalFormat.putString(body, from);
+        JournalFormat.putString(body, to);
+        body.putLong(amountMinorUnits);
+        return append(JournalFormat.frame(body));
+    }
+
+    /**
+     * Appends several transfers as one record, so that they are replayed all or not at all. Must be
+     * called while the locks of all involved accounts are held.
+     *
+     * @return the sequence number to pass to {@link #awaitDurable(long)}
+     */
+    public long appendTransfers(String[] fromAccountIds, String[] toAccountIds, long[] amountsMinorUnits, int count) {
+        if (!isRecording()) {
+            return 0;
+        }
+        byte[][] from = new byte[count][];
+        byte[][] to = new byte[count][];
+        int size = 1 + Integer.BYTES;
+        for (int i = 0; i < count; i++) {
+            from[i] = JournalFormat.utf8(fromAccountIds[i]);
+            to[i] = JournalFormat.utf8(toAccountIds[i]);
+            size += JournalFormat.stringBytes(from[i]) + JournalFormat.stringBytes(to[i]) + Long.BYTES;
+        }
+        ByteBuffer body = ByteBuffer.allocate(size);
+        body.put(JournalFormat.TRANSFER_BATCH);
+        body.putInt(count);
+        for (int i = 0; i < count; i++) {
+            JournalFormat.putString(body, from[i]);
+            JournalFormat.putString(body, to[i]);
+            body.putLong(amountsMinorUnits[i]);
+        }
+        return append(JournalFormat.frame(body));
+    }
+
+    /**
+     * Waits while the append buffer is full, so that callers about to append inside their locks, where
+     * appending sets records aside instead of waiting, do not pile up more of them. Never waits in
+     * {@link DurabilityMode#SYNC} mode, whose appends go straight to the segment.
+     */
+    public void awaitAppendRoom() {
+        if (!bufferFull) {
+            return;
+        }
+        appendLock.lock();
+        try {
+            while (bufferFull && failure == null && running) {
+                LockSupport.unpark(flusher);
+                bufferSwapped.awaitUninterruptibly();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until the record with the given sequence number is as durable as the mode promises. In
+     * {@link DurabilityMode#SYNC} mode this is where the record is forced to disk.
+     *
+     * @throws NotDurableException if the journal failed before the record was flushed. The operation it
+     * records was applied already, so the caller must not report it as failed.
+     */
+    public void awaitDurable(long sequence) {
+        awaitFlushed(sequence);
+        JournalSubscriber current = subscriber;
+        if (current != null && sequence > 0) {
+            current.awaitAcknowledged(sequence);
+        }
+    }
+
+    private void awaitFlushed(long sequence) {
+        if (durableSequence >= sequence) {
+            return;
+        }
+        if (mode == DurabilityMode.SYNC) {
+            force(sequence);
+            return;
+        }
+        if (mode != DurabilityMode.GROUP) {
+            return;
+        }
+        durableLock.lock();
+        try {
+            while (durableSequence < sequence) {
+                if (failure != null) {
+                    throw new NotDurableException("Applied, but the journal failed before making it durable;"
+                            + " it may be lost on restart", failure);
+                }
+                durableAdvanced.awaitUninterruptibly();
+            }
+        } finally {
+            durableLock.unlock();
+        }
+    }
+
+    private long append(ByteBuffer frame) {
+        checkWritable();
+        if (frame.remaining() > BUFFER_CAPACITY) {
+            throw new IllegalArgumentException("Journal record of " + frame.remaining() + " bytes is too large");
+        }
+
+        ByteBuffer records = frame.duplicate();
+        appendLock.lock();
+        try {
+            if (!isEnabled()) {
+                publish(records, ++appendedSequence);
+                return appendedSequence;
+            }
+
+            checkWritable();
+            if (mode == DurabilityMode.SYNC) {
+                writeFully(frame);
+                publish(records, ++appendedSequence);
+                return appendedSequence;
+            }
+
+            if (bufferFull || appendBuffer.remaining() < frame.remaining()) {
+                // Set aside for the flusher, after the buffer, rather than wait for it inside the caller's locks
+                setAside.add(ByteBuffer.allocate(frame.remaining()).put(frame).flip());
+                bufferFull = true;
+                LockSupport.unpark(flusher);
+            } else {
+                appendBuffer.put(frame);
+            }
+            publish(records, ++appendedSequence);
+            return appendedSequence;
+        } catch (IOException e) {
+            // The record may be torn or half on disk; nothing may be written after it
+            log.error("Failed to append to journal segment {}", segment, e);
+            failure = e;
+            throw new UncheckedIOException(e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * SYNC mode: forces the segment unless a force by another caller already covered the sequence, and
+     * rotates to a new segment once it is full. Appenders keep writing meanwhile, to the new segment if
+     * it rotates; only the switch to it takes the append lock.
+     */
+    private void force(long sequence) {
+        durableLock.lock();
+        try {
+            if (durableSequence >= sequence) {
+                return;
+            }
+            if (failure != null) {
+                throw new NotDurableException("Applied, but the journal failed before making it durable;"
+                        + " it may be lost on restart", failure);
+            }
+            long written;
+            FileChannel current;
+            FileChannel next = null;
+            appendLock.lock();
+            try {
+                written = appendedSequence;
+                current = channel;
+                if (channel.size() >= segmentSizeBytes) {
+                    next = openSegment(segment + 1);
+                    segment++;
+                    channel = next;
+                    log.info("Journal rotated to segment {}", segment);
+                }
+            } finally {
+                appendLock.unlock();
+            }
+            current.force(false);
+            if (next != null) {
+                current.close();
+            }
+            durableSequence = written;
+        } catch (IOException e) {
+            // Records written since the last force may be lost; nothing may be written after them
+            log.error("Failed to force journal segment {}", segment, e);
+            failure = e;
+            throw new NotDurableException("Applied, but the journal failed before making it durable;"
+                    + " it may be lost on restart", e);
+        } finally {
+            durableLock.unlock();
+        }
+    }
+
+    private void checkWritable() {
+        if (failure != null) {
+            throw new UncheckedIOException("Journal is no longer writable", failure);
+        }
+    }
+
+    /**
+     * Called with the append lock held.
+     */
+    private void publish(ByteBuffer records, long sequence) {
+        JournalSubscriber current = subscriber;
+        if (current != null) {
+            current.appended(records, sequence);
+        }
+    }
+
+    private void flushLoop() {
+        while (running) {
+            LockSupport.parkNanos(this, groupCommitIntervalNanos);
+            flush();
+        }
+        flush();
+    }
+
+    /**
+     * Swaps the append buffer with the (empty) write buffer, then writes and fsyncs its contents, followed
+     * by the records set aside while it was full, without holding the append lock. Only ever called from
+     * the flusher thread.
+     */
+    private void flush() {
+        ByteBuffer buffer;
+        List<ByteBuffer> records;
+        long sequence;
+        appendLock.lock();
+        try {
+            if (appendBuffer.position() == 0 && setAside.isEmpty()) {
+                return;
+            }
+            buffer = appendBuffer;
+            appendBuffer = writeBuffer;
+            writeBuffer = buffer;
+            records = setAside.isEmpty() ? List.of() : setAside;
+            if (!records.isEmpty()) {
+                setAside = new ArrayList<>();
+            }
+            bufferFull = false;
+            sequence = appendedSequence;
+            bufferSwapped.signalAll();
+        } finally {
+            appendLock.unlock();
+        }
+
+        try {
+            // After a failure the records of this buffer would follow lost ones; they are dropped as well
+            if (failure == null) {
+                buffer.flip();
+                writeFully(buffer);
+                for (ByteBuffer record : records) {
+                    writeFully(record);
+                }
+                channel.force(false);
+                rotateIfFull();
+            }
+        } catch (IOException e) {
+            // The records in the buffer are lost; fail everyone waiting for them and every later append
+            log.error("Failed to flush journal segment {}", segment, e);
+            failure = e;
+        } finally {
+            buffer.clear();
+        }
+
+        durableLock.lock();
+        try {
+            if (failure == null) {
+                durableSequence = sequence;
+            }
+            durableAdvanced.signalAll();
+        } finally {
+            durableLock.unlock();
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void rotateIfFull() throws IOException {
+        if (channel.size() < segmentSizeBytes) {
+            return;
+        }
+        channel.close();
+        segment++;
+        channel = openSegment(segment);
+        log.info("Journal rotated to segment {}", segment);
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(JournalFormat.segmentPath(directory, number),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+}
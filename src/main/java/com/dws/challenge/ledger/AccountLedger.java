@@ -0,0 +1,111 @@
+package com.dws.challenge.ledger;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Transaction history of every account: each committed transfer appends a debit entry to the ledger of
+ * the source account and a credit entry to the ledger of the destination account.
+ * <p>
+ * Transfers append while they hold whatever their engine already serializes them with, and appending
+ * takes no lock of its own: finding an account's ledger is a {@link ConcurrentHashMap} read (only the
+ * first entry of an account inserts its ledger) and the ledger itself is lock-free (see {@link Ledger}).
+ * <p>
+ * The ledger is kept in memory and starts empty on every run; it is not rebuilt from the journal, whose
+ * records carry no timestamps. Nothing is ever dropped: each entry holds a timestamp, an amount and a
+ * reference to the counterparty id, about 20 bytes of heap and so 40 per transfer, up to twice that since
+ * chunks double in size. Off by default for that reason ({@code ledger.enabled}). With
+ * {@code ledger.spill-directory} set, full chunks of at least {@value #MIN_SPILLED_CHUNK_ENTRIES} entries
+ * move to memory-mapped files (see {@link LedgerSpill}).
+ */
+@Component
+public class AccountLedger {
+
+    private static final int MIN_SPILLED_CHUNK_ENTRIES = 1024;
+
+    private final ConcurrentHashMap<String, Ledger> ledgers = new ConcurrentHashMap<>();
+    private final boolean enabled;
+    private final LedgerSpill spill;
+
+    @Autowired
+    public AccountLedger(@Value("${ledger.enabled:false}") boolean enabled,
+                         @Value("${ledger.spill-directory:}") String spillDirectory,
+                         @Value("${ledger.spill-file-size-bytes:67108864}") long spillFileSizeBytes) {
+        this.enabled = enabled;
+        this.spill = enabled && !spillDirectory.isBlank()
+                ? new LedgerSpill(Path.of(spillDirectory), Math.min(spillFileSizeBytes, Integer.MAX_VALUE))
+                : null;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (spill != null) {
+            spill.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        if (spill != null) {
+            spill.stop();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Appends the entries of a committed transfer to the ledgers of both accounts.
+     */
+    public void recordTransfer(String fromAccountId, String toAccountId, long amountMinorUnits) {
+        if (!enabled) {
+            return;
+        }
+        long timestamp = System.currentTimeMillis();
+        append(fromAccountId, timestamp, toAccountId, -amountMinorUnits);
+        append(toAccountId, timestamp, fromAccountId, amountMinorUnits);
+    }
+
+    /**
+     * Appends one side of a committed transfer whose other account lives on another node.
+     *
+     * @param amountMinorUnits negative for a debit
+     */
+    public void recordEntry(String accountId, String counterpartyAccountId, long amountMinorUnits) {
+        if (enabled) {
+            append(accountId, System.currentTimeMillis(), counterpartyAccountId, amountMinorUnits);
+        }
+    }
+
+    /**
+     * Visits up to {@code limit} entries of an account's ledger, oldest first, starting at {@code cursor}
+     * (0 for the first entry). Entries of transfers still being recorded are left for the next read.
+     *
+     * @return the cursor to continue from: the position after the last entry visited
+     */
+    public long read(String accountId, long cursor, int limit, LedgerVisitor visitor) {
+        Ledger ledger = ledgers.get(accountId);
+        return ledger == null ? cursor : ledger.read(cursor, limit, visitor);
+    }
+
+    private void append(String accountId, long timestamp, String counterparty, long amount) {
+        Ledger ledger = ledgers.get(accountId);
+        if (ledger == null) {
+            Ledger created = new Ledger();
+            Ledger existing = ledgers.putIfAbsent(accountId, created);
+            ledger = existing != null ? existing : created;
+        }
+        int fullChunk = ledger.append(timestamp, counterparty, amount);
+        if (fullChunk >= 0 && spill != null && ledger.chunk(fullChunk).capacity() >= MIN_SPILLED_CHUNK_ENTRIES) {
+            spill.spill(ledger, fullChunk);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.dws.challenge.ledger;
+
+import com.dws.challenge.ledger.LedgerChunk.HeapChunk;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Append-only ledger of one account. Entries live in chunks of doubling size (16, 32, 64, ...) found
+ * through a fixed directory, so growing the ledger allocates a new chunk and never copies the entries
+ * already written, and a position maps to its chunk with a little bit arithmetic.
+ * <p>
+ * Any number of threads may append at once: each claims a position with an atomic increment and
+ * publishes its entry independently. Readers stop at the first entry not published yet, so they only
+ * ever see a gap-free prefix of the ledger.
+ */
+final class Ledger {
+
+    private static final int FIRST_CHUNK_BITS = 4;
+    private static final int FIRST_CHUNK_SIZE = 1 << FIRST_CHUNK_BITS;
+    private static final int CHUNKS = 31 - FIRST_CHUNK_BITS;
+    private static final int MAX_POSITION = Integer.MAX_VALUE - FIRST_CHUNK_SIZE;
+
+    private final AtomicReferenceArray<LedgerChunk> chunks = new AtomicReferenceArray<>(CHUNKS);
+    private final AtomicInteger claimed = new AtomicInteger();
+
+    /**
+     * @return the index of the chunk this entry filled up, or -1 if the chunk has room left
+     */
+    int append(long timestamp, String counterparty, long amount) {
+        int position = claimed.getAndIncrement();
+        if (position > MAX_POSITION || position < 0) {
+            throw new IllegalStateException("Ledger is full");
+        }
+        int chunk = chunkOf(position);
+        int offset = offsetOf(position, chunk);
+        HeapChunk heapChunk = heapChunk(chunk);
+        heapChunk.set(offset, timestamp, counterparty, amount);
+        return offset == heapChunk.capacity() - 1 ? chunk : -1;
+    }
+
+    /**
+     * Visits up to {@code limit} published entries starting at {@code cursor}.
+     *
+     * @return the cursor of the entry after the last one visited
+     */
+    long read(long cursor, int limit, LedgerVisitor visitor) {
+        long end = Math.min(claimed.get(), cursor + limit);
+        long position = cursor;
+        while (position < end) {
+            int chunkIndex = chunkOf((int) position);
+            int offset = offsetOf((int) position, chunkIndex);
+            LedgerChunk chunk = chunks.get(chunkIndex);
+            if (chunk == null || !chunk.isPublished(offset)) {
+                break;
+            }
+            visitor.entry(position, chunk.timestamp(offset), chunk.counterparty(offset), chunk.amount(offset));
+            position++;
+        }
+        return position;
+    }
+
+    LedgerChunk chunk(int index) {
+        return chunks.get(index);
+    }
+
+    /**
+     * Swaps a full heap chunk for its spilled copy.
+     */
+    void replace(int index, LedgerChunk expected, LedgerChunk spilled) {
+        chunks.compareAndSet(index, expected, spilled);
+    }
+
+    private HeapChunk heapChunk(int index) {
+        LedgerChunk chunk = chunks.get(index);
+        if (chunk == null) {
+            HeapChunk created = new HeapChunk(FIRST_CHUNK_SIZE << index);
+            chunk = chunks.compareAndSet(index, null, created) ? created : chunks.get(index);
+        }
+        // Only full chunks are spilled, and a chunk being appended to is not full
+        return (HeapChunk) chunk;
+    }
+
+    private static int chunkOf(int position) {
+        return 31 - Integer.numberOfLeadingZeros(position + FIRST_CHUNK_SIZE) - FIRST_CHUNK_BITS;
+    }
+
+    private static int offsetOf(int position, int chunk) {
+        return position + FIRST_CHUNK_SIZE - (FIRST_CHUNK_SIZE << chunk);
+    }
+}
@@ -0,0 +1,152 @@
+package com.dws.challenge.ledger;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A fixed-capacity run of consecutive ledger entries: either still on the heap, where entries are
+ * appended, or spilled to a mapped file once full (see {@link LedgerSpill}).
+ */
+abstract sealed class LedgerChunk {
+
+    abstract int capacity();
+
+    /**
+     * @return whether the entry at the offset was completely written and can be read
+     */
+    abstract boolean isPublished(int offset);
+
+    abstract long timestamp(int offset);
+
+    abstract long amount(int offset);
+
+    abstract String counterparty(int offset);
+
+    /**
+     * Entries are written into parallel arrays. The counterparty is written last, with release semantics,
+     * and doubles as the publication flag: a reader that sees it also sees the rest of the entry.
+     */
+    static final class HeapChunk extends LedgerChunk {
+
+        private static final VarHandle COUNTERPARTIES = MethodHandles.arrayElementVarHandle(String[].class);
+
+        private final long[] timestamps;
+        private final long[] amounts;
+        private final String[] counterparties;
+
+        HeapChunk(int capacity) {
+            this.timestamps = new long[capacity];
+            this.amounts = new long[capacity];
+            this.counterparties = new String[capacity];
+        }
+
+        void set(int offset, long timestamp, String counterparty, long amount) {
+            timestamps[offset] = timestamp;
+            amounts[offset] = amount;
+            COUNTERPARTIES.setRelease(counterparties, offset, counterparty);
+        }
+
+        /**
+         * @return the number of bytes {@link #writeTo(ByteBuffer)} writes
+         */
+        long serializedSize() {
+            long size = (long) capacity() * MappedChunk.ENTRY_BYTES;
+            for (String counterparty : counterparties) {
+                size += 2 + counterparty.getBytes(StandardCharsets.UTF_8).length;
+            }
+            return size;
+        }
+
+        /**
+         * Writes the entries of a full chunk in the layout read by {@link MappedChunk}.
+         */
+        void writeTo(ByteBuffer buffer) {
+            int capacity = capacity();
+            int start = buffer.position();
+            int ids = start + capacity * MappedChunk.ENTRY_BYTES;
+            for (int i = 0; i < capacity; i++) {
+                byte[] counterparty = counterparties[i].getBytes(StandardCharsets.UTF_8);
+                int entry = start + i * MappedChunk.ENTRY_BYTES;
+                buffer.putLong(entry, timestamps[i]);
+                buffer.putLong(entry + 8, amounts[i]);
+                buffer.putInt(entry + 16, ids - start);
+                buffer.putShort(ids, (short) counterparty.length);
+                buffer.put(ids + 2, counterparty);
+                ids += 2 + counterparty.length;
+            }
+            buffer.position(ids);
+        }
+
+        @Override
+        int capacity() {
+            return counterparties.length;
+        }
+
+        @Override
+        boolean isPublished(int offset) {
+            return COUNTERPARTIES.getAcquire(counterparties, offset) != null;
+        }
+
+        @Override
+        long timestamp(int offset) {
+            return timestamps[offset];
+        }
+
+        @Override
+        long amount(int offset) {
+            return amounts[offset];
+        }
+
+        @Override
+        String counterparty(int offset) {
+            return counterparties[offset];
+        }
+    }
+
+    /**
+     * A full chunk in a mapped spill file: fixed-size entries (timestamp, amount, offset of the
+     * counterparty id) followed by the length-prefixed UTF-8 counterparty ids.
+     */
+    static final class MappedChunk extends LedgerChunk {
+
+        static final int ENTRY_BYTES = 20;
+
+        private final ByteBuffer buffer;
+        private final int capacity;
+
+        MappedChunk(ByteBuffer buffer, int capacity) {
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+
+        @Override
+        int capacity() {
+            return capacity;
+        }
+
+        @Override
+        boolean isPublished(int offset) {
+            return true;
+        }
+
+        @Override
+        long timestamp(int offset) {
+            return buffer.getLong(offset * ENTRY_BYTES);
+        }
+
+        @Override
+        long amount(int offset) {
+            return buffer.getLong(offset * ENTRY_BYTES + 8);
+        }
+
+        @Override
+        String counterparty(int offset) {
+            int id = buffer.getInt(offset * ENTRY_BYTES + 16);
+            byte[] bytes = new byte[buffer.getShort(id)];
+            buffer.get(id + 2, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
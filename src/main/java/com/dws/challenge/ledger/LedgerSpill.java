@@ -0,0 +1,138 @@
+package com.dws.challenge.ledger;
+
+import com.dws.challenge.ledger.LedgerChunk.HeapChunk;
+import com.dws.challenge.ledger.LedgerChunk.MappedChunk;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moves full ledger chunks off the heap into memory-mapped scratch files. Appenders only queue the chunk
+ * they filled up; a background thread copies it into the current spill file once all its entries are
+ * published and swaps it into the ledger, after which the heap copy is garbage. Readers holding the heap
+ * copy keep reading it, as both copies have the same content.
+ * <p>
+ * Spill files only extend the heap: they are deleted on startup and shutdown, and the ledger starts
+ * empty with every run of the application.
+ */
+@Slf4j
+final class LedgerSpill {
+
+    private static final String FILE_PREFIX = "ledger-";
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private record Task(Ledger ledger, int chunk) {
+    }
+
+    private final Path directory;
+    private final long fileSizeBytes;
+    private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+    private final List<Path> files = new ArrayList<>();
+    private final Thread spiller;
+    private volatile boolean running;
+    private MappedByteBuffer current;
+
+    LedgerSpill(Path directory, long fileSizeBytes) {
+        this.directory = directory;
+        this.fileSizeBytes = fileSizeBytes;
+        this.spiller = new Thread(this::spillLoop, "ledger-spiller");
+        spiller.setDaemon(true);
+    }
+
+    void start() throws IOException {
+        Files.createDirectories(directory);
+        deleteFiles();
+        running = true;
+        spiller.start();
+        log.info("Spilling full ledger chunks to {}", directory);
+    }
+
+    void stop() throws IOException, InterruptedException {
+        running = false;
+        LockSupport.unpark(spiller);
+        spiller.join(TimeUnit.SECONDS.toMillis(5));
+        current = null;
+        files.clear();
+        deleteFiles();
+    }
+
+    void spill(Ledger ledger, int chunk) {
+        tasks.add(new Task(ledger, chunk));
+    }
+
+    private void spillLoop() {
+        List<Task> unpublished = new ArrayList<>();
+        while (running) {
+            Task task;
+            while ((task = tasks.poll()) != null) {
+                if (!trySpill(task)) {
+                    unpublished.add(task);
+                }
+            }
+            // Chunks whose last appenders were still writing when they were queued
+            tasks.addAll(unpublished);
+            unpublished.clear();
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * @return {@code false} if some entries of the chunk are not published yet
+     */
+    private boolean trySpill(Task task) {
+        if (!(task.ledger().chunk(task.chunk()) instanceof HeapChunk chunk)) {
+            return true;
+        }
+        for (int i = 0; i < chunk.capacity(); i++) {
+            if (!chunk.isPublished(i)) {
+                return false;
+            }
+        }
+        long size = chunk.serializedSize();
+        if (size > fileSizeBytes) {
+            return true;
+        }
+        try {
+            if (current == null || current.remaining() < size) {
+                current = newFile();
+            }
+        } catch (IOException e) {
+            log.error("Could not create a ledger spill file in {}, keeping chunks on the heap", directory, e);
+            return true;
+        }
+        ByteBuffer slice = current.slice(current.position(), (int) size);
+        chunk.writeTo(current);
+        task.ledger().replace(task.chunk(), chunk, new MappedChunk(slice, chunk.capacity()));
+        return true;
+    }
+
+    private MappedByteBuffer newFile() throws IOException {
+        Path file = directory.resolve(FILE_PREFIX + files.size() + ".dat");
+        files.add(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSizeBytes);
+        }
+    }
+
+    private void deleteFiles() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*.dat")) {
+            for (Path file : stream) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
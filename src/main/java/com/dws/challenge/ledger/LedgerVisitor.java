@@ -0,0 +1,13 @@
+package com.dws.challenge.ledger;
+
+/**
+ * Receives the entries of an account's ledger in the order they were appended.
+ */
+public interface LedgerVisitor {
+
+    /**
+     * @param position         position of the entry in the ledger, the cursor of the entry after it minus one
+     * @param amountMinorUnits negative for money leaving the account, positive for money arriving
+     */
+    void entry(long position, long timestampMillis, String counterpartyAccountId, long amountMinorUnits);
+}
@@ -0,0 +1,73 @@
+package com.dws.challenge.metrics;
+
+import com.dws.challenge.service.StripedLocks;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code /actuator/lockstripes}: totals over all account lock stripes and the stripes with the most
+ * wait time, {@code /actuator/lockstripes/{stripe}} for a single stripe. Counters are cumulative
+ * since startup.
+ */
+@Component
+@Endpoint(id = "lockstripes")
+public class LockStripesEndpoint {
+
+    private static final int HOTTEST_STRIPES = 20;
+
+    private final StripedLocks accountLocks;
+
+    @Autowired
+    public LockStripesEndpoint(StripedLocks accountLocks) {
+        this.accountLocks = accountLocks;
+    }
+
+    @ReadOperation
+    public Map<String, Object> lockStripes() {
+        int stripeCount = accountLocks.getStripeCount();
+        List<StripeStatistics> stripes = new ArrayList<>(stripeCount);
+        long acquisitions = 0;
+        long contentions = 0;
+        long waitNanos = 0;
+        for (int stripe = 0; stripe < stripeCount; stripe++) {
+            StripeStatistics statistics = stripe(stripe);
+            acquisitions += statistics.acquisitions();
+            contentions += statistics.contentions();
+            waitNanos += accountLocks.getWaitNanos(stripe);
+            stripes.add(statistics);
+        }
+        stripes.sort(Comparator.comparingDouble(StripeStatistics::waitMillis).reversed());
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("stripes", stripeCount);
+        response.put("acquisitions", acquisitions);
+        response.put("contentions", contentions);
+        response.put("waitMillis", waitNanos / 1e6);
+        response.put("hottest", stripes.subList(0, Math.min(HOTTEST_STRIPES, stripeCount)));
+        return response;
+    }
+
+    /**
+     * @return the statistics of the stripe, or {@code null} (404) for an unknown stripe
+     */
+    @ReadOperation
+    public StripeStatistics stripe(@Selector int stripe) {
+        if (stripe < 0 || stripe >= accountLocks.getStripeCount()) {
+            return null;
+        }
+        return new StripeStatistics(stripe, accountLocks.getAcquisitionCount(stripe),
+                accountLocks.getContentionCount(stripe), accountLocks.getWaitNanos(stripe) / 1e6);
+    }
+
+    public record StripeStatistics(int stripe, long acquisitions, long contentions, double waitMillis) {
+    }
+}
@@ -0,0 +1,246 @@
+package com.dws.challenge.metrics;
+
+import com.dws.challenge.service.AdmissionControl;
+import com.dws.challenge.service.AdmissionControl.Rejection;
+import com.dws.challenge.service.HotAccounts;
+import com.dws.challenge.service.IdempotencyCache;
+import com.dws.challenge.service.NotificationDispatcher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Meters of the transfer path, registered once at startup so that recording is a plain method call on
+ * a pre-built {@link Timer} or {@link Counter}: no tag lookup, no builder and no allocation per transfer.
+ * Timers keep their distribution in Micrometer's lock-free HdrHistogram-based percentile histograms.
+ * <p>
+ * Per-stripe lock statistics would be one time series per stripe; they are served by the
+ * {@code lockstripes} actuator endpoint instead (see {@link LockStripesEndpoint}). Credits per destination
+ * account are only sampled, and only while {@link HotAccounts} looks for accounts to split.
+ */
+@Component
+public class TransferMetrics {
+
+    public enum Phase {
+        /** Request checks and amount conversion. */
+        VALIDATE,
+        /** Repository lookups of both accounts. */
+        LOOKUP,
+        /** Waiting for the lock stripe(s) of the debited account(s), or queued on the stripe for it. */
+        LOCK_WAIT,
+        /** Debit, journal append and credit, with the lock held. */
+        APPLY,
+        /** Waiting for the journal to make the transfer durable. */
+        DURABILITY,
+        /** Queueing the notifications. */
+        NOTIFY
+    }
+
+    public enum Outcome {
+        COMPLETED,
+        INSUFFICIENT_FUNDS,
+        ACCOUNT_NOT_FOUND,
+        INVALID,
+        /** Turned away by the engine, whose queue for the source account was full. */
+        REJECTED,
+        /** Applied, but the journal failed before making it durable. */
+        NOT_DURABLE,
+        ERROR
+    }
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+    /**
+     * One in this many credits is counted while credits are sampled.
+     */
+    public static final int CREDIT_SAMPLE_RATE = 64;
+
+    /**
+     * Destinations counted at most between two drains, so that uniform traffic over many accounts does not
+     * grow the counts without bound.
+     */
+    private static final int MAX_SAMPLED_ACCOUNTS = 10_000;
+
+    private final MeterRegistry registry;
+    private final Timer[] phaseTimers;
+    private final Counter[] outcomeCounters;
+    private final Timer batchTimer;
+    private final Timer notificationLatency;
+    private final Timer notificationDelivery;
+    private final Counter notificationFailures;
+    private final Counter idempotentReplays;
+    private final ConcurrentHashMap<String, LongAdder> sampledCredits = new ConcurrentHashMap<>();
+    private volatile boolean samplingCredits;
+
+    @Autowired
+    public TransferMetrics(MeterRegistry registry) {
+        this.registry = registry;
+
+        Phase[] phases = Phase.values();
+        this.phaseTimers = new Timer[phases.length];
+        for (Phase phase : phases) {
+            phaseTimers[phase.ordinal()] = timer("transfer.phase", "Time spent in one phase of a transfer")
+                    .tag("phase", phase.name().toLowerCase())
+                    .register(registry);
+        }
+
+        Outcome[] outcomes = Outcome.values();
+        this.outcomeCounters = new Counter[outcomes.length];
+        for (Outcome outcome : outcomes) {
+            outcomeCounters[outcome.ordinal()] = Counter.builder("transfer.outcomes")
+                    .description("Transfers (and batch legs) by outcome")
+                    .tag("outcome", outcome.name().toLowerCase())
+                    .register(registry);
+        }
+
+        this.batchTimer = timer("transfer.batch", "Time to settle a batch of transfers").register(registry);
+        this.notificationLatency = timer("notification.latency",
+                "Time from queueing a transfer notification until it was handed to the notification service")
+                .register(registry);
+        this.notificationDelivery = timer("notification.delivery", "Duration of one notification service call")
+                .register(registry);
+        this.notificationFailures = Counter.builder("notification.failures")
+                .description("Notification service calls that threw")
+                .register(registry);
+        this.idempotentReplays = Counter.builder("transfer.idempotency.replays")
+                .description("Transfer requests answered with the outcome of an earlier request with the same key")
+                .register(registry);
+    }
+
+    private static Timer.Builder timer(String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentiles(PERCENTILES)
+                .publishPercentileHistogram();
+    }
+
+    public void recordPhase(Phase phase, long nanos) {
+        phaseTimers[phase.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordOutcome(Outcome outcome) {
+        outcomeCounters[outcome.ordinal()].increment();
+    }
+
+    public void recordOutcome(Outcome outcome, int count) {
+        if (count > 0) {
+            outcomeCounters[outcome.ordinal()].increment(count);
+        }
+    }
+
+    public void recordBatch(long nanos) {
+        batchTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordNotificationLatency(long nanos) {
+        notificationLatency.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordNotificationDelivery(long nanos, boolean failed) {
+        notificationDelivery.record(nanos, TimeUnit.NANOSECONDS);
+        if (failed) {
+            notificationFailures.increment();
+        }
+    }
+
+    public void recordIdempotentReplay() {
+        idempotentReplays.increment();
+    }
+
+    /**
+     * Counts one in {@value #CREDIT_SAMPLE_RATE} credits to each destination while credit sampling is on;
+     * only a volatile read otherwise.
+     */
+    public void sampleCredit(String accountId) {
+        if (!samplingCredits || ThreadLocalRandom.current().nextInt(CREDIT_SAMPLE_RATE) != 0) {
+            return;
+        }
+        LongAdder count = sampledCredits.get(accountId);
+        if (count == null) {
+            if (sampledCredits.size() >= MAX_SAMPLED_ACCOUNTS) {
+                return;
+            }
+            count = sampledCredits.computeIfAbsent(accountId, id -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    public void setCreditSampling(boolean enabled) {
+        samplingCredits = enabled;
+    }
+
+    /**
+     * @return the sampled credits per destination since the previous call; multiply by
+     * {@link #CREDIT_SAMPLE_RATE} for an estimate of all credits
+     */
+    public Map<String, Long> drainCreditSamples() {
+        Map<String, Long> samples = new HashMap<>();
+        Iterator<Map.Entry<String, LongAdder>> entries = sampledCredits.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, LongAdder> entry = entries.next();
+            long count = entry.getValue().sumThenReset();
+            if (count == 0) {
+                entries.remove();
+            } else {
+                samples.put(entry.getKey(), count);
+            }
+        }
+        return samples;
+    }
+
+    public void bindIdempotencyCache(IdempotencyCache cache) {
+        Gauge.builder("transfer.idempotency.entries", cache, IdempotencyCache::size)
+                .description("Idempotency keys currently remembered")
+                .register(registry);
+    }
+
+    /**
+     * Exposes the transfers in flight and the accounts tracked as gauges and the rejections, by reason, as
+     * monotonic counters.
+     */
+    public void bindAdmissionControl(AdmissionControl admissionControl) {
+        Gauge.builder("transfer.admission.in-flight", admissionControl, AdmissionControl::getInFlight)
+                .description("Admitted transfers not yet answered")
+                .register(registry);
+        Gauge.builder("transfer.admission.accounts", admissionControl, AdmissionControl::getTrackedAccounts)
+                .description("Source accounts with a rate limit bucket")
+                .register(registry);
+        for (Rejection rejection : Rejection.values()) {
+            FunctionCounter.builder("transfer.admission.rejections", admissionControl,
+                            control -> control.getRejectionCount(rejection))
+                    .description("Transfers turned away with 429 Too Many Requests")
+                    .tag("reason", rejection.name().toLowerCase())
+                    .register(registry);
+        }
+    }
+
+    public void bindHotAccounts(HotAccounts hotAccounts) {
+        Gauge.builder("accounts.hot.split", hotAccounts, HotAccounts::getSplitCount)
+                .description("Accounts whose credits are spread over sub-balances")
+                .register(registry);
+    }
+
+    /**
+     * Exposes the queue of a dispatcher as gauges and its counters as monotonic counters.
+     */
+    public void bindNotificationDispatcher(NotificationDispatcher dispatcher) {
+        Gauge.builder("notification.queue.depth", dispatcher, NotificationDispatcher::getQueueDepth)
+                .description("Notifications waiting in the bounded queue")
+                .register(registry);
+        FunctionCounter.builder("notification.dropped", dispatcher, NotificationDispatcher::getDroppedCount)
+                .description("Notifications dropped because the queue was full")
+                .register(registry);
+    }
+}
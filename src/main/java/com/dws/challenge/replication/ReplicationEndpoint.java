@@ -0,0 +1,63 @@
+package com.dws.challenge.replication;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * {@code /actuator/replication}: the replication role of this instance and how far its standbys, or this
+ * standby, have got. A {@code POST} promotes a standby to primary.
+ */
+@Component
+@Endpoint(id = "replication")
+public class ReplicationEndpoint {
+
+    private final Optional<ReplicationPublisher> publisher;
+    private final Optional<StandbyReplica> standby;
+
+    @Autowired
+    public ReplicationEndpoint(Optional<ReplicationPublisher> publisher, Optional<StandbyReplica> standby) {
+        this.publisher = publisher;
+        this.standby = standby;
+    }
+
+    @ReadOperation
+    public Map<String, Object> replication() {
+        Map<String, Object> response = new LinkedHashMap<>();
+        if (publisher.isPresent()) {
+            response.put("role", "primary");
+            response.put("mode", publisher.get().getMode());
+            response.put("standbys", publisher.get().getStandbys());
+        } else if (standby.isPresent()) {
+            StandbyReplica replica = standby.get();
+            response.put("role", replica.isPromoted() ? "promoted" : "standby");
+            response.put("connected", replica.isConnected());
+            response.put("appliedSequence", replica.getAppliedSequence());
+        } else {
+            response.put("role", "none");
+        }
+        return response;
+    }
+
+    /**
+     * @return the journal sequence the standby was promoted at, or {@code null} (404) if this is not a standby
+     */
+    @WriteOperation
+    public Map<String, Object> promote() throws InterruptedException {
+        if (standby.isEmpty()) {
+            return null;
+        }
+        long started = System.nanoTime();
+        long sequence = standby.get().promote();
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("promotedAtSequence", sequence);
+        response.put("promotionMillis", (System.nanoTime() - started) / 1e6);
+        return response;
+    }
+}
@@ -0,0 +1,18 @@
+package com.dws.challenge.replication;
+
+/**
+ * When a change on the primary counts as done, from the point of view of its standbys.
+ */
+public enum ReplicationMode {
+
+    /**
+     * Changes are streamed to the standbys in the background; a failover may lose the latest ones.
+     */
+    ASYNC,
+
+    /**
+     * A transfer or account creation returns once every connected, caught-up standby has applied it (or has
+     * been dropped for not answering within the acknowledgement timeout).
+     */
+    SYNC
+}
@@ -0,0 +1,428 @@
+package com.dws.challenge.replication;
+
+import com.dws.challenge.journal.JournalSubscriber;
+import com.dws.challenge.journal.TransferJournal;
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.service.BalanceVersions;
+import com.dws.challenge.service.StripedLocks;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Streams this instance's changes to standby instances ({@code replication.role=primary}). Standbys connect
+ * to {@code replication.port}; each gets every account as of one journal sequence, then every later
+ * journal append, in order (see {@link ReplicationStream}).
+ * <p>
+ * Appends are copied into a queue per standby while the journal's append lock is held, and a sender thread
+ * per standby writes out everything queued since its previous write as one message. Transfers therefore
+ * never wait for the network, unless {@link ReplicationMode#SYNC} makes them wait for the acknowledgements.
+ * A standby more than {@code replication.max-pending-bytes} behind is disconnected; it reconnects and starts
+ * over from a new snapshot.
+ * <p>
+ * The snapshot is copied with every account lock stripe held and no balance being written, which pauses
+ * account creations and transfers for as long as the copy takes. No append can happen meanwhile, so the
+ * copy matches one journal sequence exactly.
+ */
+@Component
+@ConditionalOnProperty(name = "replication.role", havingValue = "primary")
+@Slf4j
+public class ReplicationPublisher implements JournalSubscriber {
+
+    public record StandbyStatus(String address, boolean streaming, long acknowledgedSequence, long pendingBytes) {
+    }
+
+    private record Append(long sequence, byte[] records) {
+    }
+
+    private final AccountsRepository accountsRepository;
+    private final StripedLocks accountLocks;
+    private final BalanceVersions balanceVersions;
+    private final TransferJournal transferJournal;
+    private final int port;
+    private final ReplicationMode mode;
+    private final long ackTimeoutNanos;
+    private final long maxPendingBytes;
+    private final int[] versionStripes;
+
+    private final Set<Standby> standbys = ConcurrentHashMap.newKeySet();
+    private ServerSocket serverSocket;
+
+    @Autowired
+    public ReplicationPublisher(AccountsRepository accountsRepository, StripedLocks accountLocks,
+                                BalanceVersions balanceVersions, TransferJournal transferJournal,
+                                @Value("${replication.port:7500}") int port,
+                                @Value("${replication.mode:ASYNC}") ReplicationMode mode,
+                                @Value("${replication.ack-timeout-ms:1000}") long ackTimeoutMillis,
+                                @Value("${replication.max-pending-bytes:67108864}") long maxPendingBytes) {
+        this.accountsRepository = accountsRepository;
+        this.accountLocks = accountLocks;
+        this.balanceVersions = balanceVersions;
+        this.transferJournal = transferJournal;
+        this.port = port;
+        this.mode = mode;
+        this.ackTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(ackTimeoutMillis);
+        this.maxPendingBytes = maxPendingBytes;
+        this.versionStripes = new int[balanceVersions.getStripeCount()];
+        Arrays.setAll(versionStripes, stripe -> stripe);
+    }
+
+    /**
+     * Subscribes to the journal and starts accepting standbys.
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        transferJournal.subscribe(this);
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port));
+        Thread acceptor = new Thread(this::accept, "replication-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("Replication primary listening on port {} in {} mode", getPort(), mode);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        serverSocket.close();
+        standbys.forEach(Standby::close);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public ReplicationMode getMode() {
+        return mode;
+    }
+
+    public List<StandbyStatus> getStandbys() {
+        List<StandbyStatus> statuses = new ArrayList<>();
+        for (Standby standby : standbys) {
+            statuses.add(standby.status());
+        }
+        return statuses;
+    }
+
+    @Override
+    public void appended(ByteBuffer records, long sequence) {
+        if (standbys.isEmpty()) {
+            return;
+        }
+        byte[] bytes = new byte[records.remaining()];
+        records.get(bytes);
+        for (Standby standby : standbys) {
+            standby.enqueue(bytes, sequence);
+        }
+    }
+
+    /**
+     * In {@link ReplicationMode#SYNC} mode, waits for every standby past its snapshot to acknowledge the
+     * append. A standby that does not within the acknowledgement timeout is disconnected.
+     */
+    @Override
+    public void awaitAcknowledged(long sequence) {
+        if (mode != ReplicationMode.SYNC) {
+            return;
+        }
+        long deadline = System.nanoTime() + ackTimeoutNanos;
+        for (Standby standby : standbys) {
+            if (standby.streaming && !standby.awaitAcknowledged(sequence, deadline)) {
+                log.warn("Standby {} did not acknowledge sequence {} in time, disconnecting it", standby.address, sequence);
+                standby.close();
+            }
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Standby standby = new Standby(socket);
+                Thread sender = new Thread(standby::send, "replication-sender");
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    log.warn("Failed to accept a standby", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies every balance as of one journal sequence.
+     */
+    private Snapshot snapshot() {
+        Snapshot snapshot = new Snapshot();
+        long started = System.nanoTime();
+        int[] lockStripes = accountLocks.lockAllStripes();
+        try {
+            balanceVersions.read(versionStripes, () -> {
+                snapshot.size = 0;
+                accountsRepository.forEachAccount(snapshot::add);
+                snapshot.sequence = transferJournal.getAppendedSequence();
+            });
+        } finally {
+            accountLocks.unlockAll(lockStripes);
+        }
+        log.info("Copied {} accounts at journal sequence {} for a standby in {} ms", snapshot.size, snapshot.sequence,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return snapshot;
+    }
+
+    private static final class Snapshot {
+
+        String[] accountIds = new String[1024];
+        long[] balances = new long[1024];
+        int size;
+        long sequence;
+
+        void add(String accountId, long balanceMinorUnits) {
+            if (size == accountIds.length) {
+                accountIds = Arrays.copyOf(accountIds, 2 * size);
+                balances = Arrays.copyOf(balances, 2 * size);
+            }
+            accountIds[size] = accountId;
+            balances[size] = balanceMinorUnits;
+            size++;
+        }
+    }
+
+    /**
+     * The connection to one standby and the appends not yet sent to it.
+     */
+    private final class Standby {
+
+        final Socket socket;
+        final String address;
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition queued = lock.newCondition();
+        final Condition acknowledgedAdvanced = lock.newCondition();
+
+        // Guarded by lock
+        final ArrayDeque<Append> queue = new ArrayDeque<>();
+        long pendingBytes;
+        long acknowledged;
+        boolean closed;
+
+        /**
+         * Set once the snapshot is sent; only then does the standby take part in synchronous replication.
+         */
+        volatile boolean streaming;
+
+        Standby(Socket socket) {
+            this.socket = socket;
+            this.address = String.valueOf(socket.getRemoteSocketAddress());
+        }
+
+        void send() {
+            try {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+                // Queue appends from now on, then drop the ones the snapshot already contains
+                standbys.add(this);
+                Snapshot snapshot = snapshot();
+                discardUpTo(snapshot.sequence);
+                writeSnapshot(out, snapshot);
+                log.info("Standby {} connected, streaming from journal sequence {}", address, snapshot.sequence);
+
+                Thread acknowledgements = new Thread(() -> readAcknowledgements(in), "replication-acks");
+                acknowledgements.setDaemon(true);
+                acknowledgements.start();
+                streaming = true;
+
+                List<Append> batch = new ArrayList<>();
+                while (take(batch)) {
+                    int length = 0;
+                    for (Append append : batch) {
+                        length += append.records().length;
+                    }
+                    out.writeByte(ReplicationStream.RECORDS);
+                    out.writeLong(batch.get(batch.size() - 1).sequence());
+                    out.writeInt(length);
+                    for (Append append : batch) {
+                        out.write(append.records());
+                    }
+                    out.flush();
+                    batch.clear();
+                }
+            } catch (IOException e) {
+                log.info("Standby {} disconnected: {}", address, e.getMessage());
+            } finally {
+                standbys.remove(this);
+                close();
+            }
+        }
+
+        private void writeSnapshot(DataOutputStream out, Snapshot snapshot) throws IOException {
+            for (int start = 0; start < snapshot.size; start += ReplicationStream.SNAPSHOT_CHUNK_ACCOUNTS) {
+                int count = Math.min(ReplicationStream.SNAPSHOT_CHUNK_ACCOUNTS, snapshot.size - start);
+                out.writeByte(ReplicationStream.SNAPSHOT_ACCOUNTS);
+                out.writeInt(count);
+                for (int i = start; i < start + count; i++) {
+                    out.writeUTF(snapshot.accountIds[i]);
+                    out.writeLong(snapshot.balances[i]);
+                }
+            }
+            out.writeByte(ReplicationStream.SNAPSHOT_END);
+            out.writeLong(snapshot.sequence);
+            out.flush();
+        }
+
+        private void readAcknowledgements(DataInputStream in) {
+            try {
+                while (true) {
+                    long sequence = in.readLong();
+                    lock.lock();
+                    try {
+                        acknowledged = sequence;
+                        acknowledgedAdvanced.signalAll();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        /**
+         * Called with the journal's append lock held.
+         */
+        void enqueue(byte[] records, long sequence) {
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                if (pendingBytes + records.length > maxPendingBytes) {
+                    log.warn("Standby {} is more than {} bytes behind, disconnecting it", address, maxPendingBytes);
+                    closed = true;
+                    queued.signalAll();
+                    acknowledgedAdvanced.signalAll();
+                } else {
+                    queue.add(new Append(sequence, records));
+                    pendingBytes += records.length;
+                    if (queue.size() == 1) {
+                        queued.signal();
+                    }
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            closeSocket();
+        }
+
+        /**
+         * Waits for appends and moves all of them to {@code batch}.
+         *
+         * @return false once the standby is closed
+         */
+        private boolean take(List<Append> batch) {
+            lock.lock();
+            try {
+                while (queue.isEmpty() && !closed) {
+                    queued.awaitUninterruptibly();
+                }
+                if (closed) {
+                    return false;
+                }
+                batch.addAll(queue);
+                queue.clear();
+                pendingBytes = 0;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void discardUpTo(long sequence) {
+            lock.lock();
+            try {
+                while (!queue.isEmpty() && queue.peek().sequence() <= sequence) {
+                    pendingBytes -= queue.poll().records().length;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return false if the deadline passed first
+         */
+        boolean awaitAcknowledged(long sequence, long deadlineNanos) {
+            lock.lock();
+            try {
+                while (acknowledged < sequence && !closed) {
+                    long remaining = deadlineNanos - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    acknowledgedAdvanced.awaitNanos(remaining);
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        StandbyStatus status() {
+            lock.lock();
+            try {
+                return new StandbyStatus(address, streaming, acknowledged, pendingBytes);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void close() {
+            lock.lock();
+            try {
+                closed = true;
+                queued.signalAll();
+                acknowledgedAdvanced.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            closeSocket();
+        }
+
+        private void closeSocket() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already broken
+            }
+        }
+    }
+}
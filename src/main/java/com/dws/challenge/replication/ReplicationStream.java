@@ -0,0 +1,25 @@
+package com.dws.challenge.replication;
+
+/**
+ * Messages of the replication stream from the primary to a standby, each starting with its type byte:
+ * <pre>
+ * SNAPSHOT_ACCOUNTS: int count | count * (UTF accountId | long balance)
+ * SNAPSHOT_END:      long sequence
+ * RECORDS:           long sequence | int length | framed journal records
+ * </pre>
+ * A standby first receives every account as of the journal sequence in {@code SNAPSHOT_END}, then the
+ * records of every later append, in order; {@code RECORDS} carries one or more appends and the sequence
+ * number of the last. The standby answers {@code SNAPSHOT_END} and every {@code RECORDS} message with the
+ * {@code long} sequence it carried, once applied.
+ */
+final class ReplicationStream {
+
+    static final byte SNAPSHOT_ACCOUNTS = 1;
+    static final byte SNAPSHOT_END = 2;
+    static final byte RECORDS = 3;
+
+    static final int SNAPSHOT_CHUNK_ACCOUNTS = 4096;
+
+    private ReplicationStream() {
+    }
+}
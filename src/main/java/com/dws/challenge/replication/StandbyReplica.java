@@ -0,0 +1,219 @@
+package com.dws.challenge.replication;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.journal.JournalFormat;
+import com.dws.challenge.journal.JournalVisitor;
+import com.dws.challenge.journal.TransferJournal;
+import com.dws.challenge.repository.AccountsRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps this instance's accounts a copy of the primary's ({@code replication.role=standby}): connects to
+ * {@code replication.primary}, loads the snapshot it sends, then applies every journal append it streams,
+ * acknowledging each message once applied (see {@link ReplicationStream}). On losing the connection it
+ * reconnects and loads a new snapshot over the accounts it has.
+ * <p>
+ * The API stays read-only until {@link #promote()}, which stops following the primary. Everything the
+ * standby acknowledged is already in its accounts, so promotion takes no longer than closing the
+ * connection. Promotion does not stop the old primary; whoever promotes must make sure it is down.
+ */
+@Component
+@ConditionalOnProperty(name = "replication.role", havingValue = "standby")
+@Slf4j
+public class StandbyReplica {
+
+    private final AccountsRepository accountsRepository;
+    private final String primaryHost;
+    private final int primaryPort;
+    private final long reconnectIntervalMillis;
+
+    private final JournalVisitor applier = new JournalVisitor() {
+        @Override
+        public void accountCreated(String accountId, long balanceMinorUnits) {
+            restore(accountId, balanceMinorUnits);
+        }
+
+        @Override
+        public void transfer(String fromAccountId, String toAccountId, long amountMinorUnits) {
+            existing(fromAccountId).credit(-amountMinorUnits);
+            existing(toAccountId).credit(amountMinorUnits);
+        }
+    };
+
+    private volatile boolean promoted;
+    private volatile boolean connected;
+    private volatile long appliedSequence;
+    private volatile Socket socket;
+    private Thread follower;
+
+    @Autowired
+    public StandbyReplica(AccountsRepository accountsRepository, TransferJournal transferJournal,
+                          @Value("${replication.primary:localhost:7500}") String primary,
+                          @Value("${replication.reconnect-interval-ms:1000}") long reconnectIntervalMillis) {
+        if (transferJournal.isEnabled()) {
+            // The standby would journal nothing of what it applies, and recover stale balances on restart
+            throw new IllegalStateException("A replication standby must run with journal.mode=OFF");
+        }
+        int colon = primary.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Invalid replication.primary '" + primary + "', expected host:port");
+        }
+        this.accountsRepository = accountsRepository;
+        this.primaryHost = primary.substring(0, colon);
+        this.primaryPort = Integer.parseInt(primary.substring(colon + 1));
+        this.reconnectIntervalMillis = reconnectIntervalMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        follower = new Thread(this::follow, "replication-standby");
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        promote();
+    }
+
+    /**
+     * Stops following the primary and lets the API accept writes.
+     *
+     * @return the journal sequence of the last change applied
+     */
+    public long promote() throws InterruptedException {
+        if (!promoted) {
+            long started = System.nanoTime();
+            promoted = true;
+            closeSocket();
+            follower.interrupt();
+            follower.join();
+            log.info("Promoted to primary at journal sequence {} in {} us", appliedSequence,
+                    (System.nanoTime() - started) / 1000);
+        }
+        return appliedSequence;
+    }
+
+    public boolean isPromoted() {
+        return promoted;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * @return the journal sequence of the primary's last change applied here
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    private void follow() {
+        while (!promoted) {
+            try (Socket connection = new Socket()) {
+                socket = connection;
+                if (promoted) {
+                    break;
+                }
+                connection.connect(new InetSocketAddress(primaryHost, primaryPort));
+                connection.setTcpNoDelay(true);
+                connected = true;
+                log.info("Following primary {}:{}", primaryHost, primaryPort);
+                apply(new DataInputStream(new BufferedInputStream(connection.getInputStream(), 1 << 16)),
+                        new DataOutputStream(connection.getOutputStream()));
+            } catch (IOException | RuntimeException e) {
+                if (!promoted) {
+                    log.warn("Lost primary {}:{}: {}", primaryHost, primaryPort, e.toString());
+                }
+            } finally {
+                connected = false;
+            }
+            if (!promoted) {
+                try {
+                    Thread.sleep(reconnectIntervalMillis);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private void apply(DataInputStream in, DataOutputStream out) throws IOException {
+        while (true) {
+            int type = in.read();
+            switch (type) {
+                case ReplicationStream.SNAPSHOT_ACCOUNTS -> {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        restore(in.readUTF(), in.readLong());
+                    }
+                }
+                case ReplicationStream.SNAPSHOT_END -> acknowledge(in.readLong(), out);
+                case ReplicationStream.RECORDS -> {
+                    long sequence = in.readLong();
+                    byte[] records = new byte[in.readInt()];
+                    in.readFully(records);
+                    JournalFormat.readRecords(ByteBuffer.wrap(records), applier, "the primary");
+                    acknowledge(sequence, out);
+                }
+                case -1 -> throw new IOException("Primary closed the connection");
+                default -> throw new IOException("Unexpected replication message type " + type);
+            }
+        }
+    }
+
+    private void acknowledge(long sequence, DataOutputStream out) throws IOException {
+        appliedSequence = sequence;
+        out.writeLong(sequence);
+        out.flush();
+    }
+
+    private void restore(String accountId, long balanceMinorUnits) {
+        Account account = accountsRepository.getAccount(accountId);
+        if (account == null) {
+            try {
+                accountsRepository.createAccount(Account.ofMinorUnits(accountId, balanceMinorUnits));
+                return;
+            } catch (DuplicateAccountIdException e) {
+                account = accountsRepository.getAccount(accountId);
+            }
+        }
+        account.setBalanceMinorUnits(balanceMinorUnits);
+    }
+
+    private Account existing(String accountId) {
+        Account account = accountsRepository.getAccount(accountId);
+        if (account == null) {
+            // Out of step with the primary: reconnecting loads a new snapshot
+            throw new IllegalStateException("Replicated transfer touches unknown account " + accountId);
+        }
+        return account;
+    }
+
+    private void closeSocket() {
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // Already closed
+            }
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.dws.challenge.repository;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Assigns account ids dense {@code int} handles, 0, 1, 2, ... in the order they are first seen, and maps
+ * them both ways. A handle is never reassigned, even if its account is removed.
+ * <p>
+ * Lookups take no lock: the ids are in an open-addressing hash table (linear probing) of {@code long}
+ * entries {@code [int hash][int handle + 1]}, so a probe only compares ids whose hash matches, and the ids
+ * themselves are in pages indexed by handle. Handles are assigned under a lock, which also covers growing
+ * the table: a full table is copied into one twice its size, from the hashes in the entries, and replaces it.
+ * <p>
+ * With a file, the dictionary is loaded from it on construction and every new id is appended to it as
+ * {@code [int length][UTF-8 bytes]}, the handle being the record's position, so handles survive restarts.
+ * Appends are buffered until {@link #flush()}, which hands them to the operating system, and also forces
+ * them to disk if the dictionary was opened to; {@link #close()} always forces them. A record cut short by a
+ * crash is dropped on loading.
+ */
+@Slf4j
+public final class AccountIdDictionary implements Closeable {
+
+    public static final int NO_HANDLE = -1;
+
+    private static final VarHandle ENTRIES = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int MAX_PAGES = 1 << (31 - PAGE_SHIFT);
+
+    private static final int INITIAL_TABLE_SIZE = 1 << 10;
+    private static final double LOAD_FACTOR = 0.75;
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    // Written under writeLock before the table entry that leads to them is published
+    private final String[][] idPages = new String[MAX_PAGES][];
+    private volatile long[] table = new long[INITIAL_TABLE_SIZE];
+    private volatile int size;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    // Guarded by writeLock
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final boolean force;
+    private boolean unforced;
+
+    /**
+     * A dictionary kept in memory only.
+     */
+    public AccountIdDictionary() {
+        this.channel = null;
+        this.buffer = null;
+        this.force = false;
+    }
+
+    /**
+     * @param file where handles are kept across restarts
+     */
+    public AccountIdDictionary(Path file) throws IOException {
+        this(file, false);
+    }
+
+    /**
+     * @param file where handles are kept across restarts
+     * @param force whether {@link #flush()} forces the ids to disk, so that they survive an operating system
+     *              crash as well as a restart
+     */
+    public AccountIdDictionary(Path file, boolean force) throws IOException {
+        this.force = force;
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        long loaded = load(file);
+        channel.truncate(loaded);
+        channel.position(loaded);
+        log.info("Loaded {} account ids from {}", size, file);
+    }
+
+    /**
+     * @return the id's handle, or {@link #NO_HANDLE} if it has none
+     */
+    public int lookup(String accountId) {
+        int hash = accountId.hashCode();
+        long[] entries = table;
+        int mask = entries.length - 1;
+        for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+            long entry = (long) ENTRIES.getAcquire(entries, i);
+            if (entry == 0) {
+                return NO_HANDLE;
+            }
+            int handle = (int) entry - 1;
+            if ((int) (entry >>> 32) == hash && idAt(handle).equals(accountId)) {
+                return handle;
+            }
+        }
+    }
+
+    /**
+     * @return the id's handle, assigned now if it had none
+     */
+    public int intern(String accountId) {
+        int handle = lookup(accountId);
+        if (handle != NO_HANDLE) {
+            return handle;
+        }
+        writeLock.lock();
+        try {
+            handle = lookup(accountId);
+            if (handle != NO_HANDLE) {
+                return handle;
+            }
+            handle = add(accountId);
+            append(accountId);
+            return handle;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to record account id " + accountId, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the id with the given handle, or {@code null} if the handle was never assigned
+     */
+    public String idOf(int handle) {
+        if (handle < 0 || handle >= size) {
+            return null;
+        }
+        return idAt(handle);
+    }
+
+    /**
+     * @return the number of handles assigned, which is also the next handle
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Writes the ids appended since the last flush to the file, and forces them to disk if the dictionary was
+     * opened to.
+     */
+    public void flush() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            write();
+            if (force && unforced) {
+                channel.force(false);
+                unforced = false;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            write();
+            channel.force(false);
+            channel.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the length of the file up to its last complete record
+     */
+    private long load(Path file) throws IOException {
+        ByteBuffer contents = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        while (contents.hasRemaining()) {
+            int start = contents.position();
+            try {
+                int length = contents.getInt();
+                if (length < 0 || length > contents.remaining()) {
+                    throw new BufferUnderflowException();
+                }
+                byte[] bytes = new byte[length];
+                contents.get(bytes);
+                add(new String(bytes, StandardCharsets.UTF_8));
+            } catch (BufferUnderflowException e) {
+                log.warn("Truncated record at offset {} of {}, ignoring the rest", start, file);
+                return start;
+            }
+        }
+        return contents.position();
+    }
+
+    /**
+     * Reads an id without checking the handle against the size, which is only raised after the handle's table
+     * entry is published: a lookup that found the entry sees the id.
+     */
+    private String idAt(int handle) {
+        return idPages[handle >>> PAGE_SHIFT][handle & (PAGE_SIZE - 1)];
+    }
+
+    /**
+     * Assigns the next handle. Caller holds the write lock, or is the constructor.
+     */
+    private int add(String accountId) {
+        int handle = size;
+        if (handle == Integer.MAX_VALUE) {
+            throw new IllegalStateException("No handles left for account id " + accountId);
+        }
+        int pageIndex = handle >>> PAGE_SHIFT;
+        String[] page = idPages[pageIndex];
+        if (page == null) {
+            page = new String[PAGE_SIZE];
+            idPages[pageIndex] = page;
+        }
+        page[handle & (PAGE_SIZE - 1)] = accountId;
+
+        long[] entries = table;
+        if (handle + 1 > entries.length * LOAD_FACTOR) {
+            entries = grow(entries);
+        }
+        insert(entries, accountId.hashCode(), handle);
+        table = entries;
+        size = handle + 1;
+        return handle;
+    }
+
+    private static long[] grow(long[] entries) {
+        long[] grown = new long[entries.length * 2];
+        for (long entry : entries) {
+            if (entry != 0) {
+                insert(grown, (int) (entry >>> 32), (int) entry - 1);
+            }
+        }
+        return grown;
+    }
+
+    private static void insert(long[] entries, int hash, int handle) {
+        int mask = entries.length - 1;
+        int i = spread(hash) & mask;
+        while (entries[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        ENTRIES.setRelease(entries, i, ((long) hash << 32) | (handle + 1L));
+    }
+
+    private void append(String accountId) throws IOException {
+        if (channel == null) {
+            return;
+        }
+        unforced = true;
+        byte[] bytes = accountId.getBytes(StandardCharsets.UTF_8);
+        if (buffer.remaining() < Integer.BYTES + bytes.length) {
+            write();
+        }
+        if (buffer.remaining() < Integer.BYTES + bytes.length) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES + bytes.length).putInt(bytes.length).put(bytes).flip());
+            return;
+        }
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private void write() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Scrambles the hash before it picks a slot: ids that differ only in their last characters, like sequential
+     * numbers, have hashes close together that would otherwise fill runs of neighbouring slots and make linear
+     * probing walk them.
+     */
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -3,11 +3,91 @@ package com.dws.challenge.repository;
 import com.dws.challenge.domain.Account;
 import com.dws.challenge.exception.DuplicateAccountIdException;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public interface AccountsRepository {
 
+  /**
+   * Returned by {@link #getBalanceMinorUnits(String)} for an id without account.
+   */
+  long NO_ACCOUNT = Long.MIN_VALUE;
+
+  /**
+   * Returned by {@link #getHandle(String)} for an id without account, and by stores without handles.
+   */
+  int NO_HANDLE = -1;
+
+  /**
+   * Receives the accounts visited by {@link #forEachAccount(AccountVisitor)}.
+   */
+  @FunctionalInterface
+  interface AccountVisitor {
+    void visit(String accountId, long balanceMinorUnits);
+  }
+
   void createAccount(Account account) throws DuplicateAccountIdException;
 
+  /**
+   * Creates several accounts, skipping the ones whose id already exists. Safe to call from several
+   * threads at once.
+   *
+   * @return the accounts that were not created because their id already exists, in list order
+   */
+  default List<Account> createAccounts(List<Account> accounts) {
+    List<Account> duplicates = new ArrayList<>();
+    for (Account account : accounts) {
+      try {
+        createAccount(account);
+      } catch (DuplicateAccountIdException e) {
+        duplicates.add(account);
+      }
+    }
+    return duplicates;
+  }
+
+  /**
+   * Throws what creating the accounts would throw other than {@link DuplicateAccountIdException}, such as
+   * the store being full, without creating them. Lets a caller that journals creations before making them
+   * refuse the ones that would fail; it must keep other creations out until it has made them.
+   */
+  default void checkCanCreate(List<Account> accounts) {
+  }
+
   Account getAccount(String accountId);
 
+  /**
+   * Resolves an id to the handle its account can be found by with {@link #getAccount(int)}, for callers
+   * that look the same accounts up many times. Only {@link AccountsRepositoryInterned} hands out handles.
+   *
+   * @return the handle, or {@link #NO_HANDLE}
+   */
+  default int getHandle(String accountId) {
+    return NO_HANDLE;
+  }
+
+  /**
+   * @return the account with the given handle, or {@code null}
+   */
+  default Account getAccount(int handle) {
+    return null;
+  }
+
+  /**
+   * Reads an account's balance without handing out the account.
+   *
+   * @return the balance in minor units, or {@link #NO_ACCOUNT}
+   */
+  default long getBalanceMinorUnits(String accountId) {
+    Account account = getAccount(accountId);
+    return account == null ? NO_ACCOUNT : account.getBalanceMinorUnits();
+  }
+
+  /**
+   * Visits every account with its balance. Accounts created or updated during the visit may or may not be
+   * seen, and with their old or new balance.
+   */
+  void forEachAccount(AccountVisitor visitor);
+
   void clearAccounts();
 }
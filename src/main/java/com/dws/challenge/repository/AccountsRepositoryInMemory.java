@@ -2,12 +2,16 @@ package com.dws.challenge.repository;
 
 import com.dws.challenge.domain.Account;
 import com.dws.challenge.exception.DuplicateAccountIdException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
-@Repository
+@Repository("accountStore")
+@ConditionalOnProperty(name = "accounts.store", havingValue = "heap", matchIfMissing = true)
 public class AccountsRepositoryInMemory implements AccountsRepository {
 
     private final Map<String, Account> accounts = new ConcurrentHashMap<>();
@@ -21,11 +25,27 @@ public class AccountsRepositoryInMemory implements AccountsRepository {
         }
     }
 
+    @Override
+    public List<Account> createAccounts(List<Account> newAccounts) {
+        List<Account> duplicates = new ArrayList<>();
+        for (Account account : newAccounts) {
+            if (accounts.putIfAbsent(account.getAccountId(), account) != null) {
+                duplicates.add(account);
+            }
+        }
+        return duplicates;
+    }
+
     @Override
     public Account getAccount(String accountId) {
         return accounts.get(accountId);
     }
 
+    @Override
+    public void forEachAccount(AccountVisitor visitor) {
+        accounts.forEach((accountId, account) -> visitor.visit(accountId, account.getBalanceMinorUnits()));
+    }
+
     @Override
     public void clearAccounts() {
         accounts.clear();
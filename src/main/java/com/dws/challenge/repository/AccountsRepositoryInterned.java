@@ -0,0 +1,156 @@
+package com.dws.challenge.repository;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.journal.DurabilityMode;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link AccountsRepository} whose accounts are found by handle: an {@link AccountIdDictionary} assigns
+ * every account id a dense {@code int} handle, and accounts sit in pages of an array indexed by it.
+ * <p>
+ * A lookup by id costs one probe of the dictionary, about what a {@code ConcurrentHashMap} lookup costs.
+ * Callers that resolved an id once, with {@link #getHandle(String)}, then find its account by
+ * {@link #getAccount(int)}, which is two array reads with no hashing or id comparison. Handles outlive the
+ * accounts: {@link #clearAccounts()} keeps the dictionary, and with {@code accounts.interned.dictionary-file}
+ * set the handles also survive restarts.
+ */
+@Repository("accountStore")
+@ConditionalOnProperty(name = "accounts.store", havingValue = "interned")
+public class AccountsRepositoryInterned implements AccountsRepository {
+
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int MAX_PAGES = 1 << (31 - PAGE_SHIFT);
+
+    private final AccountIdDictionary dictionary;
+    private static final VarHandle PAGES = MethodHandles.arrayElementVarHandle(Account[][].class);
+    private static final VarHandle ACCOUNTS = MethodHandles.arrayElementVarHandle(Account[].class);
+
+    // Plain arrays rather than AtomicReferenceArrays, which would add an indirection to every lookup
+    private final Account[][] pages = new Account[MAX_PAGES][];
+
+    /**
+     * While the journal is on, new ids are forced to the dictionary file before their creation returns: after an
+     * operating system crash, replay would otherwise intern the lost ones again, possibly in another order, and a
+     * handle a client kept could then lead to another account.
+     */
+    @Autowired
+    public AccountsRepositoryInterned(@Value("${accounts.interned.dictionary-file:}") String dictionaryFile,
+                                      @Value("${journal.mode:OFF}") DurabilityMode journalMode) throws IOException {
+        this(dictionaryFile.isEmpty() ? new AccountIdDictionary()
+                : new AccountIdDictionary(Path.of(dictionaryFile), journalMode != DurabilityMode.OFF));
+    }
+
+    public AccountsRepositoryInterned(AccountIdDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public void createAccount(Account account) throws DuplicateAccountIdException {
+        boolean created = insert(account);
+        flushDictionary();
+        if (!created) {
+            throw new DuplicateAccountIdException("Account id " + account.getAccountId() + " already exists!");
+        }
+    }
+
+    @Override
+    public List<Account> createAccounts(List<Account> accounts) {
+        List<Account> duplicates = new ArrayList<>();
+        for (Account account : accounts) {
+            if (!insert(account)) {
+                duplicates.add(account);
+            }
+        }
+        flushDictionary();
+        return duplicates;
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+        int handle = dictionary.lookup(accountId);
+        return handle == AccountIdDictionary.NO_HANDLE ? null : getAccount(handle);
+    }
+
+    @Override
+    public int getHandle(String accountId) {
+        int handle = dictionary.lookup(accountId);
+        return handle == AccountIdDictionary.NO_HANDLE || getAccount(handle) == null ? NO_HANDLE : handle;
+    }
+
+    @Override
+    public Account getAccount(int handle) {
+        if (handle < 0) {
+            return null;
+        }
+        Account[] page = (Account[]) PAGES.getAcquire(pages, handle >>> PAGE_SHIFT);
+        return page == null ? null : (Account) ACCOUNTS.getAcquire(page, handle & (PAGE_SIZE - 1));
+    }
+
+    @Override
+    public void forEachAccount(AccountVisitor visitor) {
+        int size = dictionary.size();
+        for (int handle = 0; handle < size; handle++) {
+            Account account = getAccount(handle);
+            if (account != null) {
+                visitor.visit(account.getAccountId(), account.getBalanceMinorUnits());
+            }
+        }
+    }
+
+    /**
+     * Removes every account. Their ids keep their handles.
+     */
+    @Override
+    public void clearAccounts() {
+        int size = dictionary.size();
+        for (int i = 0; i <= size >>> PAGE_SHIFT; i++) {
+            Account[] page = (Account[]) PAGES.getAcquire(pages, i);
+            if (page != null) {
+                for (int j = 0; j < PAGE_SIZE; j++) {
+                    ACCOUNTS.setRelease(page, j, null);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        dictionary.close();
+    }
+
+    /**
+     * @return false if the id already has an account
+     */
+    private boolean insert(Account account) {
+        int handle = dictionary.intern(account.getAccountId());
+        int pageIndex = handle >>> PAGE_SHIFT;
+        Account[] page = (Account[]) PAGES.getAcquire(pages, pageIndex);
+        if (page == null) {
+            PAGES.compareAndSet(pages, pageIndex, null, new Account[PAGE_SIZE]);
+            page = (Account[]) PAGES.getAcquire(pages, pageIndex);
+        }
+        return ACCOUNTS.compareAndSet(page, handle & (PAGE_SIZE - 1), null, account);
+    }
+
+    private void flushDictionary() {
+        try {
+            dictionary.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,443 @@
+package com.dws.challenge.repository;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link AccountsRepository} that keeps account ids and balances outside the Java heap, for deployments
+ * with so many accounts that per-account heap objects make garbage collection the bottleneck.
+ * <p>
+ * Accounts live in a fixed-capacity open-addressing hash table (linear probing) made of 24-byte slots
+ * {@code [long balance][long idReference][int hash][int state]} spread over direct buffer pages. Ids are
+ * appended to a separate arena as {@code [int header][chars]}, one byte per char when every char fits
+ * in Latin-1 and two otherwise. Slots are never removed, so a probe can stop at the first empty slot.
+ * <p>
+ * Lookups compare the requested id with the arena in place and {@link Account} objects are only created
+ * as views at the API boundary: they reuse the caller's id string and read and update the balance in
+ * the slot with the same compare-and-set protocol as heap accounts. Every {@link #getAccount(String)} thus
+ * allocates one small view, two per transfer; only {@link #getBalanceMinorUnits(String)} reads without one.
+ * The table is sized once from {@code accounts.offheap.capacity} and does not grow.
+ */
+@Repository("accountStore")
+@ConditionalOnProperty(name = "accounts.store", havingValue = "offheap")
+@Slf4j
+public class AccountsRepositoryOffHeap implements AccountsRepository {
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private static final int SLOT_BYTES = 24;
+    private static final int BALANCE_OFFSET = 0;
+    private static final int ID_OFFSET = 8;
+    private static final int HASH_OFFSET = 16;
+    private static final int STATE_OFFSET = 20;
+
+    private static final int EMPTY = 0;
+    private static final int WRITING = 1;
+    private static final int PUBLISHED = 2;
+
+    private static final int SLOTS_PER_PAGE_SHIFT = 24;
+    private static final int SLOTS_PER_PAGE = 1 << SLOTS_PER_PAGE_SHIFT;
+
+    private static final int ARENA_PAGE_BYTES = 64 * 1024 * 1024;
+    private static final int MAX_ARENA_PAGES = 4096;
+    private static final int LATIN1_FLAG = 1 << 31;
+
+    private static final double LOAD_FACTOR = 0.75;
+
+    private final long capacity;
+    private final long slotCount;
+    private final ByteBuffer[] slotPages;
+    private final AtomicLong size = new AtomicLong();
+
+    private final AtomicReferenceArray<ByteBuffer> arenaPages = new AtomicReferenceArray<>(MAX_ARENA_PAGES);
+    private final AtomicLong arenaTop = new AtomicLong();
+
+    @Autowired
+    public AccountsRepositoryOffHeap(@Value("${accounts.offheap.capacity:1000000}") long capacity) {
+        this.capacity = capacity;
+        this.slotCount = Math.max(1, (long) Math.ceil(capacity / LOAD_FACTOR));
+        int pages = (int) ((slotCount + SLOTS_PER_PAGE - 1) >>> SLOTS_PER_PAGE_SHIFT);
+        this.slotPages = new ByteBuffer[pages];
+        for (int i = 0; i < pages; i++) {
+            long slotsInPage = Math.min(SLOTS_PER_PAGE, slotCount - ((long) i << SLOTS_PER_PAGE_SHIFT));
+            slotPages[i] = ByteBuffer.allocateDirect((int) (slotsInPage * SLOT_BYTES)).order(ByteOrder.nativeOrder());
+        }
+        log.info("Allocated off-heap account table for {} accounts: {} slots, {} MB",
+                capacity, slotCount, slotCount * SLOT_BYTES >> 20);
+    }
+
+    @Override
+    public void createAccount(Account account) throws DuplicateAccountIdException {
+        if (!insert(account)) {
+            throw new DuplicateAccountIdException("Account id " + account.getAccountId() + " already exists!");
+        }
+    }
+
+    @Override
+    public List<Account> createAccounts(List<Account> accounts) {
+        List<Account> duplicates = new ArrayList<>();
+        for (Account account : accounts) {
+            if (!insert(account)) {
+                duplicates.add(account);
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Counts every account as new, duplicates included, so it may refuse a list that would just fit.
+     */
+    @Override
+    public void checkCanCreate(List<Account> accounts) {
+        if (size.get() + accounts.size() > capacity) {
+            throw new IllegalStateException("Off-heap account store is full (capacity " + capacity + ")");
+        }
+        for (Account account : accounts) {
+            idBytes(account.getAccountId());
+        }
+    }
+
+    /**
+     * @return {@code false} if an account with the same id exists
+     */
+    private boolean insert(Account account) {
+        String accountId = account.getAccountId();
+        int hash = hash(accountId);
+        for (long slot = home(hash); ; slot = next(slot)) {
+            ByteBuffer page = slotPages[page(slot)];
+            int offset = offset(slot);
+            int state = awaitWritten(page, offset);
+
+            if (state == EMPTY) {
+                if (!INTS.compareAndSet(page, offset + STATE_OFFSET, EMPTY, WRITING)) {
+                    // Lost the slot to a concurrent insert: look at it again
+                    slot = previous(slot);
+                    continue;
+                }
+                // Counted only once the slot is claimed, so that a duplicate of an insert in flight waits
+                // for it and fails as a duplicate rather than finding the store full
+                if (size.incrementAndGet() > capacity) {
+                    size.decrementAndGet();
+                    INTS.setRelease(page, offset + STATE_OFFSET, EMPTY);
+                    throw new IllegalStateException("Off-heap account store is full (capacity " + capacity + ")");
+                }
+                long idReference;
+                try {
+                    idReference = storeId(accountId);
+                } catch (Throwable e) {
+                    // A slot left WRITING would stall every probe passing it for good
+                    size.decrementAndGet();
+                    INTS.setRelease(page, offset + STATE_OFFSET, EMPTY);
+                    throw e;
+                }
+                page.putLong(offset + ID_OFFSET, idReference);
+                page.putInt(offset + HASH_OFFSET, hash);
+                page.putLong(offset + BALANCE_OFFSET, account.getBalanceMinorUnits());
+                INTS.setRelease(page, offset + STATE_OFFSET, PUBLISHED);
+                return true;
+            }
+
+            if (matches(page, offset, hash, accountId)) {
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+        long slot = find(accountId);
+        return slot < 0 ? null : new OffHeapAccount(accountId, slotPages[page(slot)], offset(slot));
+    }
+
+    /**
+     * Reads the balance in place, without creating a view of the account.
+     */
+    @Override
+    public long getBalanceMinorUnits(String accountId) {
+        long slot = find(accountId);
+        return slot < 0 ? NO_ACCOUNT : (long) LONGS.getVolatile(slotPages[page(slot)], offset(slot) + BALANCE_OFFSET);
+    }
+
+    /**
+     * Scans the slot table, decoding the id of every published slot from the arena.
+     */
+    @Override
+    public void forEachAccount(AccountVisitor visitor) {
+        for (long slot = 0; slot < slotCount; slot++) {
+            ByteBuffer page = slotPages[page(slot)];
+            int offset = offset(slot);
+            if (awaitWritten(page, offset) == PUBLISHED) {
+                visitor.visit(readId(page.getLong(offset + ID_OFFSET)),
+                        (long) LONGS.getVolatile(page, offset + BALANCE_OFFSET));
+            }
+        }
+    }
+
+    /**
+     * Not safe to call concurrently with other operations.
+     */
+    @Override
+    public void clearAccounts() {
+        for (ByteBuffer page : slotPages) {
+            for (int offset = 0; offset < page.capacity(); offset += Long.BYTES) {
+                page.putLong(offset, 0L);
+            }
+        }
+        arenaTop.set(0);
+        size.set(0);
+    }
+
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * @return bytes reserved outside the heap for the slot table and the id arena pages allocated so far
+     */
+    public long getOffHeapBytes() {
+        long bytes = slotCount * SLOT_BYTES;
+        for (int i = 0; i < MAX_ARENA_PAGES && arenaPages.get(i) != null; i++) {
+            bytes += ARENA_PAGE_BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the slot holding the account, or -1
+     */
+    private long find(String accountId) {
+        int hash = hash(accountId);
+        for (long slot = home(hash); ; slot = next(slot)) {
+            ByteBuffer page = slotPages[page(slot)];
+            int offset = offset(slot);
+            if (awaitWritten(page, offset) == EMPTY) {
+                return -1;
+            }
+            if (matches(page, offset, hash, accountId)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Waits for an insert that has claimed the slot to publish it, so that its id can be compared.
+     */
+    private static int awaitWritten(ByteBuffer page, int offset) {
+        int state;
+        while ((state = (int) INTS.getAcquire(page, offset + STATE_OFFSET)) == WRITING) {
+            Thread.onSpinWait();
+        }
+        return state;
+    }
+
+    private boolean matches(ByteBuffer page, int offset, int hash, String accountId) {
+        if (page.getInt(offset + HASH_OFFSET) != hash) {
+            return false;
+        }
+        long reference = page.getLong(offset + ID_OFFSET);
+        ByteBuffer arena = arenaPages.get((int) (reference / ARENA_PAGE_BYTES));
+        int position = (int) (reference % ARENA_PAGE_BYTES);
+        int header = arena.getInt(position);
+        int length = header & ~LATIN1_FLAG;
+        if (length != accountId.length()) {
+            return false;
+        }
+        position += Integer.BYTES;
+        if ((header & LATIN1_FLAG) != 0) {
+            for (int i = 0; i < length; i++) {
+                if ((arena.get(position + i) & 0xFF) != accountId.charAt(i)) {
+                    return false;
+                }
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                if (arena.getChar(position + 2 * i) != accountId.charAt(i)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private String readId(long reference) {
+        ByteBuffer arena = arenaPages.get((int) (reference / ARENA_PAGE_BYTES));
+        int position = (int) (reference % ARENA_PAGE_BYTES);
+        int header = arena.getInt(position);
+        int length = header & ~LATIN1_FLAG;
+        position += Integer.BYTES;
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (header & LATIN1_FLAG) != 0
+                    ? (char) (arena.get(position + i) & 0xFF) : arena.getChar(position + 2 * i);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Appends an id to the arena.
+     *
+     * @return the position of the id in the arena
+     */
+    private long storeId(String accountId) {
+        int length = accountId.length();
+        int bytes = idBytes(accountId);
+        boolean latin1 = bytes == Integer.BYTES + length;
+
+        long reference = allocate(bytes);
+        ByteBuffer arena = arenaPage((int) (reference / ARENA_PAGE_BYTES));
+        int position = (int) (reference % ARENA_PAGE_BYTES);
+        arena.putInt(position, latin1 ? length | LATIN1_FLAG : length);
+        position += Integer.BYTES;
+        for (int i = 0; i < length; i++) {
+            if (latin1) {
+                arena.put(position + i, (byte) accountId.charAt(i));
+            } else {
+                arena.putChar(position + 2 * i, accountId.charAt(i));
+            }
+        }
+        return reference;
+    }
+
+    /**
+     * @return the arena bytes the id takes: a header and one byte per char if all are Latin-1, else two
+     */
+    private static int idBytes(String accountId) {
+        int length = accountId.length();
+        boolean latin1 = true;
+        for (int i = 0; i < length && latin1; i++) {
+            latin1 = accountId.charAt(i) <= 0xFF;
+        }
+        int bytes = Integer.BYTES + (latin1 ? length : 2 * length);
+        if (bytes > ARENA_PAGE_BYTES) {
+            throw new IllegalArgumentException("Account id is too long");
+        }
+        return bytes;
+    }
+
+    /**
+     * Bump-allocates arena space that does not straddle a page boundary.
+     */
+    private long allocate(int bytes) {
+        while (true) {
+            long top = arenaTop.get();
+            long pageEnd = (top / ARENA_PAGE_BYTES + 1) * ARENA_PAGE_BYTES;
+            long start = top + bytes <= pageEnd ? top : pageEnd;
+            if (arenaTop.compareAndSet(top, start + bytes)) {
+                return start;
+            }
+        }
+    }
+
+    private ByteBuffer arenaPage(int index) {
+        ByteBuffer page = arenaPages.get(index);
+        if (page == null) {
+            arenaPages.compareAndSet(index, null, ByteBuffer.allocateDirect(ARENA_PAGE_BYTES).order(ByteOrder.nativeOrder()));
+            page = arenaPages.get(index);
+        }
+        return page;
+    }
+
+    /**
+     * Ids that differ in their last characters have {@link String#hashCode()} values that differ in the low
+     * bits only, while {@link #home(int)} uses the high bits: mix all bits (murmur3 finalizer).
+     */
+    private static int hash(String accountId) {
+        int hash = accountId.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Maps a hash onto the slot range without requiring a power-of-two table size.
+     */
+    private long home(int hash) {
+        return ((hash & 0xFFFFFFFFL) * slotCount) >>> 32;
+    }
+
+    private long next(long slot) {
+        return slot + 1 == slotCount ? 0 : slot + 1;
+    }
+
+    private long previous(long slot) {
+        return slot == 0 ? slotCount - 1 : slot - 1;
+    }
+
+    private static int page(long slot) {
+        return (int) (slot >>> SLOTS_PER_PAGE_SHIFT);
+    }
+
+    private static int offset(long slot) {
+        return (int) (slot & (SLOTS_PER_PAGE - 1)) * SLOT_BYTES;
+    }
+
+    /**
+     * View of an account stored in a slot. Balance operations go straight to the slot.
+     */
+    private static final class OffHeapAccount extends Account {
+
+        private final ByteBuffer page;
+        private final int balanceOffset;
+
+        OffHeapAccount(String accountId, ByteBuffer page, int slotOffset) {
+            super(accountId);
+            this.page = page;
+            this.balanceOffset = slotOffset + BALANCE_OFFSET;
+        }
+
+        @Override
+        public long getBalanceMinorUnits() {
+            return (long) LONGS.getVolatile(page, balanceOffset);
+        }
+
+        @Override
+        public void setBalanceMinorUnits(long balanceMinorUnits) {
+            LONGS.setVolatile(page, balanceOffset, balanceMinorUnits);
+        }
+
+        @Override
+        public boolean tryDebit(long amount) {
+            long current;
+            do {
+                current = (long) LONGS.getVolatile(page, balanceOffset);
+                if (current < amount) {
+                    return false;
+                }
+            } while (!LONGS.compareAndSet(page, balanceOffset, current, current - amount));
+            return true;
+        }
+
+        @Override
+        public void credit(long amount) {
+            long current;
+            do {
+                current = (long) LONGS.getVolatile(page, balanceOffset);
+            } while (!LONGS.compareAndSet(page, balanceOffset, current, Math.addExact(current, amount)));
+        }
+
+        /**
+         * Sub-balances would live in this view, which is not kept, rather than in the slot.
+         */
+        @Override
+        public boolean splitBalance(int count) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.dws.challenge.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Compact binary snapshot of account balances. A snapshot file is a sequence of chunks followed by an
+ * index of the chunks and a fixed-size trailer:
+ * <pre>
+ * chunk    := entry*                                  entry := [int idLength][UTF-8 id][long balance]
+ * index    := ([long offset][int length][int accounts])*
+ * trailer  := [long coveredJournalSegment][long indexOffset][int chunkCount][int MAGIC]
+ * </pre>
+ * The index lets a restore parse the chunks in parallel straight from memory-mapped regions.
+ */
+final class SnapshotFile {
+
+    private static final int MAGIC = 0x41435331;
+    private static final int TRAILER_BYTES = 2 * Long.BYTES + 2 * Integer.BYTES;
+    private static final int INDEX_ENTRY_BYTES = Long.BYTES + 2 * Integer.BYTES;
+    private static final int ACCOUNTS_PER_CHUNK = 65_536;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d{16})\\.snap");
+
+    interface EntryConsumer {
+        void accept(String accountId, long balanceMinorUnits);
+    }
+
+    private SnapshotFile() {
+    }
+
+    static Path path(Path directory, long coveredSegment) {
+        return directory.resolve(String.format("snapshot-%016d.snap", coveredSegment));
+    }
+
+    /**
+     * @return the journal segments covered by the snapshots in the directory, in ascending order
+     */
+    static List<Long> list(Path directory) throws IOException {
+        List<Long> snapshots = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return snapshots;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = SNAPSHOT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    snapshots.add(Long.parseLong(matcher.group(1)));
+                }
+            });
+        }
+        snapshots.sort(null);
+        return snapshots;
+    }
+
+    /**
+     * Reads every entry of a snapshot in file order on the calling thread.
+     *
+     * @return the number of entries read
+     */
+    static long read(Path file, EntryConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[][] index = readIndex(channel, file);
+            long accounts = 0;
+            for (long[] chunk : index) {
+                accounts += readChunk(channel, chunk, consumer);
+            }
+            return accounts;
+        }
+    }
+
+    /**
+     * Reads the chunks of a snapshot in parallel. The consumer is called concurrently and must be thread-safe.
+     *
+     * @return the number of entries read
+     */
+    static long readParallel(Path file, int threads, EntryConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[][] index = readIndex(channel, file);
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, index.length)));
+            try {
+                List<Callable<Long>> tasks = new ArrayList<>(index.length);
+                for (long[] chunk : index) {
+                    tasks.add(() -> readChunk(channel, chunk, consumer));
+                }
+                long accounts = 0;
+                for (Future<Long> result : executor.invokeAll(tasks)) {
+                    accounts += result.get();
+                }
+                return accounts;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while restoring " + file, e);
+            } catch (ExecutionException e) {
+                throw new IOException("Failed to restore " + file, e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static long[][] readIndex(FileChannel channel, Path file) throws IOException {
+        long size = channel.size();
+        if (size < TRAILER_BYTES) {
+            throw new IOException("Snapshot " + file + " is truncated");
+        }
+        ByteBuffer trailer = readFully(channel, size - TRAILER_BYTES, TRAILER_BYTES);
+        trailer.getLong();
+        long indexOffset = trailer.getLong();
+        int chunkCount = trailer.getInt();
+        if (trailer.getInt() != MAGIC) {
+            throw new IOException("Snapshot " + file + " has no valid trailer");
+        }
+
+        ByteBuffer indexBuffer = readFully(channel, indexOffset, chunkCount * INDEX_ENTRY_BYTES);
+        long[][] index = new long[chunkCount][];
+        for (int i = 0; i < chunkCount; i++) {
+            index[i] = new long[]{indexBuffer.getLong(), indexBuffer.getInt(), indexBuffer.getInt()};
+        }
+        return index;
+    }
+
+    private static long readChunk(FileChannel channel, long[] chunk, EntryConsumer consumer) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk[0], chunk[1]);
+        byte[] id = new byte[64];
+        for (long i = 0; i < chunk[2]; i++) {
+            int length = buffer.getInt();
+            if (length > id.length) {
+                id = new byte[length];
+            }
+            buffer.get(id, 0, length);
+            consumer.accept(new String(id, 0, length, StandardCharsets.UTF_8), buffer.getLong());
+        }
+        return chunk[2];
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of snapshot");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Streams entries into a new snapshot file through a direct buffer.
+     */
+    static final class Writer implements Closeable {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+        private final List<long[]> index = new ArrayList<>();
+        private long position;
+        private long chunkStart;
+        private int chunkAccounts;
+
+        Writer(Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+        }
+
+        void write(String accountId, long balanceMinorUnits) throws IOException {
+            byte[] id = accountId.getBytes(StandardCharsets.UTF_8);
+            int entryBytes = Integer.BYTES + id.length + Long.BYTES;
+            if (buffer.remaining() < entryBytes) {
+                flush();
+            }
+            if (entryBytes > buffer.capacity()) {
+                ByteBuffer entry = ByteBuffer.allocate(entryBytes).putInt(id.length).put(id).putLong(balanceMinorUnits);
+                writeFully(entry.flip());
+            } else {
+                buffer.putInt(id.length).put(id).putLong(balanceMinorUnits);
+            }
+            position += entryBytes;
+
+            if (++chunkAccounts == ACCOUNTS_PER_CHUNK) {
+                endChunk();
+            }
+        }
+
+        /**
+         * Writes the index and trailer and forces the file to disk.
+         */
+        void finish(long coveredSegment) throws IOException {
+            endChunk();
+            long indexOffset = position;
+            for (long[] chunk : index) {
+                if (buffer.remaining() < INDEX_ENTRY_BYTES) {
+                    flush();
+                }
+                buffer.putLong(chunk[0]).putInt((int) chunk[1]).putInt((int) chunk[2]);
+            }
+            if (buffer.remaining() < TRAILER_BYTES) {
+                flush();
+            }
+            buffer.putLong(coveredSegment).putLong(indexOffset).putInt(index.size()).putInt(MAGIC);
+            flush();
+            channel.force(true);
+        }
+
+        private void endChunk() {
+            if (chunkAccounts > 0) {
+                index.add(new long[]{chunkStart, position - chunkStart, chunkAccounts});
+                chunkStart = position;
+                chunkAccounts = 0;
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            writeFully(buffer);
+            buffer.clear();
+        }
+
+        private void writeFully(ByteBuffer source) throws IOException {
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
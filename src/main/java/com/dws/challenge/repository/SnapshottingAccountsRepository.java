@@ -0,0 +1,218 @@
+package com.dws.challenge.repository;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.journal.JournalFormat;
+import com.dws.challenge.journal.JournalVisitor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decorates an {@link AccountsRepository} with point-in-time snapshots, so that a restart loads the
+ * newest snapshot and only replays the journal segments written after it.
+ * <p>
+ * Snapshots are not taken from the live accounts, whose balances keep changing while they are read.
+ * Instead, a background task folds the closed journal segments into the previous snapshot and writes
+ * the result as a new snapshot covering exactly those segments, after which the folded segments are
+ * deleted. Transfers are never paused, and a restore costs one pass over all accounts plus the journal
+ * tail, however many transfers the accounts have seen.
+ */
+@Slf4j
+public class SnapshottingAccountsRepository implements AccountsRepository {
+
+    private final AccountsRepository delegate;
+    private final Path snapshotDirectory;
+    private final Path journalDirectory;
+    private final long intervalSeconds;
+    private final int restoreThreads;
+
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private volatile long snapshotSegment;
+    private ScheduledExecutorService scheduler;
+
+    public SnapshottingAccountsRepository(AccountsRepository delegate, Path snapshotDirectory, Path journalDirectory,
+                                          long intervalSeconds, int restoreThreads) {
+        this.delegate = delegate;
+        this.snapshotDirectory = snapshotDirectory;
+        this.journalDirectory = journalDirectory;
+        this.intervalSeconds = intervalSeconds;
+        this.restoreThreads = restoreThreads > 0 ? restoreThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Loads the newest snapshot into the delegate and starts taking snapshots periodically.
+     */
+    @PostConstruct
+    public void restore() throws IOException {
+        Files.createDirectories(snapshotDirectory);
+        List<Long> snapshots = SnapshotFile.list(snapshotDirectory);
+        if (!snapshots.isEmpty()) {
+            long segment = snapshots.get(snapshots.size() - 1);
+            long started = System.nanoTime();
+            long accounts = SnapshotFile.readParallel(SnapshotFile.path(snapshotDirectory, segment), restoreThreads,
+                    (accountId, balance) -> delegate.createAccount(Account.ofMinorUnits(accountId, balance)));
+            snapshotSegment = segment;
+            log.info("Restored {} accounts from snapshot covering journal segment {} in {} ms using {} threads",
+                    accounts, segment, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), restoreThreads);
+        }
+
+        if (intervalSeconds > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "account-snapshotter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::snapshotQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the last journal segment whose effects are contained in the newest snapshot, 0 if there is none
+     */
+    public long getSnapshotSegment() {
+        return snapshotSegment;
+    }
+
+    /**
+     * Folds every closed journal segment not yet covered into a new snapshot.
+     *
+     * @return false if there was nothing to fold
+     */
+    public boolean snapshot() throws IOException {
+        snapshotLock.lock();
+        try {
+            List<Long> segments = JournalFormat.listSegments(journalDirectory);
+            long previous = snapshotSegment;
+            // The newest segment is the one the journal is appending to
+            List<Long> closed = segments.stream()
+                    .limit(Math.max(0, segments.size() - 1))
+                    .filter(segment -> segment > previous)
+                    .toList();
+            if (closed.isEmpty()) {
+                return false;
+            }
+
+            long started = System.nanoTime();
+            Map<String, long[]> balances = new HashMap<>();
+            if (previous > 0) {
+                SnapshotFile.read(SnapshotFile.path(snapshotDirectory, previous),
+                        (accountId, balance) -> balances.put(accountId, new long[]{balance}));
+            }
+            JournalVisitor folder = new JournalVisitor() {
+                @Override
+                public void accountCreated(String accountId, long balanceMinorUnits) {
+                    balances.put(accountId, new long[]{balanceMinorUnits});
+                }
+
+                @Override
+                public void transfer(String fromAccountId, String toAccountId, long amountMinorUnits) {
+                    balances.get(fromAccountId)[0] -= amountMinorUnits;
+                    balances.get(toAccountId)[0] += amountMinorUnits;
+                }
+            };
+            for (long segment : closed) {
+                JournalFormat.readSegment(JournalFormat.segmentPath(journalDirectory, segment), folder);
+            }
+
+            long covered = closed.get(closed.size() - 1);
+            Path target = SnapshotFile.path(snapshotDirectory, covered);
+            Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+            try (SnapshotFile.Writer writer = new SnapshotFile.Writer(temporary)) {
+                for (Map.Entry<String, long[]> entry : balances.entrySet()) {
+                    writer.write(entry.getKey(), entry.getValue()[0]);
+                }
+                writer.finish(covered);
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+            snapshotSegment = covered;
+
+            for (long snapshot : SnapshotFile.list(snapshotDirectory)) {
+                if (snapshot < covered) {
+                    Files.deleteIfExists(SnapshotFile.path(snapshotDirectory, snapshot));
+                }
+            }
+            for (long segment : closed) {
+                Files.deleteIfExists(JournalFormat.segmentPath(journalDirectory, segment));
+            }
+
+            log.info("Wrote snapshot of {} accounts covering journal segment {} in {} ms",
+                    balances.size(), covered, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            return true;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to write account snapshot", e);
+        }
+    }
+
+    @Override
+    public void createAccount(Account account) throws DuplicateAccountIdException {
+        delegate.createAccount(account);
+    }
+
+    @Override
+    public List<Account> createAccounts(List<Account> accounts) {
+        return delegate.createAccounts(accounts);
+    }
+
+    @Override
+    public void checkCanCreate(List<Account> accounts) {
+        delegate.checkCanCreate(accounts);
+    }
+
+    @Override
+    public Account getAccount(String accountId) {
+        return delegate.getAccount(accountId);
+    }
+
+    @Override
+    public int getHandle(String accountId) {
+        return delegate.getHandle(accountId);
+    }
+
+    @Override
+    public Account getAccount(int handle) {
+        return delegate.getAccount(handle);
+    }
+
+    @Override
+    public long getBalanceMinorUnits(String accountId) {
+        return delegate.getBalanceMinorUnits(accountId);
+    }
+
+    @Override
+    public void clearAccounts() {
+        delegate.clearAccounts();
+    }
+
+    @Override
+    public void forEachAccount(AccountVisitor visitor) {
+        delegate.forEachAccount(visitor);
+    }
+}
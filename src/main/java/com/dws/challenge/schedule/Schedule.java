@@ -0,0 +1,61 @@
+package com.dws.challenge.schedule;
+
+import com.dws.challenge.domain.Money;
+import com.dws.challenge.dto.ScheduledTransferResponse;
+
+import java.time.Instant;
+
+/**
+ * A scheduled transfer: its wheel links, and its links in the list of schedules of its source account.
+ * Guarded by the scheduler's lock, except {@link #lastFailure}.
+ */
+final class Schedule extends TimingWheel.Timer {
+
+    final long id;
+    final String accountFromId;
+    final String accountToId;
+    final long amountMinorUnits;
+
+    /**
+     * 0 for a transfer that runs once.
+     */
+    final long intervalMillis;
+
+    long nextRunMillis;
+
+    /**
+     * Set once cancelled or finished, so that a schedule already due is skipped.
+     */
+    boolean removed;
+
+    Schedule previousOfAccount;
+    Schedule nextOfAccount;
+
+    volatile String lastFailure;
+
+    Schedule(long id, String accountFromId, String accountToId, long amountMinorUnits, long nextRunMillis,
+             long intervalMillis) {
+        this.id = id;
+        this.accountFromId = accountFromId;
+        this.accountToId = accountToId;
+        this.amountMinorUnits = amountMinorUnits;
+        this.nextRunMillis = nextRunMillis;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * @return the first run after {@code nowMillis}, or -1 if the schedule does not repeat
+     */
+    long runAfter(long nowMillis) {
+        if (intervalMillis == 0) {
+            return -1;
+        }
+        long missed = Math.max(0, (nowMillis - nextRunMillis) / intervalMillis);
+        return nextRunMillis + (missed + 1) * intervalMillis;
+    }
+
+    ScheduledTransferResponse toResponse() {
+        return new ScheduledTransferResponse(id, accountFromId, accountToId, Money.toBigDecimal(amountMinorUnits),
+                Instant.ofEpochMilli(nextRunMillis), intervalMillis == 0 ? null : intervalMillis / 1000, lastFailure);
+    }
+}
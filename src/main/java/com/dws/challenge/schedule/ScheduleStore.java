@@ -0,0 +1,211 @@
+package com.dws.challenge.schedule;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Log of schedule changes, {@code schedules.log} in the schedules directory. Records are a type byte
+ * followed by:
+ * <ul>
+ *     <li>{@code CREATED: [long id][long amount][long nextRun][long interval][string from][string to]}</li>
+ *     <li>{@code REMOVED: [long id]}, for a schedule cancelled or run for the last time</li>
+ *     <li>{@code ADVANCED: [long id][long nextRun]}</li>
+ * </ul>
+ * Strings are {@code [int length][UTF-8 bytes]} and times are epoch milliseconds. A record cut short is
+ * the tail of a write interrupted by a crash and is dropped when the log is loaded. Loading also rewrites
+ * the log as one {@code CREATED} record per live schedule, as does {@link #compact(Collection)} once
+ * most records are obsolete, preceded by a {@code REMOVED} record of the highest id ever used so that
+ * ids are not reused.
+ * <p>
+ * Not thread-safe; records are buffered until {@link #flush()}.
+ */
+@Slf4j
+final class ScheduleStore implements Closeable {
+
+    private static final byte CREATED = 1;
+    private static final byte REMOVED = 2;
+    private static final byte ADVANCED = 3;
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final Path file;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+    private FileChannel channel;
+    private long records;
+    private long maxId;
+
+    ScheduleStore(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.file = directory.resolve("schedules.log");
+    }
+
+    /**
+     * Replays the log.
+     *
+     * @return the live schedules by id, in id order
+     */
+    Map<Long, Schedule> load() throws IOException {
+        Map<Long, Schedule> schedules = new LinkedHashMap<>();
+        if (!Files.exists(file)) {
+            return schedules;
+        }
+        try (FileChannel reader = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer contents = reader.map(FileChannel.MapMode.READ_ONLY, 0, reader.size());
+            while (contents.hasRemaining()) {
+                int start = contents.position();
+                try {
+                    byte type = contents.get();
+                    long id = contents.getLong();
+                    maxId = Math.max(maxId, id);
+                    switch (type) {
+                        case CREATED -> {
+                            long amount = contents.getLong();
+                            long nextRun = contents.getLong();
+                            long interval = contents.getLong();
+                            String from = getString(contents);
+                            String to = getString(contents);
+                            schedules.put(id, new Schedule(id, from, to, amount, nextRun, interval));
+                        }
+                        case REMOVED -> schedules.remove(id);
+                        case ADVANCED -> {
+                            long nextRun = contents.getLong();
+                            Schedule schedule = schedules.get(id);
+                            if (schedule != null) {
+                                schedule.nextRunMillis = nextRun;
+                            }
+                        }
+                        default -> throw new IllegalArgumentException("Unknown record type " + type);
+                    }
+                } catch (BufferUnderflowException | IllegalArgumentException e) {
+                    log.warn("Truncated or corrupt record at offset {} of {}, ignoring the rest", start, file);
+                    break;
+                }
+            }
+        }
+        log.info("Loaded {} schedules from {}", schedules.size(), file);
+        return schedules;
+    }
+
+    void created(Schedule schedule) throws IOException {
+        byte[] from = schedule.accountFromId.getBytes(StandardCharsets.UTF_8);
+        byte[] to = schedule.accountToId.getBytes(StandardCharsets.UTF_8);
+        reserve(1 + 4 * Long.BYTES + 2 * Integer.BYTES + from.length + to.length);
+        maxId = Math.max(maxId, schedule.id);
+        buffer.put(CREATED)
+                .putLong(schedule.id)
+                .putLong(schedule.amountMinorUnits)
+                .putLong(schedule.nextRunMillis)
+                .putLong(schedule.intervalMillis)
+                .putInt(from.length).put(from)
+                .putInt(to.length).put(to);
+        records++;
+    }
+
+    void removed(Schedule schedule) throws IOException {
+        removed(schedule.id);
+    }
+
+    private void removed(long id) throws IOException {
+        reserve(1 + Long.BYTES);
+        buffer.put(REMOVED).putLong(id);
+        records++;
+    }
+
+    void advanced(Schedule schedule) throws IOException {
+        reserve(1 + 2 * Long.BYTES);
+        buffer.put(ADVANCED).putLong(schedule.id).putLong(schedule.nextRunMillis);
+        records++;
+    }
+
+    /**
+     * Writes the buffered records and forces them to disk.
+     */
+    void flush() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+        write();
+        channel.force(false);
+    }
+
+    long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * @return the highest id in the log, live or not
+     */
+    long getMaxId() {
+        return maxId;
+    }
+
+    /**
+     * Replaces the log by one {@code CREATED} record per schedule.
+     */
+    void compact(Collection<Schedule> schedules) throws IOException {
+        flush();
+        if (channel != null) {
+            channel.close();
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        records = 0;
+        removed(maxId);
+        for (Schedule schedule : schedules) {
+            created(schedule);
+        }
+        flush();
+        channel.close();
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            flush();
+            channel.close();
+        }
+    }
+
+    private void reserve(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            write();
+        }
+        if (bytes > buffer.capacity()) {
+            throw new IllegalArgumentException("Schedule record of " + bytes + " bytes does not fit the buffer");
+        }
+    }
+
+    private void write() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static String getString(ByteBuffer contents) {
+        int length = contents.getInt();
+        if (length < 0 || length > contents.remaining()) {
+            throw new IllegalArgumentException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        contents.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
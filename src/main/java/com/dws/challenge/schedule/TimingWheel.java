@@ -0,0 +1,158 @@
+package com.dws.challenge.schedule;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel: four levels of 256 slots, level {@code n} slots spanning {@code 256^n} ticks,
+ * which covers {@code 2^32} ticks ahead (thirteen years at 100 ms ticks); timers further out wait in the
+ * last slot of the top level and are placed again when it comes round.
+ * <p>
+ * A slot is a circular doubly-linked list threaded through the timers themselves, so adding and
+ * cancelling a timer are O(1) and allocate nothing. A timer sits in the level whose slots are as fine as
+ * its distance from the current tick allows; whenever the current tick crosses into the next slot of an
+ * upper level, that slot's timers are placed again, moving down until they expire from level 0. Every
+ * timer is therefore moved at most once per level.
+ * <p>
+ * Not thread-safe.
+ */
+final class TimingWheel {
+
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    /**
+     * A timer; subclassed by what it times.
+     */
+    static class Timer {
+
+        Timer previous;
+        Timer next;
+        long deadlineTick;
+
+        boolean isScheduled() {
+            return next != null;
+        }
+    }
+
+    /**
+     * Sentinel of every slot's list, by level then slot.
+     */
+    private final Timer[][] slots = new Timer[LEVELS][SLOTS];
+    private long currentTick;
+    private int size;
+
+    TimingWheel(long currentTick) {
+        this.currentTick = currentTick;
+        for (Timer[] level : slots) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                Timer sentinel = new Timer();
+                sentinel.previous = sentinel;
+                sentinel.next = sentinel;
+                level[slot] = sentinel;
+            }
+        }
+    }
+
+    long getCurrentTick() {
+        return currentTick;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return false, leaving the timer out, if the deadline is not after the current tick
+     */
+    boolean add(Timer timer, long deadlineTick) {
+        timer.deadlineTick = deadlineTick;
+        if (deadlineTick <= currentTick) {
+            return false;
+        }
+        place(timer);
+        size++;
+        return true;
+    }
+
+    void cancel(Timer timer) {
+        if (timer.isScheduled()) {
+            unlink(timer);
+            size--;
+        }
+    }
+
+    /**
+     * Moves the current tick forward to {@code tick}, handing every timer whose deadline is passed on the
+     * way to {@code expired}, in deadline order.
+     */
+    void advance(long tick, Consumer<Timer> expired) {
+        while (currentTick < tick) {
+            if (size == 0) {
+                currentTick = tick;
+                return;
+            }
+            currentTick++;
+
+            // Upper levels first: their timers may land in the lower slots cascaded next
+            int crossed = 0;
+            while (crossed < LEVELS - 1 && (currentTick & ((1L << (SLOT_BITS * (crossed + 1))) - 1)) == 0) {
+                crossed++;
+            }
+            for (int level = crossed; level >= 1; level--) {
+                cascade(slots[level][slotOf(currentTick, level)], expired);
+            }
+            Timer sentinel = slots[0][slotOf(currentTick, 0)];
+            while (sentinel.next != sentinel) {
+                Timer timer = sentinel.next;
+                unlink(timer);
+                size--;
+                expired.accept(timer);
+            }
+        }
+    }
+
+    private void cascade(Timer sentinel, Consumer<Timer> expired) {
+        Timer timer = sentinel.next;
+        sentinel.previous = sentinel;
+        sentinel.next = sentinel;
+        while (timer != sentinel) {
+            Timer following = timer.next;
+            timer.previous = null;
+            timer.next = null;
+            if (timer.deadlineTick <= currentTick) {
+                size--;
+                expired.accept(timer);
+            } else {
+                place(timer);
+            }
+            timer = following;
+        }
+    }
+
+    private void place(Timer timer) {
+        long delta = Math.min(timer.deadlineTick - currentTick, MAX_DELTA);
+        int level = 0;
+        while (level < LEVELS - 1 && delta >>> (SLOT_BITS * (level + 1)) != 0) {
+            level++;
+        }
+        Timer sentinel = slots[level][slotOf(currentTick + delta, level)];
+        timer.previous = sentinel.previous;
+        timer.next = sentinel;
+        sentinel.previous.next = timer;
+        sentinel.previous = timer;
+    }
+
+    private static int slotOf(long tick, int level) {
+        return (int) (tick >>> (SLOT_BITS * level)) & SLOT_MASK;
+    }
+
+    private static void unlink(Timer timer) {
+        timer.previous.next = timer.next;
+        timer.next.previous = timer.previous;
+        timer.previous = null;
+        timer.next = null;
+    }
+}
@@ -0,0 +1,351 @@
+package com.dws.challenge.schedule;
+
+import com.dws.challenge.cluster.AccountSharding;
+import com.dws.challenge.domain.Money;
+import com.dws.challenge.dto.ScheduledTransferRequest;
+import com.dws.challenge.dto.ScheduledTransferResponse;
+import com.dws.challenge.dto.TransferRequest;
+import com.dws.challenge.exception.AccountNotFoundException;
+import com.dws.challenge.exception.InvalidTransferException;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.TransferService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs future-dated and recurring transfers ({@code schedules.enabled=true}).
+ * <p>
+ * Pending schedules sit in a {@link TimingWheel} ticking every {@code schedules.tick-ms}, so creating and
+ * cancelling one is O(1) however many are pending. Schedules falling due join a queue, which a ticker
+ * thread feeds to {@link TransferService} a batch per tick, sized so that the queue drains evenly over
+ * {@code schedules.spread-window-ms} instead of all at once when thousands of standing orders share a
+ * due time. At most {@code schedules.max-in-flight} scheduled transfers run at a time.
+ * <p>
+ * Schedules are kept in a {@link ScheduleStore} in {@code schedules.directory} and survive restarts;
+ * runs missed while the service was down are made once, right after startup. A run is logged (the
+ * schedule advanced or removed) and forced to disk before its transfer is submitted, so a crash can lose
+ * the runs of the batch being submitted but never repeat one.
+ */
+@Component
+@ConditionalOnProperty(name = "schedules.enabled", havingValue = "true")
+@Slf4j
+public class TransferScheduler {
+
+    private static final int MAX_LIST_SIZE = 1000;
+
+    private final AccountsService accountsService;
+    private final TransferService transferService;
+    private final AccountSharding accountSharding;
+    private final Path directory;
+    private final long tickMillis;
+    private final long spreadWindowMillis;
+    private final int maxInFlight;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Guarded by lock
+    private final Map<Long, Schedule> schedules = new HashMap<>();
+    private final Map<String, Schedule> schedulesOfAccount = new HashMap<>();
+    private final ArrayDeque<Schedule> due = new ArrayDeque<>();
+    private TimingWheel wheel;
+    private ScheduleStore store;
+    private long nextId = 1;
+
+    /**
+     * When the current queue of due schedules must be drained by; 0 while it is empty. Ticker thread only.
+     */
+    private long drainDeadlineMillis;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile boolean running;
+    private Thread ticker;
+
+    @Autowired
+    public TransferScheduler(AccountsService accountsService, TransferService transferService,
+                             AccountSharding accountSharding,
+                             @Value("${schedules.directory:data/schedules}") String directory,
+                             @Value("${schedules.tick-ms:100}") long tickMillis,
+                             @Value("${schedules.spread-window-ms:60000}") long spreadWindowMillis,
+                             @Value("${schedules.max-in-flight:1000}") int maxInFlight) {
+        this.accountsService = accountsService;
+        this.transferService = transferService;
+        this.accountSharding = accountSharding;
+        this.directory = Path.of(directory);
+        this.tickMillis = tickMillis;
+        this.spreadWindowMillis = spreadWindowMillis;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Loads the stored schedules and starts ticking.
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        lock.lock();
+        try {
+            store = new ScheduleStore(directory);
+            Map<Long, Schedule> loaded = store.load();
+            store.compact(loaded.values());
+            nextId = store.getMaxId() + 1;
+            long now = System.currentTimeMillis();
+            wheel = new TimingWheel(now / tickMillis);
+            for (Schedule schedule : loaded.values()) {
+                add(schedule);
+            }
+        } finally {
+            lock.unlock();
+        }
+        running = true;
+        ticker = new Thread(this::tick, "transfer-scheduler");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        running = false;
+        ticker.interrupt();
+        ticker.join();
+        lock.lock();
+        try {
+            store.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @throws AccountNotFoundException if either account does not exist
+     * @throws InvalidTransferException if both accounts are the same
+     */
+    public ScheduledTransferResponse schedule(ScheduledTransferRequest request) {
+        if (request.getAccountFromId().equals(request.getAccountToId())) {
+            throw new InvalidTransferException("Cannot transfer money to the same account");
+        }
+        requireAccount(request.getAccountFromId());
+        requireAccount(request.getAccountToId());
+        long amountMinorUnits;
+        try {
+            amountMinorUnits = Money.toMinorUnits(request.getAmount());
+        } catch (ArithmeticException e) {
+            throw new InvalidTransferException("Transfer amount must have at most " + Money.SCALE
+                    + " decimal places and fit in the supported range");
+        }
+        long intervalMillis = request.getIntervalSeconds() == null ? 0
+                : TimeUnit.SECONDS.toMillis(request.getIntervalSeconds());
+
+        lock.lock();
+        try {
+            Schedule schedule = new Schedule(nextId++, request.getAccountFromId(), request.getAccountToId(),
+                    amountMinorUnits, request.getRunAt().toEpochMilli(), intervalMillis);
+            store.created(schedule);
+            store.flush();
+            add(schedule);
+            return schedule.toResponse();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return false if there is no such schedule
+     */
+    public boolean cancel(long id) {
+        lock.lock();
+        try {
+            Schedule schedule = schedules.get(id);
+            if (schedule == null) {
+                return false;
+            }
+            store.removed(schedule);
+            store.flush();
+            remove(schedule);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the schedule, or {@code null}
+     */
+    public ScheduledTransferResponse get(long id) {
+        lock.lock();
+        try {
+            Schedule schedule = schedules.get(id);
+            return schedule == null ? null : schedule.toResponse();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return up to 1000 schedules debiting the account, newest first
+     */
+    public List<ScheduledTransferResponse> list(String accountFromId) {
+        List<ScheduledTransferResponse> list = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Schedule schedule = schedulesOfAccount.get(accountFromId);
+                 schedule != null && list.size() < MAX_LIST_SIZE; schedule = schedule.nextOfAccount) {
+                list.add(schedule.toResponse());
+            }
+        } finally {
+            lock.unlock();
+        }
+        return list;
+    }
+
+    public int getScheduledCount() {
+        lock.lock();
+        try {
+            return schedules.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void requireAccount(String accountId) {
+        if (accountSharding.isLocal(accountId) && accountsService.getAccount(accountId) == null) {
+            throw AccountNotFoundException.forAccount(accountId);
+        }
+    }
+
+    /**
+     * Registers a new or loaded schedule.
+     */
+    private void add(Schedule schedule) {
+        schedules.put(schedule.id, schedule);
+        Schedule head = schedulesOfAccount.put(schedule.accountFromId, schedule);
+        if (head != null) {
+            head.previousOfAccount = schedule;
+            schedule.nextOfAccount = head;
+        }
+        arm(schedule);
+    }
+
+    private void arm(Schedule schedule) {
+        if (!wheel.add(schedule, Math.ceilDiv(schedule.nextRunMillis, tickMillis))) {
+            due.add(schedule);
+        }
+    }
+
+    private void remove(Schedule schedule) {
+        schedule.removed = true;
+        wheel.cancel(schedule);
+        schedules.remove(schedule.id);
+        if (schedule.previousOfAccount != null) {
+            schedule.previousOfAccount.nextOfAccount = schedule.nextOfAccount;
+        } else if (schedule.nextOfAccount != null) {
+            schedulesOfAccount.put(schedule.accountFromId, schedule.nextOfAccount);
+        } else {
+            schedulesOfAccount.remove(schedule.accountFromId);
+        }
+        if (schedule.nextOfAccount != null) {
+            schedule.nextOfAccount.previousOfAccount = schedule.previousOfAccount;
+        }
+    }
+
+    private void tick() {
+        List<Schedule> batch = new ArrayList<>();
+        while (running) {
+            long now = System.currentTimeMillis();
+            try {
+                takeBatch(now, batch);
+                for (Schedule schedule : batch) {
+                    run(schedule);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("Scheduled transfers failed to run", e);
+            }
+            batch.clear();
+            try {
+                Thread.sleep(tickMillis - System.currentTimeMillis() % tickMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Moves the schedules falling due to the queue, then takes this tick's share of the queue: logs each
+     * schedule's run and arms its next one.
+     */
+    private void takeBatch(long now, List<Schedule> batch) throws IOException {
+        lock.lock();
+        try {
+            wheel.advance(now / tickMillis, timer -> due.add((Schedule) timer));
+            if (due.isEmpty()) {
+                drainDeadlineMillis = 0;
+                return;
+            }
+            if (drainDeadlineMillis == 0) {
+                drainDeadlineMillis = now + spreadWindowMillis;
+            }
+            long ticksLeft = Math.max(1, (drainDeadlineMillis - now) / tickMillis);
+            long share = Math.min(Math.ceilDiv(due.size(), ticksLeft), maxInFlight - inFlight.get());
+            while (batch.size() < share && !due.isEmpty()) {
+                Schedule schedule = due.poll();
+                if (schedule.removed) {
+                    continue;
+                }
+                batch.add(schedule);
+                long nextRun = schedule.runAfter(now);
+                if (nextRun < 0) {
+                    store.removed(schedule);
+                    remove(schedule);
+                } else {
+                    schedule.nextRunMillis = nextRun;
+                    store.advanced(schedule);
+                    arm(schedule);
+                }
+            }
+            store.flush();
+            if (store.getRecordCount() > 2L * schedules.size() + 100_000) {
+                store.compact(schedules.values());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run(Schedule schedule) {
+        inFlight.incrementAndGet();
+        TransferRequest request = new TransferRequest(schedule.accountFromId, schedule.accountToId,
+                Money.toBigDecimal(schedule.amountMinorUnits));
+        transferService.transferMoneyAsync(request).whenComplete((ignored, failure) -> {
+            inFlight.decrementAndGet();
+            if (failure != null) {
+                Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                        ? failure.getCause() : failure;
+                schedule.lastFailure = cause.getMessage();
+                log.warn("Scheduled transfer {} from {} to {} failed: {}", schedule.id, schedule.accountFromId,
+                        schedule.accountToId, cause.getMessage());
+            } else {
+                schedule.lastFailure = null;
+            }
+        });
+    }
+}
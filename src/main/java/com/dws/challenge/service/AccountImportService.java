@@ -0,0 +1,328 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.cluster.AccountSharding;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.Money;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates accounts in bulk from a stream of NDJSON objects ({@code {"accountId":"Id-1","balance":100}}
+ * per line) or CSV rows ({@code accountId,balance}, with an optional header row).
+ * <p>
+ * The calling thread parses the stream row by row and cuts it into batches; worker threads validate
+ * each batch against the same bean validation constraints as {@code POST /v1/accounts} and insert it with
+ * {@link AccountsService#createAccounts(List)}. At most two batches per worker are in flight, so the
+ * stream is never buffered beyond that. Problems are reported to a {@link Listener} on the calling
+ * thread, batch by batch in input order.
+ * <p>
+ * A row that cannot be read as an account is rejected and the import goes on, except for malformed JSON:
+ * the parser cannot find the start of the next row, so the import stops after the rows before it. In a
+ * cluster, rows of accounts owned by other nodes are rejected.
+ */
+@Service
+@Slf4j
+public class AccountImportService {
+
+    public enum Format {
+        NDJSON,
+        CSV
+    }
+
+    /**
+     * Receives the rows that were not imported, on the thread calling
+     * {@link #importAccounts(InputStream, Format, Listener)}.
+     */
+    public interface Listener {
+
+        void duplicate(long line, String accountId);
+
+        void rejected(long line, String accountId, List<String> errors);
+    }
+
+    /**
+     * @param error why the import stopped before the end of the stream, or {@code null}
+     */
+    public record Summary(long created, long duplicates, long rejected, String error) {
+    }
+
+    private record Row(long line, String accountId, Account account, String error) {
+    }
+
+    private record Problem(long line, String accountId, List<String> errors) {
+
+        boolean isDuplicate() {
+            return errors == null;
+        }
+    }
+
+    private record BatchResult(int created, List<Problem> problems) {
+    }
+
+    private final AccountsService accountsService;
+    private final AccountSharding accountSharding;
+    private final Validator validator;
+    private final JsonFactory jsonFactory;
+    private final int batchSize;
+    private final int maxBatchesInFlight;
+    private final ExecutorService workers;
+
+    @Autowired
+    public AccountImportService(AccountsService accountsService, AccountSharding accountSharding,
+                                Validator validator, ObjectMapper objectMapper,
+                                @Value("${accounts.import.batch-size:10000}") int batchSize,
+                                @Value("${accounts.import.threads:0}") int threads) {
+        this.accountsService = accountsService;
+        this.accountSharding = accountSharding;
+        this.validator = validator;
+        this.jsonFactory = objectMapper.getFactory();
+        this.batchSize = batchSize;
+        int workerCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.maxBatchesInFlight = 2 * workerCount;
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "account-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Reads the stream to its end and creates the accounts it lists. Returns once every batch is inserted.
+     */
+    public Summary importAccounts(InputStream input, Format format, Listener listener) throws IOException {
+        Importer importer = new Importer(listener);
+        long started = System.nanoTime();
+        try {
+            try {
+                if (format == Format.CSV) {
+                    readCsv(input, importer);
+                } else {
+                    readNdjson(input, importer);
+                }
+            } catch (JsonProcessingException e) {
+                // The rows before the malformed one are still imported
+                String line = e.getLocation() == null ? "" : " at line " + e.getLocation().getLineNr();
+                importer.error = "Malformed JSON" + line + ": " + e.getOriginalMessage();
+            }
+            importer.finish();
+        } catch (CompletionException e) {
+            log.error("Account import failed", e.getCause());
+            importer.fail(e.getCause().getMessage());
+        }
+        Summary summary = importer.summary();
+        log.info("Imported {} accounts ({} duplicates, {} rejected) in {} ms", summary.created(), summary.duplicates(),
+                summary.rejected(), (System.nanoTime() - started) / 1_000_000);
+        return summary;
+    }
+
+    private void readNdjson(InputStream input, Importer importer) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(input)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                long line = parser.currentTokenLocation().getLineNr();
+                if (token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    importer.add(new Row(line, null, null, "Row must be a JSON object"));
+                    continue;
+                }
+                String accountId = null;
+                String balance = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    if ("accountId".equals(field) && value == JsonToken.VALUE_STRING) {
+                        accountId = parser.getText();
+                    } else if ("balance".equals(field) && value != JsonToken.VALUE_NULL && value.isScalarValue()) {
+                        balance = parser.getText();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                importer.add(row(line, accountId, balance));
+            }
+        }
+    }
+
+    private void readCsv(InputStream input, Importer importer) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        String text;
+        long line = 0;
+        while ((text = reader.readLine()) != null) {
+            line++;
+            if (text.isBlank() || (line == 1 && text.strip().equalsIgnoreCase("accountId,balance"))) {
+                continue;
+            }
+            int comma = text.lastIndexOf(',');
+            if (comma < 0) {
+                importer.add(new Row(line, null, null, "Row must have the form accountId,balance"));
+                continue;
+            }
+            String balance = text.substring(comma + 1).strip();
+            importer.add(row(line, text.substring(0, comma).strip(), balance.isEmpty() ? null : balance));
+        }
+    }
+
+    /**
+     * Converts the balance with {@link Money#toMinorUnits(BigDecimal)} before building the account, so that a
+     * balance out of range or with too many decimals is rejected as such rather than escaping the import.
+     */
+    private static Row row(long line, String accountId, String balance) {
+        try {
+            Account account = balance == null ? new Account(accountId, null)
+                    : Account.ofMinorUnits(accountId, Money.toMinorUnits(new BigDecimal(balance)));
+            return new Row(line, accountId, account, null);
+        } catch (NumberFormatException e) {
+            return new Row(line, accountId, null, "Balance must be a number");
+        } catch (ArithmeticException e) {
+            return new Row(line, accountId, null, "Balance must have at most " + Money.SCALE
+                    + " decimal places and fit in a long of minor units");
+        }
+    }
+
+    /**
+     * Validates and inserts one batch. Runs on a worker thread.
+     */
+    private BatchResult insert(List<Row> rows) {
+        List<Account> valid = new ArrayList<>(rows.size());
+        Problem[] problems = new Problem[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            if (row.account() == null) {
+                problems[i] = new Problem(row.line(), row.accountId(), List.of(row.error()));
+                continue;
+            }
+            Set<ConstraintViolation<Account>> violations = validator.validate(row.account());
+            if (violations.isEmpty() && !accountSharding.isLocal(row.accountId())) {
+                problems[i] = new Problem(row.line(), row.accountId(),
+                        List.of("Account belongs to node " + accountSharding.ownerOf(row.accountId())));
+            } else if (violations.isEmpty()) {
+                valid.add(row.account());
+            } else {
+                problems[i] = new Problem(row.line(), row.accountId(),
+                        violations.stream().map(ConstraintViolation::getMessage).sorted().toList());
+            }
+        }
+
+        List<Account> duplicates = accountsService.createAccounts(valid);
+        Set<Account> duplicated = Collections.newSetFromMap(new IdentityHashMap<>());
+        duplicated.addAll(duplicates);
+
+        List<Problem> reported = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            if (problems[i] != null) {
+                reported.add(problems[i]);
+            } else if (duplicated.contains(row.account())) {
+                reported.add(new Problem(row.line(), row.accountId(), null));
+            }
+        }
+        return new BatchResult(valid.size() - duplicates.size(), reported);
+    }
+
+    /**
+     * Cuts rows into batches, keeps a bounded number of them in flight and reports their results in order.
+     */
+    private final class Importer {
+
+        private final Listener listener;
+        private final Queue<CompletableFuture<BatchResult>> inFlight = new ArrayDeque<>();
+        private List<Row> batch = new ArrayList<>(batchSize);
+        private long created;
+        private long duplicates;
+        private long rejected;
+        private String error;
+
+        Importer(Listener listener) {
+            this.listener = listener;
+        }
+
+        void add(Row row) {
+            batch.add(row);
+            if (batch.size() == batchSize) {
+                submit();
+            }
+        }
+
+        void finish() {
+            if (!batch.isEmpty()) {
+                submit();
+            }
+            while (!inFlight.isEmpty()) {
+                report(inFlight.poll().join());
+            }
+        }
+
+        /**
+         * Reports the batches that still complete and records why the import stopped.
+         */
+        void fail(String message) {
+            error = message;
+            while (!inFlight.isEmpty()) {
+                try {
+                    report(inFlight.poll().join());
+                } catch (CompletionException e) {
+                    log.debug("Account import batch failed", e.getCause());
+                }
+            }
+        }
+
+        Summary summary() {
+            return new Summary(created, duplicates, rejected, error);
+        }
+
+        private void submit() {
+            List<Row> rows = batch;
+            batch = new ArrayList<>(batchSize);
+            if (inFlight.size() == maxBatchesInFlight) {
+                report(inFlight.poll().join());
+            }
+            inFlight.add(CompletableFuture.supplyAsync(() -> insert(rows), workers));
+        }
+
+        private void report(BatchResult result) {
+            created += result.created();
+            for (Problem problem : result.problems()) {
+                if (problem.isDuplicate()) {
+                    duplicates++;
+                    listener.duplicate(problem.line(), problem.accountId());
+                } else {
+                    rejected++;
+                    listener.rejected(problem.line(), problem.accountId(), problem.errors());
+                }
+            }
+        }
+    }
+}
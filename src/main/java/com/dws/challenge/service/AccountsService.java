@@ -1,27 +1,149 @@
 package com.dws.challenge.service;
 
 import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.BalanceSnapshot;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.journal.TransferJournal;
 import com.dws.challenge.repository.AccountsRepository;
 import lombok.Getter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
 @Service
 public class AccountsService {
 
   @Getter
   private final AccountsRepository accountsRepository;
 
+  private final StripedLocks accountLocks;
+
+  private final BalanceVersions balanceVersions;
+
+  private final TransferJournal transferJournal;
+
+  // Held from the capacity check to the creation, so that a creation the journal records cannot fail for want
+  // of room taken by another one meanwhile
+  private final ReentrantLock creationLock = new ReentrantLock();
+
   @Autowired
-  public AccountsService(AccountsRepository accountsRepository) {
+  public AccountsService(AccountsRepository accountsRepository, StripedLocks accountLocks,
+                         BalanceVersions balanceVersions, TransferJournal transferJournal) {
     this.accountsRepository = accountsRepository;
+    this.accountLocks = accountLocks;
+    this.balanceVersions = balanceVersions;
+    this.transferJournal = transferJournal;
   }
 
   public void createAccount(Account account) {
-    this.accountsRepository.createAccount(account);
+    if (!transferJournal.isRecording()) {
+      this.accountsRepository.createAccount(account);
+      return;
+    }
+
+    // Journal the creation before the account becomes visible to transfers. Holding the id's lock
+    // stripe keeps a concurrent creation of the same id from being journaled as well, and a creation the
+    // store would refuse is refused before it is journaled, or replay would create it.
+    String accountId = account.getAccountId();
+    long journalSequence;
+    transferJournal.awaitAppendRoom();
+    int stripe = accountLocks.stripeOf(accountId);
+    accountLocks.lock(stripe);
+    creationLock.lock();
+    try {
+      if (this.accountsRepository.getAccount(accountId) != null) {
+        throw new DuplicateAccountIdException("Account id " + accountId + " already exists!");
+      }
+      this.accountsRepository.checkCanCreate(List.of(account));
+      journalSequence = transferJournal.appendAccountCreated(accountId, account.getBalanceMinorUnits());
+      this.accountsRepository.createAccount(account);
+    } finally {
+      creationLock.unlock();
+      accountLocks.unlock(stripe);
+    }
+    transferJournal.awaitDurable(journalSequence);
+  }
+
+  /**
+   * Creates accounts in bulk, skipping ids that already exist. While the journal records changes, the
+   * stripes of all ids are held while the new ids are journaled and created, as
+   * {@link #createAccount(Account)} does for one id.
+   *
+   * @return the accounts that were not created because their id already exists or repeats in the list
+   */
+  public List<Account> createAccounts(List<Account> accounts) {
+    if (!transferJournal.isRecording()) {
+      return this.accountsRepository.createAccounts(accounts);
+    }
+
+    List<String> accountIds = new ArrayList<>(accounts.size());
+    for (Account account : accounts) {
+      accountIds.add(account.getAccountId());
+    }
+    List<Account> created = new ArrayList<>(accounts.size());
+    List<Account> duplicates = new ArrayList<>();
+    Set<String> seen = new HashSet<>();
+    long journalSequence;
+    transferJournal.awaitAppendRoom();
+    int[] stripes = accountLocks.lockAll(accountIds);
+    creationLock.lock();
+    try {
+      for (Account account : accounts) {
+        if (!seen.add(account.getAccountId()) || this.accountsRepository.getAccount(account.getAccountId()) != null) {
+          duplicates.add(account);
+        } else {
+          created.add(account);
+        }
+      }
+      this.accountsRepository.checkCanCreate(created);
+      journalSequence = transferJournal.appendAccountsCreated(created);
+      this.accountsRepository.createAccounts(created);
+    } finally {
+      creationLock.unlock();
+      accountLocks.unlockAll(stripes);
+    }
+    transferJournal.awaitDurable(journalSequence);
+    return duplicates;
   }
 
   public Account getAccount(String accountId) {
     return this.accountsRepository.getAccount(accountId);
   }
+
+  /**
+   * @return the handle of the account, or {@link AccountsRepository#NO_HANDLE} if there is no such account or
+   * the account store does not hand out handles
+   */
+  public int getAccountHandle(String accountId) {
+    return this.accountsRepository.getHandle(accountId);
+  }
+
+  public Account getAccount(int handle) {
+    return this.accountsRepository.getAccount(handle);
+  }
+
+  /**
+   * Reads the balances of the given accounts as of one instant: no transfer is seen half applied and
+   * none is seen without the transfers it was applied after. Takes no transfer lock. Reads again if an
+   * account was split meanwhile, since its sub-balances were not among the stripes watched.
+   */
+  public BalanceSnapshot getBalances(List<String> accountIds) {
+    String[] ids = accountIds.toArray(new String[0]);
+    long[] balances = new long[ids.length];
+    int splitVersion;
+    do {
+      splitVersion = balanceVersions.getSplitVersion();
+      balanceVersions.read(balanceVersions.stripesOf(accountIds), () -> {
+        for (int i = 0; i < ids.length; i++) {
+          balances[i] = this.accountsRepository.getBalanceMinorUnits(ids[i]);
+        }
+      });
+    } while (splitVersion != balanceVersions.getSplitVersion());
+    return new BalanceSnapshot(ids, balances);
+  }
 }
@@ -0,0 +1,238 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.dto.TransferRequest;
+import com.dws.challenge.exception.TooManyRequestsException;
+import com.dws.challenge.metrics.TransferMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Turns transfers away before they reach {@link TransferService} rather than letting them queue: a client
+ * hammering one account would otherwise park thread after thread on that account's lock stripe, and every
+ * other transfer touching the stripe with them.
+ * <p>
+ * Each source account has a token bucket of {@code transfer.admission.account-burst} transfers refilled at
+ * {@code transfer.admission.account-rate} per second, kept as a single {@link AtomicLong}: the instant at
+ * which the bucket will be full again (the "theoretical arrival time" of the generic cell rate algorithm).
+ * Taking a token is one compare-and-set that moves that instant forward by the refill interval, refused
+ * when it would land more than a burst ahead of now. On top of that at most
+ * {@code transfer.admission.max-concurrent} transfers are in flight at once, counted by one atomic
+ * increment and one decrement.
+ * <p>
+ * A bucket whose instant has passed is full, exactly like a bucket that does not exist, so buckets of idle
+ * accounts are dropped without losing anything once more than {@code transfer.admission.max-accounts} are
+ * tracked. Should the table be full of busy accounts, new accounts go untracked until a sweep frees room;
+ * the concurrency limit still bounds them. A transfer taking a token from a bucket being dropped at that
+ * very moment is forgotten, letting that account go one burst over its rate at worst.
+ */
+@Component
+public class AdmissionControl {
+
+    public enum Rejection {
+        ACCOUNT_RATE,
+        CONCURRENCY
+    }
+
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final boolean enabled;
+    private final long refillIntervalNanos;
+    private final long burstNanos;
+    private final int maxConcurrent;
+    private final int maxAccounts;
+
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private volatile long lastSweepNanos;
+    private final LongAdder[] rejections = new LongAdder[Rejection.values().length];
+
+    @Autowired
+    public AdmissionControl(TransferMetrics metrics,
+                            @Value("${transfer.admission.enabled:true}") boolean enabled,
+                            @Value("${transfer.admission.account-rate:1000}") double accountRatePerSecond,
+                            @Value("${transfer.admission.account-burst:100}") int accountBurst,
+                            @Value("${transfer.admission.max-concurrent:256}") int maxConcurrent,
+                            @Value("${transfer.admission.max-accounts:100000}") int maxAccounts) {
+        if (accountRatePerSecond <= 0 || accountBurst < 1 || maxConcurrent < 1) {
+            throw new IllegalArgumentException("transfer.admission.account-rate, account-burst and max-concurrent must be positive");
+        }
+        this.enabled = enabled;
+        this.refillIntervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / accountRatePerSecond));
+        this.burstNanos = refillIntervalNanos * accountBurst;
+        this.maxConcurrent = maxConcurrent;
+        this.maxAccounts = maxAccounts;
+        for (Rejection rejection : Rejection.values()) {
+            rejections[rejection.ordinal()] = new LongAdder();
+        }
+        this.lastSweepNanos = System.nanoTime() - SWEEP_INTERVAL_NANOS;
+        metrics.bindAdmissionControl(this);
+    }
+
+    /**
+     * Takes a slot among the transfers in flight, then a token from the source account's bucket, so that a
+     * transfer turned away for concurrency does not cost its account a token. Every admitted transfer must be
+     * followed by one {@link #release()}.
+     *
+     * @throws TooManyRequestsException if either is exhausted; nothing needs releasing then
+     */
+    public void admit(String fromAccountId) {
+        if (!enabled) {
+            return;
+        }
+        enter();
+        try {
+            takeToken(fromAccountId, System.nanoTime());
+        } catch (TooManyRequestsException e) {
+            inFlight.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Admits a batch as one transfer in flight, taking one token from each distinct source account of its
+     * legs: a batch is one request, however many legs it fans out to, so a payroll run from one account is not
+     * refused for having more legs than the burst. Either every source gets its token or none does.
+     */
+    public void admitBatch(List<TransferRequest> transferRequests) {
+        if (!enabled) {
+            return;
+        }
+        Set<String> sources = new LinkedHashSet<>();
+        for (TransferRequest transferRequest : transferRequests) {
+            sources.add(transferRequest.getAccountFromId());
+        }
+        enter();
+        long now = System.nanoTime();
+        List<AtomicLong> taken = new ArrayList<>(sources.size());
+        try {
+            for (String source : sources) {
+                checkToken(source, now);
+            }
+            for (String source : sources) {
+                AtomicLong bucket = takeToken(source, now);
+                if (bucket != null) {
+                    taken.add(bucket);
+                }
+            }
+        } catch (TooManyRequestsException e) {
+            // Another request took the last token of a later source between the check and the take
+            for (AtomicLong bucket : taken) {
+                bucket.addAndGet(-refillIntervalNanos);
+            }
+            inFlight.decrementAndGet();
+            throw e;
+        }
+    }
+
+    public void release() {
+        if (enabled) {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getTrackedAccounts() {
+        return buckets.size();
+    }
+
+    public long getRejectionCount(Rejection rejection) {
+        return rejections[rejection.ordinal()].sum();
+    }
+
+    private void enter() {
+        if (inFlight.incrementAndGet() > maxConcurrent) {
+            inFlight.decrementAndGet();
+            rejections[Rejection.CONCURRENCY.ordinal()].increment();
+            throw new TooManyRequestsException("Too many transfers in flight, try again shortly", 1);
+        }
+    }
+
+    /**
+     * @return the bucket the token was taken from, or {@code null} if the account is not tracked
+     */
+    private AtomicLong takeToken(String accountId, long now) {
+        AtomicLong bucket = bucketOf(accountId, now);
+        if (bucket == null) {
+            return null;
+        }
+        while (true) {
+            long fullAt = bucket.get();
+            long next = Math.max(fullAt, now) + refillIntervalNanos;
+            if (next - now > burstNanos) {
+                throw rejected(accountId, next - now - burstNanos);
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                return bucket;
+            }
+        }
+    }
+
+    /**
+     * Fails like {@link #takeToken(String, long)} would, without taking the token.
+     */
+    private void checkToken(String accountId, long now) {
+        AtomicLong bucket = buckets.get(accountId);
+        if (bucket == null) {
+            return;
+        }
+        long next = Math.max(bucket.get(), now) + refillIntervalNanos;
+        if (next - now > burstNanos) {
+            throw rejected(accountId, next - now - burstNanos);
+        }
+    }
+
+    private TooManyRequestsException rejected(String accountId, long waitNanos) {
+        rejections[Rejection.ACCOUNT_RATE.ordinal()].increment();
+        return new TooManyRequestsException("Too many transfers from account " + accountId + ", try again shortly",
+                Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1)));
+    }
+
+    /**
+     * @return the account's bucket, or {@code null} if the table is full of busy accounts
+     */
+    private AtomicLong bucketOf(String accountId, long now) {
+        AtomicLong bucket = buckets.get(accountId);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (buckets.size() >= maxAccounts) {
+            sweep(now);
+            if (buckets.size() >= maxAccounts) {
+                return null;
+            }
+        }
+        return buckets.computeIfAbsent(accountId, id -> new AtomicLong(now));
+    }
+
+    /**
+     * Drops the buckets that are full again, at most once per {@link #SWEEP_INTERVAL_NANOS} and on one
+     * thread at a time.
+     */
+    private void sweep(long now) {
+        if (now - lastSweepNanos < SWEEP_INTERVAL_NANOS || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+            lastSweepNanos = System.nanoTime();
+        } finally {
+            sweeping.set(false);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Striped seqlock over account balances, letting readers see the balances of several accounts as of one
+ * instant without taking the transfer locks. Stripes are indexed by account id hash like
+ * {@link StripedLocks}, but sized independently of them.
+ * <p>
+ * Every change of balances is bracketed by {@link #beginWrite(int, int)} and {@link #endWrite(int, int)}
+ * on the stripes of the accounts it changes. A stripe's state counts the writers inside the bracket and
+ * is versioned on every exit, so a reader that finds no writer on any of its stripes before reading
+ * and the same versions afterwards has read balances that did not change while it read them:
+ * {@link #read(int[], Runnable)}. Unlike a classic seqlock several writers may be inside the bracket of
+ * one stripe at once, since credits take no lock.
+ * <p>
+ * A reader that keeps losing to writers closes the gates of its stripes instead: writers arriving at a
+ * closed gate step back and wait, the ones already inside finish, and the reader then reads without
+ * retrying. Writers never wait at a gate while inside the bracket of another stripe, so gates cannot
+ * deadlock with each other.
+ * <p>
+ * Credits to a sub-balance of a split account (see {@link Account#splitBalance(int)}) are bracketed by a
+ * stripe of that sub-balance, {@link #stripeOf(String, int)}, so that they do not all hit the stripe of the
+ * account. Split accounts are registered here first, and {@link #stripesOf(Collection)} then includes the
+ * stripes of all their sub-balances.
+ */
+public class BalanceVersions {
+
+    private static final int DEFAULT_STRIPES_PER_CORE = 16;
+
+    private static final int MAX_STRIPES = 1 << 20;
+
+    /**
+     * Distance between the words of neighbouring stripes, so that they sit on different cache lines.
+     */
+    private static final int STRIDE = 8;
+
+    /**
+     * Low bits of a stripe's state: writers inside the bracket; high bits: version.
+     */
+    private static final int WRITER_BITS = 24;
+    private static final long WRITERS_MASK = (1L << WRITER_BITS) - 1;
+    private static final long VERSION_UNIT = 1L << WRITER_BITS;
+
+    private static final int OPTIMISTIC_READS = 4;
+    private static final int SPINS_BEFORE_YIELD = 100;
+
+    private final AtomicLongArray states;
+    private final AtomicLongArray gates;
+    private final int mask;
+    private final ConcurrentHashMap<String, Integer> splitAccounts = new ConcurrentHashMap<>();
+    private final AtomicInteger splitVersion = new AtomicInteger();
+
+    /**
+     * @param stripes requested number of stripes, rounded up to a power of two; {@code 0} or less sizes
+     *                the table from the number of available cores
+     */
+    public BalanceVersions(int stripes) {
+        int size = tableSizeFor(stripes > 0 ? stripes : Runtime.getRuntime().availableProcessors() * DEFAULT_STRIPES_PER_CORE);
+        this.states = new AtomicLongArray(size * STRIDE);
+        this.gates = new AtomicLongArray(size * STRIDE);
+        this.mask = size - 1;
+    }
+
+    public int getStripeCount() {
+        return mask + 1;
+    }
+
+    public int stripeOf(String accountId) {
+        int hash = accountId.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * @param subBalance as picked by {@link Account#pickSubBalance()}; the account's own stripe when negative
+     */
+    public int stripeOf(String accountId, int subBalance) {
+        return subBalance < 0 ? stripeOf(accountId) : (stripeOf(accountId) + 1 + subBalance) & mask;
+    }
+
+    /**
+     * Makes {@link #stripesOf(Collection)} cover the sub-balances of an account about to be split. A reader
+     * that took the stripes of the account before sees {@link #getSplitVersion()} change.
+     */
+    public void registerSplit(String accountId, int subBalances) {
+        splitAccounts.put(accountId, subBalances);
+        splitVersion.incrementAndGet();
+    }
+
+    public void unregisterSplit(String accountId) {
+        splitAccounts.remove(accountId);
+    }
+
+    /**
+     * @return a number that changes whenever an account is registered as split
+     */
+    public int getSplitVersion() {
+        return splitVersion.get();
+    }
+
+    /**
+     * @return the distinct stripes of the given accounts, and of the sub-balances of split ones, in ascending
+     * order
+     */
+    public int[] stripesOf(Collection<String> accountIds) {
+        int[] stripes = new int[accountIds.size()];
+        int count = 0;
+        boolean anySplit = !splitAccounts.isEmpty();
+        for (String accountId : accountIds) {
+            Integer subBalances = anySplit ? splitAccounts.get(accountId) : null;
+            if (subBalances != null) {
+                stripes = Arrays.copyOf(stripes, stripes.length + subBalances);
+                for (int i = 0; i < subBalances; i++) {
+                    stripes[count++] = stripeOf(accountId, i);
+                }
+            }
+            stripes[count++] = stripeOf(accountId);
+        }
+        Arrays.sort(stripes, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || stripes[distinct - 1] != stripes[i]) {
+                stripes[distinct++] = stripes[i];
+            }
+        }
+        return Arrays.copyOf(stripes, distinct);
+    }
+
+    /**
+     * Enters the bracket of both stripes, which may be the same, waiting while a reader has closed the
+     * gate of either.
+     */
+    public void beginWrite(int stripe, int otherStripe) {
+        int spins = 0;
+        while (!tryBeginWrite(stripe, otherStripe)) {
+            spins = backOff(spins);
+        }
+    }
+
+    /**
+     * Enters the bracket of both stripes, which may be the same, unless a reader has closed the gate of
+     * either; never waits.
+     *
+     * @return false, having entered neither bracket, if a gate is closed
+     */
+    public boolean tryBeginWrite(int stripe, int otherStripe) {
+        if (!tryEnter(stripe)) {
+            return false;
+        }
+        if (otherStripe != stripe && !tryEnter(otherStripe)) {
+            states.getAndDecrement(stripe * STRIDE);
+            return false;
+        }
+        return true;
+    }
+
+    public void endWrite(int stripe, int otherStripe) {
+        exit(stripe);
+        if (otherStripe != stripe) {
+            exit(otherStripe);
+        }
+    }
+
+    /**
+     * Enters the bracket of all given stripes, as returned by {@link #stripesOf(Collection)}.
+     */
+    public void beginWrite(int[] stripes) {
+        int spins = 0;
+        while (true) {
+            int entered = 0;
+            while (entered < stripes.length && tryEnter(stripes[entered])) {
+                entered++;
+            }
+            if (entered == stripes.length) {
+                return;
+            }
+            for (int i = 0; i < entered; i++) {
+                states.getAndDecrement(stripes[i] * STRIDE);
+            }
+            spins = backOff(spins);
+        }
+    }
+
+    public void endWrite(int[] stripes) {
+        for (int stripe : stripes) {
+            exit(stripe);
+        }
+    }
+
+    /**
+     * Runs {@code read}, possibly several times, until one run has seen no balance of the given stripes
+     * change. A run that saw a change is discarded, so {@code read} must only collect what it reads.
+     *
+     * @param stripes the distinct stripes of the accounts read, as returned by {@link #stripesOf(Collection)}
+     */
+    public void read(int[] stripes, Runnable read) {
+        long[] observed = new long[stripes.length];
+        for (int attempt = 0; attempt < OPTIMISTIC_READS; attempt++) {
+            if (observe(stripes, observed)) {
+                read.run();
+                if (unchanged(stripes, observed)) {
+                    return;
+                }
+            }
+            Thread.onSpinWait();
+        }
+
+        for (int stripe : stripes) {
+            gates.getAndIncrement(stripe * STRIDE);
+        }
+        try {
+            for (int stripe : stripes) {
+                int spins = 0;
+                while ((states.get(stripe * STRIDE) & WRITERS_MASK) != 0) {
+                    spins = backOff(spins);
+                }
+            }
+            read.run();
+        } finally {
+            for (int stripe : stripes) {
+                gates.getAndDecrement(stripe * STRIDE);
+            }
+        }
+    }
+
+    private boolean tryEnter(int stripe) {
+        // Announce the writer before looking at the gate; a reader closes the gate before looking for writers
+        states.getAndIncrement(stripe * STRIDE);
+        if (gates.get(stripe * STRIDE) == 0) {
+            return true;
+        }
+        states.getAndDecrement(stripe * STRIDE);
+        return false;
+    }
+
+    private void exit(int stripe) {
+        states.getAndAdd(stripe * STRIDE, VERSION_UNIT - 1);
+    }
+
+    private boolean observe(int[] stripes, long[] observed) {
+        for (int i = 0; i < stripes.length; i++) {
+            long state = states.get(stripes[i] * STRIDE);
+            if ((state & WRITERS_MASK) != 0) {
+                return false;
+            }
+            observed[i] = state;
+        }
+        return true;
+    }
+
+    private boolean unchanged(int[] stripes, long[] observed) {
+        for (int i = 0; i < stripes.length; i++) {
+            if (states.get(stripes[i] * STRIDE) != observed[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int backOff(int spins) {
+        if (spins < SPINS_BEFORE_YIELD) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+        return spins + 1;
+    }
+
+    private static int tableSizeFor(int stripes) {
+        int size = Integer.highestOneBit(Math.min(Math.max(stripes, 1), MAX_STRIPES));
+        return size < stripes && size < MAX_STRIPES ? size << 1 : size;
+    }
+}
@@ -0,0 +1,188 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.metrics.TransferMetrics;
+import com.dws.challenge.repository.AccountsRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits the balances of accounts that receive a credit from a large share of all transfers, such as
+ * settlement accounts, so that those credits stop serializing on the one balance word and the one
+ * {@link BalanceVersions} stripe of the account (see {@link Account#splitBalance(int)}).
+ * <p>
+ * The accounts listed in {@code accounts.hot.ids} are split as soon as they exist. With
+ * {@code accounts.hot.detection.enabled} {@link TransferMetrics} also samples credits per destination, and
+ * every {@code accounts.hot.detection.interval-ms} the accounts credited more than
+ * {@code accounts.hot.detection.min-credits-per-second} times a second are split, up to
+ * {@code accounts.hot.detection.max-accounts} in all. Debits are not what makes such an account hot here: a
+ * debit takes the account's lock stripe, but a credit takes no lock at all, so lock contention statistics do
+ * not see the credits that pile up on one account.
+ * <p>
+ * Accounts stay split until restart; a split account costs one more compare-and-set loop on debits that its
+ * main balance alone does not cover, and a longer list of stripes for snapshot reads that include it.
+ * Accounts of the off-heap store cannot be split and are left as they are.
+ */
+@Slf4j
+@Component
+public class HotAccounts {
+
+    private final AccountsRepository accountsRepository;
+    private final BalanceVersions balanceVersions;
+    private final TransferMetrics metrics;
+    private final List<String> configuredIds;
+    private final int subBalances;
+    private final boolean detection;
+    private final long intervalMillis;
+    private final long minCreditsPerSecond;
+    private final int maxAccounts;
+
+    private final Set<String> splitIds = ConcurrentHashMap.newKeySet();
+    private volatile boolean running;
+    private Thread detector;
+
+    @Autowired
+    public HotAccounts(AccountsRepository accountsRepository, BalanceVersions balanceVersions, TransferMetrics metrics,
+                       @Value("${accounts.hot.ids:}") String configuredIds,
+                       @Value("${accounts.hot.sub-balances:0}") int subBalances,
+                       @Value("${accounts.hot.detection.enabled:false}") boolean detection,
+                       @Value("${accounts.hot.detection.interval-ms:1000}") long intervalMillis,
+                       @Value("${accounts.hot.detection.min-credits-per-second:50000}") long minCreditsPerSecond,
+                       @Value("${accounts.hot.detection.max-accounts:16}") int maxAccounts) {
+        if (intervalMillis < 1 || minCreditsPerSecond < 1 || maxAccounts < 0) {
+            throw new IllegalArgumentException("accounts.hot.detection.interval-ms and min-credits-per-second must be positive");
+        }
+        this.accountsRepository = accountsRepository;
+        this.balanceVersions = balanceVersions;
+        this.metrics = metrics;
+        this.configuredIds = Arrays.stream(configuredIds.split(","))
+                .map(String::trim)
+                .filter(id -> !id.isEmpty())
+                .toList();
+        this.subBalances = subBalances > 0 ? subBalances : 2 * Runtime.getRuntime().availableProcessors();
+        this.detection = detection;
+        this.intervalMillis = intervalMillis;
+        this.minCreditsPerSecond = minCreditsPerSecond;
+        this.maxAccounts = maxAccounts;
+        metrics.bindHotAccounts(this);
+    }
+
+    /**
+     * Splits the configured accounts that exist already and, if there are configured accounts still to come
+     * or detection is on, starts looking for more.
+     */
+    @PostConstruct
+    public void start() {
+        splitConfigured();
+        if (!detection && splitIds.size() == configuredIds.size()) {
+            return;
+        }
+        metrics.setCreditSampling(detection);
+        running = true;
+        detector = new Thread(this::detect, "hot-accounts");
+        detector.setDaemon(true);
+        detector.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        metrics.setCreditSampling(false);
+        if (detector != null) {
+            detector.interrupt();
+            detector.join();
+        }
+    }
+
+    /**
+     * Splits the balance of an account into {@code accounts.hot.sub-balances} sub-balances. The account's
+     * sub-balance stripes are registered with {@link BalanceVersions} before the first credit can reach them.
+     *
+     * @return false if there is no such account or its store cannot split it
+     */
+    public boolean split(String accountId) {
+        if (splitIds.contains(accountId)) {
+            return true;
+        }
+        Account account = accountsRepository.getAccount(accountId);
+        if (account == null) {
+            return false;
+        }
+        int count = account.getSubBalanceCount();
+        if (count == 0) {
+            count = Integer.highestOneBit(subBalances);
+            count = count < subBalances ? count << 1 : count;
+            balanceVersions.registerSplit(accountId, count);
+            if (!account.splitBalance(count)) {
+                balanceVersions.unregisterSplit(accountId);
+                log.warn("Account {} is hot but its store cannot split its balance", accountId);
+                return false;
+            }
+        }
+        splitIds.add(accountId);
+        log.info("Spread credits of account {} over {} sub-balances", accountId, account.getSubBalanceCount());
+        return true;
+    }
+
+    public int getSplitCount() {
+        return splitIds.size();
+    }
+
+    public int getSubBalanceCount() {
+        return subBalances;
+    }
+
+    private void splitConfigured() {
+        for (String accountId : configuredIds) {
+            if (!splitIds.contains(accountId)) {
+                split(accountId);
+            }
+        }
+    }
+
+    private void detect() {
+        long last = System.nanoTime();
+        while (running) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            splitConfigured();
+            if (!detection) {
+                if (splitIds.size() == configuredIds.size()) {
+                    return;
+                }
+                continue;
+            }
+            long now = System.nanoTime();
+            double seconds = Math.max(now - last, 1) / (double) TimeUnit.SECONDS.toNanos(1);
+            last = now;
+            List<String> hot = new ArrayList<>();
+            for (Map.Entry<String, Long> entry : metrics.drainCreditSamples().entrySet()) {
+                double creditsPerSecond = entry.getValue() * TransferMetrics.CREDIT_SAMPLE_RATE / seconds;
+                if (creditsPerSecond >= minCreditsPerSecond && !splitIds.contains(entry.getKey())) {
+                    hot.add(entry.getKey());
+                }
+            }
+            for (String accountId : hot) {
+                if (splitIds.size() >= maxAccounts + configuredIds.size()) {
+                    break;
+                }
+                split(accountId);
+            }
+        }
+    }
+}
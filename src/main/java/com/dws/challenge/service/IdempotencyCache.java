@@ -0,0 +1,164 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.dto.TransferRequest;
+import com.dws.challenge.exception.AccountNotFoundException;
+import com.dws.challenge.exception.InsufficientFundsException;
+import com.dws.challenge.exception.InvalidTransferException;
+import com.dws.challenge.exception.NotDurableException;
+import com.dws.challenge.metrics.TransferMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the outcome of transfers by idempotency key, so that a client retrying a transfer gets the
+ * outcome of the first attempt instead of a second debit.
+ * <p>
+ * The first request with a key registers an entry holding a future before it runs; concurrent and later
+ * requests with the same key wait on that future and never reach the accounts. Transfers that completed
+ * or failed for a business reason (insufficient funds, unknown account, invalid request) are remembered,
+ * and so are transfers applied but not made durable, which a retry must not apply again; unexpected errors
+ * are forgotten so that a retry runs again.
+ * <p>
+ * Lookups are a single {@link ConcurrentHashMap} access. Entries are also kept in a queue in insertion
+ * order, which is expiry order since every entry lives for the same time, and whichever thread inserts
+ * evicts from its head the entries that expired or exceed the maximum count. The queue, not the map,
+ * is what is counted, so entries removed early still count until they reach its head and memory stays
+ * bounded.
+ */
+@Component
+public class IdempotencyCache {
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final TransferMetrics metrics;
+
+    @Autowired
+    public IdempotencyCache(TransferMetrics metrics,
+                            @Value("${transfer.idempotency.max-entries:100000}") int maxEntries,
+                            @Value("${transfer.idempotency.ttl-seconds:3600}") long ttlSeconds) {
+        this.metrics = metrics;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        metrics.bindIdempotencyCache(this);
+    }
+
+    /**
+     * Runs the transfer unless a transfer with the same idempotency key was already submitted, in which case
+     * its outcome is returned. Reusing a key for a different transfer fails with an
+     * {@link InvalidTransferException}.
+     */
+    public CompletableFuture<Void> execute(TransferRequest transferRequest, Supplier<CompletableFuture<Void>> transfer) {
+        String key = transferRequest.getIdempotencyKey();
+        long now = System.nanoTime();
+        Entry created = new Entry(key, transferRequest, now);
+        while (true) {
+            Entry existing = entries.putIfAbsent(key, created);
+            if (existing == null) {
+                break;
+            }
+            if (now - existing.createdAtNanos > ttlNanos) {
+                entries.remove(key, existing);
+                continue;
+            }
+            if (!existing.matches(transferRequest)) {
+                return CompletableFuture.failedFuture(new InvalidTransferException(
+                        "Idempotency key " + key + " was already used for a different transfer"));
+            }
+            metrics.recordIdempotentReplay();
+            return existing.outcome;
+        }
+
+        insertionOrder.add(created);
+        queued.incrementAndGet();
+        evict(now);
+
+        CompletableFuture<Void> result;
+        try {
+            result = transfer.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        result.whenComplete((ignored, failure) -> {
+            if (failure == null) {
+                created.outcome.complete(null);
+                return;
+            }
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                    ? failure.getCause() : failure;
+            if (!isFinal(cause)) {
+                // Before completing, so that a retry seeing this failure runs the transfer again
+                entries.remove(key, created);
+            }
+            created.outcome.completeExceptionally(cause);
+        });
+        return created.outcome;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void evict(long now) {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Entry oldest;
+            while ((oldest = insertionOrder.peek()) != null
+                    && (queued.get() > maxEntries || now - oldest.createdAtNanos > ttlNanos)) {
+                insertionOrder.poll();
+                queued.decrementAndGet();
+                entries.remove(oldest.key, oldest);
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private static boolean isFinal(Throwable failure) {
+        return failure instanceof InsufficientFundsException
+                || failure instanceof AccountNotFoundException
+                || failure instanceof InvalidTransferException
+                || failure instanceof NotDurableException;
+    }
+
+    private static final class Entry {
+
+        final String key;
+        final String accountFromId;
+        final String accountToId;
+        final BigDecimal amount;
+        final long createdAtNanos;
+        final CompletableFuture<Void> outcome = new CompletableFuture<>();
+
+        Entry(String key, TransferRequest transferRequest, long createdAtNanos) {
+            this.key = key;
+            this.accountFromId = transferRequest.getAccountFromId();
+            this.accountToId = transferRequest.getAccountToId();
+            this.amount = transferRequest.getAmount();
+            this.createdAtNanos = createdAtNanos;
+        }
+
+        boolean matches(TransferRequest transferRequest) {
+            return accountFromId.equals(transferRequest.getAccountFromId())
+                    && accountToId.equals(transferRequest.getAccountToId())
+                    && amount.compareTo(transferRequest.getAmount()) == 0;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.InvalidTransferException;
+import com.dws.challenge.exception.TooManyRequestsException;
+import com.dws.challenge.journal.TransferJournal;
+import com.dws.challenge.ledger.AccountLedger;
+import com.dws.challenge.metrics.TransferMetrics;
+import com.dws.challenge.metrics.TransferMetrics.Phase;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Applies a transfer on the calling thread. The only lock it takes is the stripe of the account being
+ * debited: debits are serialized per account, while credits are compare-and-set operations that never
+ * wait for a lock, so accounts that mostly receive money are not contended. A destination credited by
+ * nearly every transfer is, on its balance and its balance version stripe; splitting it (see
+ * {@link HotAccounts}) spreads its credits over sub-balances by thread.
+ */
+@Component
+@ConditionalOnProperty(name = "transfer.engine", havingValue = "locking", matchIfMissing = true)
+@Slf4j
+public class LockingTransferEngine implements TransferEngine {
+
+    // Striped account locks to serialize debits and prevent deadlocks
+    private final StripedLocks accountLocks;
+    private final BalanceVersions balanceVersions;
+    private final TransferJournal transferJournal;
+    private final TransferMetrics metrics;
+    private final AccountLedger accountLedger;
+    private final int maxQueuedPerStripe;
+
+    /**
+     * Runs the transfers {@link #submitWithoutWaiting} may not apply on the calling thread, and counts them per
+     * stripe of the source account.
+     */
+    private final ExecutorService handOffExecutor;
+    private final AtomicIntegerArray handedOff;
+
+    @Autowired
+    public LockingTransferEngine(StripedLocks accountLocks, BalanceVersions balanceVersions,
+                                 TransferJournal transferJournal, TransferMetrics metrics, AccountLedger accountLedger,
+                                 @Value("${transfer.max-queued-per-stripe:1024}") int maxQueuedPerStripe,
+                                 @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.accountLocks = accountLocks;
+        this.maxQueuedPerStripe = maxQueuedPerStripe;
+        this.handOffExecutor = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("transfer-hand-off-", 0).factory())
+                : Executors.newCachedThreadPool(Thread.ofPlatform().name("transfer-hand-off-", 0).daemon(true).factory());
+        this.handedOff = new AtomicIntegerArray(accountLocks.getStripeCount());
+        this.balanceVersions = balanceVersions;
+        this.transferJournal = transferJournal;
+        this.metrics = metrics;
+        this.accountLedger = accountLedger;
+    }
+
+    @Override
+    public CompletableFuture<Long> submit(Account fromAccount, Account toAccount, long amountMinorUnits) {
+        try {
+            return CompletableFuture.completedFuture(transfer(fromAccount, toAccount, amountMinorUnits));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        handOffExecutor.close();
+    }
+
+    /**
+     * Applies the transfer on the calling thread if the source account's stripe is free, or else queues it
+     * on the stripe to be applied by the thread that releases the stripe, which completes the future.
+     * Fails with a {@link TooManyRequestsException} when the stripe has {@code transfer.max-queued-per-stripe}
+     * transfers queued already.
+     * <p>
+     * While the journal is recording, appending may force it to disk or wait for the flusher, which neither
+     * the caller nor a thread releasing the stripe may do. The transfer is then handed to another thread,
+     * virtual if virtual threads are enabled, which waits for the stripe like {@link #submit} would.
+     */
+    @Override
+    public CompletableFuture<Long> submitWithoutWaiting(Account fromAccount, Account toAccount, long amountMinorUnits) {
+        if (transferJournal.isRecording()) {
+            return handOff(fromAccount, toAccount, amountMinorUnits);
+        }
+        CompletableFuture<Long> applied = new CompletableFuture<>();
+        long queuedAt = System.nanoTime();
+        Runnable transfer = () -> {
+            long locked = System.nanoTime();
+            metrics.recordPhase(Phase.LOCK_WAIT, locked - queuedAt);
+            try {
+                applied.complete(transferLocked(fromAccount, toAccount, amountMinorUnits));
+            } catch (RuntimeException e) {
+                applied.completeExceptionally(e);
+            }
+            metrics.recordPhase(Phase.APPLY, System.nanoTime() - locked);
+        };
+        if (!accountLocks.runWhenFree(accountLocks.stripeOf(fromAccount.getAccountId()), transfer, maxQueuedPerStripe)) {
+            return CompletableFuture.failedFuture(new TooManyRequestsException(
+                    "Too many transfers queued for account " + fromAccount.getAccountId() + ", try again shortly", 1));
+        }
+        return applied;
+    }
+
+    private CompletableFuture<Long> handOff(Account fromAccount, Account toAccount, long amountMinorUnits) {
+        int stripe = accountLocks.stripeOf(fromAccount.getAccountId());
+        if (handedOff.incrementAndGet(stripe) > maxQueuedPerStripe) {
+            handedOff.decrementAndGet(stripe);
+            return CompletableFuture.failedFuture(new TooManyRequestsException(
+                    "Too many transfers queued for account " + fromAccount.getAccountId() + ", try again shortly", 1));
+        }
+        CompletableFuture<Long> applied = new CompletableFuture<>();
+        try {
+            handOffExecutor.execute(() -> {
+                try {
+                    applied.complete(transfer(fromAccount, toAccount, amountMinorUnits));
+                } catch (RuntimeException e) {
+                    applied.completeExceptionally(e);
+                } finally {
+                    handedOff.decrementAndGet(stripe);
+                }
+            });
+        } catch (RuntimeException e) {
+            handedOff.decrementAndGet(stripe);
+            return CompletableFuture.failedFuture(e);
+        }
+        return applied;
+    }
+
+    @Override
+    public boolean isLockBased() {
+        return true;
+    }
+
+    /**
+     * Debits the source under its lock stripe, journals the transfer, credits the destination and records
+     * the transfer in the ledgers of both accounts.
+     * The debit is the only step that can fail for lack of funds; a credit can only fail on overflow,
+     * in which case the debit is refunded (and journaled as such) before the source lock is released.
+     * Both balances change inside the {@link BalanceVersions} bracket of their stripes, so a snapshot read
+     * never sees the money debited but not yet credited. The credit of a split destination goes to the
+     * sub-balance of the calling thread, inside the bracket of that sub-balance's stripe.
+     *
+     * @return the journal sequence number of the transfer
+     */
+    public long transfer(Account fromAccount, Account toAccount, long amount) {
+        int stripe = accountLocks.stripeOf(fromAccount.getAccountId());
+
+        // Appending inside the lock and the bracket never waits, so any wait for the journal happens here
+        transferJournal.awaitAppendRoom();
+        long lockStart = System.nanoTime();
+        accountLocks.lock(stripe);
+        long locked = System.nanoTime();
+        metrics.recordPhase(Phase.LOCK_WAIT, locked - lockStart);
+        try {
+            return transferLocked(fromAccount, toAccount, amount);
+        } finally {
+            accountLocks.unlock(stripe);
+            metrics.recordPhase(Phase.APPLY, System.nanoTime() - locked);
+        }
+    }
+
+    /**
+     * {@link #transfer(Account, Account, long)} for a caller holding the stripe of the source account.
+     */
+    private long transferLocked(Account fromAccount, Account toAccount, long amount) {
+        int toSubBalance = toAccount.pickSubBalance();
+        int fromVersionStripe = balanceVersions.stripeOf(fromAccount.getAccountId());
+        int toVersionStripe = balanceVersions.stripeOf(toAccount.getAccountId(), toSubBalance);
+        balanceVersions.beginWrite(fromVersionStripe, toVersionStripe);
+        try {
+            // Check if fromAccount has sufficient funds and withdraw in one step
+            if (!fromAccount.tryDebit(amount)) {
+                throw TransferService.insufficientFunds(fromAccount.getAccountId(), fromAccount.getBalanceMinorUnits(), amount);
+            }
+
+            // Journal before the credit: a transfer spending the credited money must come later in the journal
+            long journalSequence;
+            try {
+                journalSequence = transferJournal.appendTransfer(fromAccount.getAccountId(), toAccount.getAccountId(), amount);
+            } catch (RuntimeException e) {
+                fromAccount.credit(amount);
+                throw e;
+            }
+
+            try {
+                toAccount.credit(amount, toSubBalance);
+            } catch (ArithmeticException e) {
+                fromAccount.credit(amount);
+                transferJournal.appendTransfer(toAccount.getAccountId(), fromAccount.getAccountId(), amount);
+                throw new InvalidTransferException(TransferService.balanceOverflow(toAccount.getAccountId()));
+            }
+            accountLedger.recordTransfer(fromAccount.getAccountId(), toAccount.getAccountId(), amount);
+
+            if (log.isDebugEnabled()) {
+                log.debug("Transfer completed. From account {} new balance: {}, To account {} new balance: {}",
+                        fromAccount.getAccountId(), fromAccount.getBalance(),
+                        toAccount.getAccountId(), toAccount.getBalance());
+            }
+            return journalSequence;
+        } finally {
+            balanceVersions.endWrite(fromVersionStripe, toVersionStripe);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.metrics.TransferMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, back-pressured stage between {@link TransferService} and {@link NotificationService}.
+ * Transfers enqueue an event and return; worker threads drain the queue in batches, coalesce the
+ * messages addressed to the same account and hand one notification per account to the
+ * {@link NotificationService}.
+ * <p>
+ * With virtual threads enabled ({@code spring.threads.virtual.enabled}) the workers are virtual threads
+ * and the per-account deliveries of a batch run concurrently, each on its own virtual thread, so a
+ * slow or blocking {@link NotificationService} delays a batch by its slowest call rather than by the
+ * sum of all calls.
+ */
+@Service
+@Slf4j
+public class NotificationDispatcher {
+
+    public enum OverflowPolicy {
+        /** The transfer thread waits until there is room in the queue. */
+        BLOCK,
+        /** The notification is discarded and counted as dropped. */
+        DROP
+    }
+
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    private final NotificationService notificationService;
+    private final TransferMetrics metrics;
+    private final BlockingQueue<TransferNotification> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final int batchSize;
+    private final Thread[] workers;
+    private final boolean virtualThreads;
+    private volatile boolean running;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    @Autowired
+    public NotificationDispatcher(NotificationService notificationService, TransferMetrics metrics,
+                                  @Value("${notifications.dispatcher.capacity:10000}") int capacity,
+                                  @Value("${notifications.dispatcher.workers:2}") int workerCount,
+                                  @Value("${notifications.dispatcher.batch-size:256}") int batchSize,
+                                  @Value("${notifications.dispatcher.overflow-policy:BLOCK}") OverflowPolicy overflowPolicy,
+                                  @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.notificationService = notificationService;
+        this.metrics = metrics;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.batchSize = batchSize;
+        this.virtualThreads = virtualThreads;
+        this.workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            String name = "notification-dispatcher-" + i;
+            workers[i] = virtualThreads
+                    ? Thread.ofVirtual().name(name).unstarted(this::drainLoop)
+                    : Thread.ofPlatform().name(name).daemon(true).unstarted(this::drainLoop);
+        }
+        metrics.bindNotificationDispatcher(this);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        for (Thread worker : workers) {
+            worker.start();
+        }
+    }
+
+    /**
+     * Stops the workers once everything queued so far has been delivered, waiting at most a few seconds.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    /**
+     * Queues the notifications for a committed transfer, applying the overflow policy when the queue is full.
+     */
+    public void enqueue(Account fromAccount, Account toAccount, long amountMinorUnits) {
+        TransferNotification notification = new TransferNotification(fromAccount, toAccount, amountMinorUnits);
+        enqueued.increment();
+
+        if (queue.offer(notification)) {
+            return;
+        }
+
+        switch (overflowPolicy) {
+            case BLOCK -> {
+                try {
+                    queue.put(notification);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.increment();
+                }
+            }
+            case DROP -> {
+                dropped.increment();
+                log.debug("Notification queue full, dropping notification for transfer from {} to {}",
+                        fromAccount.getAccountId(), toAccount.getAccountId());
+            }
+        }
+    }
+
+    private void drainLoop() {
+        List<TransferNotification> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                TransferNotification first = queue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                }
+                if (!batch.isEmpty()) {
+                    dispatch(batch);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Delivers a batch with one {@link NotificationService} call per account, joining the messages of
+     * accounts that appear in several transfers of the batch.
+     */
+    void dispatch(List<TransferNotification> batch) {
+        Map<Account, StringBuilder> messages = new IdentityHashMap<>();
+        for (TransferNotification notification : batch) {
+            append(messages, notification.getFromAccount(), notification.senderMessage());
+            append(messages, notification.getToAccount(), notification.receiverMessage());
+        }
+
+        if (virtualThreads && messages.size() > 1) {
+            // Closing the executor waits for every delivery of the batch
+            try (ExecutorService deliveries = Executors.newVirtualThreadPerTaskExecutor()) {
+                messages.forEach((account, message) -> deliveries.execute(() -> deliver(account, message)));
+            }
+        } else {
+            messages.forEach(this::deliver);
+        }
+        dispatched.add(batch.size());
+
+        long now = System.nanoTime();
+        for (TransferNotification notification : batch) {
+            metrics.recordNotificationLatency(now - notification.getEnqueuedAtNanos());
+        }
+    }
+
+    private void deliver(Account account, StringBuilder message) {
+        long start = System.nanoTime();
+        boolean failure = false;
+        try {
+            notificationService.notifyAboutTransfer(account, message.toString());
+        } catch (Exception e) {
+            failure = true;
+            failed.increment();
+            log.error("Failed to send notification to owner of {}", account.getAccountId(), e);
+        }
+        metrics.recordNotificationDelivery(System.nanoTime() - start, failure);
+    }
+
+    private static void append(Map<Account, StringBuilder> messages, Account account, String message) {
+        StringBuilder builder = messages.get(account);
+        if (builder == null) {
+            messages.put(account, new StringBuilder(message));
+        } else {
+            builder.append('\n').append(message);
+        }
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getRemainingCapacity() {
+        return queue.remainingCapacity();
+    }
+
+    public long getEnqueuedCount() {
+        return enqueued.sum();
+    }
+
+    public long getDispatchedCount() {
+        return dispatched.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+}
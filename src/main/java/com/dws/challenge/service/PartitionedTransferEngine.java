@@ -0,0 +1,441 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.InvalidTransferException;
+import com.dws.challenge.exception.TooManyRequestsException;
+import com.dws.challenge.journal.TransferJournal;
+import com.dws.challenge.ledger.AccountLedger;
+import com.dws.challenge.metrics.TransferMetrics;
+import com.dws.challenge.metrics.TransferMetrics.Phase;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-writer transfer engine: accounts are spread over a fixed number of partitions by id hash and
+ * only the thread of the owning partition ever changes an account's balance, so no transfer takes a lock
+ * and hot accounts cost a queue hand-off instead of lock convoys.
+ * <p>
+ * Each partition consumes a bounded lock-free {@link MpscRing}. A transfer is submitted to the partition
+ * of its source account, which reserves the amount by debiting the source and journals the transfer. If
+ * the destination lives in the same partition it is credited right away; otherwise the transfer travels
+ * on to the destination partition to be committed there, and comes back to be refunded (and journaled
+ * as reversed) in the unlikely case the credit would overflow. Debit, journal append and credit happen in
+ * that order, as with the locking engine, so the journal replays to the same balances.
+ * <p>
+ * A transfer is inside the {@link BalanceVersions} bracket of its accounts' stripes from the debit until
+ * it completes, so snapshot reads never see money in flight between partitions. A partition finding a
+ * gate closed by a reader puts the transfer back in its overflow queue rather than wait for the gate.
+ * <p>
+ * The one exception to single writers: a destination whose balance is split (see {@link HotAccounts}) is
+ * credited by the source partition itself, on a sub-balance picked by the submitting thread, instead of
+ * funnelling every credit through the partition that owns it.
+ * <p>
+ * Request threads wait when a ring is full, parking for longer and longer, and give up once the engine
+ * stops. Partition threads never wait: their hand-offs to another partition go to that partition's
+ * unbounded overflow queue when the ring is full, as two partitions waiting on each other's full rings
+ * would otherwise deadlock.
+ */
+@Component
+@ConditionalOnProperty(name = "transfer.engine", havingValue = "partitioned")
+@Slf4j
+public class PartitionedTransferEngine implements TransferEngine {
+
+    private static final int SPINS_BEFORE_PARK = 1_000;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long STOP_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final int SUBMIT_SPINS_BEFORE_PARK = 100;
+    private static final long MAX_SUBMIT_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Partition[] partitions;
+    private final BalanceVersions balanceVersions;
+    private final TransferJournal transferJournal;
+    private final TransferMetrics metrics;
+    private final AccountLedger accountLedger;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private volatile boolean accepting;
+    /** Set once the partition threads are gone; transfers still queued are then drained by {@link #drain()}. */
+    private volatile boolean stopped;
+    private final Object drainLock = new Object();
+
+    @Autowired
+    public PartitionedTransferEngine(BalanceVersions balanceVersions, TransferJournal transferJournal,
+                                     TransferMetrics metrics, AccountLedger accountLedger,
+                                     @Value("${transfer.partitions:0}") int partitionCount,
+                                     @Value("${transfer.partition-ring-size:65536}") int ringSize) {
+        this.balanceVersions = balanceVersions;
+        this.transferJournal = transferJournal;
+        this.metrics = metrics;
+        this.accountLedger = accountLedger;
+        int count = partitionCount > 0 ? partitionCount : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.partitions = new Partition[count];
+        for (int i = 0; i < count; i++) {
+            partitions[i] = new Partition(i, ringSize);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        accepting = true;
+        for (Partition partition : partitions) {
+            partition.thread.start();
+        }
+        log.info("Started partitioned transfer engine with {} partitions", partitions.length);
+    }
+
+    /**
+     * Stops accepting transfers, waits at most a few seconds for the accepted ones to complete and stops
+     * the partition threads. Transfers still queued then are drained: the ones not yet debited fail with an
+     * {@link IllegalStateException}, the ones already debited are credited or refunded as usual.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        accepting = false;
+        long deadline = System.nanoTime() + STOP_TIMEOUT_NANOS;
+        while (completed.sum() < submitted.sum() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        for (Partition partition : partitions) {
+            partition.running = false;
+            LockSupport.unpark(partition.thread);
+        }
+        for (Partition partition : partitions) {
+            partition.thread.join(TimeUnit.NANOSECONDS.toMillis(STOP_TIMEOUT_NANOS));
+            if (partition.thread.isAlive()) {
+                // Draining its ring would make a second consumer of it
+                log.warn("Partition {} did not stop, transfers still queued on it will not complete", partition.index);
+                return;
+            }
+        }
+        stopped = true;
+        drain();
+    }
+
+    /**
+     * Completes the transfers left in the rings and overflow queues once the partition threads are gone,
+     * taking their place as the single consumer of every ring. A credit or refund may hand a transfer to
+     * another partition, so it goes round until all are empty.
+     */
+    private void drain() {
+        synchronized (drainLock) {
+            boolean empty;
+            do {
+                for (Partition partition : partitions) {
+                    Transfer transfer;
+                    while ((transfer = partition.poll()) != null) {
+                        if (transfer.stage == Stage.DEBIT) {
+                            partition.complete(transfer, new IllegalStateException("Transfer engine is not running"));
+                        } else {
+                            partition.process(transfer);
+                        }
+                    }
+                }
+                empty = true;
+                for (Partition partition : partitions) {
+                    empty &= partition.ring.isEmpty() && partition.overflow.isEmpty();
+                }
+            } while (!empty);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Long> submit(Account fromAccount, Account toAccount, long amountMinorUnits) {
+        return submit(fromAccount, toAccount, amountMinorUnits, true);
+    }
+
+    /**
+     * Fails with a {@link TooManyRequestsException} instead of waiting when the ring of the source account's
+     * partition is full.
+     */
+    @Override
+    public CompletableFuture<Long> submitWithoutWaiting(Account fromAccount, Account toAccount, long amountMinorUnits) {
+        return submit(fromAccount, toAccount, amountMinorUnits, false);
+    }
+
+    private CompletableFuture<Long> submit(Account fromAccount, Account toAccount, long amountMinorUnits,
+                                           boolean waitForRoom) {
+        submitted.increment();
+        if (!accepting) {
+            completed.increment();
+            return CompletableFuture.failedFuture(new IllegalStateException("Transfer engine is not running"));
+        }
+        int fromPartition = partitionOf(fromAccount);
+        int toSubBalance = toAccount.pickSubBalance();
+        Transfer transfer = new Transfer(fromAccount, toAccount, amountMinorUnits, fromPartition,
+                toSubBalance < 0 ? partitionOf(toAccount) : fromPartition, toSubBalance,
+                balanceVersions.stripeOf(fromAccount.getAccountId()),
+                balanceVersions.stripeOf(toAccount.getAccountId(), toSubBalance));
+        Partition partition = partitions[transfer.fromPartition];
+        if (waitForRoom) {
+            // The partition thread appends to the journal and must not wait for it, so the request thread does
+            transferJournal.awaitAppendRoom();
+            if (!partition.submit(transfer)) {
+                completed.increment();
+                return CompletableFuture.failedFuture(new IllegalStateException("Transfer engine is not running"));
+            }
+        } else if (!partition.trySubmit(transfer)) {
+            completed.increment();
+            return CompletableFuture.failedFuture(new TooManyRequestsException(
+                    "Too many transfers queued for account " + fromAccount.getAccountId() + ", try again shortly", 1));
+        }
+        return transfer.future;
+    }
+
+    @Override
+    public boolean isLockBased() {
+        return false;
+    }
+
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    int partitionOf(Account account) {
+        int hash = account.getAccountId().hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), partitions.length);
+    }
+
+    private enum Stage {
+        /** At the source partition: reserve the amount. */
+        DEBIT,
+        /** At the destination partition: commit the reserved amount. */
+        CREDIT,
+        /** Back at the source partition: the credit overflowed, return the reserved amount. */
+        REFUND
+    }
+
+    /**
+     * A transfer in flight. Only the partition currently holding it reads or writes its mutable fields;
+     * the ring hand-off orders those accesses.
+     */
+    private static final class Transfer {
+
+        final Account fromAccount;
+        final Account toAccount;
+        final long amount;
+        final int fromPartition;
+        final int toPartition;
+        /** The sub-balance of a split destination to credit, or -1. */
+        final int toSubBalance;
+        final int fromVersionStripe;
+        final int toVersionStripe;
+        final long submittedAtNanos = System.nanoTime();
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+        Stage stage = Stage.DEBIT;
+        boolean writing;
+        long journalSequence;
+
+        Transfer(Account fromAccount, Account toAccount, long amount, int fromPartition, int toPartition,
+                 int toSubBalance, int fromVersionStripe, int toVersionStripe) {
+            this.fromAccount = fromAccount;
+            this.toAccount = toAccount;
+            this.amount = amount;
+            this.fromPartition = fromPartition;
+            this.toPartition = toPartition;
+            this.toSubBalance = toSubBalance;
+            this.fromVersionStripe = fromVersionStripe;
+            this.toVersionStripe = toVersionStripe;
+        }
+    }
+
+    private final class Partition implements Runnable {
+
+        final int index;
+        final MpscRing<Transfer> ring;
+        final Queue<Transfer> overflow = new ConcurrentLinkedQueue<>();
+        final Thread thread;
+        volatile boolean parked;
+        volatile boolean running = true;
+
+        Partition(int index, int ringSize) {
+            this.index = index;
+            this.ring = new MpscRing<>(ringSize);
+            this.thread = new Thread(this, "transfer-partition-" + index);
+            thread.setDaemon(true);
+        }
+
+        /**
+         * Called by request threads: waits for room in the ring, spinning briefly and then parking for twice
+         * as long each time.
+         *
+         * @return false if the engine stopped accepting transfers before there was room
+         */
+        boolean submit(Transfer transfer) {
+            int spins = 0;
+            long parkNanos = 1_000;
+            while (!ring.offer(transfer)) {
+                if (!accepting) {
+                    return false;
+                }
+                if (++spins < SUBMIT_SPINS_BEFORE_PARK) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(this, parkNanos);
+                    parkNanos = Math.min(parkNanos << 1, MAX_SUBMIT_PARK_NANOS);
+                }
+            }
+            submitted();
+            return true;
+        }
+
+        /**
+         * Called by request threads that must not wait.
+         *
+         * @return false if the ring is full
+         */
+        boolean trySubmit(Transfer transfer) {
+            if (!ring.offer(transfer)) {
+                return false;
+            }
+            submitted();
+            return true;
+        }
+
+        /**
+         * Wakes the partition thread, or drains the transfer if the partition threads are gone: it may have
+         * been published after {@link #stop()} drained the ring. Both check the other's write with volatile
+         * accesses, so one of them sees the transfer.
+         */
+        private void submitted() {
+            if (stopped) {
+                drain();
+            } else {
+                wake();
+            }
+        }
+
+        /**
+         * Called by other partition threads: never waits.
+         */
+        void handOff(Transfer transfer) {
+            if (!ring.offer(transfer)) {
+                overflow.add(transfer);
+            }
+            wake();
+        }
+
+        private void wake() {
+            if (parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        /**
+         * Consumer only: the partition thread, or the thread draining after it is gone.
+         */
+        Transfer poll() {
+            Transfer transfer = ring.poll();
+            return transfer != null ? transfer : overflow.poll();
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            while (running) {
+                Transfer transfer = poll();
+                if (transfer != null) {
+                    process(transfer);
+                    idle = 0;
+                } else if (++idle < SPINS_BEFORE_PARK) {
+                    Thread.onSpinWait();
+                } else {
+                    parked = true;
+                    if (ring.isEmpty() && overflow.isEmpty() && running) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+                    parked = false;
+                }
+            }
+        }
+
+        private void process(Transfer transfer) {
+            try {
+                switch (transfer.stage) {
+                    case DEBIT -> debit(transfer);
+                    case CREDIT -> credit(transfer);
+                    case REFUND -> refund(transfer);
+                }
+            } catch (RuntimeException e) {
+                complete(transfer, e);
+            }
+        }
+
+        private void debit(Transfer transfer) {
+            if (!balanceVersions.tryBeginWrite(transfer.fromVersionStripe, transfer.toVersionStripe)) {
+                overflow.add(transfer);
+                return;
+            }
+            transfer.writing = true;
+            Account fromAccount = transfer.fromAccount;
+            if (!fromAccount.tryDebit(transfer.amount)) {
+                complete(transfer, TransferService.insufficientFunds(
+                        fromAccount.getAccountId(), fromAccount.getBalanceMinorUnits(), transfer.amount));
+                return;
+            }
+            try {
+                transfer.journalSequence = transferJournal.appendTransfer(
+                        fromAccount.getAccountId(), transfer.toAccount.getAccountId(), transfer.amount);
+            } catch (RuntimeException e) {
+                fromAccount.credit(transfer.amount);
+                throw e;
+            }
+
+            if (transfer.toPartition == index) {
+                credit(transfer);
+            } else {
+                transfer.stage = Stage.CREDIT;
+                partitions[transfer.toPartition].handOff(transfer);
+            }
+        }
+
+        private void credit(Transfer transfer) {
+            try {
+                transfer.toAccount.credit(transfer.amount, transfer.toSubBalance);
+            } catch (ArithmeticException e) {
+                if (transfer.fromPartition == index) {
+                    refund(transfer);
+                } else {
+                    transfer.stage = Stage.REFUND;
+                    partitions[transfer.fromPartition].handOff(transfer);
+                }
+                return;
+            }
+            accountLedger.recordTransfer(transfer.fromAccount.getAccountId(), transfer.toAccount.getAccountId(),
+                    transfer.amount);
+            complete(transfer, null);
+        }
+
+        private void refund(Transfer transfer) {
+            transfer.fromAccount.credit(transfer.amount);
+            transferJournal.appendTransfer(transfer.toAccount.getAccountId(), transfer.fromAccount.getAccountId(),
+                    transfer.amount);
+            complete(transfer, new InvalidTransferException(TransferService.balanceOverflow(transfer.toAccount.getAccountId())));
+        }
+
+        private void complete(Transfer transfer, RuntimeException failure) {
+            if (transfer.writing) {
+                balanceVersions.endWrite(transfer.fromVersionStripe, transfer.toVersionStripe);
+            }
+            metrics.recordPhase(Phase.APPLY, System.nanoTime() - transfer.submittedAtNanos);
+            completed.increment();
+            if (failure == null) {
+                transfer.future.complete(transfer.journalSequence);
+            } else {
+                transfer.future.completeExceptionally(failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.dws.challenge.service;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed-size table of locks indexed by account id hash. Unlike a lock per account it costs the same
+ * memory however many accounts exist, at the price of unrelated accounts occasionally sharing a stripe.
+ * Several stripes are always acquired in ascending index order, which rules out deadlocks between
+ * callers holding more than one stripe. The stripes are {@link ReentrantLock}s rather than monitors, so a
+ * virtual thread waiting for one unmounts from its carrier instead of pinning it.
+ * <p>
+ * Every stripe counts how often it was acquired, how often the acquiring thread found it held by
+ * someone else and how long such threads waited, so the stripe count can be tuned from the observed
+ * contention. Uncontended acquisitions do not read the clock.
+ * <p>
+ * Callers that must never wait, such as event-loop threads, use {@link #runWhenFree(int, Runnable, int)}
+ * instead of {@link #lock(int)}: a task finding its stripe held is queued on the stripe and run by the thread
+ * that releases it, still holding the stripe, so that no thread waits and the queued tasks keep their order.
+ */
+public class StripedLocks {
+
+    /**
+     * Stripes per available core when no explicit stripe count is configured.
+     */
+    private static final int DEFAULT_STRIPES_PER_CORE = 16;
+
+    private static final int MAX_STRIPES = 1 << 20;
+
+    /**
+     * Distance between the counters of neighbouring stripes, so that they sit on different cache lines.
+     */
+    private static final int COUNTER_STRIDE = 8;
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+    private final AtomicLongArray acquisitions;
+    private final AtomicLongArray contentions;
+    private final AtomicLongArray waitNanos;
+    private final AtomicLongArray queuedTasks;
+    private final AtomicReferenceArray<Queue<Runnable>> taskQueues;
+
+    /**
+     * @param stripes requested number of stripes, rounded up to a power of two; {@code 0} or less sizes
+     *                the table from the number of available cores
+     */
+    public StripedLocks(int stripes) {
+        int size = tableSizeFor(stripes > 0 ? stripes : Runtime.getRuntime().availableProcessors() * DEFAULT_STRIPES_PER_CORE);
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+        this.acquisitions = new AtomicLongArray(size * COUNTER_STRIDE);
+        this.contentions = new AtomicLongArray(size * COUNTER_STRIDE);
+        this.waitNanos = new AtomicLongArray(size * COUNTER_STRIDE);
+        this.queuedTasks = new AtomicLongArray(size * COUNTER_STRIDE);
+        this.taskQueues = new AtomicReferenceArray<>(size);
+    }
+
+    public int getStripeCount() {
+        return locks.length;
+    }
+
+    public int stripeOf(String accountId) {
+        int hash = accountId.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    public void lock(int stripe) {
+        ReentrantLock lock = locks[stripe];
+        acquisitions.getAndIncrement(stripe * COUNTER_STRIDE);
+        if (!lock.tryLock()) {
+            contentions.getAndIncrement(stripe * COUNTER_STRIDE);
+            long start = System.nanoTime();
+            lock.lock();
+            waitNanos.getAndAdd(stripe * COUNTER_STRIDE, System.nanoTime() - start);
+        }
+    }
+
+    public void unlock(int stripe) {
+        ReentrantLock lock = locks[stripe];
+        lock.unlock();
+        // A thread still holding the stripe reentrantly leaves the queued tasks to its outermost unlock
+        if (queuedTasks.get(stripe * COUNTER_STRIDE) > 0 && !lock.isHeldByCurrentThread()) {
+            runQueuedTasks(stripe);
+        }
+    }
+
+    /**
+     * Runs the task holding the stripe: right away if the stripe is free, or else on the thread that releases
+     * it next. Never waits. Queued tasks run in the order they were queued, on a thread the caller does not
+     * control, so they must be short and must not block or throw.
+     *
+     * @param maxQueued number of tasks the stripe may have queued already for this one to be accepted
+     * @return false if the task was turned away because the stripe had {@code maxQueued} tasks queued
+     */
+    public boolean runWhenFree(int stripe, Runnable task, int maxQueued) {
+        if (queuedTasks.get(stripe * COUNTER_STRIDE) >= maxQueued) {
+            return false;
+        }
+        Queue<Runnable> queue = taskQueues.get(stripe);
+        if (queue == null) {
+            taskQueues.compareAndSet(stripe, null, new ConcurrentLinkedQueue<>());
+            queue = taskQueues.get(stripe);
+        }
+        queuedTasks.getAndIncrement(stripe * COUNTER_STRIDE);
+        queue.add(task);
+        runQueuedTasks(stripe);
+        return true;
+    }
+
+    /**
+     * @return tasks queued on the stripe by {@link #runWhenFree(int, Runnable, int)} and not run yet
+     */
+    public long getQueuedTaskCount(int stripe) {
+        return queuedTasks.get(stripe * COUNTER_STRIDE);
+    }
+
+    /**
+     * Runs the stripe's queued tasks if the stripe is free. A task queued while the queue is being run, or just
+     * after it was found empty, is seen by the check that follows the release of the stripe, whether by this
+     * thread or by the one that holds the stripe then.
+     */
+    private void runQueuedTasks(int stripe) {
+        ReentrantLock lock = locks[stripe];
+        Queue<Runnable> queue = taskQueues.get(stripe);
+        while (queuedTasks.get(stripe * COUNTER_STRIDE) > 0 && lock.tryLock()) {
+            try {
+                Runnable task;
+                while ((task = queue.poll()) != null) {
+                    queuedTasks.getAndDecrement(stripe * COUNTER_STRIDE);
+                    acquisitions.getAndIncrement(stripe * COUNTER_STRIDE);
+                    task.run();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Locks the stripes of all given accounts, each distinct stripe once, in ascending stripe order.
+     *
+     * @return the locked stripes, to be passed to {@link #unlockAll(int[])}
+     */
+    public int[] lockAll(Collection<String> accountIds) {
+        int[] stripes = new int[accountIds.size()];
+        int count = 0;
+        for (String accountId : accountIds) {
+            stripes[count++] = stripeOf(accountId);
+        }
+        Arrays.sort(stripes);
+
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || stripes[distinct - 1] != stripes[i]) {
+                stripes[distinct++] = stripes[i];
+            }
+        }
+        stripes = Arrays.copyOf(stripes, distinct);
+
+        for (int stripe : stripes) {
+            lock(stripe);
+        }
+        return stripes;
+    }
+
+    /**
+     * Locks every stripe, in ascending order, which stops every operation that takes a stripe.
+     *
+     * @return the locked stripes, to be passed to {@link #unlockAll(int[])}
+     */
+    public int[] lockAllStripes() {
+        int[] stripes = new int[locks.length];
+        for (int stripe = 0; stripe < stripes.length; stripe++) {
+            lock(stripe);
+            stripes[stripe] = stripe;
+        }
+        return stripes;
+    }
+
+    /**
+     * Releases stripes acquired with {@link #lockAll(Collection)} or {@link #lockAllStripes()}, in reverse order.
+     */
+    public void unlockAll(int[] stripes) {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            unlock(stripes[i]);
+        }
+    }
+
+    public long getAcquisitionCount(int stripe) {
+        return acquisitions.get(stripe * COUNTER_STRIDE);
+    }
+
+    public long getContentionCount(int stripe) {
+        return contentions.get(stripe * COUNTER_STRIDE);
+    }
+
+    /**
+     * @return total time threads spent waiting for the stripe while another thread held it
+     */
+    public long getWaitNanos(int stripe) {
+        return waitNanos.get(stripe * COUNTER_STRIDE);
+    }
+
+    private static int tableSizeFor(int stripes) {
+        int size = Integer.highestOneBit(Math.min(Math.max(stripes, 1), MAX_STRIPES));
+        return size < stripes && size < MAX_STRIPES ? size << 1 : size;
+    }
+}
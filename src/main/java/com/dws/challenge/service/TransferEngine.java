@@ -0,0 +1,38 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Applies validated transfers between resolved accounts: debits the source, journals the transfer and
+ * credits the destination. Selected with {@code transfer.engine}:
+ * <ul>
+ *     <li>{@code locking} (default), {@link LockingTransferEngine}: the calling thread applies the transfer
+ *     under the lock stripe of the source account;</li>
+ *     <li>{@code partitioned}, {@link PartitionedTransferEngine}: accounts are owned by single-threaded
+ *     partitions and the calling thread only hands the transfer over.</li>
+ * </ul>
+ */
+public interface TransferEngine {
+
+    /**
+     * @return a future completed with the journal sequence number of the transfer once both balances are
+     * updated, or completed exceptionally with an {@link com.dws.challenge.exception.InsufficientFundsException}
+     * or an {@link com.dws.challenge.exception.InvalidTransferException} when it was not applied
+     */
+    CompletableFuture<Long> submit(Account fromAccount, Account toAccount, long amountMinorUnits);
+
+    /**
+     * {@link #submit(Account, Account, long)} for callers that must never wait, such as event-loop threads:
+     * a transfer that cannot be applied or handed over right away is queued, and one that finds the queue full
+     * fails with a {@link com.dws.challenge.exception.TooManyRequestsException}.
+     */
+    CompletableFuture<Long> submitWithoutWaiting(Account fromAccount, Account toAccount, long amountMinorUnits);
+
+    /**
+     * @return whether debits are serialized by the stripes of {@link StripedLocks}, which is what lets
+     * {@link TransferService} settle a batch under the stripes of all its accounts
+     */
+    boolean isLockBased();
+}
@@ -0,0 +1,33 @@
+package com.dws.challenge.service;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.Money;
+import lombok.Getter;
+
+/**
+ * A committed transfer waiting to be announced to both account holders. The notification texts are
+ * only formatted when the event is delivered, off the transfer path.
+ */
+@Getter
+public class TransferNotification {
+
+    private final Account fromAccount;
+    private final Account toAccount;
+    private final long amountMinorUnits;
+    private final long enqueuedAtNanos;
+
+    public TransferNotification(Account fromAccount, Account toAccount, long amountMinorUnits) {
+        this.fromAccount = fromAccount;
+        this.toAccount = toAccount;
+        this.amountMinorUnits = amountMinorUnits;
+        this.enqueuedAtNanos = System.nanoTime();
+    }
+
+    String senderMessage() {
+        return String.format("Transferred %s to account %s", Money.toBigDecimal(amountMinorUnits), toAccount.getAccountId());
+    }
+
+    String receiverMessage() {
+        return String.format("Received %s from account %s", Money.toBigDecimal(amountMinorUnits), fromAccount.getAccountId());
+    }
+}
@@ -1,128 +1,608 @@
 package com.dws.challenge.service;
 
+import com.dws.challenge.cluster.AccountSharding;
 import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.Money;
+import com.dws.challenge.dto.BatchMode;
 import com.dws.challenge.dto.TransferRequest;
+import com.dws.challenge.dto.TransferResult;
 import com.dws.challenge.exception.AccountNotFoundException;
 import com.dws.challenge.exception.InsufficientFundsException;
 import com.dws.challenge.exception.InvalidTransferException;
+import com.dws.challenge.exception.NotDurableException;
+import com.dws.challenge.exception.TooManyRequestsException;
+import com.dws.challenge.journal.TransferJournal;
+import com.dws.challenge.ledger.AccountLedger;
+import com.dws.challenge.metrics.TransferMetrics;
+import com.dws.challenge.metrics.TransferMetrics.Outcome;
+import com.dws.challenge.metrics.TransferMetrics.Phase;
+import com.dws.challenge.service.NotificationDispatcher.OverflowPolicy;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
+/**
+ * Moves money between accounts. Requests are validated and their accounts resolved on the calling thread;
+ * the balances are then updated by the configured {@link TransferEngine}. Batches need a lock-based
+ * engine to be settled atomically:
+ * <ul>
+ *     <li>debits are serialized per account, so a batch holding an account's lock sees its balance
+ *     only go up and can check several legs against it before applying them;</li>
+ *     <li>credits never take a lock, so accounts that mostly receive money are not contended.</li>
+ * </ul>
+ */
 @Service
 @Slf4j
 public class TransferService {
 
     private final AccountsService accountsService;
-    private final NotificationService notificationService;
+    private final NotificationDispatcher notificationDispatcher;
 
-    // Lock per account to ensure thread-safe operations and prevent deadlocks
-    private final ConcurrentHashMap<String, ReentrantLock> accountLocks = new ConcurrentHashMap<>();
+    // Striped account locks to serialize debits and prevent deadlocks
+    private final StripedLocks accountLocks;
+    private final BalanceVersions balanceVersions;
+    private final TransferJournal transferJournal;
+    private final TransferMetrics metrics;
+    private final TransferEngine transferEngine;
+    private final IdempotencyCache idempotencyCache;
+    private final AccountLedger accountLedger;
+    private final AccountSharding accountSharding;
+
+    /**
+     * Runs the end of transfers completed by another thread, which must not be held up by the durability wait.
+     * Virtual threads with {@code spring.threads.virtual.enabled}, like the notification dispatcher's workers.
+     */
+    private final ExecutorService completionExecutor;
 
     @Autowired
-    public TransferService(AccountsService accountsService, NotificationService notificationService) {
+    public TransferService(AccountsService accountsService, NotificationDispatcher notificationDispatcher,
+                           StripedLocks accountLocks, BalanceVersions balanceVersions,
+                           TransferJournal transferJournal, TransferMetrics metrics, TransferEngine transferEngine,
+                           IdempotencyCache idempotencyCache, AccountLedger accountLedger,
+                           AccountSharding accountSharding,
+                           @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
         this.accountsService = accountsService;
-        this.notificationService = notificationService;
+        this.notificationDispatcher = notificationDispatcher;
+        this.accountLocks = accountLocks;
+        this.balanceVersions = balanceVersions;
+        this.transferJournal = transferJournal;
+        this.metrics = metrics;
+        this.transferEngine = transferEngine;
+        this.idempotencyCache = idempotencyCache;
+        this.accountLedger = accountLedger;
+        this.accountSharding = accountSharding;
+        this.completionExecutor = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("transfer-completion-", 0).factory())
+                : Executors.newCachedThreadPool(Thread.ofPlatform().name("transfer-completion-", 0).daemon(true).factory());
+    }
+
+    @PreDestroy
+    public void stop() {
+        completionExecutor.close();
     }
 
+    /**
+     * Transfers money and returns once the transfer is applied, durable and its notifications are queued.
+     */
     public void transferMoney(TransferRequest transferRequest) {
-        String fromAccountId = transferRequest.getAccountFromId();
-        String toAccountId = transferRequest.getAccountToId();
-        BigDecimal amount = transferRequest.getAmount();
+        // Per-transfer logging is at debug and guarded, as even a disabled call allocates its varargs array
+        if (log.isDebugEnabled()) {
+            log.debug("Starting transfer of {} from account {} to account {}", transferRequest.getAmount(),
+                    transferRequest.getAccountFromId(), transferRequest.getAccountToId());
+        }
 
-        log.info("Starting transfer of {} from account {} to account {}", amount, fromAccountId, toAccountId);
+        join(transferMoneyAsync(transferRequest));
 
-        validateTransferRequest(transferRequest);
+        if (log.isDebugEnabled()) {
+            log.debug("Successfully transferred {} from account {} to account {}", transferRequest.getAmount(),
+                    transferRequest.getAccountFromId(), transferRequest.getAccountToId());
+        }
+    }
 
-        // Get accounts (will throw exception if not found)
-        Account fromAccount = getAccountSafely(fromAccountId);
-        Account toAccount = getAccountSafely(toAccountId);
+    /**
+     * Validates the request and resolves its accounts on the calling thread, then hands the transfer to the
+     * engine. A request with an idempotency key that was seen before gets the outcome of the earlier request
+     * instead (see {@link IdempotencyCache}).
+     *
+     * @return a future completed once the transfer is applied, durable and its notifications are queued, or
+     * completed exceptionally with the exception {@link #transferMoney(TransferRequest)} would throw
+     */
+    public CompletableFuture<Void> transferMoneyAsync(TransferRequest transferRequest) {
+        return transferMoneyAsync(transferRequest, true);
+    }
 
-        // Perform transfer with proper locking to prevent deadlocks
-        performTransfer(fromAccount, toAccount, amount);
+    /**
+     * {@link #transferMoneyAsync(TransferRequest)} for event-loop threads, which must never wait: the engine
+     * queues the transfer rather than have the calling thread wait for the source account (see
+     * {@link TransferEngine#submitWithoutWaiting(Account, Account, long)}), and a transfer whose queue is full
+     * fails with a {@link TooManyRequestsException}. The end of the transfer runs on another thread whenever
+     * it may wait, that is when the journal is recording or the notification dispatcher blocks when full.
+     */
+    public CompletableFuture<Void> transferMoneyWithoutWaiting(TransferRequest transferRequest) {
+        return transferMoneyAsync(transferRequest, false);
+    }
 
-        // Send notifications to both account holders
-        sendNotifications(fromAccount, toAccount, amount);
+    private CompletableFuture<Void> transferMoneyAsync(TransferRequest transferRequest, boolean mayWait) {
+        if (transferRequest.getIdempotencyKey() != null) {
+            return idempotencyCache.execute(transferRequest, () -> submitTransfer(transferRequest, mayWait));
+        }
+        return submitTransfer(transferRequest, mayWait);
+    }
 
-        log.info("Successfully transferred {} from account {} to account {}", amount, fromAccountId, toAccountId);
+    /**
+     * {@link #transferMoneyWithoutWaiting(TransferRequest)} for callers that have the amount in minor units
+     * already and no idempotency key, such as the selector thread of the binary protocol of
+     * {@link com.dws.challenge.wire.WireServer}: there is no {@link BigDecimal} to parse or rescale.
+     */
+    public CompletableFuture<Void> transferMinorUnitsWithoutWaiting(String fromAccountId, String toAccountId,
+                                                                    long amountMinorUnits) {
+        long start = System.nanoTime();
+        try {
+            validateAccounts(fromAccountId, toAccountId);
+            if (amountMinorUnits <= 0) {
+                throw new InvalidTransferException("Transfer amount must be positive");
+            }
+        } catch (RuntimeException e) {
+            metrics.recordOutcome(outcomeOf(e));
+            return CompletableFuture.failedFuture(e);
+        }
+        return submitTransfer(fromAccountId, toAccountId, amountMinorUnits, start, false);
     }
 
-    private void validateTransferRequest(TransferRequest transferRequest) {
-        if (transferRequest.getAccountFromId().equals(transferRequest.getAccountToId())) {
-            throw new InvalidTransferException("Cannot transfer money to the same account");
+    /**
+     * {@link #transferMinorUnitsWithoutWaiting(String, String, long)} between accounts resolved to handles
+     * beforehand (see {@link AccountsService#getAccountHandle(String)}): the accounts are found without hashing
+     * or comparing their ids. Handles only cover accounts of this node.
+     */
+    public CompletableFuture<Void> transferHandlesWithoutWaiting(int fromHandle, int toHandle, long amountMinorUnits) {
+        long start = System.nanoTime();
+        Account fromAccount;
+        Account toAccount;
+        try {
+            if (fromHandle == toHandle) {
+                throw new InvalidTransferException("Cannot transfer money to the same account");
+            }
+            if (amountMinorUnits <= 0) {
+                throw new InvalidTransferException("Transfer amount must be positive");
+            }
+            long validated = System.nanoTime();
+            metrics.recordPhase(Phase.VALIDATE, validated - start);
+
+            fromAccount = getAccountSafely(fromHandle);
+            toAccount = getAccountSafely(toHandle);
+            metrics.recordPhase(Phase.LOOKUP, System.nanoTime() - validated);
+        } catch (RuntimeException e) {
+            metrics.recordOutcome(outcomeOf(e));
+            return CompletableFuture.failedFuture(e);
+        }
+        return applyTransfer(fromAccount, toAccount, amountMinorUnits, false);
+    }
+
+    private CompletableFuture<Void> submitTransfer(TransferRequest transferRequest, boolean mayWait) {
+        long start = System.nanoTime();
+        long amountMinorUnits;
+        try {
+            amountMinorUnits = validateTransferRequest(transferRequest);
+        } catch (RuntimeException e) {
+            metrics.recordOutcome(outcomeOf(e));
+            return CompletableFuture.failedFuture(e);
+        }
+        return submitTransfer(transferRequest.getAccountFromId(), transferRequest.getAccountToId(), amountMinorUnits,
+                start, mayWait);
+    }
+
+    private CompletableFuture<Void> submitTransfer(String fromAccountId, String toAccountId, long amountMinorUnits,
+                                                   long start, boolean mayWait) {
+        Account fromAccount;
+        Account toAccount;
+        try {
+            long validated = System.nanoTime();
+            metrics.recordPhase(Phase.VALIDATE, validated - start);
+
+            if (!accountSharding.isLocal(fromAccountId) || !accountSharding.isLocal(toAccountId)) {
+                return submitCrossShardTransfer(fromAccountId, toAccountId, amountMinorUnits);
+            }
+
+            // Get accounts (will throw exception if not found)
+            fromAccount = getAccountSafely(fromAccountId);
+            toAccount = getAccountSafely(toAccountId);
+            metrics.recordPhase(Phase.LOOKUP, System.nanoTime() - validated);
+        } catch (RuntimeException e) {
+            metrics.recordOutcome(outcomeOf(e));
+            return CompletableFuture.failedFuture(e);
+        }
+        return applyTransfer(fromAccount, toAccount, amountMinorUnits, mayWait);
+    }
+
+    /**
+     * @param mayWait whether the calling thread may wait for the source account and for the end of the transfer
+     */
+    private CompletableFuture<Void> applyTransfer(Account fromAccount, Account toAccount, long amountMinorUnits,
+                                                  boolean mayWait) {
+        metrics.sampleCredit(toAccount.getAccountId());
+        CompletableFuture<Long> applied = mayWait
+                ? transferEngine.submit(fromAccount, toAccount, amountMinorUnits)
+                : transferEngine.submitWithoutWaiting(fromAccount, toAccount, amountMinorUnits);
+        if (applied.state() == Future.State.FAILED) {
+            // Chaining stages onto a failed future would wrap its exception in a CompletionException, stack trace and all
+            Throwable failure = applied.exceptionNow();
+            metrics.recordOutcome(outcomeOf(failure));
+            return CompletableFuture.failedFuture(failure);
+        }
+        Consumer<Long> finish = journalSequence -> finishTransfer(fromAccount, toAccount, amountMinorUnits, journalSequence);
+        CompletableFuture<Void> finished = applied.isDone() && (mayWait || !finishMayWait())
+                ? applied.thenAccept(finish)
+                : applied.thenAcceptAsync(finish, completionExecutor);
+        return finished.whenComplete((ignored, failure) ->
+                metrics.recordOutcome(failure == null ? Outcome.COMPLETED : outcomeOf(unwrap(failure))));
+    }
+
+    /**
+     * Hands a transfer involving an account of another node to the cluster, which checks the accounts and
+     * balances on the nodes owning them.
+     */
+    private CompletableFuture<Void> submitCrossShardTransfer(String fromAccountId, String toAccountId,
+                                                             long amountMinorUnits) {
+        return accountSharding.transfer(fromAccountId, toAccountId, amountMinorUnits)
+                .thenRunAsync(() -> sendNotifications(notificationAccount(fromAccountId),
+                        notificationAccount(toAccountId), amountMinorUnits), completionExecutor)
+                .whenComplete((ignored, failure) ->
+                        metrics.recordOutcome(failure == null ? Outcome.COMPLETED : outcomeOf(unwrap(failure))));
+    }
+
+    /**
+     * @return the local account, or a stand-in carrying the id of an account owned by another node
+     */
+    private Account notificationAccount(String accountId) {
+        Account account = accountSharding.isLocal(accountId) ? accountsService.getAccount(accountId) : null;
+        return account != null ? account : new Account(accountId);
+    }
+
+    private boolean finishMayWait() {
+        return transferJournal.isRecording() || notificationDispatcher.getOverflowPolicy() == OverflowPolicy.BLOCK;
+    }
+
+    private void finishTransfer(Account fromAccount, Account toAccount, long amountMinorUnits, long journalSequence) {
+        long applied = System.nanoTime();
+        transferJournal.awaitDurable(journalSequence);
+        long durable = System.nanoTime();
+        metrics.recordPhase(Phase.DURABILITY, durable - applied);
+
+        // Queue notifications to both account holders; they are delivered asynchronously
+        sendNotifications(fromAccount, toAccount, amountMinorUnits);
+        metrics.recordPhase(Phase.NOTIFY, System.nanoTime() - durable);
+    }
+
+    /**
+     * Settles a batch of transfers under a single lock acquisition pass. The stripe of every account
+     * touched by the batch is locked exactly once, in stripe order, so batches cannot deadlock with
+     * each other; single transfers hold at most one stripe and cannot take part in a deadlock.
+     * <p>
+     * With an engine that is not lock-based there is no way to hold the balances of several accounts
+     * still: {@link BatchMode#BEST_EFFORT} batches then run as a sequence of single transfers and
+     * {@link BatchMode#ALL_OR_NOTHING} batches are rejected.
+     * <p>
+     * Idempotency keys of the legs are ignored, and legs involving an account owned by another node fail.
+     *
+     * @return one result per requested transfer, in request order
+     */
+    public List<TransferResult> transferMoneyBatch(List<TransferRequest> transferRequests, BatchMode mode) {
+        int size = transferRequests.size();
+        TransferResult[] results = new TransferResult[size];
+        Account[] fromAccounts = new Account[size];
+        Account[] toAccounts = new Account[size];
+        long[] amounts = new long[size];
+        Map<String, Account> accounts = new HashMap<>();
+
+        log.info("Starting batch of {} transfers in {} mode", size, mode);
+        long start = System.nanoTime();
+
+        // Validate and resolve every leg before taking any lock
+        for (int i = 0; i < size; i++) {
+            TransferRequest transferRequest = transferRequests.get(i);
+            try {
+                amounts[i] = validateTransferRequest(transferRequest);
+                if (!accountSharding.isLocal(transferRequest.getAccountFromId())
+                        || !accountSharding.isLocal(transferRequest.getAccountToId())) {
+                    throw new InvalidTransferException("Batches cannot include accounts owned by other nodes");
+                }
+                fromAccounts[i] = accounts.computeIfAbsent(transferRequest.getAccountFromId(), this::getAccountSafely);
+                toAccounts[i] = accounts.computeIfAbsent(transferRequest.getAccountToId(), this::getAccountSafely);
+            } catch (AccountNotFoundException | InvalidTransferException e) {
+                results[i] = TransferResult.failed(i, e.getMessage());
+                metrics.recordOutcome(outcomeOf(e));
+            }
+        }
+
+        boolean rejected = mode == BatchMode.ALL_OR_NOTHING && containsFailure(results);
+        if (!transferEngine.isLockBased()) {
+            transferSequentially(mode, amounts, fromAccounts, toAccounts, results);
+        } else if (!rejected) {
+            long journalSequence;
+            transferJournal.awaitAppendRoom();
+            long lockStart = System.nanoTime();
+            int[] stripes = accountLocks.lockAll(accounts.keySet());
+            metrics.recordPhase(Phase.LOCK_WAIT, System.nanoTime() - lockStart);
+            try {
+                journalSequence = settle(mode, amounts, fromAccounts, toAccounts, results);
+            } finally {
+                accountLocks.unlockAll(stripes);
+            }
+            transferJournal.awaitDurable(journalSequence);
+        }
+
+        List<TransferResult> resultList = new ArrayList<>(size);
+        int completed = 0;
+        for (int i = 0; i < size; i++) {
+            if (results[i] == null) {
+                results[i] = TransferResult.notApplied(i);
+            } else if (results[i].getStatus() == TransferResult.Status.COMPLETED) {
+                sendNotifications(fromAccounts[i], toAccounts[i], amounts[i]);
+                completed++;
+            }
+            resultList.add(results[i]);
+        }
+        metrics.recordOutcome(Outcome.COMPLETED, completed);
+        metrics.recordBatch(System.nanoTime() - start);
+
+        log.info("Finished batch of {} transfers in {} mode: {} completed", size, mode, completed);
+        return resultList;
+    }
+
+    /**
+     * Runs the legs of a batch one after the other through the engine, each leg waiting for the previous
+     * one so that a leg may spend money credited by an earlier leg. A leg failing for any other reason than
+     * its own funds or amount, such as the engine stopping or the journal failing, fails and stops the
+     * batch: the legs after it are left not applied, and the ones before it are still reported.
+     */
+    private void transferSequentially(BatchMode mode, long[] amounts, Account[] fromAccounts, Account[] toAccounts,
+                                      TransferResult[] results) {
+        if (mode == BatchMode.ALL_OR_NOTHING) {
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] == null) {
+                    results[i] = TransferResult.failed(i, "All-or-nothing batches are not supported by the "
+                            + "partitioned transfer engine");
+                }
+            }
+            return;
         }
 
+        long journalSequence = 0;
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] != null) {
+                continue;
+            }
+            try {
+                journalSequence = Math.max(journalSequence, join(transferEngine.submit(fromAccounts[i], toAccounts[i], amounts[i])));
+                results[i] = TransferResult.completed(i);
+            } catch (InsufficientFundsException | InvalidTransferException e) {
+                results[i] = TransferResult.failed(i, e.getMessage());
+                metrics.recordOutcome(outcomeOf(e));
+            } catch (RuntimeException e) {
+                log.error("Stopping batch at leg {} of {}", i, results.length, e);
+                results[i] = TransferResult.failed(i, e.getMessage());
+                metrics.recordOutcome(outcomeOf(e));
+                break;
+            }
+        }
+        transferJournal.awaitDurable(journalSequence);
+    }
+
+    /**
+     * @return the transfer amount in minor units
+     */
+    private long validateTransferRequest(TransferRequest transferRequest) {
+        validateAccounts(transferRequest.getAccountFromId(), transferRequest.getAccountToId());
+
         if (transferRequest.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
             throw new InvalidTransferException("Transfer amount must be positive");
         }
+
+        try {
+            return Money.toMinorUnits(transferRequest.getAmount());
+        } catch (ArithmeticException e) {
+            throw new InvalidTransferException(
+                    "Transfer amount must have at most " + Money.SCALE + " decimal places");
+        }
+    }
+
+    private static void validateAccounts(String fromAccountId, String toAccountId) {
+        if (fromAccountId.equals(toAccountId)) {
+            throw new InvalidTransferException("Cannot transfer money to the same account");
+        }
     }
 
     private Account getAccountSafely(String accountId) {
         Account account = accountsService.getAccount(accountId);
         if (account == null) {
-            throw new AccountNotFoundException("Account not found: " + accountId);
+            throw AccountNotFoundException.forAccount(accountId);
         }
         return account;
     }
 
-    private void performTransfer(Account fromAccount, Account toAccount, BigDecimal amount) {
+    private Account getAccountSafely(int handle) {
+        Account account = accountsService.getAccount(handle);
+        if (account == null) {
+            throw new AccountNotFoundException("No account with handle " + handle);
+        }
+        return account;
+    }
 
-        String firstLockId = fromAccount.getAccountId().compareTo(toAccount.getAccountId()) < 0
-                ? fromAccount.getAccountId() : toAccount.getAccountId();
-        String secondLockId = fromAccount.getAccountId().compareTo(toAccount.getAccountId()) < 0
-                ? toAccount.getAccountId() : fromAccount.getAccountId();
+    /**
+     * Decides which legs of a batch are applied by checking them in order against the current balances
+     * plus the net effect of the legs accepted before them, journals the accepted legs as one record and
+     * only then applies their net effect, inside one {@link BalanceVersions} bracket, and records them in the
+     * account ledgers. In {@link BatchMode#ALL_OR_NOTHING} mode the first failing leg rejects the whole batch
+     * and nothing is applied.
+     * <p>
+     * Must be called with the lock stripes of all involved accounts held: their balances can then only
+     * grow until the net debits are applied, which therefore cannot fail.
+     *
+     * @return the journal sequence number of the accepted legs
+     */
+    private long settle(BatchMode mode, long[] amounts, Account[] fromAccounts, Account[] toAccounts,
+                        TransferResult[] results) {
+        Map<Account, long[]> netChanges = new IdentityHashMap<>();
+        int accepted = 0;
 
-        Lock firstLock = getAccountLock(firstLockId);
-        Lock secondLock = getAccountLock(secondLockId);
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] != null) {
+                continue;
+            }
+            Account fromAccount = fromAccounts[i];
+            Account toAccount = toAccounts[i];
+            long[] fromChange = netChanges.computeIfAbsent(fromAccount, account -> new long[1]);
+            long[] toChange = netChanges.computeIfAbsent(toAccount, account -> new long[1]);
 
-        firstLock.lock();
-        try {
-            secondLock.lock();
-            try {
-                // Check if fromAccount has sufficient funds
-                if (fromAccount.getBalance().compareTo(amount) < 0) {
-                    throw new InsufficientFundsException(
-                            "Insufficient funds in account " + fromAccount.getAccountId() +
-                                    ". Available: " + fromAccount.getBalance() + ", Required: " + amount
-                    );
+            long available = fromAccount.getBalanceMinorUnits() + fromChange[0];
+            String failure = null;
+            if (available < amounts[i]) {
+                failure = insufficientFunds(fromAccount.getAccountId(), available, amounts[i]).getMessage();
+                metrics.recordOutcome(Outcome.INSUFFICIENT_FUNDS);
+            } else if (toAccount.getBalanceMinorUnits() + toChange[0] > Long.MAX_VALUE - amounts[i]) {
+                failure = balanceOverflow(toAccount.getAccountId());
+                metrics.recordOutcome(Outcome.INVALID);
+            }
+
+            if (failure != null) {
+                results[i] = TransferResult.failed(i, failure);
+                if (mode == BatchMode.ALL_OR_NOTHING) {
+                    // Earlier legs are reported as not applied
+                    Arrays.fill(results, 0, i, null);
+                    return 0;
                 }
+                continue;
+            }
 
-                // Perform the actual transfer
-                fromAccount.setBalance(fromAccount.getBalance().subtract(amount));
-                toAccount.setBalance(toAccount.getBalance().add(amount));
+            fromChange[0] -= amounts[i];
+            toChange[0] += amounts[i];
+            results[i] = TransferResult.completed(i);
+            accepted++;
+        }
 
-                log.debug("Transfer completed. From account {} new balance: {}, To account {} new balance: {}",
-                        fromAccount.getAccountId(), fromAccount.getBalance(),
-                        toAccount.getAccountId(), toAccount.getBalance());
+        long journalSequence = journalAccepted(amounts, fromAccounts, toAccounts, results, accepted);
 
-            } finally {
-                secondLock.unlock();
-            }
+        List<String> changedAccountIds = new ArrayList<>(netChanges.size());
+        netChanges.keySet().forEach(account -> changedAccountIds.add(account.getAccountId()));
+        int[] versionStripes = balanceVersions.stripesOf(changedAccountIds);
+        balanceVersions.beginWrite(versionStripes);
+        try {
+            netChanges.forEach((account, change) -> {
+                if (change[0] < 0 && !account.tryDebit(-change[0])) {
+                    throw new IllegalStateException("Balance of locked account " + account.getAccountId() + " decreased");
+                }
+            });
+            netChanges.forEach((account, change) -> {
+                if (change[0] > 0) {
+                    account.credit(change[0]);
+                }
+            });
         } finally {
-            firstLock.unlock();
+            balanceVersions.endWrite(versionStripes);
+        }
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] != null && results[i].getStatus() == TransferResult.Status.COMPLETED) {
+                accountLedger.recordTransfer(fromAccounts[i].getAccountId(), toAccounts[i].getAccountId(), amounts[i]);
+            }
         }
+        return journalSequence;
     }
 
-    private Lock getAccountLock(String accountId) {
-        return accountLocks.computeIfAbsent(accountId, k -> new ReentrantLock());
+    private long journalAccepted(long[] amounts, Account[] fromAccounts, Account[] toAccounts,
+                                 TransferResult[] results, int accepted) {
+        if (accepted == 0 || !transferJournal.isRecording()) {
+            return 0;
+        }
+        String[] fromAccountIds = new String[accepted];
+        String[] toAccountIds = new String[accepted];
+        long[] acceptedAmounts = new long[accepted];
+        int count = 0;
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] != null && results[i].getStatus() == TransferResult.Status.COMPLETED) {
+                fromAccountIds[count] = fromAccounts[i].getAccountId();
+                toAccountIds[count] = toAccounts[i].getAccountId();
+                acceptedAmounts[count] = amounts[i];
+                count++;
+            }
+        }
+        return transferJournal.appendTransfers(fromAccountIds, toAccountIds, acceptedAmounts, count);
     }
 
-    private void sendNotifications(Account fromAccount, Account toAccount, BigDecimal amount) {
-        try {
-            // Notify sender
-            String senderMessage = String.format("Transferred %s to account %s", amount, toAccount.getAccountId());
-            notificationService.notifyAboutTransfer(fromAccount, senderMessage);
+    private static Outcome outcomeOf(Throwable e) {
+        if (e instanceof InsufficientFundsException) {
+            return Outcome.INSUFFICIENT_FUNDS;
+        }
+        if (e instanceof AccountNotFoundException) {
+            return Outcome.ACCOUNT_NOT_FOUND;
+        }
+        if (e instanceof InvalidTransferException) {
+            return Outcome.INVALID;
+        }
+        if (e instanceof TooManyRequestsException) {
+            return Outcome.REJECTED;
+        }
+        if (e instanceof NotDurableException) {
+            return Outcome.NOT_DURABLE;
+        }
+        return Outcome.ERROR;
+    }
 
-            // Notify receiver
-            String receiverMessage = String.format("Received %s from account %s", amount, fromAccount.getAccountId());
-            notificationService.notifyAboutTransfer(toAccount, receiverMessage);
-        } catch (Exception e) {
-            log.error("Failed to send notifications for transfer", e);
+    private static boolean containsFailure(TransferResult[] results) {
+        for (TransferResult result : results) {
+            if (result != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Waits for a future and rethrows the exception it completed with, rather than a wrapper.
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        // join() would wrap the exception of a future that has failed already in a new CompletionException
+        if (future.state() == Future.State.FAILED && future.exceptionNow() instanceof RuntimeException cause) {
+            throw cause;
         }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+    }
+
+    public static InsufficientFundsException insufficientFunds(String accountId, long available, long required) {
+        return new InsufficientFundsException(accountId, available, required);
+    }
+
+    public static String balanceOverflow(String accountId) {
+        return "Transfer would exceed the maximum balance of account " + accountId;
+    }
+
+    private void sendNotifications(Account fromAccount, Account toAccount, long amount) {
+        notificationDispatcher.enqueue(fromAccount, toAccount, amount);
     }
-}
\ No newline at end of file
+}
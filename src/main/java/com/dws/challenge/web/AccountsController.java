@@ -1,34 +1,79 @@
 package com.dws.challenge.web;
 
+import com.dws.challenge.cluster.AccountSharding;
 import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.BatchMode;
+import com.dws.challenge.dto.BatchTransferRequest;
+import com.dws.challenge.dto.BatchTransferResponse;
 import com.dws.challenge.dto.TransferRequest;
+import com.dws.challenge.dto.TransferResult;
 import com.dws.challenge.exception.AccountNotFoundException;
 import com.dws.challenge.exception.DuplicateAccountIdException;
 import com.dws.challenge.exception.InsufficientFundsException;
 import com.dws.challenge.exception.InvalidTransferException;
+import com.dws.challenge.exception.NodeUnavailableException;
+import com.dws.challenge.exception.NotDurableException;
+import com.dws.challenge.exception.TooManyRequestsException;
+import com.dws.challenge.ledger.AccountLedger;
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.service.AccountImportService;
 import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.AdmissionControl;
 import com.dws.challenge.service.TransferService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 @RestController
 @RequestMapping("/v1/accounts")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @Slf4j
 public class AccountsController {
 
+  private static final int MAX_TRANSACTIONS_PAGE_SIZE = 10_000;
+
+  private static final int MAX_BALANCE_IDS = 10_000;
+
+  /**
+   * Shared by every successful transfer; a response entity's headers are read-only.
+   */
+  private static final ResponseEntity<Object> TRANSFER_COMPLETED =
+    new ResponseEntity<>("Transfer completed successfully", HttpStatus.OK);
+
   private final AccountsService accountsService;
   private final TransferService transferService;
+  private final AccountLedger accountLedger;
+  private final AccountImportService accountImportService;
+  private final AccountSharding accountSharding;
+  private final AdmissionControl admissionControl;
+  private final ObjectMapper objectMapper;
 
   @Autowired
-  public AccountsController(AccountsService accountsService, TransferService transferService) {
+  public AccountsController(AccountsService accountsService, TransferService transferService,
+                            AccountLedger accountLedger, AccountImportService accountImportService,
+                            AccountSharding accountSharding, AdmissionControl admissionControl,
+                            ObjectMapper objectMapper) {
     this.accountsService = accountsService;
     this.transferService = transferService;
+    this.accountLedger = accountLedger;
+    this.accountImportService = accountImportService;
+    this.accountSharding = accountSharding;
+    this.admissionControl = admissionControl;
+    this.objectMapper = objectMapper;
   }
 
   @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
@@ -36,34 +81,164 @@ public class AccountsController {
     log.info("Creating account {}", account);
 
     try {
-    this.accountsService.createAccount(account);
+      if (accountSharding.isLocal(account.getAccountId())) {
+        this.accountsService.createAccount(account);
+      } else {
+        this.accountSharding.createAccount(account);
+      }
     } catch (DuplicateAccountIdException daie) {
       return new ResponseEntity<>(daie.getMessage(), HttpStatus.BAD_REQUEST);
+    } catch (NodeUnavailableException nue) {
+      return new ResponseEntity<>(nue.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+    } catch (NotDurableException nde) {
+      log.error("Account {} created but not durable", account.getAccountId(), nde);
+      return new ResponseEntity<>(nde.getMessage(), HttpStatus.ACCEPTED);
     }
 
     return new ResponseEntity<>(HttpStatus.CREATED);
   }
 
+  /**
+   * Creates the accounts listed in an NDJSON ({@code application/x-ndjson}) or CSV ({@code text/csv}) body,
+   * reading it as it arrives. The response is an NDJSON report of the rows that were not imported,
+   * written while the import runs, ending with a summary line.
+   */
+  @PostMapping(path = "/bulk", consumes = {MediaType.APPLICATION_NDJSON_VALUE, "text/csv"})
+  public void importAccounts(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body,
+                             HttpServletResponse response) throws IOException {
+    AccountImportService.Format format = contentType.startsWith("text/csv")
+      ? AccountImportService.Format.CSV : AccountImportService.Format.NDJSON;
+    log.info("Importing accounts from {}", format);
+
+    response.setStatus(HttpStatus.OK.value());
+    response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+    try (ImportReportWriter report = new ImportReportWriter(objectMapper.getFactory(), response.getOutputStream())) {
+      report.summary(accountImportService.importAccounts(body, format, report));
+    }
+  }
+
+  /**
+   * Returns the balances of the listed accounts ({@code ?ids=Id-1,Id-2} or repeated {@code ids}) as of one
+   * instant, with the ids that have no account under {@code notFound}.
+   */
+  @GetMapping(params = "ids")
+  public ResponseEntity<StreamingResponseBody> getBalances(@RequestParam List<String> ids) {
+    if (ids.isEmpty() || ids.size() > MAX_BALANCE_IDS) {
+      return message("ids must list between 1 and " + MAX_BALANCE_IDS + " account ids", HttpStatus.BAD_REQUEST);
+    }
+    StreamingResponseBody body = new BalanceSnapshotBody(objectMapper.getFactory(), accountsService.getBalances(ids));
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+  }
+
   @GetMapping(path = "/{accountId}")
   public Account getAccount(@PathVariable String accountId) {
     log.info("Retrieving account for id {}", accountId);
+    if (!accountSharding.isLocal(accountId)) {
+      return this.accountSharding.getAccount(accountId);
+    }
     return this.accountsService.getAccount(accountId);
   }
 
+  /**
+   * Returns the account's handle for {@link com.dws.challenge.wire.WireProtocol#TRANSFER_BY_HANDLE}. Only the
+   * {@code accounts.store=interned} store hands out handles.
+   */
+  @GetMapping(path = "/{accountId}/handle")
+  public ResponseEntity<Object> getAccountHandle(@PathVariable String accountId) {
+    int handle = accountsService.getAccountHandle(accountId);
+    if (handle == AccountsRepository.NO_HANDLE) {
+      return new ResponseEntity<>("No handle for account: " + accountId, HttpStatus.NOT_FOUND);
+    }
+    return new ResponseEntity<>(handle, HttpStatus.OK);
+  }
+
+  /**
+   * Streams up to {@code limit} transactions of the account, oldest first, starting at {@code cursor}.
+   * The response ends with the cursor of the next page.
+   */
+  @GetMapping(path = "/{accountId}/transactions")
+  public ResponseEntity<StreamingResponseBody> getTransactions(@PathVariable String accountId,
+                                                               @RequestParam(defaultValue = "0") long cursor,
+                                                               @RequestParam(defaultValue = "100") int limit) {
+    if (!accountLedger.isEnabled()) {
+      return message("Transaction history is disabled", HttpStatus.NOT_FOUND);
+    }
+    if (accountsService.getAccount(accountId) == null) {
+      return message("Account not found: " + accountId, HttpStatus.NOT_FOUND);
+    }
+    if (cursor < 0 || limit < 1 || limit > MAX_TRANSACTIONS_PAGE_SIZE) {
+      return message("cursor must not be negative and limit must be between 1 and " + MAX_TRANSACTIONS_PAGE_SIZE,
+        HttpStatus.BAD_REQUEST);
+    }
+    StreamingResponseBody body = new TransactionHistoryBody(objectMapper.getFactory(), accountLedger, accountId,
+      cursor, limit);
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+  }
+
   @PostMapping(path = "/transfer", consumes = MediaType.APPLICATION_JSON_VALUE)
   public ResponseEntity<Object> transferMoney(@RequestBody @Valid TransferRequest transferRequest) {
-    log.info("Processing transfer request: {}", transferRequest);
+    log.debug("Processing transfer request: {}", transferRequest);
 
+    try {
+      admissionControl.admit(transferRequest.getAccountFromId());
+    } catch (TooManyRequestsException e) {
+      return tooManyRequests(e);
+    }
     try {
       transferService.transferMoney(transferRequest);
-      return new ResponseEntity<>("Transfer completed successfully", HttpStatus.OK);
+      return TRANSFER_COMPLETED;
     } catch (AccountNotFoundException | InvalidTransferException | InsufficientFundsException e) {
       log.error("Transfer failed: {}", e.getMessage());
       return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+    } catch (NodeUnavailableException e) {
+      log.error("Transfer failed: {}", e.getMessage());
+      return new ResponseEntity<>(e.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+    } catch (NotDurableException e) {
+      log.error("Transfer applied but not durable", e);
+      return new ResponseEntity<>(e.getMessage(), HttpStatus.ACCEPTED);
     } catch (Exception e) {
       log.error("Unexpected error during transfer", e);
       return new ResponseEntity<>("Internal server error", HttpStatus.INTERNAL_SERVER_ERROR);
+    } finally {
+      admissionControl.release();
     }
   }
 
-}
+  @PostMapping(path = "/transfers/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> transferMoneyBatch(@RequestBody @Valid BatchTransferRequest batchRequest) {
+    BatchMode mode = batchRequest.getMode() == null ? BatchMode.ALL_OR_NOTHING : batchRequest.getMode();
+    log.info("Processing batch of {} transfers in {} mode", batchRequest.getTransfers().size(), mode);
+
+    try {
+      admissionControl.admitBatch(batchRequest.getTransfers());
+    } catch (TooManyRequestsException e) {
+      return tooManyRequests(e);
+    }
+    try {
+      List<TransferResult> results = transferService.transferMoneyBatch(batchRequest.getTransfers(), mode);
+      BatchTransferResponse response = new BatchTransferResponse(mode, results);
+      HttpStatus status = mode == BatchMode.ALL_OR_NOTHING && response.getFailed() > 0
+              ? HttpStatus.BAD_REQUEST : HttpStatus.OK;
+      return new ResponseEntity<>(response, status);
+    } catch (NotDurableException e) {
+      log.error("Batch transfer applied but not durable", e);
+      return new ResponseEntity<>(e.getMessage(), HttpStatus.ACCEPTED);
+    } catch (Exception e) {
+      log.error("Unexpected error during batch transfer", e);
+      return new ResponseEntity<>("Internal server error", HttpStatus.INTERNAL_SERVER_ERROR);
+    } finally {
+      admissionControl.release();
+    }
+  }
+
+  private static ResponseEntity<Object> tooManyRequests(TooManyRequestsException e) {
+    return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+      .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()))
+      .body(e.getMessage());
+  }
+
+  private static ResponseEntity<StreamingResponseBody> message(String message, HttpStatus status) {
+    return ResponseEntity.status(status).contentType(MediaType.TEXT_PLAIN)
+      .body(outputStream -> outputStream.write(message.getBytes(StandardCharsets.UTF_8)));
+  }
+}
\ No newline at end of file
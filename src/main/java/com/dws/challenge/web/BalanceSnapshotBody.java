@@ -0,0 +1,57 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.domain.Money;
+import com.dws.challenge.dto.BalanceSnapshot;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a balance snapshot straight from its arrays, formatting each balance into one reused buffer:
+ * <pre>
+ * {"accounts":[{"accountId":"Id-1","balance":100.5}, ...],"notFound":["Id-9"]}
+ * </pre>
+ */
+class BalanceSnapshotBody implements StreamingResponseBody {
+
+  private final JsonFactory jsonFactory;
+  private final BalanceSnapshot snapshot;
+
+  BalanceSnapshotBody(JsonFactory jsonFactory, BalanceSnapshot snapshot) {
+    this.jsonFactory = jsonFactory;
+    this.snapshot = snapshot;
+  }
+
+  @Override
+  public void writeTo(OutputStream outputStream) throws IOException {
+    char[] balance = new char[Money.MAX_FORMATTED_LENGTH];
+    try (JsonGenerator generator = jsonFactory.createGenerator(outputStream, JsonEncoding.UTF8)) {
+      generator.writeStartObject();
+      generator.writeFieldName("accounts");
+      generator.writeStartArray();
+      for (int i = 0; i < snapshot.size(); i++) {
+        if (snapshot.exists(i)) {
+          generator.writeStartObject();
+          generator.writeStringField("accountId", snapshot.getAccountId(i));
+          generator.writeFieldName("balance");
+          generator.writeNumber(balance, 0, Money.format(snapshot.getBalanceMinorUnits(i), balance));
+          generator.writeEndObject();
+        }
+      }
+      generator.writeEndArray();
+      generator.writeFieldName("notFound");
+      generator.writeStartArray();
+      for (int i = 0; i < snapshot.size(); i++) {
+        if (!snapshot.exists(i)) {
+          generator.writeString(snapshot.getAccountId(i));
+        }
+      }
+      generator.writeEndArray();
+      generator.writeEndObject();
+    }
+  }
+}
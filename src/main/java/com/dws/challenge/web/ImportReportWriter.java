@@ -0,0 +1,87 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.service.AccountImportService;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Writes the report of a bulk import as NDJSON while the import runs: one line per row that was not
+ * imported, then a summary line.
+ * <pre>
+ * {"line":4,"accountId":"Id-1","status":"DUPLICATE"}
+ * {"line":9,"accountId":"Id-7","status":"REJECTED","errors":["Initial balance must be positive."]}
+ * {"created":999998,"duplicates":1,"rejected":1}
+ * </pre>
+ * The summary has an {@code error} field when the import stopped before the end of the input.
+ */
+class ImportReportWriter implements AccountImportService.Listener, Closeable {
+
+  private final JsonGenerator generator;
+
+  ImportReportWriter(JsonFactory jsonFactory, OutputStream outputStream) throws IOException {
+    this.generator = jsonFactory.createGenerator(outputStream, JsonEncoding.UTF8);
+    // Lines are separated by the newline written after each object, not by the default space
+    this.generator.setRootValueSeparator(null);
+  }
+
+  @Override
+  public void duplicate(long line, String accountId) {
+    try {
+      writeRow(line, accountId, "DUPLICATE");
+      generator.writeEndObject();
+      generator.writeRaw('\n');
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void rejected(long line, String accountId, List<String> errors) {
+    try {
+      writeRow(line, accountId, "REJECTED");
+      generator.writeFieldName("errors");
+      generator.writeStartArray();
+      for (String error : errors) {
+        generator.writeString(error);
+      }
+      generator.writeEndArray();
+      generator.writeEndObject();
+      generator.writeRaw('\n');
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  void summary(AccountImportService.Summary summary) throws IOException {
+    generator.writeStartObject();
+    generator.writeNumberField("created", summary.created());
+    generator.writeNumberField("duplicates", summary.duplicates());
+    generator.writeNumberField("rejected", summary.rejected());
+    if (summary.error() != null) {
+      generator.writeStringField("error", summary.error());
+    }
+    generator.writeEndObject();
+    generator.writeRaw('\n');
+  }
+
+  @Override
+  public void close() throws IOException {
+    generator.close();
+  }
+
+  private void writeRow(long line, String accountId, String status) throws IOException {
+    generator.writeStartObject();
+    generator.writeNumberField("line", line);
+    if (accountId != null) {
+      generator.writeStringField("accountId", accountId);
+    }
+    generator.writeStringField("status", status);
+  }
+}
@@ -0,0 +1,161 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.cluster.AccountSharding;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.TransferRequest;
+import com.dws.challenge.exception.AccountNotFoundException;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.exception.InsufficientFundsException;
+import com.dws.challenge.exception.InvalidTransferException;
+import com.dws.challenge.exception.NodeUnavailableException;
+import com.dws.challenge.exception.NotDurableException;
+import com.dws.challenge.exception.TooManyRequestsException;
+import com.dws.challenge.replication.StandbyReplica;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.AdmissionControl;
+import com.dws.challenge.service.TransferService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import jakarta.validation.Valid;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The account and transfer endpoints of {@link AccountsController} on WebFlux, with
+ * {@code spring.main.web-application-type=reactive}: requests are served by a few Netty event-loop threads and
+ * no thread is tied to a transfer while it waits. Transfers go through
+ * {@link TransferService#transferMoneyWithoutWaiting(TransferRequest)}, which queues a transfer whose account is
+ * busy instead of waiting for it, and are answered with 429 when admission control or the queue of the source
+ * account turns them away. Account creation may wait for a lock and runs off the event loop.
+ */
+@RestController
+@RequestMapping("/v1/accounts")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Slf4j
+public class ReactiveAccountsController {
+
+  private static final ResponseEntity<Object> TRANSFER_COMPLETED =
+    new ResponseEntity<>("Transfer completed successfully", HttpStatus.OK);
+
+  private final AccountsService accountsService;
+  private final TransferService transferService;
+  private final AccountSharding accountSharding;
+  private final AdmissionControl admissionControl;
+  private final StandbyReplica standbyReplica;
+
+  @Autowired
+  public ReactiveAccountsController(AccountsService accountsService, TransferService transferService,
+                                    AccountSharding accountSharding, AdmissionControl admissionControl,
+                                    Optional<StandbyReplica> standbyReplica) {
+    this.accountsService = accountsService;
+    this.transferService = transferService;
+    this.accountSharding = accountSharding;
+    this.admissionControl = admissionControl;
+    this.standbyReplica = standbyReplica.orElse(null);
+  }
+
+  @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+  public Mono<ResponseEntity<Object>> createAccount(@RequestBody @Valid Account account) {
+    if (isReadOnlyStandby()) {
+      return Mono.just(readOnlyStandby());
+    }
+    return Mono.<ResponseEntity<Object>>fromCallable(() -> {
+      log.info("Creating account {}", account);
+      try {
+        if (accountSharding.isLocal(account.getAccountId())) {
+          accountsService.createAccount(account);
+        } else {
+          accountSharding.createAccount(account);
+        }
+      } catch (DuplicateAccountIdException e) {
+        return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+      } catch (NodeUnavailableException e) {
+        return new ResponseEntity<>(e.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+      } catch (NotDurableException e) {
+        log.error("Account {} created but not durable", account.getAccountId(), e);
+        return new ResponseEntity<>(e.getMessage(), HttpStatus.ACCEPTED);
+      }
+      return new ResponseEntity<>(HttpStatus.CREATED);
+    }).subscribeOn(Schedulers.boundedElastic());
+  }
+
+  @GetMapping(path = "/{accountId}")
+  public Mono<Account> getAccount(@PathVariable String accountId) {
+    if (!accountSharding.isLocal(accountId)) {
+      return Mono.fromCallable(() -> accountSharding.getAccount(accountId)).subscribeOn(Schedulers.boundedElastic());
+    }
+    Account account = accountsService.getAccount(accountId);
+    return account == null ? Mono.empty() : Mono.just(account);
+  }
+
+  @PostMapping(path = "/transfer", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public Mono<ResponseEntity<Object>> transferMoney(@RequestBody @Valid TransferRequest transferRequest) {
+    if (isReadOnlyStandby()) {
+      return Mono.just(readOnlyStandby());
+    }
+    try {
+      admissionControl.admit(transferRequest.getAccountFromId());
+    } catch (TooManyRequestsException e) {
+      return Mono.just(tooManyRequests(e));
+    }
+    CompletableFuture<Void> transfer;
+    try {
+      transfer = transferService.transferMoneyWithoutWaiting(transferRequest);
+    } catch (RuntimeException e) {
+      transfer = CompletableFuture.failedFuture(e);
+    }
+    // Released when the transfer is over rather than when the response is written, even if the client went away
+    transfer.whenComplete((ignored, failure) -> admissionControl.release());
+    return Mono.fromFuture(transfer, true)
+      .thenReturn(TRANSFER_COMPLETED)
+      .onErrorResume(failure -> Mono.just(transferFailed(failure)));
+  }
+
+  private boolean isReadOnlyStandby() {
+    return standbyReplica != null && !standbyReplica.isPromoted();
+  }
+
+  private static ResponseEntity<Object> readOnlyStandby() {
+    return new ResponseEntity<>("Read-only standby, promote it to accept writes", HttpStatus.SERVICE_UNAVAILABLE);
+  }
+
+  private static ResponseEntity<Object> transferFailed(Throwable failure) {
+    if (failure instanceof CompletionException && failure.getCause() != null) {
+      failure = failure.getCause();
+    }
+    if (failure instanceof AccountNotFoundException || failure instanceof InvalidTransferException
+      || failure instanceof InsufficientFundsException) {
+      log.error("Transfer failed: {}", failure.getMessage());
+      return new ResponseEntity<>(failure.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+    if (failure instanceof TooManyRequestsException e) {
+      return tooManyRequests(e);
+    }
+    if (failure instanceof NodeUnavailableException) {
+      log.error("Transfer failed: {}", failure.getMessage());
+      return new ResponseEntity<>(failure.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+    }
+    if (failure instanceof NotDurableException) {
+      log.error("Transfer applied but not durable", failure);
+      return new ResponseEntity<>(failure.getMessage(), HttpStatus.ACCEPTED);
+    }
+    log.error("Unexpected error during transfer", failure);
+    return new ResponseEntity<>("Internal server error", HttpStatus.INTERNAL_SERVER_ERROR);
+  }
+
+  private static ResponseEntity<Object> tooManyRequests(TooManyRequestsException e) {
+    return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+      .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()))
+      .body(e.getMessage());
+  }
+}
@@ -0,0 +1,65 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.dto.ScheduledTransferRequest;
+import com.dws.challenge.dto.ScheduledTransferResponse;
+import com.dws.challenge.exception.AccountNotFoundException;
+import com.dws.challenge.exception.InvalidTransferException;
+import com.dws.challenge.schedule.TransferScheduler;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import jakarta.validation.Valid;
+import java.util.List;
+
+/**
+ * Future-dated and recurring transfers, run by the {@link TransferScheduler}.
+ */
+@RestController
+@RequestMapping("/v1/scheduled-transfers")
+@ConditionalOnProperty(name = "schedules.enabled", havingValue = "true")
+@Slf4j
+public class ScheduledTransfersController {
+
+  private final TransferScheduler transferScheduler;
+
+  @Autowired
+  public ScheduledTransfersController(TransferScheduler transferScheduler) {
+    this.transferScheduler = transferScheduler;
+  }
+
+  @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<Object> scheduleTransfer(@RequestBody @Valid ScheduledTransferRequest request) {
+    log.info("Scheduling transfer: {}", request);
+
+    try {
+      return new ResponseEntity<>(transferScheduler.schedule(request), HttpStatus.CREATED);
+    } catch (AccountNotFoundException | InvalidTransferException e) {
+      return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+  }
+
+  /**
+   * Lists up to 1000 schedules debiting the account, newest first.
+   */
+  @GetMapping(params = "accountId")
+  public List<ScheduledTransferResponse> listScheduledTransfers(@RequestParam String accountId) {
+    return transferScheduler.list(accountId);
+  }
+
+  @GetMapping(path = "/{id}")
+  public ResponseEntity<ScheduledTransferResponse> getScheduledTransfer(@PathVariable long id) {
+    ScheduledTransferResponse schedule = transferScheduler.get(id);
+    return new ResponseEntity<>(schedule, schedule == null ? HttpStatus.NOT_FOUND : HttpStatus.OK);
+  }
+
+  @DeleteMapping(path = "/{id}")
+  public ResponseEntity<Void> cancelScheduledTransfer(@PathVariable long id) {
+    log.info("Cancelling scheduled transfer {}", id);
+    return new ResponseEntity<>(transferScheduler.cancel(id) ? HttpStatus.NO_CONTENT : HttpStatus.NOT_FOUND);
+  }
+}
@@ -0,0 +1,47 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.replication.StandbyReplica;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Answers 503 to every request of the API other than a {@code GET} until the standby is promoted: its
+ * accounts only change by following the primary.
+ */
+@Component
+@ConditionalOnProperty(name = "replication.role", havingValue = "standby")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+class StandbyWriteFilter extends OncePerRequestFilter {
+
+  private final StandbyReplica standbyReplica;
+
+  @Autowired
+  StandbyWriteFilter(StandbyReplica standbyReplica) {
+    this.standbyReplica = standbyReplica;
+  }
+
+  @Override
+  protected boolean shouldNotFilter(HttpServletRequest request) {
+    return !request.getRequestURI().startsWith("/v1/") || "GET".equals(request.getMethod());
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+      throws ServletException, IOException {
+    if (standbyReplica.isPromoted()) {
+      chain.doFilter(request, response);
+    } else {
+      response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Read-only standby, promote it to accept writes");
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package com.dws.challenge.web;
+
+import com.dws.challenge.domain.Money;
+import com.dws.challenge.ledger.AccountLedger;
+import com.dws.challenge.ledger.LedgerVisitor;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+
+/**
+ * Writes one page of an account's transaction history straight from the ledger to the response, entry
+ * by entry, so that a page is never held in memory:
+ * <pre>
+ * {"accountId":"Id-1","transactions":[{"position":0,"timestamp":"...","type":"DEBIT",
+ *  "counterpartyAccountId":"Id-2","amount":10.00}, ...],"nextCursor":1}
+ * </pre>
+ * {@code nextCursor} is the cursor of the next page; a page with fewer entries than requested means the
+ * client has caught up, and reading from {@code nextCursor} later returns the transfers made since.
+ */
+class TransactionHistoryBody implements StreamingResponseBody {
+
+  private final JsonFactory jsonFactory;
+  private final AccountLedger accountLedger;
+  private final String accountId;
+  private final long cursor;
+  private final int limit;
+
+  TransactionHistoryBody(JsonFactory jsonFactory, AccountLedger accountLedger, String accountId, long cursor,
+                         int limit) {
+    this.jsonFactory = jsonFactory;
+    this.accountLedger = accountLedger;
+    this.accountId = accountId;
+    this.cursor = cursor;
+    this.limit = limit;
+  }
+
+  @Override
+  public void writeTo(OutputStream outputStream) throws IOException {
+    try (JsonGenerator generator = jsonFactory.createGenerator(outputStream, JsonEncoding.UTF8)) {
+      generator.writeStartObject();
+      generator.writeStringField("accountId", accountId);
+      generator.writeFieldName("transactions");
+      generator.writeStartArray();
+      long nextCursor;
+      try {
+        nextCursor = accountLedger.read(accountId, cursor, limit, entryWriter(generator));
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      generator.writeEndArray();
+      generator.writeNumberField("nextCursor", nextCursor);
+      generator.writeEndObject();
+    }
+  }
+
+  private static LedgerVisitor entryWriter(JsonGenerator generator) {
+    return (position, timestampMillis, counterpartyAccountId, amountMinorUnits) -> {
+      try {
+        generator.writeStartObject();
+        generator.writeNumberField("position", position);
+        generator.writeStringField("timestamp", Instant.ofEpochMilli(timestampMillis).toString());
+        generator.writeStringField("type", amountMinorUnits < 0 ? "DEBIT" : "CREDIT");
+        generator.writeStringField("counterpartyAccountId", counterpartyAccountId);
+        generator.writeNumberField("amount", Money.toBigDecimal(Math.abs(amountMinorUnits)));
+        generator.writeEndObject();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    };
+  }
+}
@@ -0,0 +1,86 @@
+package com.dws.challenge.wire;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Blocking client of {@link WireServer}, for callers in Java and for tests and benchmarks. Requests are
+ * buffered until {@link #flush()}, so several can be pipelined; {@link #receive()} then reads the answers one at
+ * a time, in the order the server completed them. Not thread-safe.
+ */
+public final class WireClient implements Closeable {
+
+    /**
+     * The answer to the request with the given id, one of the statuses of {@link WireProtocol}.
+     */
+    public record Response(long requestId, byte status) {
+    }
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    public WireClient(InetSocketAddress address) throws IOException {
+        this.socket = new Socket(address.getAddress(), address.getPort());
+        socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Buffers a transfer request.
+     */
+    public void transfer(long requestId, String fromAccountId, String toAccountId, long amountMinorUnits)
+            throws IOException {
+        byte[] from = fromAccountId.getBytes(StandardCharsets.UTF_8);
+        byte[] to = toAccountId.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(WireProtocol.HEADER_BYTES + Long.BYTES + 2 * Short.BYTES + from.length + to.length);
+        out.writeLong(requestId);
+        out.writeByte(WireProtocol.TRANSFER);
+        out.writeLong(amountMinorUnits);
+        out.writeShort(from.length);
+        out.write(from);
+        out.writeShort(to.length);
+        out.write(to);
+    }
+
+    /**
+     * Buffers a transfer request between accounts given by handle.
+     */
+    public void transferByHandle(long requestId, int fromHandle, int toHandle, long amountMinorUnits)
+            throws IOException {
+        out.writeInt(WireProtocol.HEADER_BYTES + Long.BYTES + 2 * Integer.BYTES);
+        out.writeLong(requestId);
+        out.writeByte(WireProtocol.TRANSFER_BY_HANDLE);
+        out.writeLong(amountMinorUnits);
+        out.writeInt(fromHandle);
+        out.writeInt(toHandle);
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Waits for the next answer.
+     */
+    public Response receive() throws IOException {
+        int length = in.readInt();
+        if (length != WireProtocol.HEADER_BYTES) {
+            throw new IOException("Invalid response length " + length);
+        }
+        return new Response(in.readLong(), in.readByte());
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
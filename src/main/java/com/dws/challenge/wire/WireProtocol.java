@@ -0,0 +1,77 @@
+package com.dws.challenge.wire;
+
+import com.dws.challenge.exception.AccountNotFoundException;
+import com.dws.challenge.exception.InsufficientFundsException;
+import com.dws.challenge.exception.InvalidTransferException;
+import com.dws.challenge.exception.NodeUnavailableException;
+import com.dws.challenge.exception.NotDurableException;
+import com.dws.challenge.exception.TooManyRequestsException;
+
+/**
+ * Frames of the binary transfer protocol served by {@link WireServer}. All integers are big-endian and
+ * every frame starts with the length of the rest of it:
+ * <pre>
+ * request:  int length | long request id | byte operation | payload
+ * response: int length | long request id | byte status
+ * </pre>
+ * The operations are {@link #TRANSFER}, whose payload is
+ * {@code long amount in minor units | short length | from account id | short length | to account id}, with
+ * account ids in UTF-8, and {@link #TRANSFER_BY_HANDLE}, whose payload is
+ * {@code long amount in minor units | int from handle | int to handle}, with the handles of
+ * {@code GET /v1/accounts/{accountId}/handle}. Requests may be pipelined; responses carry the request id and
+ * come back in completion order, which is not necessarily request order.
+ */
+public final class WireProtocol {
+
+    /** Transfers money; answered with any of the statuses. */
+    public static final byte TRANSFER = 1;
+    /** Transfers money between accounts given by handle, with the {@code accounts.store=interned} store. */
+    public static final byte TRANSFER_BY_HANDLE = 2;
+
+    public static final byte OK = 0;
+    /** Either account does not exist. */
+    public static final byte NOT_FOUND = 1;
+    public static final byte INSUFFICIENT_FUNDS = 2;
+    /** Same source and destination, an amount that is not positive, or a credit that would overflow. */
+    public static final byte INVALID = 3;
+    /** Turned away by admission control; the client may retry later. */
+    public static final byte TOO_MANY_REQUESTS = 4;
+    /** A node of the cluster did not answer, or this is a standby that has not been promoted. */
+    public static final byte UNAVAILABLE = 5;
+    /** The frame was not understood, or the transfer failed unexpectedly. */
+    public static final byte ERROR = 6;
+    /** Applied, but the journal failed before making it durable; the client must not retry it. */
+    public static final byte NOT_DURABLE = 7;
+
+    /**
+     * Size of the request id and the operation or status byte that follow the frame length.
+     */
+    static final int HEADER_BYTES = Long.BYTES + 1;
+
+    static final int RESPONSE_FRAME_BYTES = Integer.BYTES + HEADER_BYTES;
+
+    private WireProtocol() {
+    }
+
+    static byte statusOf(Throwable failure) {
+        if (failure instanceof AccountNotFoundException) {
+            return NOT_FOUND;
+        }
+        if (failure instanceof InsufficientFundsException) {
+            return INSUFFICIENT_FUNDS;
+        }
+        if (failure instanceof InvalidTransferException) {
+            return INVALID;
+        }
+        if (failure instanceof TooManyRequestsException) {
+            return TOO_MANY_REQUESTS;
+        }
+        if (failure instanceof NodeUnavailableException) {
+            return UNAVAILABLE;
+        }
+        if (failure instanceof NotDurableException) {
+            return NOT_DURABLE;
+        }
+        return ERROR;
+    }
+}
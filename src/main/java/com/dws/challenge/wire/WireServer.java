@@ -0,0 +1,432 @@
+package com.dws.challenge.wire;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.TooManyRequestsException;
+import com.dws.challenge.replication.StandbyReplica;
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.AdmissionControl;
+import com.dws.challenge.service.TransferService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Second ingress for transfers beside {@code POST /v1/accounts/transfer}, for internal callers sending many
+ * of them ({@code wire.enabled=true}): the binary frames of {@link WireProtocol} on {@code wire.port}, decoded
+ * straight into the account ids and the amount in minor units, with none of the JSON parsing, bean
+ * validation and {@code BigDecimal} arithmetic of the HTTP endpoint.
+ * <p>
+ * One thread serves every connection from a {@link Selector}. Each connection has a read and a write buffer
+ * allocated once; requests are decoded in place in the first and answered in the second, so a pipelined
+ * stream of transfers costs no allocation besides the account id strings. A connection has at most
+ * {@code wire.max-pipelined} transfers unanswered; beyond that it is not read until the client has read some
+ * of the answers. Transfers go through admission control like those of the HTTP endpoint.
+ * <p>
+ * Transfers are submitted from the selector thread without ever waiting on it (see
+ * {@link TransferService#transferMinorUnitsWithoutWaiting(String, String, long)}): a transfer whose source
+ * account is busy is queued, and any step that could block, such as the lock wait, the durability wait or a
+ * full notification queue, runs on another thread, so one transfer never holds up every connection.
+ */
+@Component
+@ConditionalOnProperty(name = "wire.enabled", havingValue = "true")
+@Slf4j
+public class WireServer {
+
+    private final TransferService transferService;
+    private final AccountsService accountsService;
+    private final AdmissionControl admissionControl;
+    private final StandbyReplica standbyReplica;
+    private final int port;
+    private final int maxPipelined;
+    private final int bufferBytes;
+
+    /**
+     * Connections with answers to write, queued by the threads completing transfers.
+     */
+    private final Queue<Connection> ready = new ConcurrentLinkedQueue<>();
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread reactor;
+    private volatile boolean running;
+
+    @Autowired
+    public WireServer(TransferService transferService, AccountsService accountsService,
+                      AdmissionControl admissionControl, Optional<StandbyReplica> standbyReplica,
+                      @Value("${wire.port:7600}") int port,
+                      @Value("${wire.max-pipelined:1024}") int maxPipelined,
+                      @Value("${wire.buffer-bytes:65536}") int bufferBytes) {
+        this.transferService = transferService;
+        this.accountsService = accountsService;
+        this.admissionControl = admissionControl;
+        this.standbyReplica = standbyReplica.orElse(null);
+        this.port = port;
+        this.maxPipelined = maxPipelined;
+        this.bufferBytes = bufferBytes;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        reactor = new Thread(this::serve, "wire-server");
+        reactor.setDaemon(true);
+        reactor.start();
+        log.info("Serving the binary transfer protocol on port {}", getPort());
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        running = false;
+        selector.wakeup();
+        reactor.join();
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    /**
+     * @return the port listened on, which is chosen by the system when {@code wire.port} is 0
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    private void serve() {
+        while (running) {
+            try {
+                selector.select(this::handle);
+                Connection connection;
+                while ((connection = ready.poll()) != null) {
+                    try {
+                        flush(connection);
+                    } catch (IOException e) {
+                        log.debug("Binary protocol connection {} failed", connection, e);
+                        close(connection);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("Binary protocol server failed", e);
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                read(connection);
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush(connection);
+            }
+        } catch (IOException e) {
+            log.debug("Binary protocol connection {} failed", connection, e);
+            close(connection);
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        } catch (IOException e) {
+            log.warn("Failed to accept a binary protocol connection", e);
+        }
+    }
+
+    private void read(Connection connection) throws IOException {
+        if (connection.channel.read(connection.in) < 0) {
+            close(connection);
+            return;
+        }
+        decode(connection);
+    }
+
+    /**
+     * Submits every complete request in the read buffer, as long as the connection has room for their answers.
+     */
+    private void decode(Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        in.flip();
+        try {
+            while (in.remaining() >= Integer.BYTES) {
+                int length = in.getInt(in.position());
+                if (length < WireProtocol.HEADER_BYTES || length > in.capacity() - Integer.BYTES) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                if (in.remaining() < Integer.BYTES + length) {
+                    break;
+                }
+                if (!connection.reserve()) {
+                    connection.paused = true;
+                    break;
+                }
+                int frameEnd = in.position() + Integer.BYTES + length;
+                int limit = in.limit();
+                in.position(in.position() + Integer.BYTES).limit(frameEnd);
+                long requestId = in.getLong();
+                try {
+                    byte operation = in.get();
+                    long amountMinorUnits = in.getLong();
+                    switch (operation) {
+                        case WireProtocol.TRANSFER -> {
+                            String fromAccountId = getString(in);
+                            String toAccountId = getString(in);
+                            requireEnd(in);
+                            submit(connection, requestId, fromAccountId, toAccountId, AccountsRepository.NO_HANDLE,
+                                    AccountsRepository.NO_HANDLE, amountMinorUnits);
+                        }
+                        case WireProtocol.TRANSFER_BY_HANDLE -> {
+                            int fromHandle = in.getInt();
+                            int toHandle = in.getInt();
+                            requireEnd(in);
+                            Account fromAccount = accountsService.getAccount(fromHandle);
+                            if (fromAccount == null) {
+                                connection.respond(requestId, WireProtocol.NOT_FOUND);
+                            } else {
+                                submit(connection, requestId, fromAccount.getAccountId(), null, fromHandle, toHandle,
+                                        amountMinorUnits);
+                            }
+                        }
+                        default -> throw new IllegalArgumentException("Unknown operation " + operation);
+                    }
+                } catch (BufferUnderflowException | IllegalArgumentException e) {
+                    connection.respond(requestId, WireProtocol.ERROR);
+                }
+                in.limit(limit).position(frameEnd);
+            }
+        } finally {
+            in.compact();
+        }
+        updateInterest(connection);
+    }
+
+    /**
+     * Submits a transfer between accounts given by id, or by handle when the handles are not
+     * {@link AccountsRepository#NO_HANDLE}; the source account's id is needed for admission control either way.
+     */
+    private void submit(Connection connection, long requestId, String fromAccountId, String toAccountId,
+                        int fromHandle, int toHandle, long amountMinorUnits) {
+        if (standbyReplica != null && !standbyReplica.isPromoted()) {
+            connection.respond(requestId, WireProtocol.UNAVAILABLE);
+            return;
+        }
+        try {
+            admissionControl.admit(fromAccountId);
+        } catch (TooManyRequestsException e) {
+            connection.respond(requestId, WireProtocol.TOO_MANY_REQUESTS);
+            return;
+        }
+        transfer(connection, requestId, fromAccountId, toAccountId, fromHandle, toHandle, amountMinorUnits);
+    }
+
+    private void transfer(Connection connection, long requestId, String fromAccountId, String toAccountId,
+                          int fromHandle, int toHandle, long amountMinorUnits) {
+        CompletableFuture<Void> transfer;
+        try {
+            transfer = fromHandle == AccountsRepository.NO_HANDLE
+                    ? transferService.transferMinorUnitsWithoutWaiting(fromAccountId, toAccountId, amountMinorUnits)
+                    : transferService.transferHandlesWithoutWaiting(fromHandle, toHandle, amountMinorUnits);
+        } catch (RuntimeException e) {
+            transfer = CompletableFuture.failedFuture(e);
+        }
+        // Transfers that are over already are answered without chaining a stage
+        switch (transfer.state()) {
+            case SUCCESS -> answer(connection, requestId, null);
+            case FAILED -> answer(connection, requestId, transfer.exceptionNow());
+            default -> transfer.whenComplete((ignored, failure) -> answer(connection, requestId, failure));
+        }
+    }
+
+    private void answer(Connection connection, long requestId, Throwable failure) {
+        admissionControl.release();
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        if (failure != null && WireProtocol.statusOf(failure) == WireProtocol.ERROR) {
+            log.error("Binary protocol transfer {} failed", requestId, failure);
+        }
+        connection.respond(requestId, failure == null ? WireProtocol.OK : WireProtocol.statusOf(failure));
+    }
+
+    /**
+     * Writes what the socket takes of the answers, then resumes reading a connection paused for room.
+     */
+    private void flush(Connection connection) throws IOException {
+        if (!connection.key.isValid()) {
+            return;
+        }
+        connection.lock.lock();
+        try {
+            connection.queued = false;
+            ByteBuffer out = connection.out;
+            out.flip();
+            connection.channel.write(out);
+            out.compact();
+        } finally {
+            connection.lock.unlock();
+        }
+        if (connection.paused) {
+            connection.paused = false;
+            decode(connection);
+        } else {
+            updateInterest(connection);
+        }
+    }
+
+    private void updateInterest(Connection connection) {
+        if (!connection.key.isValid()) {
+            return;
+        }
+        boolean pendingOutput;
+        connection.lock.lock();
+        try {
+            pendingOutput = connection.out.position() > 0;
+        } finally {
+            connection.lock.unlock();
+        }
+        connection.key.interestOps((connection.paused ? 0 : SelectionKey.OP_READ)
+                | (pendingOutput ? SelectionKey.OP_WRITE : 0));
+    }
+
+    private void close(Connection connection) {
+        connection.lock.lock();
+        try {
+            connection.closed = true;
+        } finally {
+            connection.lock.unlock();
+        }
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            log.debug("Failed to close binary protocol connection {}", connection, e);
+        }
+    }
+
+    private static void requireEnd(ByteBuffer in) {
+        if (in.hasRemaining()) {
+            throw new IllegalArgumentException("Trailing bytes");
+        }
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private final class Connection {
+
+        final SocketChannel channel;
+        SelectionKey key;
+
+        /**
+         * Bytes received and not yet decoded; selector thread only.
+         */
+        final ByteBuffer in;
+
+        /**
+         * Set while the connection is not read for lack of room for more answers; selector thread only.
+         */
+        boolean paused;
+
+        final ReentrantLock lock = new ReentrantLock();
+
+        // Guarded by lock
+        final ByteBuffer out;
+        int inFlight;
+        boolean queued;
+        boolean closed;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.in = ByteBuffer.allocate(bufferBytes);
+            this.out = ByteBuffer.allocateDirect(maxPipelined * WireProtocol.RESPONSE_FRAME_BYTES);
+        }
+
+        /**
+         * Counts a request in flight if the write buffer has room for its answer besides those of the requests
+         * already in flight.
+         */
+        boolean reserve() {
+            lock.lock();
+            try {
+                if (out.remaining() < (inFlight + 1) * WireProtocol.RESPONSE_FRAME_BYTES) {
+                    return false;
+                }
+                inFlight++;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void respond(long requestId, byte status) {
+            lock.lock();
+            try {
+                inFlight--;
+                if (closed) {
+                    return;
+                }
+                out.putInt(WireProtocol.HEADER_BYTES).putLong(requestId).put(status);
+                if (queued) {
+                    return;
+                }
+                queued = true;
+            } finally {
+                lock.unlock();
+            }
+            ready.add(this);
+            if (Thread.currentThread() != reactor) {
+                selector.wakeup();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(channel.socket().getRemoteSocketAddress());
+        }
+    }
+}
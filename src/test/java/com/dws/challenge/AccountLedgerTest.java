@@ -0,0 +1,97 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.dws.challenge.ledger.AccountLedger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AccountLedgerTest {
+
+  @TempDir
+  Path directory;
+
+  private record Entry(long position, String counterparty, long amount) {
+  }
+
+  @Test
+  void read_PagesThroughEntriesWithCursor() {
+    AccountLedger ledger = new AccountLedger(true, "", 0);
+    for (int i = 1; i <= 50; i++) {
+      ledger.recordTransfer("Id-1", "Id-2", i);
+    }
+
+    List<Entry> entries = new ArrayList<>();
+    long cursor = 0;
+    long next;
+    while ((next = ledger.read("Id-1", cursor, 20, (position, timestamp, counterparty, amount) ->
+      entries.add(new Entry(position, counterparty, amount)))) != cursor) {
+      cursor = next;
+    }
+
+    assertThat(cursor).isEqualTo(50);
+    assertThat(entries).hasSize(50);
+    for (int i = 0; i < 50; i++) {
+      assertThat(entries.get(i)).isEqualTo(new Entry(i, "Id-2", -(i + 1)));
+    }
+    assertThat(ledger.read("Id-2", 49, 20, (position, timestamp, counterparty, amount) ->
+      assertThat(amount).isEqualTo(50))).isEqualTo(50);
+    assertThat(ledger.read("Id-3", 0, 20, (position, timestamp, counterparty, amount) -> { })).isZero();
+  }
+
+  @Test
+  void recordTransfer_ConcurrentAppendsToOneAccount() throws Exception {
+    AccountLedger ledger = new AccountLedger(true, "", 0);
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      String source = "Id-" + t;
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < 10_000; i++) {
+          ledger.recordTransfer(source, "Id-hot", 1);
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    long[] total = new long[1];
+    long cursor = ledger.read("Id-hot", 0, Integer.MAX_VALUE, (position, timestamp, counterparty, amount) ->
+      total[0] += amount);
+    assertThat(cursor).isEqualTo(40_000);
+    assertThat(total[0]).isEqualTo(40_000);
+  }
+
+  @Test
+  void read_EntriesSpilledToMappedFiles() throws Exception {
+    AccountLedger ledger = new AccountLedger(true, directory.toString(), 1 << 20);
+    ledger.start();
+    try {
+      for (int i = 0; i < 5000; i++) {
+        ledger.recordTransfer("Id-1", "Id-" + (i % 7 + 2), i);
+      }
+      long deadline = System.nanoTime() + 5_000_000_000L;
+      while (!Files.exists(directory.resolve("ledger-0.dat")) && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      Thread.sleep(100);
+
+      assertThat(Files.exists(directory.resolve("ledger-0.dat"))).isTrue();
+      List<Entry> entries = new ArrayList<>();
+      ledger.read("Id-1", 0, 5000, (position, timestamp, counterparty, amount) ->
+        entries.add(new Entry(position, counterparty, amount)));
+      assertThat(entries).hasSize(5000);
+      for (int i = 0; i < 5000; i++) {
+        assertThat(entries.get(i)).isEqualTo(new Entry(i, "Id-" + (i % 7 + 2), -i));
+      }
+    } finally {
+      ledger.stop();
+    }
+  }
+}
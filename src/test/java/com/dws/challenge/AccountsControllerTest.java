@@ -1,9 +1,12 @@
 package com.dws.challenge;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
 
@@ -21,10 +24,11 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.web.context.WebApplicationContext;
 
 @ExtendWith(SpringExtension.class)
-@SpringBootTest
+@SpringBootTest(properties = "ledger.enabled=true")
 @WebAppConfiguration
 class AccountsControllerTest {
 
@@ -259,4 +263,191 @@ class AccountsControllerTest {
             .add(this.accountsService.getAccount("ACC003").getBalance());
     assertThat(totalBalance).isEqualTo(new BigDecimal("1700")); // 1000 + 500 + 200
   }
+
+  @Test
+  void transferMoneyBatch_AllOrNothing_Success() throws Exception {
+    // Given - ACC003 can only pay out once it has been credited by an earlier leg
+    this.accountsService.createAccount(new Account("ACC001", new BigDecimal("1000")));
+    this.accountsService.createAccount(new Account("ACC002", new BigDecimal("500")));
+    this.accountsService.createAccount(new Account("ACC003", new BigDecimal("0")));
+
+    // When
+    this.mockMvc.perform(post("/v1/accounts/transfers/batch")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"mode\":\"ALL_OR_NOTHING\",\"transfers\":["
+                            + "{\"accountFromId\":\"ACC001\",\"accountToId\":\"ACC003\",\"amount\":300},"
+                            + "{\"accountFromId\":\"ACC003\",\"accountToId\":\"ACC002\",\"amount\":200}]}"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.completed").value(2))
+            .andExpect(jsonPath("$.results[0].status").value("COMPLETED"))
+            .andExpect(jsonPath("$.results[1].status").value("COMPLETED"));
+
+    // Then
+    assertThat(this.accountsService.getAccount("ACC001").getBalance()).isEqualByComparingTo("700");
+    assertThat(this.accountsService.getAccount("ACC002").getBalance()).isEqualByComparingTo("700");
+    assertThat(this.accountsService.getAccount("ACC003").getBalance()).isEqualByComparingTo("100");
+  }
+
+  @Test
+  void transferMoneyBatch_AllOrNothing_InsufficientFunds_NothingApplied() throws Exception {
+    // Given
+    this.accountsService.createAccount(new Account("ACC001", new BigDecimal("1000")));
+    this.accountsService.createAccount(new Account("ACC002", new BigDecimal("50")));
+
+    // When & Then
+    this.mockMvc.perform(post("/v1/accounts/transfers/batch")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"mode\":\"ALL_OR_NOTHING\",\"transfers\":["
+                            + "{\"accountFromId\":\"ACC001\",\"accountToId\":\"ACC002\",\"amount\":100},"
+                            + "{\"accountFromId\":\"ACC002\",\"accountToId\":\"ACC001\",\"amount\":500}]}"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.completed").value(0))
+            .andExpect(jsonPath("$.results[0].status").value("NOT_APPLIED"))
+            .andExpect(jsonPath("$.results[1].status").value("FAILED"))
+            .andExpect(jsonPath("$.results[1].message").value(org.hamcrest.Matchers.containsString("Insufficient funds")));
+
+    // Verify balances are unchanged
+    assertThat(this.accountsService.getAccount("ACC001").getBalance()).isEqualByComparingTo("1000");
+    assertThat(this.accountsService.getAccount("ACC002").getBalance()).isEqualByComparingTo("50");
+  }
+
+  @Test
+  void transferMoneyBatch_BestEffort_PartialSuccess() throws Exception {
+    // Given
+    this.accountsService.createAccount(new Account("ACC001", new BigDecimal("1000")));
+    this.accountsService.createAccount(new Account("ACC002", new BigDecimal("50")));
+
+    // When & Then
+    this.mockMvc.perform(post("/v1/accounts/transfers/batch")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"mode\":\"BEST_EFFORT\",\"transfers\":["
+                            + "{\"accountFromId\":\"ACC001\",\"accountToId\":\"ACC002\",\"amount\":100},"
+                            + "{\"accountFromId\":\"ACC002\",\"accountToId\":\"ACC999\",\"amount\":10},"
+                            + "{\"accountFromId\":\"ACC002\",\"accountToId\":\"ACC001\",\"amount\":500}]}"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.completed").value(1))
+            .andExpect(jsonPath("$.failed").value(2))
+            .andExpect(jsonPath("$.results[0].status").value("COMPLETED"))
+            .andExpect(jsonPath("$.results[1].message").value("Account not found: ACC999"))
+            .andExpect(jsonPath("$.results[2].status").value("FAILED"));
+
+    assertThat(this.accountsService.getAccount("ACC001").getBalance()).isEqualByComparingTo("900");
+    assertThat(this.accountsService.getAccount("ACC002").getBalance()).isEqualByComparingTo("150");
+  }
+
+  @Test
+  void transferMoneyBatch_EmptyBatch_BadRequest() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/transfers/batch")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"transfers\":[]}"))
+            .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void getTransactions_PagesThroughHistory() throws Exception {
+    this.accountsService.createAccount(new Account("HIST001", new BigDecimal("1000")));
+    this.accountsService.createAccount(new Account("HIST002", new BigDecimal("0")));
+    for (int amount = 1; amount <= 3; amount++) {
+      this.mockMvc.perform(post("/v1/accounts/transfer")
+                      .contentType(MediaType.APPLICATION_JSON)
+                      .content("{\"accountFromId\":\"HIST001\",\"accountToId\":\"HIST002\",\"amount\":" + amount + "}"))
+              .andExpect(status().isOk());
+    }
+
+    MvcResult result = this.mockMvc.perform(get("/v1/accounts/HIST002/transactions?cursor=1&limit=5"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    this.mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.accountId").value("HIST002"))
+            .andExpect(jsonPath("$.transactions.length()").value(2))
+            .andExpect(jsonPath("$.transactions[0].position").value(1))
+            .andExpect(jsonPath("$.transactions[0].type").value("CREDIT"))
+            .andExpect(jsonPath("$.transactions[0].counterpartyAccountId").value("HIST001"))
+            .andExpect(jsonPath("$.transactions[0].amount").value(2))
+            .andExpect(jsonPath("$.nextCursor").value(3));
+  }
+
+  @Test
+  void getTransactions_UnknownAccount_NotFound() throws Exception {
+    this.mockMvc.perform(get("/v1/accounts/HIST999/transactions"))
+            .andExpect(status().isNotFound());
+  }
+
+  @Test
+  void getBalances_ReturnsListedAccounts() throws Exception {
+    this.accountsService.createAccount(new Account("SNAP001", new BigDecimal("100.5")));
+    this.accountsService.createAccount(new Account("SNAP002", new BigDecimal("7")));
+
+    MvcResult result = this.mockMvc.perform(get("/v1/accounts?ids=SNAP001,SNAP999&ids=SNAP002"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    this.mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(content().string("{\"accounts\":[{\"accountId\":\"SNAP001\",\"balance\":100.5},"
+              + "{\"accountId\":\"SNAP002\",\"balance\":7}],\"notFound\":[\"SNAP999\"]}"));
+  }
+
+  @Test
+  void getBalances_NoIds_BadRequest() throws Exception {
+    this.mockMvc.perform(get("/v1/accounts?ids="))
+            .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void importAccounts_Ndjson_ReportsDuplicatesAndRejects() throws Exception {
+    this.accountsService.createAccount(new Account("BULK001", new BigDecimal("10")));
+
+    this.mockMvc.perform(post("/v1/accounts/bulk")
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .content("""
+                      {"accountId":"BULK001","balance":100}
+                      {"accountId":"BULK002","balance":200}
+                      {"accountId":"BULK003","balance":-1}
+                      {"accountId":"BULK004","balance":"abc"}
+                      {"accountId":"BULK002","balance":5}
+                      {"accountId":"BULK005","balance":1.005}
+                      """))
+            .andExpect(status().isOk())
+            .andExpect(content().string("""
+              {"line":1,"accountId":"BULK001","status":"DUPLICATE"}
+              {"line":3,"accountId":"BULK003","status":"REJECTED","errors":["Initial balance must be positive."]}
+              {"line":4,"accountId":"BULK004","status":"REJECTED","errors":["Balance must be a number"]}
+              {"line":5,"accountId":"BULK002","status":"DUPLICATE"}
+              {"line":6,"accountId":"BULK005","status":"REJECTED","errors":["Balance must have at most 2 decimal places and fit in a long of minor units"]}
+              {"created":1,"duplicates":2,"rejected":3}
+              """));
+
+    assertThat(accountsService.getAccount("BULK001").getBalance()).isEqualByComparingTo("10");
+    assertThat(accountsService.getAccount("BULK002").getBalance()).isEqualByComparingTo("200");
+    assertThat(accountsService.getAccount("BULK003")).isNull();
+  }
+
+  @Test
+  void importAccounts_Csv() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/bulk")
+                    .contentType("text/csv")
+                    .content("accountId,balance\nBULK101,1.50\nBULK102\nBULK103,0\nBULK104,1.005\n"))
+            .andExpect(status().isOk())
+            .andExpect(content().string("""
+              {"line":3,"status":"REJECTED","errors":["Row must have the form accountId,balance"]}
+              {"line":5,"accountId":"BULK104","status":"REJECTED","errors":["Balance must have at most 2 decimal places and fit in a long of minor units"]}
+              {"created":2,"duplicates":0,"rejected":2}
+              """));
+
+    assertThat(accountsService.getAccount("BULK101").getBalance()).isEqualByComparingTo("1.50");
+    assertThat(accountsService.getAccount("BULK103").getBalance()).isEqualByComparingTo("0");
+  }
+
+  @Test
+  void importAccounts_MalformedJson_StopsAfterPrecedingRows() throws Exception {
+    this.mockMvc.perform(post("/v1/accounts/bulk")
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .content("{\"accountId\":\"BULK201\",\"balance\":1}\n{\"accountId\":\n"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.created").value(1))
+            .andExpect(jsonPath("$.error").exists());
+
+    assertThat(accountsService.getAccount("BULK201")).isNotNull();
+  }
 }
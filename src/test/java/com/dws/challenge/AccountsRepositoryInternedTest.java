@@ -0,0 +1,122 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.repository.AccountIdDictionary;
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.repository.AccountsRepositoryInterned;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AccountsRepositoryInternedTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void getAccount_FindsAccountsByIdAndByHandle() {
+    AccountsRepositoryInterned repository = new AccountsRepositoryInterned(new AccountIdDictionary());
+    repository.createAccount(new Account("Id-1", new BigDecimal("10.50")));
+    repository.createAccount(new Account("Id-ü€", new BigDecimal("1")));
+
+    int handle = repository.getHandle("Id-ü€");
+    assertThat(handle).isEqualTo(1);
+    assertThat(repository.getAccount(handle).getAccountId()).isEqualTo("Id-ü€");
+    assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("10.50");
+    assertThat(repository.getAccount("Id-2")).isNull();
+    assertThat(repository.getHandle("Id-2")).isEqualTo(AccountsRepository.NO_HANDLE);
+    assertThat(repository.getAccount(2)).isNull();
+    assertThat(repository.getAccount(AccountsRepository.NO_HANDLE)).isNull();
+    assertThrows(DuplicateAccountIdException.class,
+      () -> repository.createAccount(new Account("Id-1", BigDecimal.TEN)));
+  }
+
+  @Test
+  void clearAccounts_KeepsHandles() {
+    AccountsRepositoryInterned repository = new AccountsRepositoryInterned(new AccountIdDictionary());
+    repository.createAccount(new Account("Id-1", BigDecimal.ONE));
+    repository.createAccount(new Account("Id-2", BigDecimal.ONE));
+
+    repository.clearAccounts();
+    assertThat(repository.getAccount("Id-1")).isNull();
+    assertThat(repository.getHandle("Id-1")).isEqualTo(AccountsRepository.NO_HANDLE);
+
+    repository.createAccount(new Account("Id-2", BigDecimal.TEN));
+    assertThat(repository.getHandle("Id-2")).isEqualTo(1);
+  }
+
+  @Test
+  void dictionary_KeepsHandlesAcrossRestartsAndDropsTornRecord() throws Exception {
+    Path file = directory.resolve("account-ids");
+    AccountsRepositoryInterned repository = new AccountsRepositoryInterned(new AccountIdDictionary(file));
+    for (int i = 0; i < 100_000; i++) {
+      repository.createAccount(new Account("Id-" + i, BigDecimal.ONE));
+    }
+    repository.close();
+    // A record cut short by a crash: its length promises more bytes than were written
+    Files.write(file, ByteBuffer.allocate(6).putInt(10).put((byte) 'I').put((byte) 'd').array(),
+      StandardOpenOption.APPEND);
+
+    AccountIdDictionary dictionary = new AccountIdDictionary(file);
+    assertThat(dictionary.size()).isEqualTo(100_000);
+    assertThat(dictionary.lookup("Id-77777")).isEqualTo(77_777);
+    assertThat(dictionary.idOf(99_999)).isEqualTo("Id-99999");
+    assertThat(dictionary.intern("Id-new")).isEqualTo(100_000);
+    dictionary.close();
+
+    AccountIdDictionary reloaded = new AccountIdDictionary(file);
+    assertThat(reloaded.size()).isEqualTo(100_001);
+    assertThat(reloaded.lookup("Id-new")).isEqualTo(100_000);
+    reloaded.close();
+  }
+
+  @Test
+  void createAccount_ConcurrentInsertsOfSameIdsCreateEachOnce() throws Exception {
+    AccountsRepositoryInterned repository = new AccountsRepositoryInterned(new AccountIdDictionary());
+    AtomicInteger duplicates = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<?>> inserts = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      inserts.add(executor.submit(() -> {
+        for (int i = 0; i < 100_000; i++) {
+          try {
+            repository.createAccount(new Account("Id-" + i, BigDecimal.ONE));
+          } catch (DuplicateAccountIdException e) {
+            duplicates.incrementAndGet();
+          }
+          // Lookups race with the dictionary growing its table
+          assertThat(repository.getAccount("Id-" + (i / 2))).isNotNull();
+        }
+      }));
+    }
+    for (Future<?> insert : inserts) {
+      insert.get(30, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+
+    assertThat(duplicates.get()).isEqualTo(300_000);
+    boolean[] seen = new boolean[100_000];
+    for (int i = 0; i < 100_000; i++) {
+      int handle = repository.getHandle("Id-" + i);
+      assertThat(seen[handle]).isFalse();
+      seen[handle] = true;
+      assertThat(repository.getAccount(handle).getAccountId()).isEqualTo("Id-" + i);
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.repository.AccountsRepositoryOffHeap;
+import org.junit.jupiter.api.Test;
+
+class AccountsRepositoryOffHeapTest {
+
+  @Test
+  void getAccount_ReturnsViewOfStoredBalance() {
+    AccountsRepositoryOffHeap repository = new AccountsRepositoryOffHeap(16);
+    repository.createAccount(new Account("Id-123", new BigDecimal("10.50")));
+    repository.createAccount(new Account("Id-ü€", new BigDecimal("1")));
+
+    Account account = repository.getAccount("Id-123");
+    assertThat(account.getBalance()).isEqualByComparingTo("10.50");
+    assertThat(account.tryDebit(1100)).isFalse();
+    assertThat(account.tryDebit(1000)).isTrue();
+    account.credit(5);
+
+    assertThat(repository.getAccount("Id-123").getBalance()).isEqualByComparingTo("0.55");
+    assertThat(repository.getAccount("Id-ü€").getBalance()).isEqualByComparingTo("1");
+    assertThat(repository.getAccount("Id-124")).isNull();
+  }
+
+  @Test
+  void createAccount_FreesSlotWhenIdCannotBeStored() {
+    AccountsRepositoryOffHeap repository = new AccountsRepositoryOffHeap(16);
+    // Two bytes per char: one byte more than an arena page
+    String tooLong = "€".repeat(32 * 1024 * 1024);
+
+    assertThrows(IllegalArgumentException.class,
+      () -> repository.createAccount(new Account(tooLong, BigDecimal.ONE)));
+
+    assertThat(repository.size()).isZero();
+    assertThat(repository.getAccount(tooLong)).isNull();
+    repository.createAccount(new Account("Id-1", BigDecimal.ONE));
+    assertThat(repository.size()).isOne();
+  }
+
+  @Test
+  void createAccount_FailsOnDuplicateIdAndWhenFull() {
+    AccountsRepositoryOffHeap repository = new AccountsRepositoryOffHeap(2);
+    repository.createAccount(new Account("Id-1", BigDecimal.ONE));
+
+    assertThrows(DuplicateAccountIdException.class,
+      () -> repository.createAccount(new Account("Id-1", BigDecimal.TEN)));
+    repository.createAccount(new Account("Id-2", BigDecimal.ONE));
+    assertThrows(IllegalStateException.class,
+      () -> repository.createAccount(new Account("Id-3", BigDecimal.ONE)));
+
+    repository.clearAccounts();
+    assertThat(repository.getAccount("Id-1")).isNull();
+    assertThat(repository.size()).isZero();
+  }
+
+  @Test
+  void createAccount_ConcurrentInsertsOfSameIdsCreateEachOnce() throws Exception {
+    AccountsRepositoryOffHeap repository = new AccountsRepositoryOffHeap(10_000);
+    AtomicInteger duplicates = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    for (int t = 0; t < 4; t++) {
+      executor.submit(() -> {
+        for (int i = 0; i < 10_000; i++) {
+          try {
+            repository.createAccount(new Account("Id-" + i, BigDecimal.ONE));
+          } catch (DuplicateAccountIdException e) {
+            duplicates.incrementAndGet();
+          }
+        }
+      });
+    }
+    executor.shutdown();
+    assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+    assertThat(repository.size()).isEqualTo(10_000);
+    assertThat(duplicates.get()).isEqualTo(30_000);
+    for (int i = 0; i < 10_000; i++) {
+      assertThat(repository.getAccount("Id-" + i)).isNotNull();
+    }
+  }
+}
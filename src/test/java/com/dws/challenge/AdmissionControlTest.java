@@ -0,0 +1,117 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.dws.challenge.dto.TransferRequest;
+import com.dws.challenge.exception.TooManyRequestsException;
+import com.dws.challenge.metrics.TransferMetrics;
+import com.dws.challenge.service.AdmissionControl;
+import com.dws.challenge.service.AdmissionControl.Rejection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+class AdmissionControlTest {
+
+  private final TransferMetrics metrics = new TransferMetrics(new SimpleMeterRegistry());
+
+  @Test
+  void admit_RejectsSourceAccountBeyondItsBurst() {
+    AdmissionControl admissionControl = new AdmissionControl(metrics, true, 1, 3, 100, 100);
+
+    for (int i = 0; i < 3; i++) {
+      admissionControl.admit("Id-1");
+      admissionControl.release();
+    }
+    TooManyRequestsException exception = assertThrows(TooManyRequestsException.class,
+      () -> admissionControl.admit("Id-1"));
+
+    assertThat(exception.getRetryAfterSeconds()).isOne();
+    assertThat(admissionControl.getRejectionCount(Rejection.ACCOUNT_RATE)).isOne();
+    assertThat(admissionControl.getInFlight()).isZero();
+    admissionControl.admit("Id-2");
+  }
+
+  @Test
+  void admit_RejectsBeyondMaxConcurrentUntilReleased() {
+    AdmissionControl admissionControl = new AdmissionControl(metrics, true, 1000, 100, 2, 100);
+
+    admissionControl.admit("Id-1");
+    admissionControl.admitBatch(List.of(new TransferRequest("Id-2", "Id-3", BigDecimal.ONE),
+      new TransferRequest("Id-3", "Id-2", BigDecimal.ONE)));
+    assertThrows(TooManyRequestsException.class, () -> admissionControl.admit("Id-4"));
+    assertThat(admissionControl.getRejectionCount(Rejection.CONCURRENCY)).isOne();
+
+    admissionControl.release();
+    admissionControl.admit("Id-4");
+    assertThat(admissionControl.getInFlight()).isEqualTo(2);
+  }
+
+  @Test
+  void admitBatch_TakesOneTokenPerDistinctSource() {
+    AdmissionControl admissionControl = new AdmissionControl(metrics, true, 1, 2, 100, 100);
+    List<TransferRequest> payroll = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      payroll.add(new TransferRequest("Id-1", "Id-" + (i + 2), BigDecimal.ONE));
+    }
+
+    admissionControl.admitBatch(payroll);
+    admissionControl.release();
+
+    admissionControl.admit("Id-1");
+    assertThat(admissionControl.getRejectionCount(Rejection.ACCOUNT_RATE)).isZero();
+  }
+
+  @Test
+  void admitBatch_TakesNoTokenWhenAnySourceIsExhausted() {
+    AdmissionControl admissionControl = new AdmissionControl(metrics, true, 1, 1, 100, 100);
+    admissionControl.admit("Id-2");
+    admissionControl.release();
+
+    assertThrows(TooManyRequestsException.class, () -> admissionControl.admitBatch(List.of(
+      new TransferRequest("Id-1", "Id-3", BigDecimal.ONE), new TransferRequest("Id-2", "Id-3", BigDecimal.ONE))));
+
+    assertThat(admissionControl.getInFlight()).isZero();
+    admissionControl.admit("Id-1");
+  }
+
+  @Test
+  void admit_ConcurrencyRejectionTakesNoToken() {
+    AdmissionControl admissionControl = new AdmissionControl(metrics, true, 1, 1, 1, 100);
+    admissionControl.admit("Id-1");
+
+    assertThrows(TooManyRequestsException.class, () -> admissionControl.admit("Id-2"));
+    admissionControl.release();
+
+    admissionControl.admit("Id-2");
+    assertThat(admissionControl.getRejectionCount(Rejection.ACCOUNT_RATE)).isZero();
+  }
+
+  @Test
+  void admit_DropsBucketsOfIdleAccountsBeyondMaxAccounts() throws InterruptedException {
+    AdmissionControl admissionControl = new AdmissionControl(metrics, true, 1000, 1, 100, 2);
+    admissionControl.admit("Id-1");
+    admissionControl.admit("Id-2");
+    assertThat(admissionControl.getTrackedAccounts()).isEqualTo(2);
+
+    Thread.sleep(10);
+    admissionControl.admit("Id-3");
+
+    assertThat(admissionControl.getTrackedAccounts()).isOne();
+  }
+
+  @Test
+  void admit_DoesNothingWhenDisabled() {
+    AdmissionControl admissionControl = new AdmissionControl(metrics, false, 1, 1, 1, 1);
+
+    for (int i = 0; i < 10; i++) {
+      admissionControl.admit("Id-1");
+    }
+
+    assertThat(admissionControl.getInFlight()).isZero();
+  }
+}
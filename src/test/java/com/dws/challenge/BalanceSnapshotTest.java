@@ -0,0 +1,130 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.BalanceSnapshot;
+import com.dws.challenge.exception.InsufficientFundsException;
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.TransferEngine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BalanceSnapshotTest {
+
+  private static final int ACCOUNTS = 64;
+  private static final long INITIAL_BALANCE = 1000;
+
+  @TempDir
+  Path directory;
+
+  private final List<String> accountIds = new ArrayList<>();
+  private TestBank bank;
+  private AccountsService accountsService;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    startBank(TestBank.builder(directory));
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    bank.close();
+  }
+
+  /**
+   * Replaces the bank of {@link #setUp()}, for a test that needs another engine.
+   */
+  private void startBank(TestBank.Builder builder) throws InterruptedException {
+    if (bank != null) {
+      bank.close();
+    }
+    // Few version stripes, so that snapshots of a handful of accounts contend with most transfers
+    bank = builder.versionStripes(4).build();
+    accountsService = bank.accountsService;
+    accountIds.clear();
+    for (int i = 0; i < ACCOUNTS; i++) {
+      accountIds.add("Id-" + i);
+      accountsService.createAccount(Account.ofMinorUnits("Id-" + i, INITIAL_BALANCE));
+    }
+  }
+
+  @Test
+  void getBalances_ReportsMissingAccounts() {
+    BalanceSnapshot snapshot = accountsService.getBalances(List.of("Id-1", "Id-missing", "Id-2"));
+
+    assertThat(snapshot.size()).isEqualTo(3);
+    assertThat(snapshot.exists(0)).isTrue();
+    assertThat(snapshot.getBalanceMinorUnits(0)).isEqualTo(INITIAL_BALANCE);
+    assertThat(snapshot.exists(1)).isFalse();
+    assertThat(snapshot.getAccountId(2)).isEqualTo("Id-2");
+  }
+
+  @Test
+  void getBalances_NeverSeesTransferHalfApplied_LockingEngine() throws Exception {
+    assertSnapshotsBalance();
+  }
+
+  @Test
+  void getBalances_NeverSeesTransferHalfApplied_PartitionedEngine() throws Exception {
+    startBank(TestBank.builder(directory).partitionedEngine(4, 64));
+    assertSnapshotsBalance();
+  }
+
+  /**
+   * Moves money around from several threads while snapshots of all accounts, and of two halves of them, are
+   * read: every snapshot of all accounts must add up to the money in the bank.
+   */
+  private void assertSnapshotsBalance() throws Exception {
+    TransferEngine engine = bank.transferEngine;
+    AccountsRepository repository = bank.repository;
+    AtomicBoolean running = new AtomicBoolean(true);
+    Thread[] writers = new Thread[4];
+    for (int t = 0; t < writers.length; t++) {
+      int seed = t;
+      writers[t] = new Thread(() -> {
+        for (int i = 0; running.get(); i++) {
+          int from = (seed * 7 + i * 13) % ACCOUNTS;
+          int to = (from + 1 + i % (ACCOUNTS - 1)) % ACCOUNTS;
+          try {
+            engine.submit(repository.getAccount(accountIds.get(from)), repository.getAccount(accountIds.get(to)),
+              1 + i % 50).join();
+          } catch (CompletionException e) {
+            assertThat(e.getCause()).isInstanceOf(InsufficientFundsException.class);
+          }
+        }
+      });
+      writers[t].start();
+    }
+
+    try {
+      for (int read = 0; read < 2_000; read++) {
+        assertThat(total(accountsService.getBalances(accountIds))).isEqualTo(ACCOUNTS * INITIAL_BALANCE);
+        accountsService.getBalances(accountIds.subList(0, ACCOUNTS / 2));
+      }
+    } finally {
+      running.set(false);
+      for (Thread writer : writers) {
+        writer.join();
+      }
+    }
+    assertThat(total(accountsService.getBalances(accountIds))).isEqualTo(ACCOUNTS * INITIAL_BALANCE);
+  }
+
+  private static long total(BalanceSnapshot snapshot) {
+    long total = 0;
+    for (int i = 0; i < snapshot.size(); i++) {
+      total += snapshot.getBalanceMinorUnits(i);
+    }
+    return total;
+  }
+}
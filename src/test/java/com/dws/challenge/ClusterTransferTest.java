@@ -0,0 +1,226 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.dws.challenge.cluster.ClusterNode;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.TransferRequest;
+import com.dws.challenge.exception.DuplicateAccountIdException;
+import com.dws.challenge.exception.InsufficientFundsException;
+import com.dws.challenge.exception.NodeUnavailableException;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.TransferService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Three cluster nodes in one JVM, talking to each other over localhost.
+ */
+class ClusterTransferTest {
+
+  private static final int NODES = 3;
+  private static final long RESERVATION_TIMEOUT_MILLIS = 2000;
+
+  @TempDir
+  Path directory;
+
+  private String nodeList;
+  private final List<Node> nodes = new ArrayList<>();
+
+  /**
+   * The services of one node; {@code cluster} is replaced when the node is restarted.
+   */
+  private final class Node {
+
+    final String id;
+    final TestBank bank;
+    final AccountsService accountsService;
+    ClusterNode cluster;
+    TransferService transferService;
+
+    Node(String id) {
+      this.id = id;
+      bank = TestBank.builder(directory.resolve(id)).ledger(true).build();
+      accountsService = bank.accountsService;
+    }
+
+    void start() throws IOException {
+      cluster = new ClusterNode(accountsService, bank.accountLocks, bank.balanceVersions, bank.ledger, bank.journal, id,
+        nodeList, 64, 1000, RESERVATION_TIMEOUT_MILLIS, 60_000);
+      cluster.start();
+      transferService = bank.newTransferService(bank.transferEngine, cluster);
+    }
+
+    void stop() throws Exception {
+      cluster.stop();
+      transferService.stop();
+      bank.close();
+    }
+
+    long balance(String accountId) {
+      return accountsService.getAccount(accountId).getBalanceMinorUnits();
+    }
+  }
+
+  @BeforeEach
+  void setUp() throws IOException {
+    List<String> entries = new ArrayList<>();
+    for (int i = 0; i < NODES; i++) {
+      try (ServerSocket socket = new ServerSocket(0)) {
+        entries.add("node-" + i + "=localhost:" + socket.getLocalPort());
+      }
+    }
+    nodeList = String.join(",", entries);
+    for (int i = 0; i < NODES; i++) {
+      nodes.add(new Node("node-" + i));
+    }
+    for (Node node : nodes) {
+      node.start();
+    }
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    for (Node node : nodes) {
+      node.stop();
+    }
+  }
+
+  @Test
+  void accountsAreCreatedAndReadOnTheirOwningNode() {
+    Node node0 = nodes.get(0);
+    String remoteId = accountOn(nodes.get(2), "Id-");
+
+    node0.cluster.createAccount(new Account(remoteId, new BigDecimal("12.5")));
+
+    assertThat(node0.accountsService.getAccount(remoteId)).isNull();
+    assertThat(nodes.get(2).balance(remoteId)).isEqualTo(1250);
+    assertThat(nodes.get(1).cluster.getAccount(remoteId).getBalance()).isEqualByComparingTo("12.5");
+    assertThat(node0.cluster.getAccount(accountOn(nodes.get(1), "Missing-"))).isNull();
+    assertThrows(DuplicateAccountIdException.class,
+      () -> nodes.get(1).cluster.createAccount(new Account(remoteId, BigDecimal.ONE)));
+  }
+
+  @Test
+  void crossNodeTransfer_InsufficientFundsLeavesBothBalances() {
+    String from = createOn(nodes.get(0), "From-", "10");
+    String to = createOn(nodes.get(1), "To-", "0");
+
+    InsufficientFundsException exception = assertThrows(InsufficientFundsException.class,
+      () -> nodes.get(2).transferService.transferMoney(new TransferRequest(from, to, new BigDecimal("10.01"))));
+
+    assertThat(exception.getMessage()).contains("Available: 10, Required: 10.01");
+    assertThat(nodes.get(0).balance(from)).isEqualTo(1000);
+    assertThat(nodes.get(1).balance(to)).isZero();
+    assertThat(nodes.get(0).cluster.getPendingReservations()).isZero();
+  }
+
+  @Test
+  void concurrentCrossNodeTransfers_ConserveTheTotal() throws Exception {
+    List<String> accountIds = new ArrayList<>();
+    List<Node> owners = new ArrayList<>();
+    for (Node node : nodes) {
+      for (int i = 0; i < 10; i++) {
+        accountIds.add(createOn(node, "Id-" + i + "-", "100"));
+        owners.add(node);
+      }
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      futures.add(executor.submit(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 300; i++) {
+          int from = random.nextInt(accountIds.size());
+          int to = random.nextInt(accountIds.size());
+          if (from == to) {
+            continue;
+          }
+          TransferRequest request = new TransferRequest(accountIds.get(from), accountIds.get(to),
+            BigDecimal.valueOf(random.nextInt(1, 5000), 2));
+          try {
+            nodes.get(random.nextInt(NODES)).transferService.transferMoney(request);
+          } catch (InsufficientFundsException expected) {
+            // The total must still add up
+          }
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    long total = 0;
+    for (int i = 0; i < accountIds.size(); i++) {
+      total += owners.get(i).balance(accountIds.get(i));
+    }
+    assertThat(total).isEqualTo(accountIds.size() * 10_000L);
+    for (Node node : nodes) {
+      awaitNoReservations(node);
+    }
+  }
+
+  @Test
+  void reservationIsRefundedWhenTheDestinationNodeIsDown() throws Exception {
+    Node source = nodes.get(0);
+    Node destination = nodes.get(1);
+    String from = createOn(source, "From-", "100");
+    String to = createOn(destination, "To-", "0");
+    destination.cluster.stop();
+
+    NodeUnavailableException exception = assertThrows(NodeUnavailableException.class,
+      () -> source.transferService.transferMoney(new TransferRequest(from, to, new BigDecimal("40"))));
+
+    assertThat(exception.getMessage()).contains("recovery");
+    assertThat(source.balance(from)).isEqualTo(6000);
+    assertThat(source.cluster.getPendingReservations()).isOne();
+
+    destination.start();
+    awaitNoReservations(source);
+
+    assertThat(source.balance(from)).isEqualTo(10_000);
+    assertThat(destination.balance(to)).isZero();
+  }
+
+  private String createOn(Node node, String prefix, String balance) {
+    String accountId = accountOn(node, prefix);
+    node.accountsService.createAccount(new Account(accountId, new BigDecimal(balance)));
+    return accountId;
+  }
+
+  /**
+   * @return the first id made of the prefix and a number that the node owns
+   */
+  private static String accountOn(Node node, String prefix) {
+    for (int i = 0; ; i++) {
+      String accountId = prefix + i;
+      if (node.cluster.ownerOf(accountId).equals(node.id)) {
+        return accountId;
+      }
+    }
+  }
+
+  private static void awaitNoReservations(Node node) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10 * RESERVATION_TIMEOUT_MILLIS;
+    while (node.cluster.getPendingReservations() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertThat(node.cluster.getPendingReservations()).isZero();
+  }
+}
@@ -0,0 +1,215 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.BalanceSnapshot;
+import com.dws.challenge.exception.InsufficientFundsException;
+import com.dws.challenge.metrics.TransferMetrics;
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.repository.AccountsRepositoryOffHeap;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.HotAccounts;
+import com.dws.challenge.service.TransferEngine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HotAccountsTest {
+
+  private static final int ACCOUNTS = 16;
+  private static final long INITIAL_BALANCE = 1000;
+  private static final String HOT_ID = "Id-0";
+
+  @TempDir
+  Path directory;
+
+  private final List<String> accountIds = new ArrayList<>();
+  private TestBank bank;
+  private AccountsRepository repository;
+  private AccountsService accountsService;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    startBank(TestBank.builder(directory));
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    bank.close();
+  }
+
+  /**
+   * Replaces the bank of {@link #setUp()}, for a test that needs another engine.
+   */
+  private void startBank(TestBank.Builder builder) throws InterruptedException {
+    if (bank != null) {
+      bank.close();
+    }
+    bank = builder.build();
+    repository = bank.repository;
+    accountsService = bank.accountsService;
+    accountIds.clear();
+    for (int i = 0; i < ACCOUNTS; i++) {
+      accountIds.add("Id-" + i);
+      accountsService.createAccount(Account.ofMinorUnits("Id-" + i, INITIAL_BALANCE));
+    }
+  }
+
+  @Test
+  void splitBalance_KeepsBalanceAndFoldsSubBalancesOnDebit() {
+    Account account = Account.ofMinorUnits("Id-123", 100);
+    assertThat(account.pickSubBalance()).isEqualTo(-1);
+
+    assertThat(account.splitBalance(3)).isTrue();
+    assertThat(account.getSubBalanceCount()).isEqualTo(4);
+    account.credit(50, account.pickSubBalance());
+    account.credit(25, 3);
+    account.credit(5);
+
+    assertThat(account.getBalanceMinorUnits()).isEqualTo(180);
+    assertThat(account.tryDebit(150)).isTrue();
+    assertThat(account.getBalanceMinorUnits()).isEqualTo(30);
+    assertThat(account.tryDebit(31)).isFalse();
+    account.setBalanceMinorUnits(7);
+    assertThat(account.getBalanceMinorUnits()).isEqualTo(7);
+  }
+
+  @Test
+  void splitBalance_LeavesSubBalancesInPlaceWhenFoldingWouldOverflow() {
+    Account account = Account.ofMinorUnits("Id-123", 0);
+    account.splitBalance(4);
+    account.credit(Long.MAX_VALUE / 8, 0);
+    account.credit(Long.MAX_VALUE - 100);
+    assertThrows(ArithmeticException.class, () -> account.credit(13, 1));
+
+    assertThat(account.tryDebit(Long.MAX_VALUE - 50)).isFalse();
+    assertThat(account.tryDebit(Long.MAX_VALUE - 100)).isTrue();
+    assertThat(account.getBalanceMinorUnits()).isEqualTo(Long.MAX_VALUE / 8);
+    assertThat(account.tryDebit(Long.MAX_VALUE / 8)).isTrue();
+    assertThat(account.getBalanceMinorUnits()).isZero();
+  }
+
+  @Test
+  void split_SplitsConfiguredAccountsOnceTheyExist() throws Exception {
+    HotAccounts hotAccounts = hotAccounts(HOT_ID + ", Id-late", false);
+    hotAccounts.start();
+    try {
+      assertThat(repository.getAccount(HOT_ID).getSubBalanceCount()).isEqualTo(4);
+      assertThat(hotAccounts.getSplitCount()).isEqualTo(1);
+
+      accountsService.createAccount(Account.ofMinorUnits("Id-late", 0));
+      awaitSplitCount(hotAccounts, 2);
+      assertThat(repository.getAccount("Id-late").getSubBalanceCount()).isEqualTo(4);
+    } finally {
+      hotAccounts.stop();
+    }
+  }
+
+  @Test
+  void split_RefusedByOffHeapStore() {
+    AccountsRepositoryOffHeap offHeap = new AccountsRepositoryOffHeap(16);
+    offHeap.createAccount(Account.ofMinorUnits(HOT_ID, INITIAL_BALANCE));
+    HotAccounts hotAccounts = new HotAccounts(offHeap, bank.balanceVersions, bank.metrics, "", 4, false, 10, 1, 16);
+
+    assertThat(hotAccounts.split(HOT_ID)).isFalse();
+    assertThat(hotAccounts.getSplitCount()).isZero();
+    assertThat(offHeap.getAccount(HOT_ID).getBalanceMinorUnits()).isEqualTo(INITIAL_BALANCE);
+  }
+
+  @Test
+  void detection_SplitsAccountsCreditedOften() throws Exception {
+    HotAccounts hotAccounts = hotAccounts("", true);
+    hotAccounts.start();
+    try {
+      for (int i = 0; i < 100 * TransferMetrics.CREDIT_SAMPLE_RATE; i++) {
+        bank.metrics.sampleCredit(HOT_ID);
+      }
+      awaitSplitCount(hotAccounts, 1);
+      assertThat(repository.getAccount(HOT_ID).getSubBalanceCount()).isEqualTo(4);
+      assertThat(repository.getAccount("Id-1").getSubBalanceCount()).isZero();
+    } finally {
+      hotAccounts.stop();
+    }
+  }
+
+  @Test
+  void transfersToHotAccount_ConserveMoneyInSnapshots_LockingEngine() throws Exception {
+    hotAccounts("", false).split(HOT_ID);
+    assertFanInBalances();
+  }
+
+  @Test
+  void transfersToHotAccount_ConserveMoneyInSnapshots_PartitionedEngine() throws Exception {
+    startBank(TestBank.builder(directory).partitionedEngine(4, 64));
+    hotAccounts("", false).split(HOT_ID);
+    assertFanInBalances();
+  }
+
+  private HotAccounts hotAccounts(String ids, boolean detection) {
+    return new HotAccounts(repository, bank.balanceVersions, bank.metrics, ids, 4, detection, 10, 1, 16);
+  }
+
+  private static void awaitSplitCount(HotAccounts hotAccounts, int count) throws InterruptedException {
+    for (int i = 0; i < 500 && hotAccounts.getSplitCount() < count; i++) {
+      Thread.sleep(10);
+    }
+    assertThat(hotAccounts.getSplitCount()).isEqualTo(count);
+  }
+
+  /**
+   * Sends most transfers to the hot account, and some back out of it so that debits have to fold its
+   * sub-balances, while snapshots of all accounts are read: every one must add up to the money in the bank.
+   */
+  private void assertFanInBalances() throws Exception {
+    TransferEngine engine = bank.transferEngine;
+    AtomicBoolean running = new AtomicBoolean(true);
+    Thread[] writers = new Thread[4];
+    for (int t = 0; t < writers.length; t++) {
+      int seed = t;
+      writers[t] = new Thread(() -> {
+        for (int i = 0; running.get(); i++) {
+          int other = 1 + (seed * 5 + i * 7) % (ACCOUNTS - 1);
+          boolean outOfHot = i % 8 == 0;
+          Account from = repository.getAccount(outOfHot ? HOT_ID : accountIds.get(other));
+          Account to = repository.getAccount(outOfHot ? accountIds.get(other) : HOT_ID);
+          try {
+            engine.submit(from, to, outOfHot ? 40 : 1 + i % 10).join();
+          } catch (CompletionException e) {
+            assertThat(e.getCause()).isInstanceOf(InsufficientFundsException.class);
+          }
+        }
+      });
+      writers[t].start();
+    }
+
+    try {
+      for (int read = 0; read < 2_000; read++) {
+        assertThat(total(accountsService.getBalances(accountIds))).isEqualTo(ACCOUNTS * INITIAL_BALANCE);
+      }
+    } finally {
+      running.set(false);
+      for (Thread writer : writers) {
+        writer.join();
+      }
+    }
+    assertThat(total(accountsService.getBalances(accountIds))).isEqualTo(ACCOUNTS * INITIAL_BALANCE);
+    assertThat(repository.getAccount(HOT_ID).getSubBalanceCount()).isEqualTo(4);
+  }
+
+  private static long total(BalanceSnapshot snapshot) {
+    long total = 0;
+    for (int i = 0; i < snapshot.size(); i++) {
+      total += snapshot.getBalanceMinorUnits(i);
+    }
+    return total;
+  }
+}
@@ -0,0 +1,119 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.TransferRequest;
+import com.dws.challenge.exception.InsufficientFundsException;
+import com.dws.challenge.exception.InvalidTransferException;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.IdempotencyCache;
+import com.dws.challenge.service.TransferService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class IdempotentTransferTest {
+
+  @TempDir
+  Path directory;
+
+  private TestBank bank;
+  private AccountsService accountsService;
+  private TransferService transferService;
+  private IdempotencyCache idempotencyCache;
+
+  @BeforeEach
+  void setUp() {
+    bank = TestBank.builder(directory).ledger(true).idempotencyCapacity(4).build();
+    accountsService = bank.accountsService;
+    transferService = bank.transferService;
+    idempotencyCache = bank.idempotencyCache;
+
+    accountsService.createAccount(new Account("Id-1", new BigDecimal("100")));
+    accountsService.createAccount(new Account("Id-2", new BigDecimal("0")));
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    bank.close();
+  }
+
+  @Test
+  void transferMoney_RetryWithSameKeyIsAppliedOnce() {
+    TransferRequest request = new TransferRequest("Id-1", "Id-2", new BigDecimal("60"), "key-1");
+
+    transferService.transferMoney(request);
+    transferService.transferMoney(request);
+
+    assertThat(balance("Id-1")).isEqualByComparingTo("40");
+    assertThat(balance("Id-2")).isEqualByComparingTo("60");
+  }
+
+  @Test
+  void transferMoney_RetryReturnsStoredFailure() {
+    TransferRequest request = new TransferRequest("Id-1", "Id-2", new BigDecimal("160"), "key-1");
+    assertThrows(InsufficientFundsException.class, () -> transferService.transferMoney(request));
+
+    // Funds arriving later do not change the outcome of the retry
+    accountsService.getAccount("Id-1").credit(10_000);
+    assertThrows(InsufficientFundsException.class, () -> transferService.transferMoney(request));
+    assertThat(balance("Id-2")).isEqualByComparingTo("0");
+  }
+
+  @Test
+  void transferMoney_KeyReusedForDifferentTransfer() {
+    transferService.transferMoney(new TransferRequest("Id-1", "Id-2", new BigDecimal("10"), "key-1"));
+
+    InvalidTransferException e = assertThrows(InvalidTransferException.class,
+      () -> transferService.transferMoney(new TransferRequest("Id-1", "Id-2", new BigDecimal("20"), "key-1")));
+    assertThat(e.getMessage()).contains("key-1");
+    assertThat(balance("Id-1")).isEqualByComparingTo("90");
+  }
+
+  @Test
+  void transferMoney_ConcurrentDuplicatesCollapse() throws Exception {
+    TransferRequest request = new TransferRequest("Id-1", "Id-2", new BigDecimal("1"), "key-1");
+    CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        transferService.transferMoney(request);
+      });
+      threads[i].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(balance("Id-1")).isEqualByComparingTo("99");
+  }
+
+  @Test
+  void transferMoney_OldestKeysAreEvictedBeyondMaxEntries() {
+    for (int i = 0; i < 10; i++) {
+      transferService.transferMoney(new TransferRequest("Id-1", "Id-2", new BigDecimal("1"), "key-" + i));
+    }
+    assertThat(idempotencyCache.size()).isEqualTo(4);
+
+    // key-0 was evicted: the retry is applied again
+    transferService.transferMoney(new TransferRequest("Id-1", "Id-2", new BigDecimal("1"), "key-0"));
+    assertThat(balance("Id-1")).isEqualByComparingTo("89");
+  }
+
+  private BigDecimal balance(String accountId) {
+    return accountsService.getAccount(accountId).getBalance();
+  }
+}
@@ -0,0 +1,201 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.TransferRequest;
+import com.dws.challenge.exception.InsufficientFundsException;
+import com.dws.challenge.exception.TooManyRequestsException;
+import com.dws.challenge.journal.DurabilityMode;
+import com.dws.challenge.journal.JournalSubscriber;
+import com.dws.challenge.journal.TransferJournal;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.StripedLocks;
+import com.dws.challenge.service.TransferService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class NonBlockingTransferTest {
+
+  private static final int MAX_QUEUED_PER_STRIPE = 2;
+
+  @TempDir
+  Path directory;
+
+  private TestBank bank;
+  private StripedLocks accountLocks;
+  private AccountsService accountsService;
+  private TransferService transferService;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    bank = TestBank.builder(directory).lockingEngine(MAX_QUEUED_PER_STRIPE).build();
+    accountLocks = bank.accountLocks;
+    accountsService = bank.accountsService;
+    transferService = bank.transferService;
+
+    accountsService.createAccount(new Account("Id-1", new BigDecimal("100")));
+    accountsService.createAccount(new Account("Id-2", new BigDecimal("0")));
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    bank.close();
+  }
+
+  @Test
+  void transferMoneyWithoutWaiting_QueuesOnBusyStripeUntilReleased() throws Exception {
+    int stripe = accountLocks.stripeOf("Id-1");
+    CountDownLatch locked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Thread holder = new Thread(() -> {
+      accountLocks.lock(stripe);
+      locked.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        accountLocks.unlock(stripe);
+      }
+    });
+    holder.start();
+    locked.await();
+
+    CompletableFuture<Void> first = transferService.transferMoneyWithoutWaiting(
+      new TransferRequest("Id-1", "Id-2", new BigDecimal("60")));
+    CompletableFuture<Void> second = transferService.transferMoneyWithoutWaiting(
+      new TransferRequest("Id-1", "Id-2", new BigDecimal("60")));
+    CompletableFuture<Void> rejected = transferService.transferMoneyWithoutWaiting(
+      new TransferRequest("Id-1", "Id-2", new BigDecimal("1")));
+
+    assertThat(first.isDone()).isFalse();
+    assertThat(second.isDone()).isFalse();
+    assertThat(accountLocks.getQueuedTaskCount(stripe)).isEqualTo(MAX_QUEUED_PER_STRIPE);
+    assertThat(causeOf(rejected)).isInstanceOf(TooManyRequestsException.class);
+
+    release.countDown();
+    first.get(10, TimeUnit.SECONDS);
+    // Queued transfers are applied in order, so the second one finds the balance the first one left
+    assertThat(causeOf(second)).isInstanceOf(InsufficientFundsException.class);
+    assertThat(accountLocks.getQueuedTaskCount(stripe)).isZero();
+    assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("40");
+    assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("60");
+    holder.join();
+  }
+
+  @Test
+  void transferMoneyWithoutWaiting_MixesWithWaitingTransfers() throws Exception {
+    accountsService.createAccount(new Account("Id-3", new BigDecimal("200")));
+    // Enough on every account that no transfer of the ring below runs out of funds
+    transferService.transferMoney(new TransferRequest("Id-3", "Id-2", new BigDecimal("100")));
+    int threads = 4;
+    int transfersPerThread = 2_000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<List<CompletableFuture<Void>>>> submitted = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      boolean waiting = t % 2 == 0;
+      submitted.add(executor.submit(() -> {
+        List<CompletableFuture<Void>> transfers = new ArrayList<>();
+        for (int i = 0; i < transfersPerThread; i++) {
+          String from = "Id-" + (1 + i % 3);
+          String to = "Id-" + (1 + (i + 1) % 3);
+          TransferRequest request = new TransferRequest(from, to, new BigDecimal("0.01"));
+          transfers.add(waiting
+            ? transferService.transferMoneyAsync(request)
+            : transferService.transferMoneyWithoutWaiting(request));
+        }
+        return transfers;
+      }));
+    }
+
+    long balanceMinorUnits = 0;
+    for (Future<List<CompletableFuture<Void>>> transfers : submitted) {
+      for (CompletableFuture<Void> transfer : transfers.get(30, TimeUnit.SECONDS)) {
+        try {
+          transfer.get(30, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+          assertThat(e.getCause()).isInstanceOf(TooManyRequestsException.class);
+        }
+      }
+    }
+    executor.shutdown();
+
+    for (int i = 1; i <= 3; i++) {
+      balanceMinorUnits += accountsService.getAccount("Id-" + i).getBalanceMinorUnits();
+      assertThat(accountLocks.getQueuedTaskCount(accountLocks.stripeOf("Id-" + i))).isZero();
+    }
+    assertThat(balanceMinorUnits).isEqualTo(30_000);
+  }
+
+  @Test
+  void transferMoneyWithoutWaiting_SyncJournal_NeverAppendsOnCallerOrReleasingThread() throws Exception {
+    TestBank syncBank = TestBank.builder(directory.resolve("sync"))
+      .durability(DurabilityMode.SYNC)
+      .lockingEngine(MAX_QUEUED_PER_STRIPE)
+      .build();
+    TransferJournal journal = syncBank.journal;
+    journal.open();
+    Set<Thread> appendingThreads = ConcurrentHashMap.newKeySet();
+    journal.subscribe(new JournalSubscriber() {
+      @Override
+      public void appended(ByteBuffer records, long sequence) {
+        appendingThreads.add(Thread.currentThread());
+      }
+
+      @Override
+      public void awaitAcknowledged(long sequence) {
+      }
+    });
+    AccountsService accounts = syncBank.accountsService;
+    StripedLocks locks = syncBank.accountLocks;
+    TransferService service = syncBank.transferService;
+    accounts.createAccount(new Account("Id-1", new BigDecimal("100")));
+    accounts.createAccount(new Account("Id-2", new BigDecimal("0")));
+    appendingThreads.clear();
+    try {
+      service.transferMoneyWithoutWaiting(new TransferRequest("Id-1", "Id-2", new BigDecimal("10")))
+        .get(10, TimeUnit.SECONDS);
+
+      int stripe = locks.stripeOf("Id-1");
+      locks.lock(stripe);
+      CompletableFuture<Void> queued = service.transferMoneyWithoutWaiting(
+        new TransferRequest("Id-1", "Id-2", new BigDecimal("10")));
+      assertThat(locks.getQueuedTaskCount(stripe)).isZero();
+      locks.unlock(stripe);
+      queued.get(10, TimeUnit.SECONDS);
+
+      assertThat(appendingThreads).isNotEmpty().doesNotContain(Thread.currentThread());
+      assertThat(accounts.getAccount("Id-2").getBalance()).isEqualByComparingTo("20");
+    } finally {
+      syncBank.close();
+      journal.close();
+    }
+  }
+
+  private static Throwable causeOf(CompletableFuture<Void> future) throws Exception {
+    try {
+      future.get(10, TimeUnit.SECONDS);
+      return null;
+    } catch (ExecutionException e) {
+      return e.getCause();
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.metrics.TransferMetrics;
+import com.dws.challenge.service.NotificationDispatcher;
+import com.dws.challenge.service.NotificationDispatcher.OverflowPolicy;
+import com.dws.challenge.service.NotificationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+class NotificationDispatcherTest {
+
+  private final List<String> delivered = new CopyOnWriteArrayList<>();
+  private final TransferMetrics metrics = new TransferMetrics(new SimpleMeterRegistry());
+
+  @Test
+  void dispatch_CoalescesMessagesPerAccount() throws Exception {
+    CountDownLatch latch = new CountDownLatch(3);
+    NotificationService notificationService = (account, description) -> {
+      delivered.add(account.getAccountId() + ": " + description);
+      latch.countDown();
+    };
+    NotificationDispatcher dispatcher = new NotificationDispatcher(notificationService, metrics, 16, 1, 16, OverflowPolicy.BLOCK, false);
+
+    Account merchant = new Account("MERCHANT", new BigDecimal("0"));
+    Account customer1 = new Account("CUST001", new BigDecimal("100"));
+    Account customer2 = new Account("CUST002", new BigDecimal("100"));
+
+    // Queue before the worker starts so that both events end up in the same batch
+    dispatcher.enqueue(customer1, merchant, 1000L);
+    dispatcher.enqueue(customer2, merchant, 2000L);
+    dispatcher.start();
+
+    assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+    dispatcher.stop();
+
+    assertThat(delivered).containsExactlyInAnyOrder(
+        "CUST001: Transferred 10 to account MERCHANT",
+        "CUST002: Transferred 20 to account MERCHANT",
+        "MERCHANT: Received 10 from account CUST001\nReceived 20 from account CUST002");
+    assertThat(dispatcher.getDispatchedCount()).isEqualTo(2);
+    assertThat(dispatcher.getQueueDepth()).isZero();
+  }
+
+  @Test
+  void enqueue_DropPolicy_DiscardsWhenFull() {
+    NotificationDispatcher dispatcher = new NotificationDispatcher((account, description) -> { }, metrics, 1, 1, 16, OverflowPolicy.DROP, false);
+    Account account1 = new Account("ACC001", new BigDecimal("100"));
+    Account account2 = new Account("ACC002", new BigDecimal("100"));
+
+    dispatcher.enqueue(account1, account2, 100L);
+    dispatcher.enqueue(account1, account2, 200L);
+
+    assertThat(dispatcher.getQueueDepth()).isEqualTo(1);
+    assertThat(dispatcher.getDroppedCount()).isEqualTo(1);
+  }
+
+  @Test
+  void dispatch_VirtualThreads_DeliversAccountsConcurrently() throws Exception {
+    CountDownLatch allStarted = new CountDownLatch(3);
+    List<Boolean> virtual = new CopyOnWriteArrayList<>();
+    NotificationService notificationService = (account, description) -> {
+      virtual.add(Thread.currentThread().isVirtual());
+      allStarted.countDown();
+      try {
+        // Only returns once all three deliveries are in flight at the same time
+        assertThat(allStarted.await(5, TimeUnit.SECONDS)).isTrue();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    };
+    NotificationDispatcher dispatcher = new NotificationDispatcher(notificationService, metrics, 16, 1, 16, OverflowPolicy.BLOCK, true);
+
+    Account merchant = new Account("MERCHANT", new BigDecimal("0"));
+    dispatcher.enqueue(new Account("CUST001", new BigDecimal("100")), merchant, 1000L);
+    dispatcher.enqueue(new Account("CUST002", new BigDecimal("100")), merchant, 2000L);
+    dispatcher.start();
+    dispatcher.stop();
+
+    assertThat(dispatcher.getDispatchedCount()).isEqualTo(2);
+    assertThat(dispatcher.getFailedCount()).isZero();
+    assertThat(virtual).containsExactly(true, true, true);
+  }
+}
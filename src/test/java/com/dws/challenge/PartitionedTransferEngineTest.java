@@ -0,0 +1,174 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.BatchMode;
+import com.dws.challenge.dto.TransferRequest;
+import com.dws.challenge.dto.TransferResult;
+import com.dws.challenge.exception.InsufficientFundsException;
+import com.dws.challenge.exception.InvalidTransferException;
+import com.dws.challenge.journal.DurabilityMode;
+import com.dws.challenge.journal.TransferJournal;
+import com.dws.challenge.ledger.AccountLedger;
+import com.dws.challenge.metrics.TransferMetrics;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.BalanceVersions;
+import com.dws.challenge.service.PartitionedTransferEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PartitionedTransferEngineTest {
+
+  private static final int ACCOUNTS = 50;
+
+  @TempDir
+  Path directory;
+
+  private final BalanceVersions balanceVersions = new BalanceVersions(16);
+  private PartitionedTransferEngine engine;
+  private final List<Account> accounts = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() {
+    TransferJournal journal = new TransferJournal(new AccountsRepositoryInMemory(), DurabilityMode.OFF,
+      directory.toString(), 2, 1 << 20);
+    // A tiny ring so that hand-offs between partitions also go through the overflow queues
+    engine = new PartitionedTransferEngine(balanceVersions, journal, new TransferMetrics(new SimpleMeterRegistry()),
+      new AccountLedger(false, "", 0), 4, 4);
+    engine.start();
+    for (int i = 0; i < ACCOUNTS; i++) {
+      accounts.add(Account.ofMinorUnits("Id-" + i, 1000));
+    }
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    engine.stop();
+  }
+
+  @Test
+  void submit_ConcurrentTransfersPreserveTotalBalance() throws Exception {
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      int seed = t;
+      threads[t] = new Thread(() -> {
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+          int from = (seed * 7 + i * 13) % ACCOUNTS;
+          int to = (from + 1 + i % (ACCOUNTS - 1)) % ACCOUNTS;
+          futures.add(engine.submit(accounts.get(from), accounts.get(to), 1 + i % 300));
+        }
+        for (CompletableFuture<Long> future : futures) {
+          try {
+            future.join();
+          } catch (CompletionException e) {
+            assertThat(e.getCause()).isInstanceOf(InsufficientFundsException.class);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    long total = 0;
+    for (Account account : accounts) {
+      assertThat(account.getBalanceMinorUnits()).isNotNegative();
+      total += account.getBalanceMinorUnits();
+    }
+    assertThat(total).isEqualTo(1000L * ACCOUNTS);
+  }
+
+  @Test
+  void submit_FailsOnInsufficientFunds() {
+    CompletableFuture<Long> future = engine.submit(accounts.get(0), accounts.get(1), 1001);
+
+    CompletionException e = assertThrows(CompletionException.class, future::join);
+    assertThat(e.getCause()).isInstanceOf(InsufficientFundsException.class);
+    assertThat(accounts.get(0).getBalanceMinorUnits()).isEqualTo(1000);
+    assertThat(accounts.get(1).getBalanceMinorUnits()).isEqualTo(1000);
+  }
+
+  @Test
+  void submit_RefundsWhenCreditWouldOverflow() {
+    Account full = Account.ofMinorUnits("Id-full", Long.MAX_VALUE - 10);
+    for (Account account : accounts) {
+      CompletionException e = assertThrows(CompletionException.class,
+        () -> engine.submit(account, full, 100).join());
+      assertThat(e.getCause()).isInstanceOf(InvalidTransferException.class);
+      assertThat(account.getBalanceMinorUnits()).isEqualTo(1000);
+    }
+    assertThat(full.getBalanceMinorUnits()).isEqualTo(Long.MAX_VALUE - 10);
+  }
+
+  @Test
+  void stop_FailsTransfersStillQueued() throws Exception {
+    Account from = accounts.get(0);
+    int stripe = balanceVersions.stripeOf(from.getAccountId());
+    CountDownLatch gateClosed = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    // A writer inside the bracket makes the reader close the gate, which then stays closed while it reads
+    balanceVersions.beginWrite(stripe, stripe);
+    Thread reader = new Thread(() -> balanceVersions.read(new int[] {stripe}, () -> {
+      gateClosed.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }));
+    reader.start();
+    Thread.sleep(50);
+    balanceVersions.endWrite(stripe, stripe);
+    gateClosed.await();
+
+    try {
+      CompletableFuture<Long> queued = engine.submit(from, accounts.get(1), 100);
+      engine.stop();
+
+      CompletionException e = assertThrows(CompletionException.class, queued::join);
+      assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+      e = assertThrows(CompletionException.class, () -> engine.submit(from, accounts.get(1), 100).join());
+      assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+    } finally {
+      release.countDown();
+      reader.join();
+    }
+    assertThat(from.getBalanceMinorUnits()).isEqualTo(1000);
+    assertThat(accounts.get(1).getBalanceMinorUnits()).isEqualTo(1000);
+  }
+
+  @Test
+  void transferMoneyBatch_ReportsLegsWhenTheEngineFails() throws Exception {
+    TestBank bank = TestBank.builder(directory).partitionedEngine(2, 16).build();
+    bank.accountsService.createAccount(new Account("Id-1", new BigDecimal("100")));
+    bank.accountsService.createAccount(new Account("Id-2", new BigDecimal("0")));
+    ((PartitionedTransferEngine) bank.transferEngine).stop();
+    try {
+      List<TransferResult> results = bank.transferService.transferMoneyBatch(List.of(
+        new TransferRequest("Id-1", "Id-2", new BigDecimal("10")),
+        new TransferRequest("Id-2", "Id-1", new BigDecimal("5"))), BatchMode.BEST_EFFORT);
+
+      assertThat(results.get(0).getStatus()).isEqualTo(TransferResult.Status.FAILED);
+      assertThat(results.get(0).getMessage()).contains("not running");
+      assertThat(results.get(1).getStatus()).isEqualTo(TransferResult.Status.NOT_APPLIED);
+      assertThat(bank.accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("100");
+    } finally {
+      bank.close();
+    }
+  }
+}
@@ -0,0 +1,63 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.service.AccountsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+  properties = "spring.main.web-application-type=reactive")
+@AutoConfigureWebTestClient
+class ReactiveAccountsControllerTest {
+
+  @Autowired
+  private WebTestClient webTestClient;
+
+  @Autowired
+  private AccountsService accountsService;
+
+  @BeforeEach
+  void clearAccounts() {
+    accountsService.getAccountsRepository().clearAccounts();
+  }
+
+  @Test
+  void createAccount() {
+    post("/v1/accounts", "{\"accountId\":\"Id-123\",\"balance\":123.45}").expectStatus().isCreated();
+    post("/v1/accounts", "{\"accountId\":\"Id-123\",\"balance\":123.45}").expectStatus().isBadRequest();
+
+    webTestClient.get().uri("/v1/accounts/Id-123").exchange()
+      .expectStatus().isOk()
+      .expectBody().json("{\"accountId\":\"Id-123\",\"balance\":123.45}");
+  }
+
+  @Test
+  void transferMoney() {
+    post("/v1/accounts", "{\"accountId\":\"Id-1\",\"balance\":100}").expectStatus().isCreated();
+    post("/v1/accounts", "{\"accountId\":\"Id-2\",\"balance\":0}").expectStatus().isCreated();
+
+    post("/v1/accounts/transfer", "{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"amount\":60}")
+      .expectStatus().isOk()
+      .expectBody(String.class).isEqualTo("Transfer completed successfully");
+    post("/v1/accounts/transfer", "{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-2\",\"amount\":60}")
+      .expectStatus().isBadRequest();
+    post("/v1/accounts/transfer", "{\"accountFromId\":\"Id-1\",\"accountToId\":\"Id-3\",\"amount\":1}")
+      .expectStatus().isBadRequest();
+
+    Account from = accountsService.getAccount("Id-1");
+    Account to = accountsService.getAccount("Id-2");
+    assertThat(from.getBalance()).isEqualByComparingTo("40");
+    assertThat(to.getBalance()).isEqualByComparingTo("60");
+  }
+
+  private WebTestClient.ResponseSpec post(String uri, String json) {
+    return webTestClient.post().uri(uri).contentType(MediaType.APPLICATION_JSON).bodyValue(json).exchange();
+  }
+}
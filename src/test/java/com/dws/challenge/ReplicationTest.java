@@ -0,0 +1,162 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.TransferRequest;
+import com.dws.challenge.exception.InsufficientFundsException;
+import com.dws.challenge.journal.DurabilityMode;
+import com.dws.challenge.journal.TransferJournal;
+import com.dws.challenge.replication.ReplicationMode;
+import com.dws.challenge.replication.ReplicationPublisher;
+import com.dws.challenge.replication.StandbyReplica;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.TransferService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * A primary and a standby in one JVM, replicating over localhost.
+ */
+class ReplicationTest {
+
+  @TempDir
+  Path directory;
+
+  private TestBank primary;
+  private TransferJournal primaryJournal;
+  private AccountsService primaryAccounts;
+  private TransferService transferService;
+  private ReplicationPublisher publisher;
+
+  private final AccountsRepositoryInMemory standbyRepository = new AccountsRepositoryInMemory();
+  private StandbyReplica standby;
+
+  @AfterEach
+  void tearDown() throws Exception {
+    if (standby != null) {
+      standby.stop();
+    }
+    publisher.stop();
+    primary.close();
+  }
+
+  @Test
+  void standbyLoadsExistingAccountsThenFollowsTransfers() throws Exception {
+    startPrimary(ReplicationMode.ASYNC);
+    for (int i = 0; i < 20; i++) {
+      primaryAccounts.createAccount(new Account("Id-" + i, new BigDecimal("100")));
+    }
+    startStandby();
+    for (int i = 20; i < 30; i++) {
+      primaryAccounts.createAccount(new Account("Id-" + i, new BigDecimal("100")));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      futures.add(executor.submit(() -> {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 500; i++) {
+          int from = random.nextInt(30);
+          int to = random.nextInt(30);
+          if (from == to) {
+            continue;
+          }
+          try {
+            transferService.transferMoney(new TransferRequest("Id-" + from, "Id-" + to,
+              BigDecimal.valueOf(random.nextInt(1, 5000), 2)));
+          } catch (InsufficientFundsException expected) {
+            // Replicated all the same
+          }
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    awaitApplied(primaryJournal.getAppendedSequence());
+    for (int i = 0; i < 30; i++) {
+      assertThat(standbyRepository.getBalanceMinorUnits("Id-" + i))
+        .isEqualTo(primaryAccounts.getAccount("Id-" + i).getBalanceMinorUnits());
+    }
+  }
+
+  @Test
+  void syncMode_TransferReturnsOnceTheStandbyAppliedIt() throws Exception {
+    startPrimary(ReplicationMode.SYNC);
+    primaryAccounts.createAccount(new Account("Id-1", new BigDecimal("100")));
+    primaryAccounts.createAccount(new Account("Id-2", new BigDecimal("0")));
+    startStandby();
+    awaitApplied(primaryJournal.getAppendedSequence());
+    awaitStreaming();
+
+    for (int i = 1; i <= 10; i++) {
+      transferService.transferMoney(new TransferRequest("Id-1", "Id-2", new BigDecimal("1.5")));
+      assertThat(standbyRepository.getBalanceMinorUnits("Id-2")).isEqualTo(150L * i);
+    }
+  }
+
+  @Test
+  void promotedStandbyStopsFollowing() throws Exception {
+    startPrimary(ReplicationMode.ASYNC);
+    primaryAccounts.createAccount(new Account("Id-1", new BigDecimal("100")));
+    startStandby();
+    awaitApplied(primaryJournal.getAppendedSequence());
+
+    long sequence = standby.promote();
+
+    assertThat(standby.isPromoted()).isTrue();
+    assertThat(sequence).isEqualTo(primaryJournal.getAppendedSequence());
+    primaryAccounts.createAccount(new Account("Id-2", new BigDecimal("100")));
+    Thread.sleep(100);
+    assertThat(standbyRepository.getAccount("Id-2")).isNull();
+  }
+
+  private void startPrimary(ReplicationMode mode) throws IOException {
+    primary = TestBank.builder(directory).build();
+    primaryJournal = primary.journal;
+    primaryAccounts = primary.accountsService;
+    transferService = primary.transferService;
+    publisher = new ReplicationPublisher(primary.repository, primary.accountLocks, primary.balanceVersions, primaryJournal,
+      0, mode, 5000, 1 << 20);
+    publisher.start();
+  }
+
+  private void startStandby() {
+    TransferJournal journal = new TransferJournal(standbyRepository, DurabilityMode.OFF,
+      directory.resolve("standby").toString(), 2, 1 << 20);
+    standby = new StandbyReplica(standbyRepository, journal, "localhost:" + publisher.getPort(), 50);
+    standby.start();
+  }
+
+  private void awaitApplied(long sequence) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (standby.getAppliedSequence() < sequence && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertThat(standby.getAppliedSequence()).isEqualTo(sequence);
+  }
+
+  private void awaitStreaming() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (!publisher.getStandbys().stream().allMatch(ReplicationPublisher.StandbyStatus::streaming)
+      && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+  }
+}
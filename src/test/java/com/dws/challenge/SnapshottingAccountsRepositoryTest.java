@@ -0,0 +1,76 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.dws.challenge.journal.DurabilityMode;
+import com.dws.challenge.journal.TransferJournal;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.repository.SnapshottingAccountsRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SnapshottingAccountsRepositoryTest {
+
+  @TempDir
+  Path directory;
+
+  @Test
+  void restore_LoadsSnapshotAndReplaysJournalTail() throws Exception {
+    // First run: create accounts and transfer, all in journal segment 1
+    SnapshottingAccountsRepository repository = openRepository();
+    TransferJournal journal = openJournal(repository);
+    for (int i = 0; i < 1000; i++) {
+      journal.appendAccountCreated("ACC" + i, 10_000);
+    }
+    journal.appendTransfer("ACC0", "ACC1", 2_500);
+    journal.close();
+
+    // Second run: segment 1 is closed and gets folded into a snapshot, segment 2 receives the tail
+    repository = openRepository();
+    journal = openJournal(repository);
+    assertThat(repository.snapshot()).isTrue();
+    assertThat(repository.getSnapshotSegment()).isEqualTo(1);
+    assertThat(Files.exists(directory.resolve("journal").resolve("journal-0000000000000001.log"))).isFalse();
+    journal.appendTransfer("ACC1", "ACC2", 500);
+    journal.appendAccountCreated("NEW", 100);
+    journal.close();
+
+    // Third run: the snapshot is restored and only segment 2 is replayed
+    repository = openRepository();
+    openJournal(repository).close();
+
+    assertThat(repository.getAccount("ACC0").getBalance()).isEqualByComparingTo("75");
+    assertThat(repository.getAccount("ACC1").getBalance()).isEqualByComparingTo("120");
+    assertThat(repository.getAccount("ACC2").getBalance()).isEqualByComparingTo("105");
+    assertThat(repository.getAccount("ACC999").getBalance()).isEqualByComparingTo("100");
+    assertThat(repository.getAccount("NEW").getBalance()).isEqualByComparingTo("1");
+  }
+
+  @Test
+  void snapshot_NothingToFold() throws Exception {
+    SnapshottingAccountsRepository repository = openRepository();
+    TransferJournal journal = openJournal(repository);
+    journal.appendAccountCreated("ACC001", 100);
+
+    // The only segment is still being written to
+    assertThat(repository.snapshot()).isFalse();
+    journal.close();
+  }
+
+  private SnapshottingAccountsRepository openRepository() throws Exception {
+    SnapshottingAccountsRepository repository = new SnapshottingAccountsRepository(new AccountsRepositoryInMemory(),
+        directory.resolve("snapshots"), directory.resolve("journal"), 0, 4);
+    repository.restore();
+    return repository;
+  }
+
+  private TransferJournal openJournal(SnapshottingAccountsRepository repository) throws Exception {
+    TransferJournal journal = new TransferJournal(repository, DurabilityMode.SYNC,
+        directory.resolve("journal").toString(), 1, 64 * 1024 * 1024);
+    journal.open();
+    return journal;
+  }
+}
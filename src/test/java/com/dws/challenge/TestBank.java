@@ -0,0 +1,183 @@
+package com.dws.challenge;
+
+import java.nio.file.Path;
+
+import com.dws.challenge.cluster.AccountSharding;
+import com.dws.challenge.cluster.SingleNodeSharding;
+import com.dws.challenge.journal.DurabilityMode;
+import com.dws.challenge.journal.TransferJournal;
+import com.dws.challenge.ledger.AccountLedger;
+import com.dws.challenge.metrics.TransferMetrics;
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.BalanceVersions;
+import com.dws.challenge.service.IdempotencyCache;
+import com.dws.challenge.service.LockingTransferEngine;
+import com.dws.challenge.service.NotificationDispatcher;
+import com.dws.challenge.service.NotificationDispatcher.OverflowPolicy;
+import com.dws.challenge.service.PartitionedTransferEngine;
+import com.dws.challenge.service.StripedLocks;
+import com.dws.challenge.service.TransferEngine;
+import com.dws.challenge.service.TransferService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The service graph behind {@link TransferService}, wired by hand for tests that do not start Spring. By
+ * default: the heap store, 16 stripes, the journal off, the ledger off, a dispatcher that drops
+ * notifications, the locking engine and a single node. The dispatcher and a partitioned engine are started.
+ */
+final class TestBank {
+
+  final TransferMetrics metrics;
+  final AccountsRepository repository;
+  final StripedLocks accountLocks;
+  final BalanceVersions balanceVersions;
+  final AccountLedger ledger;
+  final TransferJournal journal;
+  final AccountsService accountsService;
+  final NotificationDispatcher dispatcher;
+  final TransferEngine transferEngine;
+  final IdempotencyCache idempotencyCache;
+  final TransferService transferService;
+
+  private TestBank(Builder builder) {
+    metrics = builder.metrics != null ? builder.metrics : new TransferMetrics(new SimpleMeterRegistry());
+    repository = builder.repository != null ? builder.repository : new AccountsRepositoryInMemory();
+    accountLocks = new StripedLocks(builder.stripes);
+    balanceVersions = new BalanceVersions(builder.versionStripes);
+    ledger = new AccountLedger(builder.ledger, "", 0);
+    journal = new TransferJournal(repository, builder.durability, builder.journalDirectory.toString(), 2, 1 << 20);
+    accountsService = new AccountsService(repository, accountLocks, balanceVersions, journal);
+    dispatcher = new NotificationDispatcher((account, description) -> { }, metrics, builder.notificationCapacity, 1,
+      builder.notificationBatchSize, builder.overflowPolicy, false);
+    if (builder.partitions < 0) {
+      transferEngine = new LockingTransferEngine(accountLocks, balanceVersions, journal, metrics, ledger,
+        builder.maxQueuedPerStripe, false);
+    } else {
+      PartitionedTransferEngine engine = new PartitionedTransferEngine(balanceVersions, journal, metrics, ledger,
+        builder.partitions, builder.ringSize);
+      engine.start();
+      transferEngine = engine;
+    }
+    idempotencyCache = new IdempotencyCache(metrics, builder.idempotencyCapacity, 60);
+    transferService = newTransferService(transferEngine, new SingleNodeSharding());
+    dispatcher.start();
+  }
+
+  /**
+   * @param journalDirectory where the journal writes, if its mode is not {@code OFF}
+   */
+  static Builder builder(Path journalDirectory) {
+    return new Builder(journalDirectory);
+  }
+
+  /**
+   * Another transfer service over the accounts of this bank, for a different engine or a cluster node's
+   * sharding. The caller stops it.
+   */
+  TransferService newTransferService(TransferEngine engine, AccountSharding sharding) {
+    return new TransferService(accountsService, dispatcher, accountLocks, balanceVersions, journal, metrics, engine,
+      idempotencyCache, ledger, sharding, false);
+  }
+
+  /**
+   * Stops the transfer service, the engine and the dispatcher. The journal is left to the tests that open it.
+   */
+  void close() throws InterruptedException {
+    transferService.stop();
+    if (transferEngine instanceof PartitionedTransferEngine partitionedEngine) {
+      partitionedEngine.stop();
+    } else if (transferEngine instanceof LockingTransferEngine lockingEngine) {
+      lockingEngine.stop();
+    }
+    dispatcher.stop();
+  }
+
+  static final class Builder {
+
+    private final Path journalDirectory;
+    private TransferMetrics metrics;
+    private AccountsRepository repository;
+    private int stripes = 16;
+    private int versionStripes = 16;
+    private DurabilityMode durability = DurabilityMode.OFF;
+    private boolean ledger;
+    private int notificationCapacity = 1024;
+    private int notificationBatchSize = 16;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+    private int maxQueuedPerStripe = 1024;
+    private int partitions = -1;
+    private int ringSize;
+    private int idempotencyCapacity = 16;
+
+    private Builder(Path journalDirectory) {
+      this.journalDirectory = journalDirectory;
+    }
+
+    Builder metrics(TransferMetrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    Builder repository(AccountsRepository repository) {
+      this.repository = repository;
+      return this;
+    }
+
+    /**
+     * Sizes both the lock stripes and the balance version stripes; {@code 0} sizes them from the cores.
+     */
+    Builder stripes(int stripes) {
+      this.stripes = stripes;
+      this.versionStripes = stripes;
+      return this;
+    }
+
+    Builder versionStripes(int versionStripes) {
+      this.versionStripes = versionStripes;
+      return this;
+    }
+
+    Builder durability(DurabilityMode durability) {
+      this.durability = durability;
+      return this;
+    }
+
+    Builder ledger(boolean ledger) {
+      this.ledger = ledger;
+      return this;
+    }
+
+    Builder notifications(int capacity, int batchSize, OverflowPolicy overflowPolicy) {
+      this.notificationCapacity = capacity;
+      this.notificationBatchSize = batchSize;
+      this.overflowPolicy = overflowPolicy;
+      return this;
+    }
+
+    Builder lockingEngine(int maxQueuedPerStripe) {
+      this.maxQueuedPerStripe = maxQueuedPerStripe;
+      this.partitions = -1;
+      return this;
+    }
+
+    /**
+     * @param partitions {@code 0} sizes them from the cores
+     */
+    Builder partitionedEngine(int partitions, int ringSize) {
+      this.partitions = partitions;
+      this.ringSize = ringSize;
+      return this;
+    }
+
+    Builder idempotencyCapacity(int idempotencyCapacity) {
+      this.idempotencyCapacity = idempotencyCapacity;
+      return this;
+    }
+
+    TestBank build() {
+      return new TestBank(this);
+    }
+  }
+}
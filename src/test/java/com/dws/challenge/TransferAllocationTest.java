@@ -0,0 +1,81 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.TransferRequest;
+import com.dws.challenge.exception.InsufficientFundsException;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.NotificationDispatcher.OverflowPolicy;
+import com.dws.challenge.service.TransferService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Bytes allocated on the calling thread per transfer, as reported by the JVM. The bounds leave room for
+ * the JIT not having run yet; a transfer logging, formatting or filling in a stack trace goes well past them.
+ */
+class TransferAllocationTest {
+
+  private static final int WARM_UP = 20_000;
+  private static final int MEASURED = 10_000;
+
+  @TempDir
+  Path directory;
+
+  private TestBank bank;
+  private TransferService transferService;
+
+  @BeforeEach
+  void setUp() {
+    bank = TestBank.builder(directory).notifications(1024, 256, OverflowPolicy.DROP).idempotencyCapacity(4).build();
+    AccountsService accountsService = bank.accountsService;
+    transferService = bank.transferService;
+
+    accountsService.createAccount(new Account("Id-1", new BigDecimal("1000000")));
+    accountsService.createAccount(new Account("Id-2", new BigDecimal("0")));
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    bank.close();
+  }
+
+  @Test
+  void transferMoney_AllocatesLittlePerTransfer() {
+    TransferRequest request = new TransferRequest("Id-1", "Id-2", new BigDecimal("0.01"));
+
+    long bytesPerTransfer = bytesPerCall(() -> transferService.transferMoney(request));
+
+    assertThat(bytesPerTransfer).isLessThan(1024);
+  }
+
+  @Test
+  void transferMoney_InsufficientFundsAllocatesLittle() {
+    TransferRequest request = new TransferRequest("Id-2", "Id-1", new BigDecimal("1000"));
+
+    long bytesPerTransfer = bytesPerCall(
+      () -> assertThrows(InsufficientFundsException.class, () -> transferService.transferMoney(request)));
+
+    assertThat(bytesPerTransfer).isLessThan(1024);
+  }
+
+  private static long bytesPerCall(Runnable call) {
+    for (int i = 0; i < WARM_UP; i++) {
+      call.run();
+    }
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long before = threads.getCurrentThreadAllocatedBytes();
+    for (int i = 0; i < MEASURED; i++) {
+      call.run();
+    }
+    return (threads.getCurrentThreadAllocatedBytes() - before) / MEASURED;
+  }
+}
@@ -0,0 +1,290 @@
+package com.dws.challenge;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The transfers and balance reads of a concurrent run, each with the interval between its call and the moment
+ * its outcome was seen, and a check that they are linearizable: that some order of the operations, each placed
+ * somewhere inside its own interval, replayed one at a time from the initial balances gives every outcome that
+ * was observed and the final balances. Uses the search of Wing and Gong with Lowe's memoization of
+ * (linearized operations, balances), which stays fast for a few hundred operations with a handful in flight at
+ * once but grows exponentially with concurrency, so it is for small runs only.
+ */
+final class TransferHistory {
+
+  enum Outcome {
+    TRANSFERRED,
+    INSUFFICIENT_FUNDS,
+    READ
+  }
+
+  /**
+   * A transfer of {@code amount} from {@code accounts[0]} to {@code accounts[1]}, or a read of the balances of
+   * {@code accounts}.
+   */
+  static final class Operation {
+
+    private final int[] accounts;
+    private final long amount;
+    private final long calledAt;
+    private volatile long returnedAt;
+    private volatile Outcome outcome;
+    private volatile long[] balances;
+
+    private Operation(int[] accounts, long amount, long calledAt) {
+      this.accounts = accounts;
+      this.amount = amount;
+      this.calledAt = calledAt;
+    }
+
+    void transferred(boolean succeeded) {
+      outcome = succeeded ? Outcome.TRANSFERRED : Outcome.INSUFFICIENT_FUNDS;
+      returnedAt = System.nanoTime();
+    }
+
+    void read(long[] balances) {
+      this.balances = balances;
+      outcome = Outcome.READ;
+      returnedAt = System.nanoTime();
+    }
+
+    /**
+     * @return the balances after this operation, or null if it could not have had its outcome from {@code before}
+     */
+    private long[] apply(long[] before) {
+      switch (outcome) {
+        case TRANSFERRED -> {
+          if (before[accounts[0]] < amount) {
+            return null;
+          }
+          long[] after = before.clone();
+          after[accounts[0]] -= amount;
+          after[accounts[1]] += amount;
+          return after;
+        }
+        case INSUFFICIENT_FUNDS -> {
+          return before[accounts[0]] < amount ? before : null;
+        }
+        default -> {
+          for (int i = 0; i < accounts.length; i++) {
+            if (before[accounts[i]] != balances[i]) {
+              return null;
+            }
+          }
+          return before;
+        }
+      }
+    }
+
+    @Override
+    public String toString() {
+      return switch (outcome) {
+        case TRANSFERRED, INSUFFICIENT_FUNDS -> outcome + " " + amount + " from " + accounts[0] + " to " + accounts[1];
+        case READ -> "READ " + Arrays.toString(accounts) + " = " + Arrays.toString(balances);
+        case null -> "PENDING " + Arrays.toString(accounts);
+      };
+    }
+  }
+
+  private final long[] initialBalances;
+  private final Queue<Operation> operations = new ConcurrentLinkedQueue<>();
+
+  TransferHistory(long[] initialBalances) {
+    this.initialBalances = initialBalances.clone();
+  }
+
+  /**
+   * Records the call of a transfer; its outcome is set on the returned operation once known.
+   */
+  Operation transfer(int from, int to, long amount) {
+    Operation operation = new Operation(new int[]{from, to}, amount, System.nanoTime());
+    operations.add(operation);
+    return operation;
+  }
+
+  /**
+   * Records the call of a read of the balances of {@code accounts}.
+   */
+  Operation read(int... accounts) {
+    Operation operation = new Operation(accounts, 0, System.nanoTime());
+    operations.add(operation);
+    return operation;
+  }
+
+  /**
+   * Drops an operation that turned out to have no effect and no outcome, such as a transfer turned away
+   * before reaching the accounts.
+   */
+  void forget(Operation operation) {
+    operations.remove(operation);
+  }
+
+  int size() {
+    return operations.size();
+  }
+
+  /**
+   * Checks the history against the final balances, read once every operation has returned.
+   *
+   * @return null if the history is linearizable, otherwise a description of the longest prefix that could be
+   * linearized and of the operations that could not follow it
+   */
+  String check(long[] finalBalances) {
+    List<Operation> history = new ArrayList<>(operations);
+    Operation last = new Operation(allAccounts(), 0, Long.MAX_VALUE);
+    last.balances = finalBalances.clone();
+    last.outcome = Outcome.READ;
+    last.returnedAt = Long.MAX_VALUE;
+    history.add(last);
+
+    Entry head = entries(history);
+    BitSet linearized = new BitSet(history.size());
+    Set<State> seen = new HashSet<>();
+    Deque<Step> steps = new ArrayDeque<>();
+    long[] balances = initialBalances;
+    List<Operation> longestPrefix = List.of();
+    Entry entry = head.next;
+    while (head.next != null) {
+      if (entry.call != null) {
+        // A return: the operations linearized so far cannot be extended past it, so undo the latest one
+        if (steps.isEmpty()) {
+          return "no linearization of " + history.size() + " operations; longest linearizable prefix ("
+            + longestPrefix.size() + "): " + longestPrefix + "; could not follow it: " + pending(history, head);
+        }
+        Step step = steps.pop();
+        balances = step.before;
+        linearized.clear(step.entry.index);
+        step.entry.unlift();
+        entry = step.entry.next;
+        continue;
+      }
+      long[] after = history.get(entry.index).apply(balances);
+      if (after != null) {
+        linearized.set(entry.index);
+        if (seen.add(new State((BitSet) linearized.clone(), after))) {
+          steps.push(new Step(entry, balances));
+          balances = after;
+          entry.lift();
+          if (steps.size() > longestPrefix.size()) {
+            longestPrefix = steps.reversed().stream().map(s -> history.get(s.entry.index)).toList();
+          }
+          entry = head.next;
+          continue;
+        }
+        linearized.clear(entry.index);
+      }
+      entry = entry.next;
+    }
+    return null;
+  }
+
+  private int[] allAccounts() {
+    int[] accounts = new int[initialBalances.length];
+    Arrays.setAll(accounts, i -> i);
+    return accounts;
+  }
+
+  private static List<Operation> pending(List<Operation> history, Entry head) {
+    List<Operation> pending = new ArrayList<>();
+    for (Entry entry = head.next; entry != null; entry = entry.next) {
+      if (entry.call == null) {
+        pending.add(history.get(entry.index));
+      }
+    }
+    return pending;
+  }
+
+  /**
+   * Lays out the calls and returns of all operations as one list ordered by time. A call and a return at the
+   * same instant are taken to overlap, so the call goes first.
+   */
+  private static Entry entries(List<Operation> history) {
+    List<Entry> entries = new ArrayList<>(2 * history.size());
+    for (int i = 0; i < history.size(); i++) {
+      Operation operation = history.get(i);
+      Entry call = new Entry(i, operation.calledAt, null);
+      entries.add(call);
+      entries.add(new Entry(i, operation.returnedAt, call));
+    }
+    entries.sort(Comparator.comparingLong((Entry e) -> e.time).thenComparing(e -> e.call != null));
+    Entry head = new Entry(-1, Long.MIN_VALUE, null);
+    Entry previous = head;
+    for (Entry entry : entries) {
+      previous.next = entry;
+      entry.prev = previous;
+      if (entry.call != null) {
+        entry.call.match = entry;
+      }
+      previous = entry;
+    }
+    return head;
+  }
+
+  /**
+   * The call or, when {@code call} is set, the return of an operation, linked in time order.
+   */
+  private static final class Entry {
+
+    private final int index;
+    private final long time;
+    private final Entry call;
+    private Entry match;
+    private Entry prev;
+    private Entry next;
+
+    private Entry(int index, long time, Entry call) {
+      this.index = index;
+      this.time = time;
+      this.call = call;
+    }
+
+    /**
+     * Takes this call and its return out of the list. A call always comes before its return, so {@code next}
+     * is never null here.
+     */
+    private void lift() {
+      prev.next = next;
+      next.prev = prev;
+      match.prev.next = match.next;
+      if (match.next != null) {
+        match.next.prev = match.prev;
+      }
+    }
+
+    private void unlift() {
+      match.prev.next = match;
+      if (match.next != null) {
+        match.next.prev = match;
+      }
+      prev.next = this;
+      next.prev = this;
+    }
+  }
+
+  private record Step(Entry entry, long[] before) {
+  }
+
+  private record State(BitSet linearized, long[] balances) {
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof State other && linearized.equals(other.linearized)
+        && Arrays.equals(balances, other.balances);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * linearized.hashCode() + Arrays.hashCode(balances);
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.exception.NotDurableException;
+import com.dws.challenge.journal.DurabilityMode;
+import com.dws.challenge.journal.JournalFormat;
+import com.dws.challenge.journal.TransferJournal;
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.repository.AccountsRepositoryOffHeap;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.BalanceVersions;
+import com.dws.challenge.service.StripedLocks;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+class TransferJournalTest {
+
+  @TempDir
+  Path directory;
+
+  @ParameterizedTest
+  @EnumSource(value = DurabilityMode.class, names = {"SYNC", "GROUP", "ASYNC"})
+  void replay_RestoresBalances(DurabilityMode mode) throws Exception {
+    TransferJournal journal = openJournal(new AccountsRepositoryInMemory(), mode);
+    journal.awaitDurable(journal.appendAccountCreated("ACC001", 100_000));
+    journal.awaitDurable(journal.appendAccountCreated("ACC002", 50_000));
+    journal.awaitDurable(journal.appendTransfer("ACC001", "ACC002", 20_000));
+    journal.awaitDurable(journal.appendTransfers(
+        new String[]{"ACC002", "ACC001"}, new String[]{"ACC001", "ACC002"}, new long[]{5_000, 1_000}, 2));
+    journal.close();
+
+    AccountsRepository restored = new AccountsRepositoryInMemory();
+    openJournal(restored, mode).close();
+
+    assertThat(restored.getAccount("ACC001").getBalance()).isEqualByComparingTo("840");
+    assertThat(restored.getAccount("ACC002").getBalance()).isEqualByComparingTo("660");
+  }
+
+  @Test
+  void replay_RestoresBalancesFromSyncSegmentsRotatedOnForce() throws Exception {
+    // Segments of one byte rotate on every force
+    TransferJournal journal = new TransferJournal(new AccountsRepositoryInMemory(), DurabilityMode.SYNC,
+        directory.toString(), 1, 1);
+    journal.open();
+    long created = journal.appendAccountCreated("ACC001", 100_000);
+    journal.appendAccountCreated("ACC002", 50_000);
+    journal.awaitDurable(created);
+    journal.awaitDurable(journal.appendTransfer("ACC001", "ACC002", 20_000));
+    journal.close();
+
+    assertThat(JournalFormat.listSegments(directory).size()).isEqualTo(3);
+    AccountsRepository restored = new AccountsRepositoryInMemory();
+    openJournal(restored, DurabilityMode.SYNC).close();
+
+    assertThat(restored.getAccount("ACC001").getBalance()).isEqualByComparingTo("800");
+    assertThat(restored.getAccount("ACC002").getBalance()).isEqualByComparingTo("700");
+  }
+
+  @Test
+  void replay_IgnoresTornTail() throws Exception {
+    TransferJournal journal = openJournal(new AccountsRepositoryInMemory(), DurabilityMode.SYNC);
+    journal.appendAccountCreated("ACC001", 100_000);
+    journal.appendAccountCreated("ACC002", 0);
+    journal.appendTransfer("ACC001", "ACC002", 20_000);
+    journal.close();
+
+    // Simulate a crash in the middle of writing the next record
+    Path segment = Files.list(directory).findFirst().orElseThrow();
+    Files.write(segment, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+    AccountsRepository restored = new AccountsRepositoryInMemory();
+    openJournal(restored, DurabilityMode.SYNC).close();
+
+    assertThat(restored.getAccount("ACC001").getBalance()).isEqualByComparingTo("800");
+    assertThat(restored.getAccount("ACC002").getBalance()).isEqualByComparingTo("200");
+  }
+
+  @Test
+  void awaitDurable_ReportsNotDurableAndRefusesAppendsOnceFlushFails() throws Exception {
+    // Segments of one byte rotate on every flush, and the next segment cannot be created
+    TransferJournal journal = new TransferJournal(new AccountsRepositoryInMemory(), DurabilityMode.GROUP,
+        directory.toString(), 1, 1);
+    journal.open();
+    Files.createFile(JournalFormat.segmentPath(directory, 2));
+
+    long sequence = journal.appendAccountCreated("ACC001", 100_000);
+    assertThrows(NotDurableException.class, () -> journal.awaitDurable(sequence));
+    assertThrows(UncheckedIOException.class, () -> journal.appendAccountCreated("ACC002", 0));
+    journal.close();
+  }
+
+  @Test
+  void createAccount_RefusedBeforeJournalingWhenStoreIsFull() throws Exception {
+    AccountsRepositoryOffHeap repository = new AccountsRepositoryOffHeap(1);
+    TransferJournal journal = openJournal(repository, DurabilityMode.SYNC);
+    AccountsService accountsService = new AccountsService(repository, new StripedLocks(16), new BalanceVersions(16),
+        journal);
+    accountsService.createAccount(Account.ofMinorUnits("ACC001", 100));
+    assertThrows(IllegalStateException.class, () -> accountsService.createAccount(Account.ofMinorUnits("ACC002", 200)));
+    journal.close();
+
+    AccountsRepository restored = new AccountsRepositoryInMemory();
+    openJournal(restored, DurabilityMode.SYNC).close();
+
+    assertThat(restored.getAccount("ACC001").getBalance()).isEqualByComparingTo("1");
+    assertThat(restored.getAccount("ACC002")).isNull();
+  }
+
+  private TransferJournal openJournal(AccountsRepository repository, DurabilityMode mode) throws Exception {
+    TransferJournal journal = new TransferJournal(repository, mode, directory.toString(), 1, 64 * 1024 * 1024);
+    journal.open();
+    return journal;
+  }
+}
@@ -0,0 +1,67 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.TransferRequest;
+import com.dws.challenge.exception.AccountNotFoundException;
+import com.dws.challenge.exception.InsufficientFundsException;
+import com.dws.challenge.metrics.TransferMetrics;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.NotificationDispatcher.OverflowPolicy;
+import com.dws.challenge.service.TransferService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TransferMetricsTest {
+
+  @TempDir
+  Path directory;
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  @Test
+  void transferMoney_RecordsPhasesAndOutcomes() throws Exception {
+    TestBank bank = TestBank.builder(directory)
+      .metrics(new TransferMetrics(registry))
+      .ledger(true)
+      .notifications(16, 16, OverflowPolicy.BLOCK)
+      .build();
+    AccountsService accountsService = bank.accountsService;
+    TransferService transferService = bank.transferService;
+
+    accountsService.createAccount(new Account("Id-1", new BigDecimal("100")));
+    accountsService.createAccount(new Account("Id-2", new BigDecimal("0")));
+
+    transferService.transferMoney(new TransferRequest("Id-1", "Id-2", new BigDecimal("60")));
+    assertThrows(InsufficientFundsException.class,
+      () -> transferService.transferMoney(new TransferRequest("Id-1", "Id-2", new BigDecimal("60"))));
+    assertThrows(AccountNotFoundException.class,
+      () -> transferService.transferMoney(new TransferRequest("Id-1", "Id-3", new BigDecimal("1"))));
+    bank.close();
+
+    assertThat(outcomes("completed")).isEqualTo(1);
+    assertThat(outcomes("insufficient_funds")).isEqualTo(1);
+    assertThat(outcomes("account_not_found")).isEqualTo(1);
+    assertThat(phases("validate")).isEqualTo(3);
+    assertThat(phases("lookup")).isEqualTo(2);
+    assertThat(phases("lock_wait")).isEqualTo(2);
+    assertThat(phases("apply")).isEqualTo(2);
+    assertThat(phases("notify")).isEqualTo(1);
+    assertThat(registry.get("notification.latency").timer().count()).isEqualTo(1);
+    assertThat(registry.get("notification.delivery").timer().count()).isEqualTo(2);
+  }
+
+  private double outcomes(String outcome) {
+    return registry.get("transfer.outcomes").tag("outcome", outcome).counter().count();
+  }
+
+  private long phases(String phase) {
+    return registry.get("transfer.phase").tag("phase", phase).timer().count();
+  }
+}
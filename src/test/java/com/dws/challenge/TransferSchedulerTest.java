@@ -0,0 +1,122 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Instant;
+
+import com.dws.challenge.cluster.SingleNodeSharding;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.dto.ScheduledTransferRequest;
+import com.dws.challenge.dto.ScheduledTransferResponse;
+import com.dws.challenge.exception.AccountNotFoundException;
+import com.dws.challenge.schedule.TransferScheduler;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.TransferService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TransferSchedulerTest {
+
+  private static final long TICK_MILLIS = 10;
+
+  @TempDir
+  Path directory;
+
+  private TestBank bank;
+  private AccountsService accountsService;
+  private TransferService transferService;
+  private TransferScheduler scheduler;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    bank = TestBank.builder(directory.resolve("journal")).build();
+    accountsService = bank.accountsService;
+    transferService = bank.transferService;
+    accountsService.createAccount(new Account("Id-1", new BigDecimal("100")));
+    accountsService.createAccount(new Account("Id-2", new BigDecimal("0")));
+    scheduler = startScheduler();
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    scheduler.stop();
+    bank.close();
+  }
+
+  @Test
+  void schedule_RunsOnceWhenDue() throws Exception {
+    ScheduledTransferResponse schedule = scheduler.schedule(request(Instant.now().plusMillis(100), null));
+
+    assertThat(scheduler.get(schedule.getId())).isNotNull();
+    assertThat(balance("Id-2")).isZero();
+
+    awaitBalance("Id-2", 1000);
+    Thread.sleep(100);
+    assertThat(balance("Id-2")).isEqualTo(1000);
+    assertThat(scheduler.get(schedule.getId())).isNull();
+  }
+
+  @Test
+  void schedule_RepeatsEveryIntervalUntilCancelled() throws Exception {
+    ScheduledTransferResponse schedule = scheduler.schedule(request(Instant.now(), 1L));
+
+    awaitBalance("Id-2", 1000);
+    assertThat(scheduler.list("Id-1").size()).isOne();
+    awaitBalance("Id-2", 2000);
+
+    assertThat(scheduler.cancel(schedule.getId())).isTrue();
+    assertThat(scheduler.cancel(schedule.getId())).isFalse();
+    assertThat(scheduler.list("Id-1").size()).isZero();
+    Thread.sleep(1200);
+    assertThat(balance("Id-2")).isEqualTo(2000);
+  }
+
+  @Test
+  void schedule_RejectsUnknownAccount() {
+    assertThrows(AccountNotFoundException.class, () -> scheduler.schedule(
+      new ScheduledTransferRequest("Id-1", "Id-3", BigDecimal.TEN, Instant.now(), null)));
+  }
+
+  @Test
+  void schedulesSurviveRestart() throws Exception {
+    ScheduledTransferResponse kept = scheduler.schedule(request(Instant.now().plusSeconds(3600), null));
+    ScheduledTransferResponse cancelled = scheduler.schedule(request(Instant.now().plusSeconds(3600), 60L));
+    scheduler.cancel(cancelled.getId());
+    scheduler.stop();
+
+    scheduler = startScheduler();
+
+    assertThat(scheduler.getScheduledCount()).isOne();
+    assertThat(scheduler.get(kept.getId()).getNextRunAt()).isEqualTo(kept.getNextRunAt());
+    assertThat(scheduler.schedule(request(Instant.now().plusSeconds(60), null)).getId()).isEqualTo(3L);
+  }
+
+  private TransferScheduler startScheduler() throws IOException {
+    TransferScheduler transferScheduler = new TransferScheduler(accountsService, transferService,
+      new SingleNodeSharding(), directory.resolve("schedules").toString(), TICK_MILLIS, 1000, 100);
+    transferScheduler.start();
+    return transferScheduler;
+  }
+
+  private static ScheduledTransferRequest request(Instant runAt, Long intervalSeconds) {
+    return new ScheduledTransferRequest("Id-1", "Id-2", BigDecimal.TEN, runAt, intervalSeconds);
+  }
+
+  private long balance(String accountId) {
+    return accountsService.getAccount(accountId).getBalanceMinorUnits();
+  }
+
+  private void awaitBalance(String accountId, long expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (balance(accountId) < expected && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertThat(balance(accountId)).isEqualTo(expected);
+  }
+}
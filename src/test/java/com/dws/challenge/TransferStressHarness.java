@@ -0,0 +1,450 @@
+package com.dws.challenge;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.domain.Money;
+import com.dws.challenge.dto.BalanceSnapshot;
+import com.dws.challenge.dto.TransferRequest;
+import com.dws.challenge.exception.InsufficientFundsException;
+import com.dws.challenge.exception.TooManyRequestsException;
+import com.dws.challenge.repository.AccountIdDictionary;
+import com.dws.challenge.repository.AccountsRepository;
+import com.dws.challenge.repository.AccountsRepositoryInMemory;
+import com.dws.challenge.repository.AccountsRepositoryInterned;
+import com.dws.challenge.repository.AccountsRepositoryOffHeap;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.HotAccounts;
+import com.dws.challenge.service.NotificationDispatcher.OverflowPolicy;
+import com.dws.challenge.service.TransferService;
+
+/**
+ * Random concurrent transfers through {@link TransferService}, wired by hand for any account store, transfer
+ * engine and transfer method, checked as they run:
+ * <ul>
+ *   <li>money is conserved and no balance goes negative, in snapshots taken while transfers are in flight
+ *   (see {@link AccountsService#getBalances(List)}) and in the final balances;</li>
+ *   <li>every transfer fails only for want of funds or, without waiting, for a full queue;</li>
+ *   <li>the run keeps making progress: a watchdog fails it, with the deadlocked threads and every stack, when
+ *   no transfer completes for {@link Settings#watchdogSeconds()};</li>
+ *   <li>optionally, that the history of transfers and reads is linearizable (see {@link TransferHistory}).</li>
+ * </ul>
+ * Each worker draws its transfers from its own generator seeded from {@link Settings#seed()}, so a failing run
+ * is repeated by passing its seed back, although the interleaving is up to the scheduler.
+ * <p>
+ * {@link #main(String[])} runs every combination of {@code stress.stores} (default heap,offheap,interned),
+ * {@code stress.engines} (locking,partitioned) and {@code stress.methods} (blocking,async,without-waiting):
+ * first a long run of {@code stress.transfers} (default 1000000) transfers over {@code stress.threads}
+ * (number of cores) workers and {@code stress.accounts} (1000) accounts, of which {@code stress.hot-accounts}
+ * (8) take {@code stress.hot-fraction} (0.5) of the traffic, then {@code stress.history-runs} (20) small runs
+ * whose histories are checked. Further properties: {@code stress.in-flight} (16), {@code stress.seed}
+ * (current time), {@code stress.watchdog-seconds} (30) and {@code stress.split-hot} (false).
+ */
+public final class TransferStressHarness {
+
+  static final List<String> STORES = List.of("heap", "offheap", "interned");
+  static final List<String> ENGINES = List.of("locking", "partitioned");
+  static final List<String> METHODS = List.of("blocking", "async", "without-waiting");
+
+  private static final long AUDIT_INTERVAL_MILLIS = 10;
+
+  /**
+   * @param store         {@code heap}, {@code offheap} or {@code interned}, as for {@code accounts.store}
+   * @param engine        {@code locking} or {@code partitioned}, as for {@code transfer.engine}
+   * @param method        {@code blocking} ({@link TransferService#transferMoney}), {@code async}
+   *                      ({@link TransferService#transferMoneyAsync}) or {@code without-waiting}
+   *                      ({@link TransferService#transferMoneyWithoutWaiting})
+   * @param transfers     per worker
+   * @param hotFraction   share of the accounts on either side of a transfer picked among the first
+   *                      {@code hotAccounts}, the rest being uniform over all accounts
+   * @param inFlight      transfers a worker may have outstanding at once, 1 for {@code blocking}
+   * @param readFraction  share of the operations that read the balances of two accounts instead of transferring
+   * @param checkHistory  records the history and checks it is linearizable, for small runs only
+   * @param splitHot      splits the balances of the hot accounts, as {@link HotAccounts} does, where the store
+   *                      allows it
+   */
+  record Settings(String store, String engine, String method, int threads, int transfers, int accounts,
+                  int hotAccounts, double hotFraction, long initialBalance, long maxAmount, int inFlight,
+                  double readFraction, boolean checkHistory, boolean splitHot, long seed, int watchdogSeconds) {
+
+    /**
+     * The long run of {@link #main(String[])}: plenty of money, so most transfers succeed, and no history.
+     */
+    static Settings longRun(String store, String engine, String method, long seed) {
+      int threads = Integer.getInteger("stress.threads", Runtime.getRuntime().availableProcessors());
+      return new Settings(store, engine, method, threads,
+        Integer.getInteger("stress.transfers", 1_000_000) / threads,
+        Integer.getInteger("stress.accounts", 1000),
+        Integer.getInteger("stress.hot-accounts", 8),
+        Double.parseDouble(System.getProperty("stress.hot-fraction", "0.5")),
+        10_000, 1_000, Integer.getInteger("stress.in-flight", 16), 0.01, false, Boolean.getBoolean("stress.split-hot"),
+        seed,
+        Integer.getInteger("stress.watchdog-seconds", 30));
+    }
+
+    /**
+     * A run small enough to check its history: three workers with two transfers each in flight over four
+     * accounts, with amounts close to the balances so that many transfers fail for want of funds.
+     */
+    static Settings historyRun(String store, String engine, String method, boolean splitHot, long seed) {
+      return new Settings(store, engine, method, 3, 40, 4, 4, 0, 100, 80, 2, 0.2, true, splitHot, seed,
+        Integer.getInteger("stress.watchdog-seconds", 30));
+    }
+  }
+
+  /**
+   * @param failures empty if every check passed
+   */
+  record Report(Settings settings, long transferred, long insufficientFunds, long rejected, long reads,
+                long elapsedNanos, List<String> failures) {
+
+    boolean passed() {
+      return failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+      long operations = transferred + insufficientFunds + rejected + reads;
+      return String.format("%-8s %-11s %-15s seed=%-14d %9d ops %8.0f ops/s  transferred=%d insufficient=%d "
+          + "rejected=%d reads=%d%s", settings.store, settings.engine, settings.method, settings.seed, operations,
+        operations / (elapsedNanos / 1e9), transferred, insufficientFunds, rejected, reads,
+        passed() ? "" : "\n  FAILED: " + String.join("\n  FAILED: ", failures));
+    }
+  }
+
+  private TransferStressHarness() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    List<String> stores = list("stress.stores", STORES);
+    List<String> engines = list("stress.engines", ENGINES);
+    List<String> methods = list("stress.methods", METHODS);
+    int historyRuns = Integer.getInteger("stress.history-runs", 20);
+    long seed = Long.getLong("stress.seed", System.currentTimeMillis());
+
+    boolean passed = true;
+    for (String store : stores) {
+      for (String engine : engines) {
+        for (String method : methods) {
+          Report report = run(Settings.longRun(store, engine, method, seed));
+          System.out.println(report);
+          passed &= report.passed();
+          for (int i = 0; i < historyRuns; i++) {
+            Report history = run(Settings.historyRun(store, engine, method, Boolean.getBoolean("stress.split-hot"), seed + i));
+            if (!history.passed()) {
+              System.out.println(history);
+              passed = false;
+            }
+          }
+          System.out.printf("%-8s %-11s %-15s %d linearizable histories checked%n", store, engine, method,
+            historyRuns);
+        }
+      }
+    }
+    System.exit(passed ? 0 : 1);
+  }
+
+  /**
+   * Runs one stress test. Worker threads are daemons, so a deadlocked run leaves them behind without keeping
+   * the JVM alive.
+   */
+  static Report run(Settings settings) throws InterruptedException {
+    Bank bank = new Bank(settings);
+    try {
+      return new Run(settings, bank).execute();
+    } finally {
+      bank.close();
+    }
+  }
+
+  private static List<String> list(String property, List<String> defaults) {
+    String value = System.getProperty(property);
+    return value == null ? defaults : Arrays.asList(value.split(","));
+  }
+
+  private static final class Run {
+
+    private final Settings settings;
+    private final Bank bank;
+    private final long totalBalance;
+    private final TransferHistory history;
+    private final Queue<String> failures = new ConcurrentLinkedQueue<>();
+    private final LongAdder transferred = new LongAdder();
+    private final LongAdder insufficientFunds = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder reads = new LongAdder();
+
+    private Run(Settings settings, Bank bank) {
+      this.settings = settings;
+      this.bank = bank;
+      this.totalBalance = settings.accounts * settings.initialBalance;
+      long[] initialBalances = new long[settings.accounts];
+      Arrays.fill(initialBalances, settings.initialBalance);
+      this.history = settings.checkHistory ? new TransferHistory(initialBalances) : null;
+    }
+
+    private Report execute() throws InterruptedException {
+      CountDownLatch finished = new CountDownLatch(settings.threads);
+      CountDownLatch start = new CountDownLatch(1);
+      List<Thread> workers = new ArrayList<>();
+      for (int t = 0; t < settings.threads; t++) {
+        SplittableRandom random = new SplittableRandom(settings.seed * 1_000_003 + t);
+        workers.add(daemon("stress-worker-" + t, () -> {
+          try {
+            start.await();
+            work(random);
+          } catch (Throwable e) {
+            failures.add("worker failed: " + e);
+          } finally {
+            finished.countDown();
+          }
+        }));
+      }
+      Thread auditor = daemon("stress-auditor", () -> {
+        while (finished.getCount() > 0) {
+          audit("while transferring");
+          try {
+            Thread.sleep(AUDIT_INTERVAL_MILLIS);
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+      });
+
+      long startedAt = System.nanoTime();
+      start.countDown();
+      boolean completed = watch(finished);
+      long elapsedNanos = System.nanoTime() - startedAt;
+      auditor.interrupt();
+      if (completed) {
+        auditor.join();
+        long[] balances = audit("after the run");
+        if (history != null) {
+          String violation = history.check(balances);
+          if (violation != null) {
+            failures.add(violation);
+          }
+        }
+      }
+      return new Report(settings, transferred.sum(), insufficientFunds.sum(), rejected.sum(), reads.sum(),
+        elapsedNanos, List.copyOf(failures));
+    }
+
+    private void work(SplittableRandom random) {
+      Queue<CompletableFuture<?>> inFlight = new ArrayDeque<>();
+      int limit = "blocking".equals(settings.method) ? 1 : settings.inFlight;
+      for (int i = 0; i < settings.transfers && failures.isEmpty(); i++) {
+        int from = pick(random);
+        int to = pick(random);
+        while (to == from) {
+          to = pick(random);
+        }
+        if (random.nextDouble() < settings.readFraction) {
+          read(from, to);
+          continue;
+        }
+        long amount = 1 + random.nextLong(settings.maxAmount);
+        if (inFlight.size() == limit) {
+          await(inFlight.remove());
+        }
+        inFlight.add(transfer(from, to, amount));
+      }
+      while (!inFlight.isEmpty()) {
+        await(inFlight.remove());
+      }
+    }
+
+    private int pick(SplittableRandom random) {
+      if (settings.hotAccounts > 0 && random.nextDouble() < settings.hotFraction) {
+        return random.nextInt(settings.hotAccounts);
+      }
+      return random.nextInt(settings.accounts);
+    }
+
+    private CompletableFuture<?> transfer(int from, int to, long amount) {
+      TransferHistory.Operation operation = history == null ? null : history.transfer(from, to, amount);
+      TransferRequest request = new TransferRequest(Bank.accountId(from), Bank.accountId(to),
+        Money.toBigDecimal(amount));
+      CompletableFuture<Void> transfer;
+      try {
+        transfer = switch (settings.method) {
+          case "blocking" -> {
+            bank.transferService.transferMoney(request);
+            yield CompletableFuture.completedFuture(null);
+          }
+          case "async" -> bank.transferService.transferMoneyAsync(request);
+          case "without-waiting" -> bank.transferService.transferMoneyWithoutWaiting(request);
+          default -> throw new IllegalArgumentException("Unknown transfer method " + settings.method);
+        };
+      } catch (RuntimeException e) {
+        transfer = CompletableFuture.failedFuture(e);
+      }
+      // Waited on rather than the transfer itself, so that every outcome is counted once the worker is done
+      return transfer.whenComplete((ignored, failure) -> {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+          ? failure.getCause() : failure;
+        if (cause == null) {
+          transferred.increment();
+        } else if (cause instanceof InsufficientFundsException) {
+          insufficientFunds.increment();
+        } else if (cause instanceof TooManyRequestsException) {
+          rejected.increment();
+        } else {
+          failures.add("transfer of " + amount + " from " + from + " to " + to + " failed: " + cause);
+        }
+        if (operation == null) {
+          return;
+        }
+        if (cause instanceof TooManyRequestsException) {
+          // Turned away before reaching the accounts: not an operation on them at all
+          history.forget(operation);
+        } else {
+          operation.transferred(cause == null);
+        }
+      });
+    }
+
+    private void read(int first, int second) {
+      TransferHistory.Operation operation = history == null ? null : history.read(first, second);
+      BalanceSnapshot snapshot = bank.accountsService.getBalances(List.of(Bank.accountId(first),
+        Bank.accountId(second)));
+      long[] balances = {snapshot.getBalanceMinorUnits(0), snapshot.getBalanceMinorUnits(1)};
+      if (operation != null) {
+        operation.read(balances);
+      }
+      reads.increment();
+    }
+
+    private static void await(CompletableFuture<?> transfer) {
+      try {
+        transfer.join();
+      } catch (CompletionException e) {
+        // Counted when the transfer completed
+      }
+    }
+
+    /**
+     * Reads every balance in one snapshot and checks none is negative and they add up to the money the run
+     * started with.
+     */
+    private long[] audit(String when) {
+      List<String> accountIds = new ArrayList<>(settings.accounts);
+      for (int i = 0; i < settings.accounts; i++) {
+        accountIds.add(Bank.accountId(i));
+      }
+      BalanceSnapshot snapshot = bank.accountsService.getBalances(accountIds);
+      long[] balances = new long[settings.accounts];
+      long total = 0;
+      for (int i = 0; i < settings.accounts; i++) {
+        balances[i] = snapshot.getBalanceMinorUnits(i);
+        if (balances[i] < 0) {
+          failures.add("negative balance " + balances[i] + " on account " + i + " " + when);
+        }
+        total += balances[i];
+      }
+      if (total != totalBalance) {
+        failures.add("total balance " + total + " instead of " + totalBalance + " " + when);
+      }
+      return balances;
+    }
+
+    /**
+     * Waits for the workers while counting completed operations. When none completes within the watchdog
+     * timeout, records the deadlocked threads, if the JVM finds a cycle, and every thread's stack.
+     *
+     * @return false if the run got stuck
+     */
+    private boolean watch(CountDownLatch finished) throws InterruptedException {
+      long lastProgress = -1;
+      long stalledSince = System.nanoTime();
+      while (!finished.await(1, TimeUnit.SECONDS)) {
+        long progress = transferred.sum() + insufficientFunds.sum() + rejected.sum() + reads.sum();
+        if (progress != lastProgress) {
+          lastProgress = progress;
+          stalledSince = System.nanoTime();
+        } else if (System.nanoTime() - stalledSince > TimeUnit.SECONDS.toNanos(settings.watchdogSeconds)) {
+          ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+          long[] deadlocked = threads.findDeadlockedThreads();
+          StringBuilder dump = new StringBuilder("no progress for " + settings.watchdogSeconds + "s after "
+            + progress + " operations; deadlocked threads: "
+            + (deadlocked == null ? "none" : Arrays.toString(deadlocked)) + "\n");
+          for (ThreadInfo thread : threads.dumpAllThreads(true, true)) {
+            dump.append(thread);
+          }
+          failures.add(dump.toString());
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private static Thread daemon(String name, Runnable task) {
+      Thread thread = new Thread(task, name);
+      thread.setDaemon(true);
+      thread.start();
+      return thread;
+    }
+  }
+
+  /**
+   * The service graph of {@link Settings}, with the journal off and a dispatcher that drops notifications.
+   */
+  private static final class Bank {
+
+    private final TestBank bank;
+    private final AccountsService accountsService;
+    private final TransferService transferService;
+
+    private Bank(Settings settings) {
+      AccountsRepository repository = switch (settings.store) {
+        case "heap" -> new AccountsRepositoryInMemory();
+        case "offheap" -> new AccountsRepositoryOffHeap(settings.accounts);
+        case "interned" -> new AccountsRepositoryInterned(new AccountIdDictionary());
+        default -> throw new IllegalArgumentException("Unknown account store " + settings.store);
+      };
+      TestBank.Builder builder = TestBank.builder(Path.of("build/stress-journal"))
+        .repository(repository)
+        .stripes(0)
+        .notifications(65_536, 256, OverflowPolicy.DROP);
+      this.bank = switch (settings.engine) {
+        case "locking" -> builder.build();
+        case "partitioned" -> builder.partitionedEngine(0, 1 << 12).build();
+        default -> throw new IllegalArgumentException("Unknown transfer engine " + settings.engine);
+      };
+      this.accountsService = bank.accountsService;
+      this.transferService = bank.transferService;
+      for (int i = 0; i < settings.accounts; i++) {
+        accountsService.createAccount(Account.ofMinorUnits(accountId(i), settings.initialBalance));
+      }
+      if (settings.splitHot) {
+        HotAccounts hotAccounts = new HotAccounts(repository, bank.balanceVersions, bank.metrics, "", 4, false, 1000, 1, 0);
+        for (int i = 0; i < settings.hotAccounts; i++) {
+          hotAccounts.split(accountId(i));
+        }
+      }
+    }
+
+    private static String accountId(int index) {
+      return "Id-" + index;
+    }
+
+    private void close() throws InterruptedException {
+      bank.close();
+    }
+  }
+}
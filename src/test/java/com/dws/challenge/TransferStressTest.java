@@ -0,0 +1,99 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.dws.challenge.TransferStressHarness.Report;
+import com.dws.challenge.TransferStressHarness.Settings;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * A short version of {@code ./gradlew stressTest} for every account store, transfer engine and transfer method.
+ */
+class TransferStressTest {
+
+  private static final int HISTORY_RUNS = 5;
+
+  static List<Arguments> combinations() {
+    List<Arguments> combinations = new ArrayList<>();
+    for (String store : TransferStressHarness.STORES) {
+      for (String engine : TransferStressHarness.ENGINES) {
+        for (String method : TransferStressHarness.METHODS) {
+          combinations.add(Arguments.of(store, engine, method));
+        }
+      }
+    }
+    return combinations;
+  }
+
+  static List<Arguments> splitCombinations() {
+    List<Arguments> combinations = new ArrayList<>();
+    for (String engine : TransferStressHarness.ENGINES) {
+      for (String method : TransferStressHarness.METHODS) {
+        combinations.add(Arguments.of("heap", engine, method));
+      }
+    }
+    return combinations;
+  }
+
+  @ParameterizedTest
+  @MethodSource("combinations")
+  void run_ConservesMoneyAndLinearizes(String store, String engine, String method) throws Exception {
+    assertRunsPass(store, engine, method, false);
+  }
+
+  @ParameterizedTest
+  @MethodSource("splitCombinations")
+  void run_ConservesMoneyAndLinearizes_HotAccountsSplit(String store, String engine, String method) throws Exception {
+    assertRunsPass(store, engine, method, true);
+  }
+
+  @Test
+  void check_AcceptsOverlappingTransfersInEitherOrder() {
+    TransferHistory history = new TransferHistory(new long[]{100, 0});
+    TransferHistory.Operation first = history.transfer(0, 1, 60);
+    TransferHistory.Operation second = history.transfer(0, 1, 60);
+    // The one called later won: only possible because the two overlap
+    second.transferred(true);
+    first.transferred(false);
+
+    assertThat(history.check(new long[]{40, 60})).isNull();
+  }
+
+  @Test
+  void check_RejectsReadOfBalanceAlreadyTransferredAway() {
+    TransferHistory history = new TransferHistory(new long[]{100, 0});
+    history.transfer(0, 1, 60).transferred(true);
+    history.read(0, 1).read(new long[]{100, 0});
+
+    assertThat(history.check(new long[]{40, 60})).startsWith("no linearization of 3 operations");
+  }
+
+  @Test
+  void check_RejectsFinalBalancesNoOrderExplains() {
+    TransferHistory history = new TransferHistory(new long[]{100, 0});
+    history.transfer(0, 1, 60).transferred(true);
+    history.transfer(1, 0, 80).transferred(false);
+
+    assertThat(history.check(new long[]{40, 60})).isNull();
+    assertThat(history.check(new long[]{100, 0})).isNotNull();
+  }
+
+  private static void assertRunsPass(String store, String engine, String method, boolean splitHot) throws Exception {
+    long seed = System.nanoTime();
+    Report report = TransferStressHarness.run(new Settings(store, engine, method, 4, 5_000, 64, 4, 0.5, 10_000,
+      1_000, 16, 0.01, false, splitHot, seed, 30));
+    assertThat(report.failures()).as(report.toString()).isEmpty();
+    assertThat(report.transferred()).isPositive();
+
+    for (int i = 0; i < HISTORY_RUNS; i++) {
+      Report history = TransferStressHarness.run(Settings.historyRun(store, engine, method, splitHot, seed + i));
+      assertThat(history.failures()).as(history.toString()).isEmpty();
+    }
+  }
+}
@@ -0,0 +1,191 @@
+package com.dws.challenge;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+
+import com.dws.challenge.cluster.SingleNodeSharding;
+import com.dws.challenge.domain.Account;
+import com.dws.challenge.repository.AccountIdDictionary;
+import com.dws.challenge.repository.AccountsRepositoryInterned;
+import com.dws.challenge.service.AccountsService;
+import com.dws.challenge.service.AdmissionControl;
+import com.dws.challenge.service.LockingTransferEngine;
+import com.dws.challenge.service.StripedLocks;
+import com.dws.challenge.service.TransferService;
+import com.dws.challenge.wire.WireClient;
+import com.dws.challenge.wire.WireClient.Response;
+import com.dws.challenge.wire.WireProtocol;
+import com.dws.challenge.wire.WireServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WireServerTest {
+
+  private static final int MAX_PIPELINED = 8;
+
+  @TempDir
+  Path directory;
+
+  private TestBank bank;
+  private AccountsService accountsService;
+  private WireServer server;
+  private WireClient client;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    // The interned store, so that the accounts also have handles. Transfers complete on the partition
+    // threads, out of order and after the server has moved on
+    bank = TestBank.builder(directory)
+      .repository(new AccountsRepositoryInterned(new AccountIdDictionary()))
+      .partitionedEngine(2, 1024)
+      .build();
+    accountsService = bank.accountsService;
+    startServer(bank.transferService);
+
+    accountsService.createAccount(new Account("Id-1", new BigDecimal("100")));
+    accountsService.createAccount(new Account("Id-2", new BigDecimal("0")));
+  }
+
+  private void startServer(TransferService transferService) throws Exception {
+    AdmissionControl admissionControl = new AdmissionControl(bank.metrics, false, 1000, 100, 256, 100);
+    server = new WireServer(transferService, accountsService, admissionControl, Optional.empty(), 0, MAX_PIPELINED, 1024);
+    server.start();
+    client = new WireClient(new InetSocketAddress("localhost", server.getPort()));
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    client.close();
+    server.stop();
+    bank.close();
+  }
+
+  @Test
+  void transfer_AnswersWithStatus() throws Exception {
+    client.transfer(1, "Id-1", "Id-2", 6000);
+    client.transfer(2, "Id-1", "Id-2", 6000);
+    client.transfer(3, "Id-1", "Id-3", 100);
+    client.transfer(4, "Id-1", "Id-1", 100);
+    client.transfer(5, "Id-1", "Id-2", 0);
+    client.flush();
+
+    byte[] statuses = new byte[6];
+    for (int i = 0; i < 5; i++) {
+      Response response = client.receive();
+      statuses[(int) response.requestId()] = response.status();
+    }
+
+    assertThat(statuses[1]).isEqualTo(WireProtocol.OK);
+    assertThat(statuses[2]).isEqualTo(WireProtocol.INSUFFICIENT_FUNDS);
+    assertThat(statuses[3]).isEqualTo(WireProtocol.NOT_FOUND);
+    assertThat(statuses[4]).isEqualTo(WireProtocol.INVALID);
+    assertThat(statuses[5]).isEqualTo(WireProtocol.INVALID);
+    assertThat(accountsService.getAccount("Id-1").getBalanceMinorUnits()).isEqualTo(4000);
+    assertThat(accountsService.getAccount("Id-2").getBalanceMinorUnits()).isEqualTo(6000);
+  }
+
+  @Test
+  void transferByHandle_AnswersWithStatus() throws Exception {
+    int from = accountsService.getAccountHandle("Id-1");
+    int to = accountsService.getAccountHandle("Id-2");
+    client.transferByHandle(1, from, to, 2500);
+    client.transferByHandle(2, from, 99, 100);
+    client.transferByHandle(3, 99, to, 100);
+    client.transferByHandle(4, from, from, 100);
+    client.flush();
+
+    byte[] statuses = new byte[5];
+    for (int i = 0; i < 4; i++) {
+      Response response = client.receive();
+      statuses[(int) response.requestId()] = response.status();
+    }
+
+    assertThat(statuses[1]).isEqualTo(WireProtocol.OK);
+    assertThat(statuses[2]).isEqualTo(WireProtocol.NOT_FOUND);
+    assertThat(statuses[3]).isEqualTo(WireProtocol.NOT_FOUND);
+    assertThat(statuses[4]).isEqualTo(WireProtocol.INVALID);
+    assertThat(accountsService.getAccount("Id-1").getBalanceMinorUnits()).isEqualTo(7500);
+    assertThat(accountsService.getAccount("Id-2").getBalanceMinorUnits()).isEqualTo(2500);
+  }
+
+  @Test
+  void transfer_PipelinesBeyondMaxPipelined() throws Exception {
+    int transfers = 1000;
+    for (int i = 0; i < transfers; i++) {
+      client.transfer(i, "Id-1", "Id-2", 1);
+    }
+    client.flush();
+
+    Set<Long> answered = new HashSet<>();
+    for (int i = 0; i < transfers; i++) {
+      Response response = client.receive();
+      assertThat(response.status()).isEqualTo(WireProtocol.OK);
+      answered.add(response.requestId());
+    }
+
+    assertThat(answered.size()).isEqualTo(transfers);
+    assertThat(accountsService.getAccount("Id-1").getBalanceMinorUnits()).isEqualTo(10000 - transfers);
+  }
+
+  @Test
+  void transfer_LockingEngineDoesNotWaitForBusyAccountOnSelectorThread() throws Exception {
+    client.close();
+    server.stop();
+    startServer(bank.newTransferService(new LockingTransferEngine(bank.accountLocks, bank.balanceVersions, bank.journal,
+      bank.metrics, bank.ledger, 1024, false), new SingleNodeSharding()));
+    StripedLocks accountLocks = bank.accountLocks;
+    int i = 3;
+    while (accountLocks.stripeOf("Id-" + i) == accountLocks.stripeOf("Id-1")) {
+      i++;
+    }
+    String otherId = "Id-" + i;
+    accountsService.createAccount(new Account(otherId, new BigDecimal("100")));
+
+    int stripe = accountLocks.stripeOf("Id-1");
+    accountLocks.lock(stripe);
+    try {
+      client.transfer(1, "Id-1", "Id-2", 100);
+      client.transfer(2, otherId, "Id-2", 100);
+      client.flush();
+
+      // Answered although the transfer read before it waits for its source account's stripe
+      Response response = client.receive();
+      assertThat(response.requestId()).isEqualTo(2L);
+      assertThat(response.status()).isEqualTo(WireProtocol.OK);
+    } finally {
+      accountLocks.unlock(stripe);
+    }
+
+    Response response = client.receive();
+    assertThat(response.requestId()).isEqualTo(1L);
+    assertThat(response.status()).isEqualTo(WireProtocol.OK);
+    assertThat(accountsService.getAccount("Id-2").getBalanceMinorUnits()).isEqualTo(200);
+  }
+
+  @Test
+  void transfer_UnknownOperationIsAnsweredWithError() throws Exception {
+    try (Socket socket = new Socket("localhost", server.getPort())) {
+      DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+      out.writeInt(Long.BYTES + 1);
+      out.writeLong(42);
+      out.writeByte(99);
+      out.flush();
+
+      DataInputStream in = new DataInputStream(socket.getInputStream());
+      assertThat(in.readInt()).isEqualTo(Long.BYTES + 1);
+      assertThat(in.readLong()).isEqualTo(42L);
+      assertThat(in.readByte()).isEqualTo(WireProtocol.ERROR);
+    }
+  }
+}